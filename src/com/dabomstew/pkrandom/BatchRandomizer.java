@@ -0,0 +1,209 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  BatchRandomizer.java - randomizes one base ROM with many seeds,       --*/
+/*--                         several at a time.                             --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.dabomstew.pkrandom.exceptions.RandomizationException;
+import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
+import com.dabomstew.pkrandom.romhandlers.AbstractGBRomHandler;
+import com.dabomstew.pkrandom.romhandlers.RomHandler;
+
+/**
+ * Randomizes one base ROM with the same settings and many seeds, running
+ * several seeds at once. Every seed gets its own handler and its own
+ * RandomSource, and each output ROM and log is written to disk as soon as
+ * that seed is done.
+ *
+ * A seed gives the same result here as it does in the GUI.
+ */
+public class BatchRandomizer {
+
+    public interface Listener {
+
+        public void seedFinished(long seed, String romFilename, int checkValue);
+
+        public void seedFailed(long seed, Exception ex);
+    }
+
+    private final RomHandler.Factory factory;
+    private final String baseRomFilename;
+    private final Settings settings;
+    private final int threads;
+    private Listener listener;
+    private Set<RandomizationLog.Section> logSections = RandomizationLog.allSections();
+    private boolean writeSpoilers;
+    private PhaseTimer.Listener phaseListener;
+
+    // GB/GBC/GBA ROMs are read once and every seed loads from a copy
+    private byte[] baseImage;
+    private String extension;
+
+    public BatchRandomizer(RomHandler.Factory factory, String baseRomFilename, Settings settings, int threads) {
+        if (!factory.isLoadable(baseRomFilename)) {
+            throw new RandomizationException("ROM " + baseRomFilename + " can't be loaded by this handler.");
+        }
+        this.factory = factory;
+        this.baseRomFilename = baseRomFilename;
+        this.settings = settings;
+        this.threads = Math.max(1, threads);
+
+        RomHandler probe = factory.create(new RandomSource());
+        if (probe instanceof AbstractGBRomHandler) {
+            try {
+                baseImage = FileFunctions.readFileFullyIntoBuffer(baseRomFilename);
+            } catch (IOException ex) {
+                throw new RandomizerIOException(ex);
+            }
+        }
+        extension = probe.getDefaultExtension();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Which parts of each seed's log to write; if none, no log files are made
+    public void setLogSections(Set<RandomizationLog.Section> logSections) {
+        this.logSections = logSections;
+    }
+
+    /**
+     * Be told how long each phase of each seed took, loading the ROM
+     * included. Called from the worker threads, several at once.
+     */
+    public void setPhaseListener(PhaseTimer.Listener phaseListener) {
+        this.phaseListener = phaseListener;
+    }
+
+    // Also write [name]_[seed].[ext].spoiler.jsonl for each seed
+    public void setWriteSpoilers(boolean writeSpoilers) {
+        this.writeSpoilers = writeSpoilers;
+    }
+
+    /**
+     * Randomize the base ROM once per seed, writing [name]_[seed].[ext] and
+     * [name]_[seed].[ext].log into outputFolder. Blocks until every seed is
+     * done and returns how many succeeded.
+     */
+    public int run(List<Long> seeds, String outputFolder) throws InterruptedException {
+        String baseName = new File(baseRomFilename).getName();
+        if (baseName.lastIndexOf('.') > 0) {
+            baseName = baseName.substring(0, baseName.lastIndexOf('.'));
+        }
+        File folder = new File(outputFolder);
+        folder.mkdirs();
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, seeds.size())));
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        try {
+            for (final long seed : seeds) {
+                final String romFilename = new File(folder, baseName + "_" + seed + "." + extension)
+                        .getAbsolutePath();
+                results.add(pool.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return randomizeSeed(seed, romFilename);
+                    }
+                }));
+            }
+            int succeeded = 0;
+            for (Future<Boolean> result : results) {
+                try {
+                    if (result.get()) {
+                        succeeded++;
+                    }
+                } catch (ExecutionException ex) {
+                    // randomizeSeed reports its own failures
+                }
+            }
+            return succeeded;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private boolean randomizeSeed(long seed, String romFilename) {
+        RandomizationLog log = null;
+        try {
+            if (logSections.isEmpty()) {
+                log = RandomizationLog.discard();
+            } else {
+                log = RandomizationLog.toFile(new File(romFilename + ".log"), logSections);
+            }
+
+            RandomSource random = new RandomSource(seed);
+            RomHandler romHandler = factory.create(random, log);
+            PhaseTimer timer = new PhaseTimer(phaseListener);
+            timer.start("Load ROM");
+            boolean loaded;
+            if (baseImage != null) {
+                loaded = ((AbstractGBRomHandler) romHandler).loadRom(baseRomFilename, baseImage.clone());
+            } else {
+                loaded = romHandler.loadRom(baseRomFilename);
+            }
+            if (!loaded) {
+                throw new RandomizationException("ROM " + baseRomFilename + " failed to load.");
+            }
+            Randomizer randomizer = new Randomizer(settings, romHandler, random);
+            randomizer.setPhaseTimer(timer);
+            int checkValue = randomizer.randomize(romFilename, log, seed);
+            if (writeSpoilers) {
+                SpoilerWriter.writeFile(new File(romFilename + ".spoiler.jsonl"), romHandler, settings, seed,
+                        checkValue);
+            }
+            RandomizationLog finished = log;
+            log = null;
+            finished.close();
+            if (listener != null) {
+                listener.seedFinished(seed, romFilename, checkValue);
+            }
+            return true;
+        } catch (Exception ex) {
+            if (log != null) {
+                log.printStackTrace(ex);
+                try {
+                    log.close();
+                } catch (IOException ex2) {
+                    // the failure is reported either way
+                }
+            }
+            if (listener != null) {
+                listener.seedFailed(seed, ex);
+            }
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,282 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  CommandLineRandomizer.java - randomizes a ROM with a range of seeds   --*/
+/*--                               without any GUI.                         --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.dabomstew.pkrandom.romhandlers.RomHandler;
+
+/**
+ * Headless entry point: randomizes one ROM with a settings string or a saved
+ * .rnqs settings file, once per seed in a range, writing each ROM and its log
+ * into an output folder. Never touches AWT, so any number can run at once.
+ *
+ * Exit status is 0 if every seed worked, 1 if some failed and 2 if nothing
+ * could be started (bad arguments, unsupported ROM, missing configs).
+ */
+public class CommandLineRandomizer {
+
+    private static final String USAGE = "Usage: java -cp randomizer.jar com.dabomstew.pkrandom.CommandLineRandomizer\n"
+            + "    -rom <file>            ROM to randomize\n"
+            + "    -settings <string>     settings string, as shown by the GUI\n"
+            + "    -preset <file.rnqs>    or a saved settings file\n"
+            + "    -seed <n>              first seed (default: random)\n"
+            + "    -count <n>             number of seeds, from -seed upwards (default 1)\n"
+            + "    -output <folder>       where to write ROMs and logs (default: current folder)\n"
+            + "    -threads <n>           seeds randomized at once (default: number of CPUs)\n"
+            + "    -log <sections>        all, none, or a comma-separated list of log sections\n"
+            + "                           (default: all)\n"
+            + "    -spoiler <yes|no>      also write a .spoiler.jsonl file per seed (default: no)\n"
+            + "    -timings <yes|no>      print average time and allocation per phase (default: no)\n";
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(run(args, System.out, System.err));
+    }
+
+    public static int run(String[] args, final PrintStream out, final PrintStream err) {
+        String romFilename = null, settingsString = null, presetFilename = null;
+        String outputFolder = ".";
+        long firstSeed = RandomSource.pickSeed();
+        int count = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Set<RandomizationLog.Section> logSections = RandomizationLog.allSections();
+        boolean writeSpoilers = false;
+        boolean printTimings = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) {
+                    return usage(err, "Missing value for " + arg);
+                }
+                String value = args[++i];
+                if (arg.equalsIgnoreCase("-rom")) {
+                    romFilename = value;
+                } else if (arg.equalsIgnoreCase("-settings")) {
+                    settingsString = value;
+                } else if (arg.equalsIgnoreCase("-preset")) {
+                    presetFilename = value;
+                } else if (arg.equalsIgnoreCase("-seed")) {
+                    firstSeed = Long.parseLong(value);
+                } else if (arg.equalsIgnoreCase("-count")) {
+                    count = Integer.parseInt(value);
+                } else if (arg.equalsIgnoreCase("-output")) {
+                    outputFolder = value;
+                } else if (arg.equalsIgnoreCase("-threads")) {
+                    threads = Integer.parseInt(value);
+                } else if (arg.equalsIgnoreCase("-spoiler")) {
+                    if (!value.equalsIgnoreCase("yes") && !value.equalsIgnoreCase("no")) {
+                        return usage(err, "-spoiler must be yes or no");
+                    }
+                    writeSpoilers = value.equalsIgnoreCase("yes");
+                } else if (arg.equalsIgnoreCase("-timings")) {
+                    if (!value.equalsIgnoreCase("yes") && !value.equalsIgnoreCase("no")) {
+                        return usage(err, "-timings must be yes or no");
+                    }
+                    printTimings = value.equalsIgnoreCase("yes");
+                } else if (arg.equalsIgnoreCase("-log")) {
+                    logSections = parseLogSections(value);
+                    if (logSections == null) {
+                        return usage(err, "Unknown log sections " + value + "; choose from "
+                                + EnumSet.allOf(RandomizationLog.Section.class));
+                    }
+                } else {
+                    return usage(err, "Unknown option " + arg);
+                }
+            }
+        } catch (NumberFormatException ex) {
+            return usage(err, "Not a number: " + ex.getMessage());
+        }
+        if (romFilename == null) {
+            return usage(err, "No ROM given");
+        }
+        if ((settingsString == null) == (presetFilename == null)) {
+            return usage(err, "Give exactly one of -settings and -preset");
+        }
+        if (count < 1 || threads < 1) {
+            return usage(err, "-count and -threads must be at least 1");
+        }
+
+        try {
+            Utils.testForRequiredConfigs();
+        } catch (FileNotFoundException ex) {
+            err.println("Required config file is missing: " + ex.getMessage());
+            return 2;
+        }
+
+        File romFile = new File(romFilename);
+        try {
+            Utils.validateRomFile(romFile);
+        } catch (Utils.InvalidROMException ex) {
+            err.println(ex.getMessage());
+            return 2;
+        }
+        RomHandler.Factory factory = new RomDetector().detect(romFile.getAbsolutePath());
+        if (factory == null) {
+            err.println(romFile.getName() + " is not a supported ROM.");
+            return 2;
+        }
+
+        Settings settings;
+        try {
+            if (presetFilename != null) {
+                FileInputStream fis = new FileInputStream(presetFilename);
+                settings = Settings.read(fis);
+                fis.close();
+                if (settings.isUpdatedFromOldVersion()) {
+                    err.println("Warning: " + presetFilename + " is from an older version of the randomizer.");
+                }
+            } else {
+                settings = Settings.fromString(settingsString);
+            }
+            settings.setCustomNames(FileFunctions.getCustomNames());
+        } catch (UnsupportedOperationException ex) {
+            err.println("Settings are from a newer version of the randomizer.");
+            return 2;
+        } catch (IOException ex) {
+            err.println("Couldn't read settings: " + ex.getMessage());
+            return 2;
+        } catch (RuntimeException ex) {
+            // malformed strings fail in all sorts of ways while decoding
+            err.println("Settings are invalid.");
+            return 2;
+        }
+
+        // Settings have to be fitted to the ROM, same as when loaded in the GUI
+        RomHandler romHandler = factory.create(new RandomSource());
+        if (!romHandler.loadRom(romFile.getAbsolutePath())) {
+            err.println(romFile.getName() + " failed to load.");
+            return 2;
+        }
+        Settings.TweakForROMFeedback feedback = settings.tweakForRom(romHandler);
+        if (feedback.isChangedStarter() && settings.getStartersMod() == Settings.StartersMod.CUSTOM) {
+            err.println("Warning: a custom starter isn't available in this game and was changed.");
+        }
+        if (feedback.isRemovedCodeTweaks()) {
+            err.println("Warning: some code tweaks aren't available for this game and were removed.");
+        }
+        out.println("Randomizing " + romHandler.getROMName() + " with " + count + " seed(s) from " + firstSeed);
+        romHandler = null;
+
+        List<Long> seeds = new ArrayList<Long>(count);
+        for (int i = 0; i < count; i++) {
+            seeds.add(firstSeed + i);
+        }
+        BatchRandomizer batch = new BatchRandomizer(factory, romFile.getAbsolutePath(), settings, threads);
+        batch.setLogSections(logSections);
+        batch.setWriteSpoilers(writeSpoilers);
+        // phase name -> count, wall, cpu and allocated totals
+        final Map<String, long[]> phaseTotals = new LinkedHashMap<String, long[]>();
+        if (printTimings) {
+            batch.setPhaseListener(new PhaseTimer.Listener() {
+                @Override
+                public void phaseFinished(PhaseTimer.Phase phase) {
+                    synchronized (phaseTotals) {
+                        long[] totals = phaseTotals.get(phase.name);
+                        if (totals == null) {
+                            totals = new long[4];
+                            phaseTotals.put(phase.name, totals);
+                        }
+                        totals[0]++;
+                        totals[1] += phase.wallNanos;
+                        totals[2] = totals[2] < 0 || phase.cpuNanos < 0 ? -1 : totals[2] + phase.cpuNanos;
+                        totals[3] = totals[3] < 0 || phase.allocatedBytes < 0 ? -1 : totals[3]
+                                + phase.allocatedBytes;
+                    }
+                }
+            });
+        }
+        batch.setListener(new BatchRandomizer.Listener() {
+            @Override
+            public void seedFinished(long seed, String romFilename, int checkValue) {
+                out.println(String.format("%d: %s (check value %08X)", seed, romFilename, checkValue));
+            }
+
+            @Override
+            public void seedFailed(long seed, Exception ex) {
+                err.println(seed + ": failed - " + ex);
+            }
+        });
+        int succeeded;
+        try {
+            succeeded = batch.run(seeds, outputFolder);
+        } catch (InterruptedException ex) {
+            err.println("Interrupted.");
+            return 1;
+        }
+        out.println(succeeded + " of " + count + " seed(s) randomized.");
+        if (printTimings) {
+            printTimings(out, phaseTotals);
+        }
+        return succeeded == count ? 0 : 1;
+    }
+
+    private static int usage(PrintStream err, String problem) {
+        err.println(problem);
+        err.print(USAGE);
+        return 2;
+    }
+
+    // Averages per seed; ? where the JVM can't measure something
+    private static void printTimings(PrintStream out, Map<String, long[]> phaseTotals) {
+        out.println("PHASE               | WALL ms|  CPU ms|ALLOC KB");
+        for (Map.Entry<String, long[]> entry : phaseTotals.entrySet()) {
+            long[] totals = entry.getValue();
+            out.println(String.format("%-20s|%8d|%8s|%8s", entry.getKey(), totals[1] / totals[0] / 1000000,
+                    totals[2] < 0 ? "?" : totals[2] / totals[0] / 1000000, totals[3] < 0 ? "?" : totals[3]
+                            / totals[0] / 1024));
+        }
+    }
+
+    private static Set<RandomizationLog.Section> parseLogSections(String value) {
+        if (value.equalsIgnoreCase("all")) {
+            return RandomizationLog.allSections();
+        }
+        Set<RandomizationLog.Section> sections = EnumSet.noneOf(RandomizationLog.Section.class);
+        if (value.equalsIgnoreCase("none")) {
+            return sections;
+        }
+        for (String name : value.split(",")) {
+            try {
+                sections.add(RandomizationLog.Section.valueOf(name.trim().toUpperCase(Locale.ENGLISH)));
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+        }
+        return sections;
+    }
+
+}
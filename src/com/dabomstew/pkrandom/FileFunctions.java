@@ -186,6 +186,12 @@ public class FileFunctions {
         }
     }
 
+    public static int getCRC32(byte[] data) {
+        CRC32 checksum = new CRC32();
+        checksum.update(data);
+        return (int) checksum.getValue();
+    }
+
     public static boolean checkOtherCRC(byte[] data, int byteIndex, int switchIndex, String filename, int offsetInData) {
         // If the switch at data[byteIndex].switchIndex is on, then check that
         // the CRC at data[offsetInData] ... data[offsetInData+3] matches the
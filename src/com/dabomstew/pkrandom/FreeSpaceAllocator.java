@@ -0,0 +1,177 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  FreeSpaceAllocator.java - hands out and takes back blocks of a ROM's  --*/
+/*--                            free space for repointed data.              --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The free space of a ROM from a given offset onwards, found in one pass and
+ * kept as sorted runs of the free space byte. Allocation is best fit (the
+ * smallest run that's big enough), and allocations are remembered so they
+ * can be released again when the data is repointed a second time.
+ *
+ * Blocks are placed the way RomFunctions.freeSpaceFinder places them: at
+ * least 2 free bytes are left before each block, so a terminator just before
+ * it that happens to be the free space byte is never overwritten. Before a
+ * block is handed out its bytes are checked, so space written to without
+ * going through the allocator is never handed out twice.
+ */
+public class FreeSpaceAllocator {
+
+    private final byte[] rom;
+    private final byte freeSpace;
+    private final int startOffset;
+
+    // free runs, start -> end (exclusive)
+    private final TreeMap<Integer, Integer> freeRuns = new TreeMap<Integer, Integer>();
+    // the same runs as (length << 32 | start), for best fit lookups
+    private final TreeSet<Long> freeBySize = new TreeSet<Long>();
+    // blocks handed out, start -> length
+    private final TreeMap<Integer, Integer> allocated = new TreeMap<Integer, Integer>();
+
+    public FreeSpaceAllocator(byte[] rom, byte freeSpace, int startOffset) {
+        this.rom = rom;
+        this.freeSpace = freeSpace;
+        this.startOffset = startOffset;
+        addRunsIn(startOffset, rom.length);
+    }
+
+    /**
+     * Claim amount bytes (4-aligned if longAligned). Returns the offset of the
+     * block, or -1 if there isn't enough free space left.
+     */
+    public int allocate(int amount, boolean longAligned) {
+        int needed = amount + (longAligned ? 5 : 2);
+        while (true) {
+            Long fit = freeBySize.ceiling((long) needed << 32);
+            if (fit == null) {
+                return -1;
+            }
+            int start = (int) (fit & 0xFFFFFFFFL);
+            int end = freeRuns.get(start);
+            int offset = longAligned ? (start + 5) & ~3 : start + 2;
+            if (!isFree(start, offset + amount)) {
+                // written to behind our back, find out what's really left
+                removeRun(start);
+                addRunsIn(start, end);
+                continue;
+            }
+            removeRun(start);
+            if (end > offset + amount) {
+                addRun(offset + amount, end);
+            }
+            allocated.put(offset, amount);
+            return offset;
+        }
+    }
+
+    /**
+     * Give back a block returned by allocate, filling it with the free space
+     * byte. Returns false (and changes nothing) for any offset that isn't the
+     * start of a block this allocator handed out, so it's safe to call with
+     * any old pointer being replaced.
+     */
+    public boolean release(int offset) {
+        Integer length = allocated.remove(offset);
+        if (length == null) {
+            return false;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            rom[i] = freeSpace;
+        }
+
+        // Merge with the free bytes either side, but never into another block
+        int low = offset, high = offset + length;
+        Map.Entry<Integer, Integer> before = allocated.lowerEntry(offset);
+        int lowLimit = Math.max(startOffset, before == null ? 0 : before.getKey() + before.getValue());
+        Integer after = allocated.higherKey(offset);
+        int highLimit = after == null ? rom.length : after;
+        while (low > lowLimit && rom[low - 1] == freeSpace) {
+            low--;
+        }
+        while (high < highLimit && rom[high] == freeSpace) {
+            high++;
+        }
+        Integer run = freeRuns.lowerKey(high);
+        while (run != null && freeRuns.get(run) > low) {
+            removeRun(run);
+            run = freeRuns.lowerKey(high);
+        }
+        addRun(low, high);
+        return true;
+    }
+
+    // Total bytes in free runs that are currently tracked.
+    public int freeBytes() {
+        int total = 0;
+        for (Map.Entry<Integer, Integer> run : freeRuns.entrySet()) {
+            total += run.getValue() - run.getKey();
+        }
+        return total;
+    }
+
+    private boolean isFree(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (rom[i] != freeSpace) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addRunsIn(int start, int end) {
+        int runStart = -1;
+        for (int i = start; i < end; i++) {
+            if (rom[i] == freeSpace) {
+                if (runStart < 0) {
+                    runStart = i;
+                }
+            } else if (runStart >= 0) {
+                addRun(runStart, i);
+                runStart = -1;
+            }
+        }
+        if (runStart >= 0) {
+            addRun(runStart, end);
+        }
+    }
+
+    private void addRun(int start, int end) {
+        // too short to hold anything once the gap before a block is left
+        if (end - start < 3) {
+            return;
+        }
+        freeRuns.put(start, end);
+        freeBySize.add(((long) (end - start) << 32) | start);
+    }
+
+    private void removeRun(int start) {
+        int end = freeRuns.remove(start);
+        freeBySize.remove(((long) (end - start) << 32) | start);
+    }
+
+}
@@ -0,0 +1,253 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  MultiPatternSearch.java - finds a fixed set of byte signatures in one --*/
+/*--                            pass over a ROM or binary.                  --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An Aho-Corasick automaton over a fixed set of hex signatures. One scan
+ * finds every signature at once, giving for each the same offsets as
+ * RomFunctions.search would (non-overlapping, leftmost first), so a handler
+ * can look up all of its signatures for the cost of a single pass.
+ *
+ * A search can be shared between threads once constructed.
+ */
+public class MultiPatternSearch {
+
+    private final Map<String, Integer> idsByHex = new HashMap<String, Integer>();
+    private final byte[][] patterns;
+
+    // transitions, 256 per state; state 0 is the root
+    private final int[] delta;
+    // patterns ending at each state, including those via suffix links
+    private final int[][] output;
+
+    public MultiPatternSearch(String[] hexStrings) {
+        List<byte[]> unique = new ArrayList<byte[]>();
+        for (String hex : hexStrings) {
+            String key = hex.toUpperCase();
+            if (!idsByHex.containsKey(key)) {
+                idsByHex.put(key, unique.size());
+                unique.add(parseHex(key));
+            }
+        }
+        patterns = unique.toArray(new byte[unique.size()][]);
+
+        // Trie
+        int maxStates = 1;
+        for (byte[] pattern : patterns) {
+            maxStates += pattern.length;
+        }
+        int[] trie = new int[maxStates * 256];
+        List<List<Integer>> ends = new ArrayList<List<Integer>>();
+        ends.add(new ArrayList<Integer>());
+        int states = 1;
+        for (int i = 0; i < patterns.length; i++) {
+            int state = 0;
+            for (byte b : patterns[i]) {
+                int slot = state * 256 + (b & 0xFF);
+                if (trie[slot] == 0) {
+                    trie[slot] = states++;
+                    ends.add(new ArrayList<Integer>());
+                }
+                state = trie[slot];
+            }
+            ends.get(state).add(i);
+        }
+
+        // Fill in failure transitions breadth first, so each state's suffix
+        // link is complete before its children need it
+        delta = new int[states * 256];
+        System.arraycopy(trie, 0, delta, 0, delta.length);
+        int[] fail = new int[states];
+        output = new int[states][];
+        output[0] = toArray(ends.get(0));
+        LinkedList<Integer> queue = new LinkedList<Integer>();
+        for (int c = 0; c < 256; c++) {
+            if (delta[c] != 0) {
+                queue.add(delta[c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.removeFirst();
+            List<Integer> out = ends.get(state);
+            for (int id : output[fail[state]]) {
+                out.add(id);
+            }
+            output[state] = toArray(out);
+            for (int c = 0; c < 256; c++) {
+                int slot = state * 256 + c;
+                int fallback = delta[fail[state] * 256 + c];
+                if (delta[slot] == 0) {
+                    delta[slot] = fallback;
+                } else {
+                    fail[delta[slot]] = fallback;
+                    queue.add(delta[slot]);
+                }
+            }
+        }
+    }
+
+    public Matches scan(byte[] haystack) {
+        return scan(haystack, 0, haystack.length);
+    }
+
+    public Matches scan(byte[] haystack, int beginOffset, int endOffset) {
+        List<List<Integer>> found = new ArrayList<List<Integer>>(patterns.length);
+        int[] nextAllowed = new int[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            found.add(new ArrayList<Integer>());
+            nextAllowed[i] = beginOffset;
+        }
+        int state = 0;
+        for (int pos = beginOffset; pos < endOffset; pos++) {
+            state = delta[state * 256 + (haystack[pos] & 0xFF)];
+            for (int id : output[state]) {
+                int start = pos - patterns[id].length + 1;
+                if (start >= nextAllowed[id]) {
+                    found.get(id).add(start);
+                    nextAllowed[id] = pos + 1;
+                }
+            }
+        }
+        return new Matches(haystack, found);
+    }
+
+    /**
+     * Matches in haystack as recorded in cache by an earlier scan of the same
+     * data, or null if the cache doesn't hold every signature or any recorded
+     * match doesn't hold in haystack.
+     */
+    public Matches loadFrom(byte[] haystack, OffsetCache cache) {
+        List<List<Integer>> found = new ArrayList<List<Integer>>(patterns.length);
+        for (int id = 0; id < patterns.length; id++) {
+            int[] offsets = cache.get(cacheKey(id));
+            if (offsets == null) {
+                return null;
+            }
+            List<Integer> list = new ArrayList<Integer>(offsets.length);
+            for (int offset : offsets) {
+                if (offset < 0 || offset > haystack.length - patterns[id].length) {
+                    return null;
+                }
+                list.add(offset);
+            }
+            found.add(list);
+        }
+        Matches matches = new Matches(haystack, found);
+        for (int id = 0; id < patterns.length; id++) {
+            if (!matches.stillFound(id)) {
+                return null;
+            }
+        }
+        return matches;
+    }
+
+    private String cacheKey(int id) {
+        return "found." + toHex(patterns[id]);
+    }
+
+    /**
+     * The result of one scan. Lookups check that the data still holds the
+     * signature at every offset found, so results can be kept around while
+     * the scanned data is edited elsewhere; if an edit touched a match, the
+     * lookup returns null and the caller should search again.
+     */
+    public class Matches {
+
+        private final byte[] haystack;
+        private final List<List<Integer>> found;
+
+        private Matches(byte[] haystack, List<List<Integer>> found) {
+            this.haystack = haystack;
+            this.found = found;
+        }
+
+        // Offsets of hexString, or null if unknown or no longer valid.
+        public List<Integer> get(String hexString) {
+            Integer id = idsByHex.get(hexString.toUpperCase());
+            if (id == null || !stillFound(id)) {
+                return null;
+            }
+            return Collections.unmodifiableList(found.get(id));
+        }
+
+        public List<Integer> get(byte[] pattern) {
+            return get(toHex(pattern));
+        }
+
+        // Record these matches so loadFrom can return them for the same data.
+        public void saveTo(OffsetCache cache) {
+            for (int id = 0; id < patterns.length; id++) {
+                cache.put(cacheKey(id), found.get(id));
+            }
+        }
+
+        private boolean stillFound(int id) {
+            byte[] pattern = patterns[id];
+            for (int offset : found.get(id)) {
+                for (int i = 0; i < pattern.length; i++) {
+                    if (haystack[offset + i] != pattern[i]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    public static String toHex(byte[] data) {
+        StringBuilder sb = new StringBuilder(data.length * 2);
+        for (byte b : data) {
+            sb.append(String.format("%02X", b & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] parseHex(String hexString) {
+        if (hexString.length() == 0 || hexString.length() % 2 != 0) {
+            throw new IllegalArgumentException("Bad signature: " + hexString);
+        }
+        byte[] data = new byte[hexString.length() / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) Integer.parseInt(hexString.substring(i * 2, i * 2 + 2), 16);
+        }
+        return data;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+}
@@ -0,0 +1,235 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  OffsetCache.java - remembers offsets found by searching a ROM, so the --*/
+/*--                     next load of the same ROM can skip the search.     --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.zip.CRC32;
+
+/**
+ * Offsets and tables worked out from a ROM's contents, saved to disk keyed by
+ * the CRC32 and length of the data they were found in. Only values which
+ * depend on nothing but those bytes should be put here.
+ *
+ * A cache file is only used if its header matches the data and this version
+ * of the randomizer and its trailing checksum is intact; anything else is
+ * treated as a miss and overwritten on the next save. Callers should still
+ * check cached offsets against the data where that's cheap.
+ */
+public class OffsetCache {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String CACHE_FOLDER = "cache";
+
+    private final File file;
+    private final List<String> header = new ArrayList<String>();
+    private final Map<String, int[]> values = new LinkedHashMap<String, int[]>();
+    private boolean changed;
+
+    /**
+     * The cache for data, loaded from disk if there's a valid entry. kind
+     * separates different uses of the cache (e.g. "gen3", "gen4_arm9").
+     */
+    public static OffsetCache forData(String kind, byte[] data) {
+        int crc = FileFunctions.getCRC32(data);
+        File file = new File(SysConstants.ROOT_PATH + CACHE_FOLDER, String.format("%s_%08X.txt", kind, crc));
+        OffsetCache cache = new OffsetCache(file);
+        cache.header.add("version=" + FORMAT_VERSION);
+        cache.header.add("randomizer=" + SysConstants.UPDATE_VERSION);
+        cache.header.add("kind=" + kind);
+        cache.header.add(String.format("crc=%08X", crc));
+        cache.header.add("length=" + data.length);
+        cache.read();
+        return cache;
+    }
+
+    private OffsetCache(File file) {
+        this.file = file;
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    // The values stored under key, or null if there are none.
+    public int[] get(String key) {
+        int[] found = values.get(key);
+        return found == null ? null : found.clone();
+    }
+
+    public void put(String key, int[] value) {
+        values.put(key, value.clone());
+        changed = true;
+    }
+
+    public void put(String key, List<Integer> value) {
+        int[] array = new int[value.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = value.get(i);
+        }
+        put(key, array);
+    }
+
+    /**
+     * Writes the cache to disk if anything was put since it was read. Failing
+     * to write isn't an error; the next load just has to search again.
+     */
+    public void save() {
+        if (!changed) {
+            return;
+        }
+        File folder = file.getParentFile();
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            return;
+        }
+        // Write next to the real file then swap it in, so a reader never
+        // sees a half written cache
+        File temp = new File(folder, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            List<String> lines = new ArrayList<String>(header);
+            for (Map.Entry<String, int[]> entry : values.entrySet()) {
+                lines.add(entry.getKey() + "=" + formatValues(entry.getValue()));
+            }
+            PrintStream ps = new PrintStream(new FileOutputStream(temp), false, "UTF-8");
+            ps.println("// Offsets found in a ROM by the Universal Pokemon Randomizer. Safe to delete.");
+            for (String line : lines) {
+                ps.println(line);
+            }
+            ps.println(String.format("check=%08X", checksum(lines)));
+            ps.close();
+            if (ps.checkError()) {
+                temp.delete();
+                return;
+            }
+            file.delete();
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return;
+            }
+            changed = false;
+        } catch (IOException ex) {
+            temp.delete();
+        }
+    }
+
+    private void read() {
+        if (!file.isFile() || !file.canRead()) {
+            return;
+        }
+        List<String> lines = new ArrayList<String>();
+        String check = null;
+        try {
+            Scanner sc = new Scanner(new FileInputStream(file), "UTF-8");
+            while (sc.hasNextLine()) {
+                String line = sc.nextLine().trim();
+                if (line.isEmpty() || line.startsWith("//")) {
+                    continue;
+                }
+                if (line.startsWith("check=")) {
+                    check = line.substring(6);
+                    break;
+                }
+                lines.add(line);
+            }
+            sc.close();
+        } catch (IOException ex) {
+            return;
+        }
+
+        // Must be complete, for this data, and written by this version
+        if (check == null || !check.equals(String.format("%08X", checksum(lines)))) {
+            return;
+        }
+        if (lines.size() < header.size() || !lines.subList(0, header.size()).equals(header)) {
+            return;
+        }
+        Map<String, int[]> loaded = new LinkedHashMap<String, int[]>();
+        try {
+            for (String line : lines.subList(header.size(), lines.size())) {
+                String[] tokens = line.split("=", 2);
+                if (tokens.length != 2) {
+                    return;
+                }
+                loaded.put(tokens[0], parseValues(tokens[1]));
+            }
+        } catch (NumberFormatException ex) {
+            return;
+        }
+        values.putAll(loaded);
+    }
+
+    private static String formatValues(int[] array) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < array.length; i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(String.format("0x%X", array[i]));
+        }
+        return sb.append("]").toString();
+    }
+
+    private static int[] parseValues(String text) {
+        if (!text.startsWith("[") || !text.endsWith("]")) {
+            throw new NumberFormatException(text);
+        }
+        text = text.substring(1, text.length() - 1).trim();
+        if (text.isEmpty()) {
+            return new int[0];
+        }
+        String[] parts = text.split(",");
+        int[] array = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i].trim();
+            if (!part.startsWith("0x")) {
+                throw new NumberFormatException(part);
+            }
+            array[i] = (int) Long.parseLong(part.substring(2), 16);
+        }
+        return array;
+    }
+
+    private static int checksum(List<String> lines) {
+        CRC32 checksum = new CRC32();
+        for (String line : lines) {
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                checksum.update(c >> 8);
+                checksum.update(c);
+            }
+            checksum.update('\n');
+        }
+        return (int) checksum.getValue();
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  PhaseTimer.java - measures the time and memory each step of a         --*/
+/*--                    randomization takes.                                --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits a run into named phases and records the wall time, CPU time and
+ * bytes allocated by each. Starting a phase finishes the one before it.
+ *
+ * Randomizer gives its larger log listings phases of their own; the odd log
+ * line written while a step runs is counted toward that step.
+ *
+ * CPU time and allocation are measured for the calling thread, so a timer
+ * must only be used from one thread. Either is -1 if the JVM can't measure
+ * it.
+ */
+public class PhaseTimer {
+
+    public static class Phase {
+        public final String name;
+        public final long wallNanos, cpuNanos, allocatedBytes;
+
+        public Phase(String name, long wallNanos, long cpuNanos, long allocatedBytes) {
+            this.name = name;
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    public interface Listener {
+
+        public void phaseFinished(Phase phase);
+    }
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private static final boolean allocationSupported = allocationSupported();
+
+    private final Listener listener;
+    private final List<Phase> phases = new ArrayList<Phase>();
+    private String current;
+    private long startWall, startCpu, startAllocated;
+
+    public PhaseTimer() {
+        this(null);
+    }
+
+    public PhaseTimer(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void start(String phase) {
+        finish();
+        current = phase;
+        startAllocated = allocatedBytes();
+        startCpu = cpuTime();
+        startWall = System.nanoTime();
+    }
+
+    public void finish() {
+        if (current == null) {
+            return;
+        }
+        long wall = System.nanoTime() - startWall;
+        long cpu = cpuTime();
+        long allocated = allocatedBytes();
+        Phase phase = new Phase(current, wall, cpu < 0 || startCpu < 0 ? -1 : cpu - startCpu, allocated < 0
+                || startAllocated < 0 ? -1 : allocated - startAllocated);
+        current = null;
+        phases.add(phase);
+        if (listener != null) {
+            listener.phaseFinished(phase);
+        }
+    }
+
+    public List<Phase> getPhases() {
+        return Collections.unmodifiableList(phases);
+    }
+
+    public void log(RandomizationLog log) {
+        if (!log.isEnabled()) {
+            return;
+        }
+        log.println("--Phase Timings--");
+        log.println("PHASE               | WALL ms|  CPU ms|ALLOC KB");
+        long wall = 0, cpu = 0, allocated = 0;
+        for (Phase phase : phases) {
+            logPhase(log, phase.name, phase.wallNanos, phase.cpuNanos, phase.allocatedBytes);
+            wall += phase.wallNanos;
+            cpu = cpu < 0 || phase.cpuNanos < 0 ? -1 : cpu + phase.cpuNanos;
+            allocated = allocated < 0 || phase.allocatedBytes < 0 ? -1 : allocated + phase.allocatedBytes;
+        }
+        logPhase(log, "Total", wall, cpu, allocated);
+        log.println();
+    }
+
+    private static void logPhase(RandomizationLog log, String name, long wallNanos, long cpuNanos,
+            long allocatedBytes) {
+        log.printf("%-20s|%8d|%8s|%8s%n", name, wallNanos / 1000000, cpuNanos < 0 ? "?" : cpuNanos / 1000000,
+                allocatedBytes < 0 ? "?" : allocatedBytes / 1024);
+    }
+
+    private static long cpuTime() {
+        return threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long allocatedBytes() {
+        if (!allocationSupported) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread()
+                .getId());
+    }
+
+    // Allocation counts are a HotSpot extension
+    private static boolean allocationSupported() {
+        try {
+            if (threadBean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) threadBean;
+                return sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled();
+            }
+        } catch (LinkageError ex) {
+            // not there on this JVM
+        }
+        return false;
+    }
+
+}
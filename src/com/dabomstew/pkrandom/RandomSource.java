@@ -1,9 +1,9 @@
 package com.dabomstew.pkrandom;
 
 /*----------------------------------------------------------------------------*/
-/*--  RandomSource.java - functions as a centralized source of randomness   --*/
-/*--                      to allow the same seed to produce the same random --*/
-/*--                      ROM consistently.                                 --*/
+/*--  RandomSource.java - the source of randomness for one randomization,  --*/
+/*--                      so the same seed produces the same random ROM     --*/
+/*--                      consistently.                                     --*/
 /*--                                                                        --*/
 /*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
 /*--  Pokemon and any associated names and the like are                     --*/
@@ -28,135 +28,163 @@ package com.dabomstew.pkrandom;
 import java.security.SecureRandom;
 import java.util.Random;
 
-public class RandomSource {
+/**
+ * The random number generator for one randomization run. Create one per run
+ * and hand it to RomHandler.Factory.create(); nothing is shared between
+ * instances, so separate runs in the same JVM can't disturb each other.
+ *
+ * A seeded RandomSource produces exactly the same numbers as a
+ * java.util.Random with that seed, but without the locking, and counts the
+ * calls made since it was last seeded. split() forks off an independent,
+ * deterministically seeded generator for a sub-task, so the sub-task's use of
+ * randomness doesn't shift the rest of the run.
+ */
+public class RandomSource extends Random {
+
+    private static final long serialVersionUID = -4876737183441746322L;
+
+    private static final long multiplier = 0x5DEECE66DL;
+    private static final long addend = 0xBL;
+    private static final long mask = (1L << 48) - 1;
+
+    // no initializers: Random's constructor calls setSeed before they'd run
+    private long state;
+    private int calls;
+    private double nextNextGaussian;
+    private boolean haveNextNextGaussian;
+
+    public RandomSource() {
+        this(pickSeed());
+    }
 
-    private static Random source = new Random();
-    private static int calls = 0;
-    private static Random instance = new RandomSourceInstance();
+    public RandomSource(long seed) {
+        super(0);
+        setSeed(seed);
+    }
 
-    public static void reset() {
-        source = new Random();
-        calls = 0;
+    public static long pickSeed() {
+        long value = 0;
+        byte[] by = SecureRandom.getSeed(6);
+        for (int i = 0; i < by.length; i++) {
+            value |= ((long) by[i] & 0xffL) << (8 * i);
+        }
+        return value;
     }
 
-    public static void seed(long seed) {
-        source.setSeed(seed);
+    @Override
+    public void setSeed(long seed) {
+        state = (seed ^ multiplier) & mask;
+        haveNextNextGaussian = false;
         calls = 0;
     }
 
-    public static double random() {
-        calls++;
-        return source.nextDouble();
+    public int callsSinceSeed() {
+        return calls;
     }
 
-    public static int nextInt(int size) {
+    /**
+     * A new generator seeded from this one. Counts as one call on this
+     * generator; whatever the new one is used for doesn't affect this one.
+     */
+    public RandomSource split() {
         calls++;
-        return source.nextInt(size);
+        long z = rawNextLong();
+        // SplitMix64 finalizer, so neighbouring seeds give unrelated streams
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new RandomSource(z ^ (z >>> 31));
     }
 
-    public static void nextBytes(byte[] bytes) {
+    @Override
+    protected int next(int bits) {
+        state = (state * multiplier + addend) & mask;
+        return (int) (state >>> (48 - bits));
+    }
+
+    @Override
+    public void nextBytes(byte[] bytes) {
         calls++;
-        source.nextBytes(bytes);
+        for (int i = 0, len = bytes.length; i < len;) {
+            for (int rnd = next(32), n = Math.min(len - i, 4); n-- > 0; rnd >>= 8) {
+                bytes[i++] = (byte) rnd;
+            }
+        }
     }
 
-    public static int nextInt() {
+    @Override
+    public int nextInt() {
         calls++;
-        return source.nextInt();
+        return next(32);
     }
 
-    public static long nextLong() {
+    @Override
+    public int nextInt(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
         calls++;
-        return source.nextLong();
+        if ((n & -n) == n) {
+            return (int) ((n * (long) next(31)) >> 31);
+        }
+        int bits, val;
+        do {
+            bits = next(31);
+            val = bits % n;
+        } while (bits - val + (n - 1) < 0);
+        return val;
     }
 
-    public static boolean nextBoolean() {
+    @Override
+    public long nextLong() {
         calls++;
-        return source.nextBoolean();
+        return rawNextLong();
     }
 
-    public static float nextFloat() {
+    @Override
+    public boolean nextBoolean() {
         calls++;
-        return source.nextFloat();
+        return next(1) != 0;
     }
 
-    public static double nextDouble() {
+    @Override
+    public float nextFloat() {
         calls++;
-        return source.nextDouble();
+        return next(24) / ((float) (1 << 24));
     }
 
-    public static synchronized double nextGaussian() {
+    @Override
+    public double nextDouble() {
         calls++;
-        return source.nextGaussian();
+        return rawNextDouble();
     }
 
-    public static long pickSeed() {
-        long value = 0;
-        byte[] by = SecureRandom.getSeed(6);
-        for (int i = 0; i < by.length; i++) {
-            value |= ((long) by[i] & 0xffL) << (8 * i);
+    @Override
+    public double nextGaussian() {
+        calls++;
+        if (haveNextNextGaussian) {
+            haveNextNextGaussian = false;
+            return nextNextGaussian;
         }
-        return value;
+        double v1, v2, s;
+        do {
+            v1 = 2 * rawNextDouble() - 1;
+            v2 = 2 * rawNextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        double scale = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        nextNextGaussian = v2 * scale;
+        haveNextNextGaussian = true;
+        return v1 * scale;
     }
 
-    public static Random instance() {
-        return instance;
-    }
+    // Uncounted versions for use inside other calls
 
-    public static int callsSinceSeed() {
-        return calls;
+    private long rawNextLong() {
+        return ((long) next(32) << 32) + next(32);
     }
 
-    private static class RandomSourceInstance extends Random {
-
-        /**
-         * 
-         */
-        private static final long serialVersionUID = -4876737183441746322L;
-
-        @Override
-        public synchronized void setSeed(long seed) {
-            RandomSource.seed(seed);
-        }
-
-        @Override
-        public void nextBytes(byte[] bytes) {
-            RandomSource.nextBytes(bytes);
-        }
-
-        @Override
-        public int nextInt() {
-            return RandomSource.nextInt();
-        }
-
-        @Override
-        public int nextInt(int n) {
-            return RandomSource.nextInt(n);
-        }
-
-        @Override
-        public long nextLong() {
-            return RandomSource.nextLong();
-        }
-
-        @Override
-        public boolean nextBoolean() {
-            return RandomSource.nextBoolean();
-        }
-
-        @Override
-        public float nextFloat() {
-            return RandomSource.nextFloat();
-        }
-
-        @Override
-        public double nextDouble() {
-            return RandomSource.nextDouble();
-        }
-
-        @Override
-        public synchronized double nextGaussian() {
-            return RandomSource.nextGaussian();
-        }
-
+    private double rawNextDouble() {
+        return (((long) next(26) << 27) + next(27)) / (double) (1L << 53);
     }
+
 }
@@ -0,0 +1,200 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  RandomizationLog.java - the verbose log of a randomization, written   --*/
+/*--                          straight to its destination by section.       --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.EnumSet;
+import java.util.Formatter;
+import java.util.Set;
+
+/**
+ * The verbose log of a randomization. Text goes through a buffer straight to
+ * its destination rather than being held in memory, and is split into
+ * sections so that only the wanted parts are written. Output for a section
+ * that is turned off is dropped before anything is formatted.
+ *
+ * Like PrintStream, write errors don't throw; the first one stops all
+ * further output and is thrown from close().
+ */
+public class RandomizationLog implements Closeable, Flushable {
+
+    public enum Section {
+        GENERAL, MOVE_UPDATES, MISC_TWEAKS, BASE_STATS, EVOLUTIONS, STARTERS, MOVE_DATA, MOVESETS, TRAINERS,
+        STATIC_POKEMON, WILD_POKEMON, TM_MOVES, MOVE_TUTORS, TRADES, TIMINGS, SUMMARY
+    }
+
+    private static final String NEWLINE = System.getProperty("line.separator");
+    private static final int BUFFER_SIZE = 65536;
+
+    private final Writer out;
+    private final Formatter formatter;
+    private final Set<Section> sections;
+    private boolean enabled;
+    private IOException error;
+
+    /**
+     * Log the given sections to out, which should be buffered. out may be
+     * null to throw everything away.
+     */
+    public RandomizationLog(Writer out, Set<Section> sections) {
+        this.out = out;
+        this.formatter = out == null ? null : new Formatter(out);
+        this.sections = sections.isEmpty() ? EnumSet.noneOf(Section.class) : EnumSet.copyOf(sections);
+        section(Section.GENERAL);
+    }
+
+    public static RandomizationLog discard() {
+        return new RandomizationLog(null, EnumSet.noneOf(Section.class));
+    }
+
+    /**
+     * Log the given sections to file as UTF-8 with a byte order mark, the
+     * same as logs saved from the GUI have always been.
+     */
+    public static RandomizationLog toFile(File file, Set<Section> sections) throws IOException {
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(0xEF);
+            os.write(0xBB);
+            os.write(0xBF);
+            return new RandomizationLog(new BufferedWriter(new OutputStreamWriter(os, "UTF-8"), BUFFER_SIZE),
+                    sections);
+        } catch (IOException ex) {
+            os.close();
+            throw ex;
+        }
+    }
+
+    public static Set<Section> allSections() {
+        return EnumSet.allOf(Section.class);
+    }
+
+    // Everything logged from here on belongs to section
+    public void section(Section section) {
+        enabled = out != null && error == null && sections.contains(section);
+    }
+
+    // Whether output to the current section is written at all
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isEnabled(Section section) {
+        return out != null && error == null && sections.contains(section);
+    }
+
+    public void print(String s) {
+        if (enabled) {
+            write(s);
+        }
+    }
+
+    public void print(int i) {
+        if (enabled) {
+            write(Integer.toString(i));
+        }
+    }
+
+    public void println(String s) {
+        if (enabled) {
+            write(s);
+            write(NEWLINE);
+        }
+    }
+
+    public void println() {
+        if (enabled) {
+            write(NEWLINE);
+        }
+    }
+
+    public void printf(String format, Object... args) {
+        if (enabled) {
+            formatter.format(format, args);
+            if (formatter.ioException() != null) {
+                fail(formatter.ioException());
+            }
+        }
+    }
+
+    // Written whatever the selected sections are, as long as there's a log
+    public void printStackTrace(Throwable ex) {
+        if (out != null && error == null) {
+            PrintWriter pw = new PrintWriter(out);
+            ex.printStackTrace(pw);
+            pw.flush();
+            if (pw.checkError()) {
+                fail(new IOException("Couldn't write stack trace to log"));
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out != null && error == null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ex) {
+                if (error == null) {
+                    error = ex;
+                }
+            }
+        }
+        enabled = false;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void write(String s) {
+        try {
+            out.write(s);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    private void fail(IOException ex) {
+        error = ex;
+        enabled = false;
+    }
+
+}
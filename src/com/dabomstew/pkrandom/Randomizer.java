@@ -24,8 +24,6 @@ package com.dabomstew.pkrandom;
 /*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
 /*----------------------------------------------------------------------------*/
 
-import java.io.OutputStream;
-import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -33,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
+import com.dabomstew.pkrandom.RandomizationLog.Section;
 import com.dabomstew.pkrandom.pokemon.Encounter;
 import com.dabomstew.pkrandom.pokemon.EncounterSet;
 import com.dabomstew.pkrandom.pokemon.IngameTrade;
@@ -48,37 +47,47 @@ import com.dabomstew.pkrandom.romhandlers.RomHandler;
 // Can randomize a file based on settings. Output varies by seed.
 public class Randomizer {
 
-    private static final String NEWLINE = System.getProperty("line.separator");
-
     private final Settings settings;
     private final RomHandler romHandler;
+    private final RandomSource random;
+    private PhaseTimer phaseTimer;
 
-    public Randomizer(Settings settings, RomHandler romHandler) {
+    // random must be the generator romHandler was created with
+    public Randomizer(Settings settings, RomHandler romHandler, RandomSource random) {
         this.settings = settings;
         this.romHandler = romHandler;
+        this.random = random;
+    }
+
+    /**
+     * Time the next run with timer, which may already be in a phase of its
+     * own (loading the ROM, say). The timer is used for that one run only;
+     * without one, a run uses a fresh timer of its own just for the log.
+     */
+    public void setPhaseTimer(PhaseTimer timer) {
+        this.phaseTimer = timer;
     }
 
     public int randomize(final String filename) {
-        return randomize(filename, new PrintStream(new OutputStream() {
-            @Override
-            public void write(int b) {
-            }
-        }));
+        return randomize(filename, RandomizationLog.discard());
     }
 
-    public int randomize(final String filename, final PrintStream log) {
+    public int randomize(final String filename, final RandomizationLog log) {
         long seed = RandomSource.pickSeed();
         return randomize(filename, log, seed);
     }
 
-    public int randomize(final String filename, final PrintStream log, long seed) {
+    public int randomize(final String filename, final RandomizationLog log, long seed) {
         final long startTime = System.currentTimeMillis();
-        RandomSource.seed(seed);
+        final PhaseTimer timer = phaseTimer != null ? phaseTimer : new PhaseTimer();
+        phaseTimer = null;
+        random.setSeed(seed);
         final boolean raceMode = settings.isRaceMode();
 
         int checkValue = 0;
 
         // limit pokemon?
+        timer.start("Pokemon pool");
         if (settings.isLimitPokemon()) {
             romHandler.setPokemonPool(settings.getCurrentRestrictions());
             romHandler.removeEvosForPokemonPool();
@@ -87,6 +96,8 @@ public class Randomizer {
         }
 
         // Move updates & data changes
+        log.section(Section.MOVE_UPDATES);
+        timer.start("Move data");
         if (settings.isUpdateMoves()) {
             romHandler.initMoveUpdates();
             if (!(romHandler instanceof Gen5RomHandler)) {
@@ -121,6 +132,8 @@ public class Randomizer {
         List<Move> moves = romHandler.getMoves();
 
         // Misc Tweaks?
+        log.section(Section.MISC_TWEAKS);
+        timer.start("Misc tweaks");
         int currentMiscTweaks = settings.getCurrentMiscTweaks();
         if (romHandler.miscTweaksAvailable() != 0) {
             int codeTweaksAvailable = romHandler.miscTweaksAvailable();
@@ -141,6 +154,8 @@ public class Randomizer {
             }
         }
 
+        log.section(Section.BASE_STATS);
+        timer.start("Base stats");
         if (settings.isUpdateBaseStats()) {
             romHandler.updatePokemonStats();
         }
@@ -162,12 +177,14 @@ public class Randomizer {
         }
 
         // Abilities? (new 1.0.2)
+        timer.start("Abilities");
         if (romHandler.abilitiesPerPokemon() > 0 && settings.getAbilitiesMod() == Settings.AbilitiesMod.RANDOMIZE) {
             romHandler.randomizeAbilities(settings.isAbilitiesFollowEvolutions(), settings.isAllowWonderGuard(),
                     settings.isBanTrappingAbilities(), settings.isBanNegativeAbilities());
         }
 
         // Pokemon Types
+        timer.start("Types");
         switch (settings.getTypesMod()) {
         case RANDOM_FOLLOW_EVOLUTIONS:
             romHandler.randomizePokemonTypes(true);
@@ -180,10 +197,12 @@ public class Randomizer {
         }
 
         // Wild Held Items?
+        timer.start("Wild held items");
         if (settings.isRandomizeWildPokemonHeldItems()) {
             romHandler.randomizeWildHeldItems(settings.isBanBadRandomWildPokemonHeldItems());
         }
 
+        timer.start("Log base stats");
         maybeLogBaseStatAndTypeChanges(log, romHandler);
         for (Pokemon pkmn : romHandler.getPokemon()) {
             if (pkmn != null) {
@@ -194,25 +213,29 @@ public class Randomizer {
 
         // Random Evos
         // Applied after type to pick new evos based on new types.
+        log.section(Section.EVOLUTIONS);
+        timer.start("Evolutions");
         if (settings.getEvolutionsMod() == Settings.EvolutionsMod.RANDOM) {
             romHandler.randomizeEvolutions(settings.isEvosSimilarStrength(), settings.isEvosSameTyping(),
                     settings.isEvosMaxThreeStages(), settings.isEvosForceChange());
+        }
 
+        timer.start("Log evolutions");
+        if (settings.getEvolutionsMod() == Settings.EvolutionsMod.RANDOM && log.isEnabled()) {
             log.println("--Randomized Evolutions--");
             List<Pokemon> allPokes = romHandler.getPokemon();
             for (Pokemon pk : allPokes) {
                 if (pk != null) {
                     int numEvos = pk.evolutionsFrom.size();
                     if (numEvos > 0) {
-                        StringBuilder evoStr = new StringBuilder(pk.evolutionsFrom.get(0).to.name);
+                        log.print(pk.name);
+                        log.print(" now evolves into ");
+                        log.print(pk.evolutionsFrom.get(0).to.name);
                         for (int i = 1; i < numEvos; i++) {
-                            if (i == numEvos - 1) {
-                                evoStr.append(" and " + pk.evolutionsFrom.get(i).to.name);
-                            } else {
-                                evoStr.append(", " + pk.evolutionsFrom.get(i).to.name);
-                            }
+                            log.print(i == numEvos - 1 ? " and " : ", ");
+                            log.print(pk.evolutionsFrom.get(i).to.name);
                         }
-                        log.println(pk.name + " now evolves into " + evoStr.toString());
+                        log.println();
                     }
                 }
             }
@@ -220,6 +243,7 @@ public class Randomizer {
             log.println();
         }
 
+        timer.start("Evolution fixes");
         // Trade evolutions removal
         if (settings.isChangeImpossibleEvolutions()) {
             romHandler.removeTradeEvolutions(!(settings.getMovesetsMod() == Settings.MovesetsMod.UNCHANGED));
@@ -232,13 +256,19 @@ public class Randomizer {
 
         // Starter Pokemon
         // Applied after type to update the strings correctly based on new types
+        log.section(Section.STARTERS);
+        timer.start("Starters");
         maybeChangeAndLogStarters(log, romHandler);
 
         // Move Data Log
         // Placed here so it matches its position in the randomizer interface
+        log.section(Section.MOVE_DATA);
+        timer.start("Log move data");
         maybeLogMoveChanges(log, romHandler);
 
         // Movesets
+        log.section(Section.MOVESETS);
+        timer.start("Movesets");
         boolean noBrokenMoves = settings.doBlockBrokenMoves();
         boolean forceFourLv1s = romHandler.supportsFourStartingMoves() && settings.isStartWithFourMoves();
         double msGoodDamagingProb = settings.isMovesetsForceGoodDamaging() ? settings.getMovesetsGoodDamagingPercent() / 100.0
@@ -254,11 +284,14 @@ public class Randomizer {
         }
 
         // Show the new movesets if applicable
+        timer.start("Log movesets");
         if (settings.getMovesetsMod() == Settings.MovesetsMod.UNCHANGED) {
-            log.println("Pokemon Movesets: Unchanged." + NEWLINE);
+            log.println("Pokemon Movesets: Unchanged.");
+            log.println();
         } else if (settings.getMovesetsMod() == Settings.MovesetsMod.METRONOME_ONLY) {
-            log.println("Pokemon Movesets: Metronome Only." + NEWLINE);
-        } else {
+            log.println("Pokemon Movesets: Metronome Only.");
+            log.println();
+        } else if (log.isEnabled()) {
             log.println("--Pokemon Movesets--");
             List<String> movesets = new ArrayList<String>();
             Map<Pokemon, List<MoveLearnt>> moveData = romHandler.getMovesLearnt();
@@ -274,7 +307,7 @@ public class Randomizer {
                     try {
                         sb.append(moves.get(ml.move).name).append(" at level ").append(ml.level);
                     } catch (NullPointerException ex) {
-                        sb.append("invalid move at level" + ml.level);
+                        sb.append("invalid move at level").append(ml.level);
                     }
                     first = false;
                 }
@@ -288,6 +321,8 @@ public class Randomizer {
         }
 
         // Trainer Pokemon
+        log.section(Section.TRAINERS);
+        timer.start("Trainers");
         if (settings.getTrainersMod() == Settings.TrainersMod.RANDOM) {
             romHandler.randomizeTrainerPokes(settings.isTrainersUsePokemonOfSimilarStrength(),
                     settings.isTrainersBlockLegendaries(), settings.isTrainersBlockEarlyWonderGuard(),
@@ -321,8 +356,6 @@ public class Randomizer {
             }
         }
 
-        maybeLogTrainerChanges(log, romHandler);
-
         // Apply metronome only mode now that trainers have been dealt with
         if (settings.getMovesetsMod() == Settings.MovesetsMod.METRONOME_ONLY) {
             romHandler.metronomeOnlyMode();
@@ -335,10 +368,17 @@ public class Randomizer {
             }
         }
 
+        timer.start("Log trainers");
+        maybeLogTrainerChanges(log, romHandler);
+
         // Static Pokemon
+        log.section(Section.STATIC_POKEMON);
+        timer.start("Static Pokemon");
         checkValue = maybeChangeAndLogStaticPokemon(log, romHandler, raceMode, checkValue);
 
         // Wild Pokemon
+        log.section(Section.WILD_POKEMON);
+        timer.start("Wild Pokemon");
         if (settings.isUseMinimumCatchRate()) {
             boolean gen5 = romHandler instanceof Gen5RomHandler;
             int normalMin, legendaryMin;
@@ -387,7 +427,6 @@ public class Randomizer {
             break;
         }
 
-        maybeLogWildPokemonChanges(log, romHandler);
         List<EncounterSet> encounters = romHandler.getEncounters(settings.isUseTimeBasedEncounters());
         for (EncounterSet es : encounters) {
             for (Encounter e : es.encounters) {
@@ -395,7 +434,12 @@ public class Randomizer {
             }
         }
 
+        timer.start("Log wild Pokemon");
+        maybeLogWildPokemonChanges(log, romHandler);
+
         // TMs
+        log.section(Section.TM_MOVES);
+        timer.start("TMs");
         if (!(settings.getMovesetsMod() == Settings.MovesetsMod.METRONOME_ONLY)
                 && settings.getTmsMod() == Settings.TMsMod.RANDOM) {
             double goodDamagingProb = settings.isTmsForceGoodDamaging() ? settings.getTmsGoodDamagingPercent() / 100.0
@@ -404,14 +448,16 @@ public class Randomizer {
             log.println("--TM Moves--");
             List<Integer> tmMoves = romHandler.getTMMoves();
             for (int i = 0; i < tmMoves.size(); i++) {
-                log.printf("TM%02d %s" + NEWLINE, i + 1, moves.get(tmMoves.get(i)).name);
+                log.printf("TM%02d %s%n", i + 1, moves.get(tmMoves.get(i)).name);
                 checkValue = addToCV(checkValue, tmMoves.get(i));
             }
             log.println();
         } else if (settings.getMovesetsMod() == Settings.MovesetsMod.METRONOME_ONLY) {
-            log.println("TM Moves: Metronome Only." + NEWLINE);
+            log.println("TM Moves: Metronome Only.");
+            log.println();
         } else {
-            log.println("TM Moves: Unchanged." + NEWLINE);
+            log.println("TM Moves: Unchanged.");
+            log.println();
         }
 
         // TM/HM compatibility
@@ -438,6 +484,8 @@ public class Randomizer {
         }
 
         // Move Tutors (new 1.0.3)
+        log.section(Section.MOVE_TUTORS);
+        timer.start("Move tutors");
         if (romHandler.hasMoveTutors()) {
             if (!(settings.getMovesetsMod() == Settings.MovesetsMod.METRONOME_ONLY)
                     && settings.getMoveTutorMovesMod() == Settings.MoveTutorMovesMod.RANDOM) {
@@ -448,15 +496,17 @@ public class Randomizer {
                 log.println("--Move Tutor Moves--");
                 List<Integer> newMtMoves = romHandler.getMoveTutorMoves();
                 for (int i = 0; i < newMtMoves.size(); i++) {
-                    log.printf("%s => %s" + NEWLINE, moves.get(oldMtMoves.get(i)).name,
+                    log.printf("%s => %s%n", moves.get(oldMtMoves.get(i)).name,
                             moves.get(newMtMoves.get(i)).name);
                     checkValue = addToCV(checkValue, newMtMoves.get(i));
                 }
                 log.println();
             } else if (settings.getMovesetsMod() == Settings.MovesetsMod.METRONOME_ONLY) {
-                log.println("Move Tutor Moves: Metronome Only." + NEWLINE);
+                log.println("Move Tutor Moves: Metronome Only.");
+                log.println();
             } else {
-                log.println("Move Tutor Moves: Unchanged." + NEWLINE);
+                log.println("Move Tutor Moves: Unchanged.");
+                log.println();
             }
 
             // Compatibility
@@ -480,6 +530,8 @@ public class Randomizer {
         }
 
         // In-game trades
+        log.section(Section.TRADES);
+        timer.start("Trades");
         List<IngameTrade> oldTrades = romHandler.getIngameTrades();
         if (settings.getInGameTradesMod() == Settings.InGameTradesMod.RANDOMIZE_GIVEN) {
             romHandler.randomizeIngameTrades(false, settings.isRandomizeInGameTradesNicknames(),
@@ -491,14 +543,14 @@ public class Randomizer {
                     settings.isRandomizeInGameTradesItems(), settings.getCustomNames());
         }
 
-        if (!(settings.getInGameTradesMod() == Settings.InGameTradesMod.UNCHANGED)) {
+        if (!(settings.getInGameTradesMod() == Settings.InGameTradesMod.UNCHANGED) && log.isEnabled()) {
             log.println("--In-Game Trades--");
             List<IngameTrade> newTrades = romHandler.getIngameTrades();
             int size = oldTrades.size();
             for (int i = 0; i < size; i++) {
                 IngameTrade oldT = oldTrades.get(i);
                 IngameTrade newT = newTrades.get(i);
-                log.printf("Trading %s for %s the %s has become trading %s for %s the %s" + NEWLINE,
+                log.printf("Trading %s for %s the %s has become trading %s for %s the %s%n",
                         oldT.requestedPokemon.name, oldT.nickname, oldT.givenPokemon.name, newT.requestedPokemon.name,
                         newT.nickname, newT.givenPokemon.name);
             }
@@ -506,6 +558,8 @@ public class Randomizer {
         }
 
         // Field Items
+        log.section(Section.GENERAL);
+        timer.start("Field items");
         if (settings.getFieldItemsMod() == Settings.FieldItemsMod.SHUFFLE) {
             romHandler.shuffleFieldItems();
         } else if (settings.getFieldItemsMod() == Settings.FieldItemsMod.RANDOM) {
@@ -513,6 +567,7 @@ public class Randomizer {
         }
 
         // Signature...
+        timer.start("Save ROM");
         romHandler.applySignature();
 
         // Record check value?
@@ -521,17 +576,22 @@ public class Randomizer {
         // Save
         romHandler.saveRom(filename);
 
+        timer.finish();
+        log.section(Section.TIMINGS);
+        timer.log(log);
+
         // Log tail
+        log.section(Section.SUMMARY);
         log.println("------------------------------------------------------------------");
-        log.println("Randomization of " + romHandler.getROMName() + " completed.");
-        log.println("Time elapsed: " + (System.currentTimeMillis() - startTime) + "ms");
-        log.println("RNG Calls: " + RandomSource.callsSinceSeed());
+        log.printf("Randomization of %s completed.%n", romHandler.getROMName());
+        log.printf("Time elapsed: %dms%n", System.currentTimeMillis() - startTime);
+        log.printf("RNG Calls: %d%n", random.callsSinceSeed());
         log.println("------------------------------------------------------------------");
 
         return checkValue;
     }
 
-    private void maybeLogBaseStatAndTypeChanges(final PrintStream log, final RomHandler romHandler) {
+    private void maybeLogBaseStatAndTypeChanges(final RandomizationLog log, final RomHandler romHandler) {
         List<Pokemon> allPokes = romHandler.getPokemon();
         String[] itemNames = romHandler.getItemNames();
         // Log base stats & types if changed at all
@@ -539,8 +599,9 @@ public class Randomizer {
                 && settings.getTypesMod() == Settings.TypesMod.UNCHANGED
                 && settings.getAbilitiesMod() == Settings.AbilitiesMod.UNCHANGED
                 && !settings.isRandomizeWildPokemonHeldItems()) {
-            log.println("Pokemon base stats & type: unchanged" + NEWLINE);
-        } else {
+            log.println("Pokemon base stats & type: unchanged");
+            log.println();
+        } else if (log.isEnabled()) {
             log.println("--Pokemon Base Stats & Types--");
             if (romHandler instanceof Gen1RomHandler) {
                 log.println("NUM|NAME      |TYPE             |  HP| ATK| DEF| SPE|SPEC");
@@ -550,8 +611,8 @@ public class Randomizer {
                         if (pkmn.secondaryType != null) {
                             typeString += "/" + pkmn.secondaryType.toString();
                         }
-                        log.printf("%3d|%-10s|%-17s|%4d|%4d|%4d|%4d|%4d" + NEWLINE, pkmn.number, pkmn.name, typeString,
-                                pkmn.hp, pkmn.attack, pkmn.defense, pkmn.speed, pkmn.special);
+                        log.printf("%3d|%-10s|%-17s|%4d|%4d|%4d|%4d|%4d%n", pkmn.number, pkmn.name, typeString, pkmn.hp,
+                                pkmn.attack, pkmn.defense, pkmn.speed, pkmn.special);
                     }
 
                 }
@@ -559,7 +620,7 @@ public class Randomizer {
                 log.print("NUM|NAME      |TYPE             |  HP| ATK| DEF| SPE|SATK|SDEF");
                 int abils = romHandler.abilitiesPerPokemon();
                 for (int i = 0; i < abils; i++) {
-                    log.print("|ABILITY" + (i + 1) + "    ");
+                    log.printf("|ABILITY%d    ", i + 1);
                 }
                 log.print("|ITEM");
                 log.println();
@@ -580,26 +641,30 @@ public class Randomizer {
                         }
                         log.print("|");
                         if (pkmn.guaranteedHeldItem > 0) {
-                            log.print(itemNames[pkmn.guaranteedHeldItem] + " (100%)");
+                            log.print(itemNames[pkmn.guaranteedHeldItem]);
+                            log.print(" (100%)");
                         } else {
                             int itemCount = 0;
                             if (pkmn.commonHeldItem > 0) {
                                 itemCount++;
-                                log.print(itemNames[pkmn.commonHeldItem] + " (common)");
+                                log.print(itemNames[pkmn.commonHeldItem]);
+                                log.print(" (common)");
                             }
                             if (pkmn.rareHeldItem > 0) {
                                 if (itemCount > 0) {
                                     log.print(", ");
                                 }
                                 itemCount++;
-                                log.print(itemNames[pkmn.rareHeldItem] + " (rare)");
+                                log.print(itemNames[pkmn.rareHeldItem]);
+                                log.print(" (rare)");
                             }
                             if (pkmn.darkGrassHeldItem > 0) {
                                 if (itemCount > 0) {
                                     log.print(", ");
                                 }
                                 itemCount++;
-                                log.print(itemNames[pkmn.darkGrassHeldItem] + " (dark grass only)");
+                                log.print(itemNames[pkmn.darkGrassHeldItem]);
+                                log.print(" (dark grass only)");
                             }
                         }
                         log.println();
@@ -611,21 +676,21 @@ public class Randomizer {
         }
     }
 
-    private void maybeChangeAndLogStarters(final PrintStream log, final RomHandler romHandler) {
+    private void maybeChangeAndLogStarters(final RandomizationLog log, final RomHandler romHandler) {
         if (romHandler.canChangeStarters()) {
             if (settings.getStartersMod() == Settings.StartersMod.CUSTOM) {
                 log.println("--Custom Starters--");
                 List<Pokemon> romPokemon = romHandler.getPokemon();
                 int[] customStarters = settings.getCustomStarters();
                 Pokemon pkmn1 = romPokemon.get(customStarters[0]);
-                log.println("Set starter 1 to " + pkmn1.name);
+                log.printf("Set starter 1 to %s%n", pkmn1.name);
                 Pokemon pkmn2 = romPokemon.get(customStarters[1]);
-                log.println("Set starter 2 to " + pkmn2.name);
+                log.printf("Set starter 2 to %s%n", pkmn2.name);
                 if (romHandler.isYellow()) {
                     romHandler.setStarters(Arrays.asList(pkmn1, pkmn2));
                 } else {
                     Pokemon pkmn3 = romPokemon.get(customStarters[2]);
-                    log.println("Set starter 3 to " + pkmn3.name);
+                    log.printf("Set starter 3 to %s%n", pkmn3.name);
                     romHandler.setStarters(Arrays.asList(pkmn1, pkmn2, pkmn3));
                 }
                 log.println();
@@ -643,7 +708,7 @@ public class Randomizer {
                     while (starters.contains(pkmn)) {
                         pkmn = romHandler.randomPokemon();
                     }
-                    log.println("Set starter " + (i + 1) + " to " + pkmn.name);
+                    log.printf("Set starter %d to %s%n", i + 1, pkmn.name);
                     starters.add(pkmn);
                 }
                 romHandler.setStarters(starters);
@@ -661,7 +726,7 @@ public class Randomizer {
                     while (starters.contains(pkmn)) {
                         pkmn = romHandler.random2EvosPokemon();
                     }
-                    log.println("Set starter " + (i + 1) + " to " + pkmn.name);
+                    log.printf("Set starter %d to %s%n", i + 1, pkmn.name);
                     starters.add(pkmn);
                 }
                 romHandler.setStarters(starters);
@@ -673,29 +738,30 @@ public class Randomizer {
         }
     }
 
-    private void maybeLogWildPokemonChanges(final PrintStream log, final RomHandler romHandler) {
+    private void maybeLogWildPokemonChanges(final RandomizationLog log, final RomHandler romHandler) {
         if (settings.getWildPokemonMod() == Settings.WildPokemonMod.UNCHANGED) {
-            log.println("Wild Pokemon: Unchanged." + NEWLINE);
-        } else {
+            log.println("Wild Pokemon: Unchanged.");
+            log.println();
+        } else if (log.isEnabled()) {
             log.println("--Wild Pokemon--");
             List<EncounterSet> encounters = romHandler.getEncounters(settings.isUseTimeBasedEncounters());
             int idx = 0;
             for (EncounterSet es : encounters) {
                 idx++;
-                log.print("Set #" + idx + " ");
+                log.printf("Set #%d ", idx);
                 if (es.displayName != null) {
-                    log.print("- " + es.displayName + " ");
+                    log.printf("- %s ", es.displayName);
                 }
-                log.print("(rate=" + es.rate + ")");
-                log.print(" - ");
+                log.printf("(rate=%d) - ", es.rate);
                 boolean first = true;
                 for (Encounter e : es.encounters) {
                     if (!first) {
                         log.print(", ");
                     }
-                    log.print(e.pokemon.name + " Lv");
+                    log.print(e.pokemon.name);
+                    log.print(" Lv");
                     if (e.maxLevel > 0 && e.maxLevel != e.level) {
-                        log.print("s " + e.level + "-" + e.maxLevel);
+                        log.printf("s %d-%d", e.level, e.maxLevel);
                     } else {
                         log.print(e.level);
                     }
@@ -707,20 +773,21 @@ public class Randomizer {
         }
     }
 
-    private void maybeLogTrainerChanges(final PrintStream log, final RomHandler romHandler) {
+    private void maybeLogTrainerChanges(final RandomizationLog log, final RomHandler romHandler) {
         if (settings.getTrainersMod() == Settings.TrainersMod.UNCHANGED && !settings.isRivalCarriesStarterThroughout()) {
-            log.println("Trainers: Unchanged." + NEWLINE);
-        } else {
+            log.println("Trainers: Unchanged.");
+            log.println();
+        } else if (log.isEnabled()) {
             log.println("--Trainers Pokemon--");
             List<Trainer> trainers = romHandler.getTrainers();
             int idx = 0;
             for (Trainer t : trainers) {
                 idx++;
-                log.print("#" + idx + " ");
+                log.printf("#%d ", idx);
                 if (t.fullDisplayName != null) {
-                    log.print("(" + t.fullDisplayName + ")");
+                    log.printf("(%s)", t.fullDisplayName);
                 } else if (t.name != null) {
-                    log.print("(" + t.name + ")");
+                    log.printf("(%s)", t.name);
                 }
                 if (t.offset != idx && t.offset != 0) {
                     log.printf("@%X", t.offset);
@@ -731,7 +798,7 @@ public class Randomizer {
                     if (!first) {
                         log.print(", ");
                     }
-                    log.print(tpk.pokemon.name + " Lv" + tpk.level);
+                    log.printf("%s Lv%d", tpk.pokemon.name, tpk.level);
                     first = false;
                 }
                 log.println();
@@ -740,7 +807,7 @@ public class Randomizer {
         }
     }
 
-    private int maybeChangeAndLogStaticPokemon(final PrintStream log, final RomHandler romHandler, boolean raceMode,
+    private int maybeChangeAndLogStaticPokemon(final RandomizationLog log, final RomHandler romHandler, boolean raceMode,
             int checkValue) {
         if (romHandler.canChangeStaticPokemon()) {
             List<Pokemon> oldStatics = romHandler.getStaticPokemon();
@@ -751,7 +818,8 @@ public class Randomizer {
             }
             List<Pokemon> newStatics = romHandler.getStaticPokemon();
             if (settings.getStaticPokemonMod() == Settings.StaticPokemonMod.UNCHANGED) {
-                log.println("Static Pokemon: Unchanged." + NEWLINE);
+                log.println("Static Pokemon: Unchanged.");
+                log.println();
             } else {
                 log.println("--Static Pokemon--");
                 Map<Pokemon, Integer> seenPokemon = new TreeMap<Pokemon, Integer>();
@@ -759,15 +827,17 @@ public class Randomizer {
                     Pokemon oldP = oldStatics.get(i);
                     Pokemon newP = newStatics.get(i);
                     checkValue = addToCV(checkValue, newP.number);
-                    log.print(oldP.name);
-                    if (seenPokemon.containsKey(oldP)) {
-                        int amount = seenPokemon.get(oldP);
-                        log.print("(" + (++amount) + ")");
-                        seenPokemon.put(oldP, amount);
-                    } else {
-                        seenPokemon.put(oldP, 1);
+                    if (log.isEnabled()) {
+                        log.print(oldP.name);
+                        if (seenPokemon.containsKey(oldP)) {
+                            int amount = seenPokemon.get(oldP);
+                            log.printf("(%d)", ++amount);
+                            seenPokemon.put(oldP, amount);
+                        } else {
+                            seenPokemon.put(oldP, 1);
+                        }
+                        log.printf(" => %s%n", newP.name);
                     }
-                    log.println(" => " + newP.name);
                 }
                 log.println();
             }
@@ -775,14 +845,15 @@ public class Randomizer {
         return checkValue;
     }
 
-    private void maybeLogMoveChanges(final PrintStream log, final RomHandler romHandler) {
+    private void maybeLogMoveChanges(final RandomizationLog log, final RomHandler romHandler) {
         if (!settings.isRandomizeMoveAccuracies() && !settings.isRandomizeMovePowers()
                 && !settings.isRandomizeMovePPs() && !settings.isRandomizeMoveCategory()
                 && !settings.isRandomizeMoveTypes()) {
             if (!settings.isUpdateMoves()) {
-                log.println("Move Data: Unchanged." + NEWLINE);
+                log.println("Move Data: Unchanged.");
+                log.println();
             }
-        } else {
+        } else if (log.isEnabled()) {
             log.println("--Move Data--");
             log.print("NUM|NAME           |TYPE    |POWER|ACC.|PP");
             if (romHandler.hasPhysicalSpecialSplit()) {
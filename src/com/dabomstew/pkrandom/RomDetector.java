@@ -0,0 +1,131 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  RomDetector.java - works out which handler can load a ROM, reading    --*/
+/*--                     only the start of it, once.                        --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.dabomstew.pkrandom.romhandlers.Gen1RomHandler;
+import com.dabomstew.pkrandom.romhandlers.Gen2RomHandler;
+import com.dabomstew.pkrandom.romhandlers.Gen3RomHandler;
+import com.dabomstew.pkrandom.romhandlers.Gen4RomHandler;
+import com.dabomstew.pkrandom.romhandlers.Gen5RomHandler;
+import com.dabomstew.pkrandom.romhandlers.RomHandler;
+
+/**
+ * Picks the handler factory for a ROM file. The start of the file is read
+ * once and given to every factory in turn, rather than each factory opening
+ * the file itself, and the answer is remembered per file (by path, length and
+ * modification time) so checking the same files again reads nothing.
+ *
+ * Safe to share between threads.
+ */
+public class RomDetector {
+
+    // Enough for every factory; Gen 3 looks for signatures in the first 1MB
+    public static final int HEADER_BYTES = 0x100000;
+
+    private final RomHandler.Factory[] factories;
+    private final Map<String, Detection> detections = new HashMap<String, Detection>();
+
+    public RomDetector() {
+        this(allFactories());
+    }
+
+    // factories are tried in the order given, the first to accept a ROM wins
+    public RomDetector(RomHandler.Factory[] factories) {
+        this.factories = factories.clone();
+    }
+
+    public static RomHandler.Factory[] allFactories() {
+        return new RomHandler.Factory[] { new Gen1RomHandler.Factory(), new Gen2RomHandler.Factory(),
+                new Gen3RomHandler.Factory(), new Gen4RomHandler.Factory(), new Gen5RomHandler.Factory() };
+    }
+
+    /**
+     * The factory that can load filename, or null if none can (or the file
+     * can't be read).
+     */
+    public RomHandler.Factory detect(String filename) {
+        File fh = new File(filename).getAbsoluteFile();
+        String path = fh.getPath();
+        long length = fh.length(), lastModified = fh.lastModified();
+        synchronized (detections) {
+            Detection known = detections.get(path);
+            if (known != null && known.length == length && known.lastModified == lastModified) {
+                return known.factory;
+            }
+        }
+
+        byte[] fileStart;
+        try {
+            fileStart = readStart(fh);
+        } catch (IOException ex) {
+            return null;
+        }
+        RomHandler.Factory found = null;
+        for (RomHandler.Factory rhf : factories) {
+            if (rhf.isLoadable(fileStart, length)) {
+                found = rhf;
+                break;
+            }
+        }
+        synchronized (detections) {
+            detections.put(path, new Detection(length, lastModified, found));
+        }
+        return found;
+    }
+
+    private static byte[] readStart(File fh) throws IOException {
+        if (!fh.isFile() || !fh.canRead()) {
+            throw new IOException("Can't read " + fh);
+        }
+        FileInputStream fis = new FileInputStream(fh);
+        try {
+            int toRead = (int) Math.min(fh.length(), HEADER_BYTES);
+            byte[] buf = new byte[toRead];
+            FileFunctions.readFully(fis, buf, 0, toRead);
+            return buf;
+        } finally {
+            fis.close();
+        }
+    }
+
+    private static class Detection {
+        private final long length, lastModified;
+        private final RomHandler.Factory factory;
+
+        private Detection(long length, long lastModified, RomHandler.Factory factory) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.factory = factory;
+        }
+    }
+
+}
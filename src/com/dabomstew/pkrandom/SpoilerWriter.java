@@ -0,0 +1,407 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  SpoilerWriter.java - writes what a randomization did as JSON Lines,   --*/
+/*--                       for tools rather than people.                    --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import com.dabomstew.pkrandom.pokemon.Encounter;
+import com.dabomstew.pkrandom.pokemon.EncounterSet;
+import com.dabomstew.pkrandom.pokemon.Evolution;
+import com.dabomstew.pkrandom.pokemon.IngameTrade;
+import com.dabomstew.pkrandom.pokemon.Move;
+import com.dabomstew.pkrandom.pokemon.MoveLearnt;
+import com.dabomstew.pkrandom.pokemon.Pokemon;
+import com.dabomstew.pkrandom.pokemon.Trainer;
+import com.dabomstew.pkrandom.pokemon.TrainerPokemon;
+import com.dabomstew.pkrandom.romhandlers.Gen1RomHandler;
+import com.dabomstew.pkrandom.romhandlers.RomHandler;
+
+/**
+ * Describes a randomized ROM for other programs, straight from the handler's
+ * data instead of the text log. The output is JSON Lines: one JSON object per
+ * line, each with a "type" field saying what it is.
+ *
+ * Pokemon and moves are referred to by number everywhere; the "pokemon" and
+ * "move" records give their names and data. Records come in this order: rom,
+ * move, pokemon, moveset, starters, statics, trainer, encounters, tms, hms,
+ * tutors, trade. Records for things the game doesn't have are left out.
+ */
+public class SpoilerWriter {
+
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder(256);
+
+    public SpoilerWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Write the spoiler to file. It goes to file.tmp first and only replaces
+     * file once it is complete; on failure the partial file is deleted.
+     */
+    public static void writeFile(File file, RomHandler romHandler, Settings settings, long seed, int checkValue)
+            throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        boolean written = false;
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"), 65536);
+            try {
+                new SpoilerWriter(out).write(romHandler, settings, seed, checkValue);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                throw new IOException("Couldn't move " + temp + " to " + file);
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Write everything about romHandler's current state. Call it after
+     * Randomizer.randomize, with the same settings, seed and the check value
+     * that returned.
+     */
+    public void write(RomHandler romHandler, Settings settings, long seed, int checkValue) throws IOException {
+        begin("rom");
+        field("name", romHandler.getROMName());
+        field("code", romHandler.getROMCode());
+        field("randomizerVersion", SysConstants.UPDATE_VERSION);
+        field("settings", settings.toString());
+        name("seed");
+        line.append(seed);
+        field("checkValue", checkValue);
+        end();
+
+        writeMoves(romHandler);
+        writePokemon(romHandler);
+        writeMovesets(romHandler);
+
+        if (romHandler.canChangeStarters()) {
+            begin("starters");
+            pokemonList("pokemon", romHandler.getStarters());
+            end();
+        }
+        if (romHandler.canChangeStaticPokemon()) {
+            begin("statics");
+            pokemonList("pokemon", romHandler.getStaticPokemon());
+            end();
+        }
+
+        writeTrainers(romHandler);
+        writeEncounters(romHandler, settings.isUseTimeBasedEncounters());
+
+        begin("tms");
+        intList("moves", romHandler.getTMMoves());
+        end();
+        begin("hms");
+        intList("moves", romHandler.getHMMoves());
+        end();
+        if (romHandler.hasMoveTutors()) {
+            begin("tutors");
+            intList("moves", romHandler.getMoveTutorMoves());
+            end();
+        }
+
+        writeTrades(romHandler);
+        out.flush();
+    }
+
+    private void writeMoves(RomHandler romHandler) throws IOException {
+        boolean categories = romHandler.hasPhysicalSpecialSplit();
+        List<Move> moves = romHandler.getMoves();
+        for (int i = 0; i < moves.size(); i++) {
+            Move mv = moves.get(i);
+            if (mv == null) {
+                continue;
+            }
+            begin("move");
+            field("id", i);
+            field("name", mv.name);
+            field("moveType", mv.type == null ? null : mv.type.toString());
+            field("power", mv.power);
+            name("accuracy");
+            line.append(mv.hitratio);
+            field("pp", mv.pp);
+            if (categories && mv.category != null) {
+                field("category", mv.category.toString());
+            }
+            end();
+        }
+    }
+
+    private void writePokemon(RomHandler romHandler) throws IOException {
+        boolean gen1 = romHandler instanceof Gen1RomHandler;
+        int abilities = romHandler.abilitiesPerPokemon();
+        String[] itemNames = romHandler.getItemNames();
+        for (Pokemon pk : romHandler.getPokemon()) {
+            if (pk == null) {
+                continue;
+            }
+            begin("pokemon");
+            field("number", pk.number);
+            field("name", pk.name);
+            name("types");
+            line.append('[');
+            string(pk.primaryType == null ? null : pk.primaryType.toString());
+            if (pk.secondaryType != null) {
+                line.append(',');
+                string(pk.secondaryType.toString());
+            }
+            line.append(']');
+            field("hp", pk.hp);
+            field("attack", pk.attack);
+            field("defense", pk.defense);
+            field("speed", pk.speed);
+            if (gen1) {
+                field("special", pk.special);
+            } else {
+                field("spatk", pk.spatk);
+                field("spdef", pk.spdef);
+            }
+            if (abilities > 0) {
+                name("abilities");
+                line.append('[');
+                string(romHandler.abilityName(pk.ability1));
+                line.append(',');
+                string(romHandler.abilityName(pk.ability2));
+                if (abilities > 2) {
+                    line.append(',');
+                    string(romHandler.abilityName(pk.ability3));
+                }
+                line.append(']');
+            }
+            if (!gen1) {
+                heldItem("guaranteedItem", pk.guaranteedHeldItem, itemNames);
+                heldItem("commonItem", pk.commonHeldItem, itemNames);
+                heldItem("rareItem", pk.rareHeldItem, itemNames);
+                heldItem("darkGrassItem", pk.darkGrassHeldItem, itemNames);
+            }
+            name("evolutions");
+            line.append('[');
+            for (int i = 0; i < pk.evolutionsFrom.size(); i++) {
+                Evolution evo = pk.evolutionsFrom.get(i);
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append("{\"to\":").append(evo.to.number);
+                field("method", evo.type.toString());
+                field("extra", evo.extraInfo);
+                line.append('}');
+            }
+            line.append(']');
+            end();
+        }
+    }
+
+    private void writeMovesets(RomHandler romHandler) throws IOException {
+        Map<Pokemon, List<MoveLearnt>> movesets = romHandler.getMovesLearnt();
+        for (Pokemon pk : romHandler.getPokemon()) {
+            if (pk == null || !movesets.containsKey(pk)) {
+                continue;
+            }
+            begin("moveset");
+            field("pokemon", pk.number);
+            // [move, level] pairs
+            name("moves");
+            line.append('[');
+            boolean first = true;
+            for (MoveLearnt ml : movesets.get(pk)) {
+                if (!first) {
+                    line.append(',');
+                }
+                line.append('[').append(ml.move).append(',').append(ml.level).append(']');
+                first = false;
+            }
+            line.append(']');
+            end();
+        }
+    }
+
+    private void writeTrainers(RomHandler romHandler) throws IOException {
+        List<Trainer> trainers = romHandler.getTrainers();
+        for (int i = 0; i < trainers.size(); i++) {
+            Trainer t = trainers.get(i);
+            begin("trainer");
+            field("index", i + 1);
+            field("name", t.fullDisplayName != null ? t.fullDisplayName : t.name);
+            if (t.tag != null) {
+                field("tag", t.tag);
+            }
+            name("pokemon");
+            line.append('[');
+            for (int j = 0; j < t.pokemon.size(); j++) {
+                TrainerPokemon tpk = t.pokemon.get(j);
+                if (j > 0) {
+                    line.append(',');
+                }
+                line.append("{\"pokemon\":").append(tpk.pokemon.number);
+                field("level", tpk.level);
+                line.append('}');
+            }
+            line.append(']');
+            end();
+        }
+    }
+
+    private void writeEncounters(RomHandler romHandler, boolean useTimeOfDay) throws IOException {
+        List<EncounterSet> encounters = romHandler.getEncounters(useTimeOfDay);
+        for (int i = 0; i < encounters.size(); i++) {
+            EncounterSet es = encounters.get(i);
+            begin("encounters");
+            field("index", i + 1);
+            field("name", es.displayName);
+            field("rate", es.rate);
+            name("encounters");
+            line.append('[');
+            for (int j = 0; j < es.encounters.size(); j++) {
+                Encounter e = es.encounters.get(j);
+                if (j > 0) {
+                    line.append(',');
+                }
+                line.append("{\"pokemon\":").append(e.pokemon.number);
+                field("level", e.level);
+                if (e.maxLevel > 0 && e.maxLevel != e.level) {
+                    field("maxLevel", e.maxLevel);
+                }
+                line.append('}');
+            }
+            line.append(']');
+            end();
+        }
+    }
+
+    private void writeTrades(RomHandler romHandler) throws IOException {
+        String[] itemNames = romHandler.getItemNames();
+        List<IngameTrade> trades = romHandler.getIngameTrades();
+        for (int i = 0; i < trades.size(); i++) {
+            IngameTrade trade = trades.get(i);
+            begin("trade");
+            field("index", i + 1);
+            field("requested", trade.requestedPokemon.number);
+            field("given", trade.givenPokemon.number);
+            field("nickname", trade.nickname);
+            field("ot", trade.otName);
+            field("otId", trade.otId);
+            name("ivs");
+            line.append('[');
+            for (int j = 0; j < trade.ivs.length; j++) {
+                if (j > 0) {
+                    line.append(',');
+                }
+                line.append(trade.ivs[j]);
+            }
+            line.append(']');
+            heldItem("item", trade.item, itemNames);
+            end();
+        }
+    }
+
+    private void begin(String type) {
+        line.setLength(0);
+        line.append("{\"type\":");
+        string(type);
+    }
+
+    private void end() throws IOException {
+        line.append('}').append('\n');
+        out.append(line);
+    }
+
+    private void name(String name) {
+        line.append(",\"").append(name).append("\":");
+    }
+
+    private void field(String name, int value) {
+        name(name);
+        line.append(value);
+    }
+
+    private void field(String name, String value) {
+        name(name);
+        string(value);
+    }
+
+    private void heldItem(String name, int item, String[] itemNames) {
+        if (item > 0) {
+            field(name, item < itemNames.length ? itemNames[item] : null);
+        }
+    }
+
+    private void intList(String name, List<Integer> values) {
+        name(name);
+        line.append('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append(values.get(i).intValue());
+        }
+        line.append(']');
+    }
+
+    private void pokemonList(String name, List<Pokemon> pokemon) {
+        name(name);
+        line.append('[');
+        for (int i = 0; i < pokemon.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append(pokemon.get(i).number);
+        }
+        line.append(']');
+    }
+
+    private void string(String s) {
+        if (s == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+}
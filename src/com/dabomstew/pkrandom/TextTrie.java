@@ -0,0 +1,132 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  TextTrie.java - finds the longest character table text at a position --*/
+/*--                  of a string, for encoding game text.                  --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The texts of a character table, keyed by character, for finding the
+ * longest text that starts at a position of a string. Codes must fit in 16
+ * bits.
+ *
+ * A trie can't be changed once built, so it can be shared between threads.
+ */
+public class TextTrie {
+
+    // node 0 is the root, children sorted by character
+    private final char[][] nodeChars;
+    private final int[][] nodeChildren;
+    private final int[] nodeCodes;
+
+    // Empty texts are never matched.
+    public TextTrie(Map<String, Integer> codesByText) {
+        // Insert into growable per-node lists, then freeze into arrays
+        List<StringBuilder> chars = new ArrayList<StringBuilder>();
+        List<List<Integer>> children = new ArrayList<List<Integer>>();
+        List<Integer> codes = new ArrayList<Integer>();
+        chars.add(new StringBuilder());
+        children.add(new ArrayList<Integer>());
+        codes.add(-1);
+        for (Map.Entry<String, Integer> entry : codesByText.entrySet()) {
+            String text = entry.getKey();
+            if (text.isEmpty()) {
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                StringBuilder nodeChars = chars.get(node);
+                int slot = 0;
+                while (slot < nodeChars.length() && nodeChars.charAt(slot) < c) {
+                    slot++;
+                }
+                if (slot < nodeChars.length() && nodeChars.charAt(slot) == c) {
+                    node = children.get(node).get(slot);
+                } else {
+                    int created = chars.size();
+                    chars.add(new StringBuilder());
+                    children.add(new ArrayList<Integer>());
+                    codes.add(-1);
+                    nodeChars.insert(slot, c);
+                    children.get(node).add(slot, created);
+                    node = created;
+                }
+            }
+            codes.set(node, entry.getValue());
+        }
+
+        int nodes = chars.size();
+        nodeChars = new char[nodes][];
+        nodeChildren = new int[nodes][];
+        nodeCodes = new int[nodes];
+        for (int n = 0; n < nodes; n++) {
+            nodeChars[n] = chars.get(n).toString().toCharArray();
+            List<Integer> childList = children.get(n);
+            nodeChildren[n] = new int[childList.size()];
+            for (int i = 0; i < nodeChildren[n].length; i++) {
+                nodeChildren[n][i] = childList.get(i);
+            }
+            nodeCodes[n] = codes.get(n);
+        }
+    }
+
+    /**
+     * (length << 16) | code of the longest text at string[start] that is no
+     * longer than maxLength, or -1 if none matches.
+     */
+    public int longestMatch(String string, int start, int maxLength) {
+        int node = 0, found = -1;
+        int limit = start + Math.min(string.length() - start, maxLength);
+        for (int i = start; i < limit; i++) {
+            node = child(node, string.charAt(i));
+            if (node < 0) {
+                break;
+            }
+            if (nodeCodes[node] >= 0) {
+                found = ((i - start + 1) << 16) | nodeCodes[node];
+            }
+        }
+        return found;
+    }
+
+    private int child(int node, char c) {
+        char[] chars = nodeChars[node];
+        int lo = 0, hi = chars.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (chars[mid] < c) {
+                lo = mid + 1;
+            } else if (chars[mid] > c) {
+                hi = mid - 1;
+            } else {
+                return nodeChildren[node][mid];
+            }
+        }
+        return -1;
+    }
+
+}
@@ -38,7 +38,6 @@ import java.util.zip.CRC32;
 import javax.xml.bind.DatatypeConverter;
 
 import com.dabomstew.pkrandom.exceptions.InvalidSupplementFilesException;
-import com.dabomstew.pkrandom.gui.RandomizerGUI;
 
 public class Utils {
 
@@ -115,7 +114,8 @@ public class Utils {
     }
 
     public static File getExecutionLocation() throws UnsupportedEncodingException {
-        URL location = RandomizerGUI.class.getProtectionDomain().getCodeSource().getLocation();
+        // not the GUI class, so headless use never loads Swing
+        URL location = Utils.class.getProtectionDomain().getCodeSource().getLocation();
         File fh = new File(java.net.URLDecoder.decode(location.getFile(), "UTF-8"));
         return fh;
     }
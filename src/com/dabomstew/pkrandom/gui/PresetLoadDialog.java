@@ -60,6 +60,7 @@ public class PresetLoadDialog extends javax.swing.JDialog {
     private static final long serialVersionUID = -7898067118947765260L;
     private RandomizerGUI parentGUI;
     private RomHandler currentROM;
+    private RandomSource currentRandomSource;
     private boolean completed = false;
     private String requiredName = null;
     private volatile boolean changeFieldsWithoutCheck = false;
@@ -244,6 +245,10 @@ public class PresetLoadDialog extends javax.swing.JDialog {
         return currentROM;
     }
 
+    public RandomSource getRandomSource() {
+        return currentRandomSource;
+    }
+
     public long getSeed() {
         return Long.parseLong(this.randomSeedField.getText());
     }
@@ -301,49 +306,50 @@ public class PresetLoadDialog extends javax.swing.JDialog {
         int returnVal = romFileChooser.showOpenDialog(this);
         if (returnVal == JFileChooser.APPROVE_OPTION) {
             final File fh = romFileChooser.getSelectedFile();
-            for (RomHandler.Factory rhf : parentGUI.checkHandlers) {
-                if (rhf.isLoadable(fh.getAbsolutePath())) {
-                    final RomHandler checkHandler = rhf.create(RandomSource.instance());
-                    final JDialog opDialog = new OperationDialog(bundle.getString("RandomizerGUI.loadingText"), this,
-                            true);
-                    Thread t = new Thread() {
-                        @Override
-                        public void run() {
-                            SwingUtilities.invokeLater(new Runnable() {
-                                @Override
-                                public void run() {
-                                    opDialog.setVisible(true);
-                                }
-                            });
-                            try {
-                                checkHandler.loadRom(fh.getAbsolutePath());
-                            } catch (Exception ex) {
-                                JOptionPane.showMessageDialog(PresetLoadDialog.this,
-                                        bundle.getString("RandomizerGUI.loadFailedNoLog"));
+            RomHandler.Factory rhf = parentGUI.romDetector.detect(fh.getAbsolutePath());
+            if (rhf != null) {
+                final RandomSource checkRandomSource = new RandomSource();
+                final RomHandler checkHandler = rhf.create(checkRandomSource);
+                final JDialog opDialog = new OperationDialog(bundle.getString("RandomizerGUI.loadingText"), this,
+                        true);
+                Thread t = new Thread() {
+                    @Override
+                    public void run() {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                opDialog.setVisible(true);
                             }
-                            SwingUtilities.invokeLater(new Runnable() {
-                                @Override
-                                public void run() {
-                                    opDialog.setVisible(false);
-                                    if (checkHandler.getROMName().equals(requiredName)) {
-                                        // Got it
-                                        romFileField.setText(fh.getAbsolutePath());
-                                        currentROM = checkHandler;
-                                        acceptButton.setEnabled(true);
-                                        return;
-                                    } else {
-                                        JOptionPane.showMessageDialog(PresetLoadDialog.this, String.format(
-                                                bundle.getString("PresetLoadDialog.notRequiredROM"), requiredName,
-                                                checkHandler.getROMName()));
-                                        return;
-                                    }
-                                }
-                            });
+                        });
+                        try {
+                            checkHandler.loadRom(fh.getAbsolutePath());
+                        } catch (Exception ex) {
+                            JOptionPane.showMessageDialog(PresetLoadDialog.this,
+                                    bundle.getString("RandomizerGUI.loadFailedNoLog"));
                         }
-                    };
-                    t.start();
-                    return;
-                }
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                opDialog.setVisible(false);
+                                if (checkHandler.getROMName().equals(requiredName)) {
+                                    // Got it
+                                    romFileField.setText(fh.getAbsolutePath());
+                                    currentROM = checkHandler;
+                                    currentRandomSource = checkRandomSource;
+                                    acceptButton.setEnabled(true);
+                                    return;
+                                } else {
+                                    JOptionPane.showMessageDialog(PresetLoadDialog.this, String.format(
+                                            bundle.getString("PresetLoadDialog.notRequiredROM"), requiredName,
+                                            checkHandler.getROMName()));
+                                    return;
+                                }
+                            }
+                        });
+                    }
+                };
+                t.start();
+                return;
             }
             JOptionPane.showMessageDialog(this,
                     String.format(bundle.getString("RandomizerGUI.unsupportedRom"), fh.getName()));
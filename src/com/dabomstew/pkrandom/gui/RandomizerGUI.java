@@ -30,7 +30,6 @@ import java.awt.Desktop;
 import java.awt.Font;
 import java.awt.LayoutManager;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -70,7 +69,9 @@ import com.dabomstew.pkrandom.CustomNamesSet;
 import com.dabomstew.pkrandom.FileFunctions;
 import com.dabomstew.pkrandom.MiscTweak;
 import com.dabomstew.pkrandom.RandomSource;
+import com.dabomstew.pkrandom.RandomizationLog;
 import com.dabomstew.pkrandom.Randomizer;
+import com.dabomstew.pkrandom.RomDetector;
 import com.dabomstew.pkrandom.Settings;
 import com.dabomstew.pkrandom.SysConstants;
 import com.dabomstew.pkrandom.Utils;
@@ -82,7 +83,6 @@ import com.dabomstew.pkrandom.romhandlers.AbstractDSRomHandler;
 import com.dabomstew.pkrandom.romhandlers.Gen1RomHandler;
 import com.dabomstew.pkrandom.romhandlers.Gen2RomHandler;
 import com.dabomstew.pkrandom.romhandlers.Gen3RomHandler;
-import com.dabomstew.pkrandom.romhandlers.Gen4RomHandler;
 import com.dabomstew.pkrandom.romhandlers.Gen5RomHandler;
 import com.dabomstew.pkrandom.romhandlers.RomHandler;
 
@@ -97,7 +97,8 @@ public class RandomizerGUI extends javax.swing.JFrame {
      */
     private static final long serialVersionUID = 637989089525556154L;
     private RomHandler romHandler;
-    protected RomHandler.Factory[] checkHandlers;
+    private RandomSource randomSource;
+    protected RomDetector romDetector;
 
     private OperationDialog opDialog;
     private List<JCheckBox> tweakCheckboxes;
@@ -168,8 +169,7 @@ public class RandomizerGUI extends javax.swing.JFrame {
         ToolTipManager.sharedInstance().setDismissDelay(Integer.MAX_VALUE);
         bundle = java.util.ResourceBundle.getBundle("com/dabomstew/pkrandom/gui/Bundle"); // NOI18N
         testForRequiredConfigs();
-        checkHandlers = new RomHandler.Factory[] { new Gen1RomHandler.Factory(), new Gen2RomHandler.Factory(),
-                new Gen3RomHandler.Factory(), new Gen4RomHandler.Factory(), new Gen5RomHandler.Factory() };
+        romDetector = new RomDetector();
         autoUpdateEnabled = true;
         haveCheckedCustomNames = false;
         useScrollPaneMode = !onWindowsLAF;
@@ -985,43 +985,43 @@ public class RandomizerGUI extends javax.swing.JFrame {
                 }
             }
 
-            for (RomHandler.Factory rhf : checkHandlers) {
-                if (rhf.isLoadable(fh.getAbsolutePath())) {
-                    this.romHandler = rhf.create(RandomSource.instance());
-                    opDialog = new OperationDialog(bundle.getString("RandomizerGUI.loadingText"), this, true);
-                    Thread t = new Thread() {
-                        @Override
-                        public void run() {
-                            boolean romLoaded = false;
-                            SwingUtilities.invokeLater(new Runnable() {
-                                @Override
-                                public void run() {
-                                    opDialog.setVisible(true);
-                                }
-                            });
-                            try {
-                                RandomizerGUI.this.romHandler.loadRom(fh.getAbsolutePath());
-                                romLoaded = true;
-                            } catch (Exception ex) {
-                                attemptToLogException(ex, "RandomizerGUI.loadFailed", "RandomizerGUI.loadFailedNoLog");
+            RomHandler.Factory rhf = romDetector.detect(fh.getAbsolutePath());
+            if (rhf != null) {
+                this.randomSource = new RandomSource();
+                this.romHandler = rhf.create(this.randomSource);
+                opDialog = new OperationDialog(bundle.getString("RandomizerGUI.loadingText"), this, true);
+                Thread t = new Thread() {
+                    @Override
+                    public void run() {
+                        boolean romLoaded = false;
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                opDialog.setVisible(true);
                             }
-                            final boolean loadSuccess = romLoaded;
-                            SwingUtilities.invokeLater(new Runnable() {
-                                @Override
-                                public void run() {
-                                    RandomizerGUI.this.opDialog.setVisible(false);
-                                    RandomizerGUI.this.initialFormState();
-                                    if (loadSuccess) {
-                                        RandomizerGUI.this.romLoaded();
-                                    }
-                                }
-                            });
+                        });
+                        try {
+                            RandomizerGUI.this.romHandler.loadRom(fh.getAbsolutePath());
+                            romLoaded = true;
+                        } catch (Exception ex) {
+                            attemptToLogException(ex, "RandomizerGUI.loadFailed", "RandomizerGUI.loadFailedNoLog");
                         }
-                    };
-                    t.start();
+                        final boolean loadSuccess = romLoaded;
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                RandomizerGUI.this.opDialog.setVisible(false);
+                                RandomizerGUI.this.initialFormState();
+                                if (loadSuccess) {
+                                    RandomizerGUI.this.romLoaded();
+                                }
+                            }
+                        });
+                    }
+                };
+                t.start();
 
-                    return;
-                }
+                return;
             }
             JOptionPane.showMessageDialog(this,
                     String.format(bundle.getString("RandomizerGUI.unsupportedRom"), fh.getName()));
@@ -1590,8 +1590,6 @@ public class RandomizerGUI extends javax.swing.JFrame {
             if (allowed) {
                 // Get a seed
                 long seed = RandomSource.pickSeed();
-                // Apply it
-                RandomSource.seed(seed);
                 presetMode = false;
 
                 try {
@@ -1928,18 +1926,19 @@ public class RandomizerGUI extends javax.swing.JFrame {
     private void performRandomization(final String filename, final long seed, CustomNamesSet customNames) {
         final Settings settings = createSettingsFromState(customNames);
         final boolean raceMode = settings.isRaceMode();
-        // Setup verbose log
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PrintStream log;
-        try {
-            log = new PrintStream(baos, false, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            log = new PrintStream(baos);
-        }
-
-        final PrintStream verboseLog = log;
+        // Setup verbose log, streamed to a file beside the ROM until we know
+        // whether it's wanted. Race mode logs are never kept, so never written.
+        final File logFile = new File(filename + ".log");
+        final File tempLogFile = raceMode ? null : new File(filename + ".log.tmp");
+        RandomizationLog log = null;
 
         try {
+            if (raceMode) {
+                log = RandomizationLog.discard();
+            } else {
+                log = RandomizationLog.toFile(tempLogFile, RandomizationLog.allSections());
+            }
+            final RandomizationLog verboseLog = log;
             final AtomicInteger finishedCV = new AtomicInteger(0);
             opDialog = new OperationDialog(bundle.getString("RandomizerGUI.savingText"), this, true);
             Thread t = new Thread() {
@@ -1954,20 +1953,16 @@ public class RandomizerGUI extends javax.swing.JFrame {
                     boolean succeededSave = false;
                     try {
                         RandomizerGUI.this.romHandler.setLog(verboseLog);
-                        finishedCV.set(new Randomizer(settings, RandomizerGUI.this.romHandler).randomize(filename,
-                                verboseLog, seed));
+                        finishedCV.set(new Randomizer(settings, RandomizerGUI.this.romHandler,
+                                RandomizerGUI.this.randomSource).randomize(filename, verboseLog, seed));
                         succeededSave = true;
                     } catch (RandomizationException ex) {
                         attemptToLogException(ex, "RandomizerGUI.saveFailedMessage",
                                 "RandomizerGUI.saveFailedMessageNoLog", true);
-                        if (verboseLog != null) {
-                            verboseLog.close();
-                        }
+                        discardLog(verboseLog, tempLogFile);
                     } catch (Exception ex) {
                         attemptToLogException(ex, "RandomizerGUI.saveFailedIO", "RandomizerGUI.saveFailedIONoLog");
-                        if (verboseLog != null) {
-                            verboseLog.close();
-                        }
+                        discardLog(verboseLog, tempLogFile);
                     }
                     if (succeededSave) {
                         SwingUtilities.invokeLater(new Runnable() {
@@ -1975,8 +1970,12 @@ public class RandomizerGUI extends javax.swing.JFrame {
                             public void run() {
                                 RandomizerGUI.this.opDialog.setVisible(false);
                                 // Log?
-                                verboseLog.close();
-                                byte[] out = baos.toByteArray();
+                                boolean logComplete = true;
+                                try {
+                                    verboseLog.close();
+                                } catch (IOException e) {
+                                    logComplete = false;
+                                }
 
                                 if (raceMode) {
                                     JOptionPane.showMessageDialog(RandomizerGUI.this,
@@ -1988,20 +1987,16 @@ public class RandomizerGUI extends javax.swing.JFrame {
                                             bundle.getString("RandomizerGUI.saveLogDialog.title"),
                                             JOptionPane.YES_NO_OPTION);
                                     if (response == JOptionPane.YES_OPTION) {
-                                        try {
-                                            FileOutputStream fos = new FileOutputStream(filename + ".log");
-                                            fos.write(0xEF);
-                                            fos.write(0xBB);
-                                            fos.write(0xBF);
-                                            fos.write(out);
-                                            fos.close();
-                                        } catch (IOException e) {
+                                        if (!logComplete || !moveFile(tempLogFile, logFile)) {
+                                            tempLogFile.delete();
                                             JOptionPane.showMessageDialog(RandomizerGUI.this,
                                                     bundle.getString("RandomizerGUI.logSaveFailed"));
                                             return;
                                         }
                                         JOptionPane.showMessageDialog(RandomizerGUI.this,
                                                 String.format(bundle.getString("RandomizerGUI.logSaved"), filename));
+                                    } else {
+                                        tempLogFile.delete();
                                     }
                                 }
                                 if (presetMode) {
@@ -2042,9 +2037,48 @@ public class RandomizerGUI extends javax.swing.JFrame {
             t.start();
         } catch (Exception ex) {
             attemptToLogException(ex, "RandomizerGUI.saveFailed", "RandomizerGUI.saveFailedNoLog");
-            if (verboseLog != null) {
-                verboseLog.close();
+            discardLog(log, tempLogFile);
+        }
+    }
+
+    // Rename, or copy where renaming can't replace the file (Windows, other drives)
+    private static boolean moveFile(File from, File to) {
+        if (from.renameTo(to)) {
+            return true;
+        }
+        try {
+            FileInputStream in = new FileInputStream(from);
+            try {
+                FileOutputStream out = new FileOutputStream(to);
+                try {
+                    byte[] buf = new byte[65536];
+                    int read;
+                    while ((read = in.read(buf)) != -1) {
+                        out.write(buf, 0, read);
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
             }
+        } catch (IOException ex) {
+            return false;
+        }
+        from.delete();
+        return true;
+    }
+
+    private static void discardLog(RandomizationLog log, File logFile) {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException ex) {
+                // it's being thrown away anyway
+            }
+        }
+        if (logFile != null) {
+            logFile.delete();
         }
     }
 
@@ -2055,6 +2089,7 @@ public class RandomizerGUI extends javax.swing.JFrame {
             long seed = pld.getSeed();
             String config = pld.getConfigString();
             this.romHandler = pld.getROM();
+            this.randomSource = pld.getRandomSource();
             this.romLoaded();
             Settings settings;
             try {
@@ -2083,8 +2118,6 @@ public class RandomizerGUI extends javax.swing.JFrame {
                     }
                 }
                 if (allowed) {
-                    // Apply the seed we were given
-                    RandomSource.seed(seed);
                     presetMode = true;
                     performRandomization(fh.getAbsolutePath(), seed, pld.getCustomNames());
                 } else {
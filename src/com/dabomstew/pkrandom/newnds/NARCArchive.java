@@ -1,53 +1,101 @@
 package com.dabomstew.pkrandom.newnds;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
+/**
+ * A NARC archive. Members are only copied out of the archive's data the first
+ * time they're accessed through files; when the archive is written back, any
+ * member that was never accessed or replaced is copied through verbatim.
+ *
+ * A member counts as changed once it has been accessed, since callers are
+ * free to modify the array they get back.
+ */
 public class NARCArchive {
 
     public List<String> filenames = new ArrayList<String>();
-    public List<byte[]> files = new ArrayList<byte[]>();
+    public List<byte[]> files = new MemberList();
 
     public boolean hasFilenames = false;
 
+    // FIMG frame contents of the archive this was read from
+    private ByteBuffer fimg;
+
     public NARCArchive() {
         // creates a new empty NARC with no filenames by default
     }
 
     public NARCArchive(byte[] data) throws IOException {
-        Map<String, byte[]> frames = readNitroFrames(data);
-        if (!frames.containsKey("FATB") || !frames.containsKey("FNTB") || !frames.containsKey("FIMG")) {
+        this(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Reads a NARC from data, which must not change while this archive is in
+     * use. Nothing is copied until members are accessed.
+     */
+    public NARCArchive(ByteBuffer data) throws IOException {
+        data = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+        // Find the frames
+        int fatbOffset = -1, fntbOffset = -1, fimgOffset = -1, fimgSize = 0;
+        int frameCount = data.getShort(0x0E) & 0xFFFF;
+        int offset = 0x10;
+        for (int i = 0; i < frameCount; i++) {
+            byte[] magic = new byte[] { data.get(offset + 3), data.get(offset + 2), data.get(offset + 1),
+                    data.get(offset) };
+            String magicS = new String(magic, "US-ASCII");
+
+            int frame_size = data.getInt(offset + 4);
+            // Patch for BB/VW and other DS hacks which don't update
+            // the size of their expanded NARCs correctly
+            if (i == frameCount - 1 && offset + frame_size < data.limit()) {
+                frame_size = data.limit() - offset;
+            }
+            if (magicS.equals("FATB")) {
+                fatbOffset = offset + 8;
+            } else if (magicS.equals("FNTB")) {
+                fntbOffset = offset + 8;
+            } else if (magicS.equals("FIMG")) {
+                fimgOffset = offset + 8;
+                fimgSize = frame_size - 8;
+            }
+            offset += frame_size;
+        }
+        if (fatbOffset < 0 || fntbOffset < 0 || fimgOffset < 0) {
             throw new IOException("Not a valid narc file");
         }
+        ByteBuffer fimgView = data.duplicate();
+        fimgView.position(fimgOffset);
+        fimgView.limit(fimgOffset + fimgSize);
+        fimg = fimgView.slice();
 
-        // File contents
-        byte[] fatbframe = frames.get("FATB");
-        byte[] fimgframe = frames.get("FIMG");
-        int fileCount = readLong(fatbframe, 0);
+        // File contents (only where they are, for now)
+        MemberList members = (MemberList) files;
+        int fileCount = data.getInt(fatbOffset);
         for (int i = 0; i < fileCount; i++) {
-            int startOffset = readLong(fatbframe, 4 + i * 8);
-            int endOffset = readLong(fatbframe, 8 + i * 8);
-            int length = (endOffset - startOffset);
-            byte[] thisFile = new byte[length];
-            System.arraycopy(fimgframe, startOffset, thisFile, 0, length);
-            files.add(thisFile);
+            int startOffset = data.getInt(fatbOffset + 4 + i * 8);
+            int endOffset = data.getInt(fatbOffset + 8 + i * 8);
+            members.addStored(startOffset, endOffset - startOffset);
         }
 
         // Filenames?
-        byte[] fntbframe = frames.get("FNTB");
-        int unk1 = readLong(fntbframe, 0);
+        int unk1 = data.getInt(fntbOffset);
         if (unk1 == 8) {
             // Filenames exist
             hasFilenames = true;
-            int offset = 8;
+            offset = fntbOffset + 8;
             for (int i = 0; i < fileCount; i++) {
-                int fnLength = (fntbframe[offset] & 0xFF);
+                int fnLength = (data.get(offset) & 0xFF);
                 offset++;
                 byte[] filenameBA = new byte[fnLength];
-                System.arraycopy(fntbframe, offset, filenameBA, 0, fnLength);
+                for (int j = 0; j < fnLength; j++) {
+                    filenameBA[j] = data.get(offset + j);
+                }
+                offset += fnLength;
                 String filename = new String(filenameBA, "US-ASCII");
                 filenames.add(filename);
             }
@@ -60,15 +108,16 @@ public class NARCArchive {
     }
 
     public byte[] getBytes() throws IOException {
+        MemberList members = (MemberList) files;
         // Get bytes required for FIMG frame
         int bytesRequired = 0;
-        for (byte[] file : files) {
-            bytesRequired += Math.ceil(file.length / 4.0) * 4;
+        for (int i = 0; i < members.size(); i++) {
+            bytesRequired += Math.ceil(members.lengthOf(i) / 4.0) * 4;
         }
         // FIMG frame & FATB frame build
 
         // 4 for numentries, 8*size for entries, 8 for nitro header
-        byte[] fatbFrame = new byte[4 + files.size() * 8 + 8];
+        byte[] fatbFrame = new byte[4 + members.size() * 8 + 8];
         // bytesRequired + 8 for nitro header
         byte[] fimgFrame = new byte[bytesRequired + 8];
 
@@ -86,16 +135,16 @@ public class NARCArchive {
         writeLong(fimgFrame, 4, fimgFrame.length);
         int offset = 0;
 
-        writeLong(fatbFrame, 8, files.size());
-        for (int i = 0; i < files.size(); i++) {
-            byte[] file = files.get(i);
-            int bytesRequiredForFile = (int) (Math.ceil(file.length / 4.0) * 4);
-            System.arraycopy(file, 0, fimgFrame, offset + 8, file.length);
-            for (int filler = file.length; filler < bytesRequiredForFile; filler++) {
+        writeLong(fatbFrame, 8, members.size());
+        for (int i = 0; i < members.size(); i++) {
+            int fileLength = members.lengthOf(i);
+            int bytesRequiredForFile = (int) (Math.ceil(fileLength / 4.0) * 4);
+            members.copyTo(i, fimgFrame, offset + 8);
+            for (int filler = fileLength; filler < bytesRequiredForFile; filler++) {
                 fimgFrame[offset + 8 + filler] = (byte) 0xFF;
             }
             writeLong(fatbFrame, 12 + i * 8, offset);
-            writeLong(fatbFrame, 16 + i * 8, offset + file.length);
+            writeLong(fatbFrame, 16 + i * 8, offset + fileLength);
             offset += bytesRequiredForFile;
         }
 
@@ -148,41 +197,6 @@ public class NARCArchive {
         return nitroFile;
     }
 
-    private Map<String, byte[]> readNitroFrames(byte[] data) throws IOException {
-
-        // Read the number of frames
-        int frameCount = readWord(data, 0x0E);
-
-        // each frame
-        int offset = 0x10;
-        Map<String, byte[]> frames = new TreeMap<String, byte[]>();
-        for (int i = 0; i < frameCount; i++) {
-            byte[] magic = new byte[] { data[offset + 3], data[offset + 2], data[offset + 1], data[offset] };
-            String magicS = new String(magic, "US-ASCII");
-
-            int frame_size = readLong(data, offset + 4);
-            // Patch for BB/VW and other DS hacks which don't update
-            // the size of their expanded NARCs correctly
-            if (i == frameCount - 1 && offset + frame_size < data.length) {
-                frame_size = data.length - offset;
-            }
-            byte[] frame = new byte[frame_size - 8];
-            System.arraycopy(data, offset + 8, frame, 0, frame_size - 8);
-            frames.put(magicS, frame);
-            offset += frame_size;
-        }
-        return frames;
-    }
-
-    private int readWord(byte[] data, int offset) {
-        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
-    }
-
-    private int readLong(byte[] data, int offset) {
-        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16)
-                | ((data[offset + 3] & 0xFF) << 24);
-    }
-
     private void writeWord(byte[] data, int offset, int value) {
         data[offset] = (byte) (value & 0xFF);
         data[offset + 1] = (byte) ((value >> 8) & 0xFF);
@@ -195,4 +209,80 @@ public class NARCArchive {
         data[offset + 3] = (byte) ((value >> 24) & 0xFF);
     }
 
+    // The members of the archive, each either still in the FIMG frame or
+    // held as its own array once accessed or replaced.
+    private class MemberList extends AbstractList<byte[]> {
+
+        private final List<Member> members = new ArrayList<Member>();
+
+        private void addStored(int start, int length) {
+            members.add(new Member(start, length, null));
+        }
+
+        @Override
+        public byte[] get(int index) {
+            Member member = members.get(index);
+            if (member.data == null) {
+                member.data = new byte[member.length];
+                ByteBuffer view = fimg.duplicate();
+                view.position(member.start);
+                view.get(member.data);
+            }
+            return member.data;
+        }
+
+        // Returns the old member only if it had been loaded; a member still in
+        // the FIMG frame isn't read just to be thrown away.
+        @Override
+        public byte[] set(int index, byte[] element) {
+            return members.set(index, new Member(-1, element.length, element)).data;
+        }
+
+        @Override
+        public void add(int index, byte[] element) {
+            members.add(index, new Member(-1, element.length, element));
+            modCount++;
+        }
+
+        // As with set, the old member is returned only if it had been loaded.
+        @Override
+        public byte[] remove(int index) {
+            modCount++;
+            return members.remove(index).data;
+        }
+
+        @Override
+        public int size() {
+            return members.size();
+        }
+
+        private int lengthOf(int index) {
+            Member member = members.get(index);
+            return member.data != null ? member.data.length : member.length;
+        }
+
+        private void copyTo(int index, byte[] dest, int destOffset) {
+            Member member = members.get(index);
+            if (member.data != null) {
+                System.arraycopy(member.data, 0, dest, destOffset, member.data.length);
+            } else {
+                // never touched, copy straight through
+                ByteBuffer view = fimg.duplicate();
+                view.position(member.start);
+                view.get(dest, destOffset, member.length);
+            }
+        }
+    }
+
+    private static class Member {
+        private final int start, length;
+        private byte[] data;
+
+        private Member(int start, int length, byte[] data) {
+            this.start = start;
+            this.length = length;
+            this.data = data;
+        }
+    }
+
 }
@@ -1,11 +1,8 @@
 package com.dabomstew.pkrandom.newnds;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-
-import com.dabomstew.pkrandom.FileFunctions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /*----------------------------------------------------------------------------*/
 /*--  NDSFile.java - an entry in the FAT/FNT filesystem                     --*/
@@ -34,8 +31,7 @@ public class NDSFile {
     public int offset, size;
     public int fileID;
     public String fullPath;
-    public Extracted status = Extracted.NOT;
-    public String extFilename;
+    // only set once the file has been changed, until then it's read from the ROM
     public byte[] data;
 
     public NDSFile(NDSRom parent) {
@@ -43,77 +39,32 @@ public class NDSFile {
     }
 
     public byte[] getContents() throws IOException {
-        if (this.status == Extracted.NOT) {
-            // extract file
-            parent.reopenROM();
-            RandomAccessFile rom = parent.getBaseRom();
-            byte[] buf = new byte[this.size];
-            rom.seek(this.offset);
-            rom.readFully(buf);
-            if (parent.isWritingEnabled()) {
-                // make a file
-                String tmpDir = parent.getTmpFolder();
-                String tmpFilename = fullPath.replaceAll("[^A-Za-z0-9_]+", "");
-                this.extFilename = tmpFilename;
-                File tmpFile = new File(tmpDir + extFilename);
-                FileOutputStream fos = new FileOutputStream(tmpFile);
-                fos.write(buf);
-                fos.close();
-                tmpFile.deleteOnExit();
-                this.status = Extracted.TO_FILE;
-                this.data = null;
-                return buf;
-            } else {
-                this.status = Extracted.TO_RAM;
-                this.data = buf;
-                byte[] newcopy = new byte[buf.length];
-                System.arraycopy(buf, 0, newcopy, 0, buf.length);
-                return newcopy;
-            }
-        } else if (this.status == Extracted.TO_RAM) {
-            byte[] newcopy = new byte[this.data.length];
-            System.arraycopy(this.data, 0, newcopy, 0, this.data.length);
-            return newcopy;
-        } else {
-            String tmpDir = parent.getTmpFolder();
-            byte[] file = FileFunctions.readFileFullyIntoBuffer(tmpDir + this.extFilename);
-            return file;
+        if (this.data == null) {
+            return parent.readBytes(this.offset, this.size);
         }
+        byte[] newcopy = new byte[this.data.length];
+        System.arraycopy(this.data, 0, newcopy, 0, this.data.length);
+        return newcopy;
     }
 
-    public void writeOverride(byte[] data) throws IOException {
-        if (status == Extracted.NOT) {
-            // temp extract
-            getContents();
-        }
-        if (status == Extracted.TO_FILE) {
-            String tmpDir = parent.getTmpFolder();
-            FileOutputStream fos = new FileOutputStream(new File(tmpDir + this.extFilename));
-            fos.write(data);
-            fos.close();
-        } else {
-            if (this.data.length == data.length) {
-                // copy new in
-                System.arraycopy(data, 0, this.data, 0, data.length);
-            } else {
-                // make new array
-                this.data = null;
-                this.data = new byte[data.length];
-                System.arraycopy(data, 0, this.data, 0, data.length);
-            }
+    // A read-only, little-endian view of the contents; nothing is copied.
+    public ByteBuffer getContentsView() {
+        if (this.data == null) {
+            return parent.getRomSlice(this.offset, this.size);
         }
+        return ByteBuffer.wrap(this.data).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
     }
 
-    // returns null if no override
-    public byte[] getOverrideContents() throws IOException {
-        if (status == Extracted.NOT) {
-            return null;
-        }
-        return getContents();
+    public void writeOverride(byte[] data) throws IOException {
+        // always a new array, so views handed out earlier don't change
+        this.data = new byte[data.length];
+        System.arraycopy(data, 0, this.data, 0, data.length);
     }
 
-    private enum Extracted {
-        NOT, TO_FILE, TO_RAM;
+    // returns null if no override
+    // (not a copy - only for writing the file out)
+    public byte[] getOverrideContents() throws IOException {
+        return this.data;
     }
 
 }
@@ -1,17 +1,20 @@
 package com.dabomstew.pkrandom.newnds;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
-import com.dabomstew.pkrandom.SysConstants;
-import com.dabomstew.pkrandom.FileFunctions;
 import com.dabomstew.pkrandom.RomFunctions;
+import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
 
 import cuecompressors.BLZCoder;
 
@@ -40,15 +43,15 @@ public class NDSRom {
 
     private String romCode;
     private String romFilename;
-    private RandomAccessFile baseRom;
+    private FileChannel baseRom;
     private boolean romOpen;
+    // the whole ROM, mapped read-only while the ROM is open
+    private ByteBuffer romBuffer;
     private Map<String, NDSFile> files;
     private Map<Integer, NDSFile> filesByID;
     private Map<Integer, NDSY9Entry> arm9overlaysByFileID;
     private NDSY9Entry[] arm9overlays;
     private byte[] fat;
-    private String tmpFolder;
-    private boolean writingEnabled;
     private boolean arm9_open, arm9_changed, arm9_has_footer;
     private boolean arm9_compressed;
     private int arm9_szmode, arm9_szoffset;
@@ -58,25 +61,11 @@ public class NDSRom {
     private static final int arm9_align = 0x1FF, arm7_align = 0x1FF;
     private static final int fnt_align = 0x1FF, fat_align = 0x1FF;
     private static final int banner_align = 0x1FF, file_align = 0x1FF;
+    private static final byte[] zeroes = new byte[0x200];
 
     public NDSRom(String filename) throws IOException {
         this.romFilename = filename;
-        this.baseRom = new RandomAccessFile(filename, "r");
-        this.romOpen = true;
-        // TMP folder?
-        String rawFilename = new File(filename).getName();
-        String dataFolder = "tmp_" + rawFilename.substring(0, rawFilename.lastIndexOf('.'));
-        // remove nonsensical chars
-        dataFolder = dataFolder.replaceAll("[^A-Za-z0-9_]+", "");
-        File tmpFolder = new File(SysConstants.ROOT_PATH + dataFolder);
-        tmpFolder.mkdir();
-        if (tmpFolder.canWrite()) {
-            writingEnabled = true;
-            this.tmpFolder = SysConstants.ROOT_PATH + dataFolder + File.separator;
-            tmpFolder.deleteOnExit();
-        } else {
-            writingEnabled = false;
-        }
+        reopenROM();
         readFileSystem();
         arm9_open = false;
         arm9_changed = false;
@@ -85,53 +74,62 @@ public class NDSRom {
 
     public void reopenROM() throws IOException {
         if (!this.romOpen) {
-            this.baseRom = new RandomAccessFile(this.romFilename, "r");
+            this.baseRom = new FileInputStream(this.romFilename).getChannel();
             this.romOpen = true;
+            this.romBuffer = this.baseRom.map(FileChannel.MapMode.READ_ONLY, 0, this.baseRom.size());
+            this.romBuffer.order(ByteOrder.LITTLE_ENDIAN);
         }
     }
 
+    // Views already handed out by getRomSlice stay readable; anything else
+    // reopens the ROM.
     public void closeROM() throws IOException {
         if (this.romOpen && this.baseRom != null) {
+            this.romBuffer = null;
             this.baseRom.close();
             this.baseRom = null;
             this.romOpen = false;
         }
     }
 
+    private ByteBuffer romBuffer() {
+        if (!this.romOpen) {
+            try {
+                reopenROM();
+            } catch (IOException ex) {
+                throw new RandomizerIOException(ex);
+            }
+        }
+        return this.romBuffer;
+    }
+
     private void readFileSystem() throws IOException {
         // read rom code
-        baseRom.seek(0x0C);
-
-        byte[] sig = new byte[4];
-        baseRom.readFully(sig);
+        byte[] sig = readBytes(0x0C, 4);
         this.romCode = new String(sig, "US-ASCII");
 
-        baseRom.seek(0x40);
-        int fntOffset = readFromFile(baseRom, 4);
-        readFromFile(baseRom, 4); // fntSize not needed
-        int fatOffset = readFromFile(baseRom, 4);
-        int fatSize = readFromFile(baseRom, 4);
+        int fntOffset = romBuffer().getInt(0x40);
+        // fntSize (0x44) not needed
+        int fatOffset = romBuffer().getInt(0x48);
+        int fatSize = romBuffer().getInt(0x4C);
 
         // Read full FAT table
-        baseRom.seek(fatOffset);
-        fat = new byte[fatSize];
-        baseRom.readFully(fat);
+        fat = readBytes(fatOffset, fatSize);
 
         Map<Integer, String> directoryPaths = new HashMap<Integer, String>();
         directoryPaths.put(0xF000, "");
-        int dircount = readFromFile(baseRom, fntOffset + 0x6, 2);
+        int dircount = romBuffer().getShort(fntOffset + 0x6) & 0xFFFF;
         files = new HashMap<String, NDSFile>();
         filesByID = new HashMap<Integer, NDSFile>();
 
         // read fnt table
-        baseRom.seek(fntOffset);
         int[] subTableOffsets = new int[dircount];
         int[] firstFileIDs = new int[dircount];
         int[] parentDirIDs = new int[dircount];
         for (int i = 0; i < dircount && i < 0x1000; i++) {
-            subTableOffsets[i] = readFromFile(baseRom, 4) + fntOffset;
-            firstFileIDs[i] = readFromFile(baseRom, 2);
-            parentDirIDs[i] = readFromFile(baseRom, 2);
+            subTableOffsets[i] = romBuffer().getInt(fntOffset + i * 8) + fntOffset;
+            firstFileIDs[i] = romBuffer().getShort(fntOffset + i * 8 + 4) & 0xFFFF;
+            parentDirIDs[i] = romBuffer().getShort(fntOffset + i * 8 + 6) & 0xFFFF;
         }
 
         // get dirnames
@@ -188,14 +186,12 @@ public class NDSRom {
         }
 
         // arm9 overlays
-        int arm9_ovl_table_offset = readFromFile(baseRom, 0x50, 4);
-        int arm9_ovl_table_size = readFromFile(baseRom, 0x54, 4);
+        int arm9_ovl_table_offset = romBuffer().getInt(0x50);
+        int arm9_ovl_table_size = romBuffer().getInt(0x54);
         int arm9_ovl_count = arm9_ovl_table_size / 32;
-        byte[] y9table = new byte[arm9_ovl_table_size];
+        byte[] y9table = readBytes(arm9_ovl_table_offset, arm9_ovl_table_size);
         arm9overlays = new NDSY9Entry[arm9_ovl_count];
         arm9overlaysByFileID = new HashMap<Integer, NDSY9Entry>();
-        baseRom.seek(arm9_ovl_table_offset);
-        baseRom.readFully(y9table);
 
         // parse overlays
         for (int i = 0; i < arm9_ovl_count; i++) {
@@ -221,19 +217,26 @@ public class NDSRom {
     }
 
     public void saveTo(String filename) throws IOException {
+        // The base ROM is read (and mapped) while the new one is written, so
+        // writing over it would truncate the data being copied.
+        if (new File(filename).getCanonicalFile().equals(new File(this.romFilename).getCanonicalFile())) {
+            throw new IOException("Can't save over the ROM being randomized: " + filename);
+        }
         this.reopenROM();
 
-        // Initialise new ROM
-        RandomAccessFile fNew = new RandomAccessFile(filename, "rw");
+        // Plan the whole output first: every piece of the new ROM is either
+        // a region of the base ROM or a buffer built here, in file order.
+        List<SaveSegment> segments = new ArrayList<SaveSegment>();
 
-        int headersize = readFromFile(this.baseRom, 0x84, 4);
-        this.baseRom.seek(0);
-        copy(this.baseRom, fNew, headersize);
+        int headersize = romBuffer().getInt(0x84);
+        byte[] header = readBytes(0, headersize);
+        segments.add(new SaveSegment(0, header));
+        int position = headersize;
 
         // arm9
-        int arm9_offset = ((int) (fNew.getFilePointer() + arm9_align)) & (~arm9_align);
-        int old_arm9_offset = readFromFile(this.baseRom, 0x20, 4);
-        int arm9_size = readFromFile(this.baseRom, 0x2C, 4);
+        int arm9_offset = (position + arm9_align) & (~arm9_align);
+        int old_arm9_offset = romBuffer().getInt(0x20);
+        int arm9_size = romBuffer().getInt(0x2C);
         if (arm9_open && arm9_changed) {
             // custom arm9
             byte[] newARM9 = getARM9();
@@ -245,73 +248,58 @@ public class NDSRom {
                 }
             }
             arm9_size = newARM9.length;
-            // copy new arm9
-            fNew.seek(arm9_offset);
-            fNew.write(newARM9);
+            segments.add(new SaveSegment(arm9_offset, newARM9));
+            position = arm9_offset + arm9_size;
             // footer?
             if (arm9_has_footer) {
-                fNew.write(arm9_footer);
+                segments.add(new SaveSegment(position, arm9_footer));
+                position += arm9_footer.length;
             }
-
         } else {
             // copy arm9+footer
-            this.baseRom.seek(old_arm9_offset);
-            fNew.seek(arm9_offset);
-            copy(this.baseRom, fNew, arm9_size + 12);
+            segments.add(new SaveSegment(arm9_offset, old_arm9_offset, arm9_size + 12));
+            position = arm9_offset + arm9_size + 12;
         }
 
-        // arm9 ovl
-        int arm9_ovl_offset = (int) fNew.getFilePointer();
+        // arm9 ovl (filled in along with the files)
+        int arm9_ovl_offset = position;
         int arm9_ovl_size = arm9overlays.length * 32;
-
-        // don't actually write arm9 ovl yet
+        byte[] y9table = new byte[arm9_ovl_size];
+        segments.add(new SaveSegment(arm9_ovl_offset, y9table));
 
         // arm7
-        int arm7_offset = ((int) (arm9_ovl_offset + arm9_ovl_size + arm7_align)) & (~arm7_align);
-        int old_arm7_offset = readFromFile(this.baseRom, 0x30, 4);
-        int arm7_size = readFromFile(this.baseRom, 0x3C, 4);
-        // copy arm7
-        this.baseRom.seek(old_arm7_offset);
-        fNew.seek(arm7_offset);
-        copy(this.baseRom, fNew, arm7_size);
+        int arm7_offset = (arm9_ovl_offset + arm9_ovl_size + arm7_align) & (~arm7_align);
+        int old_arm7_offset = romBuffer().getInt(0x30);
+        int arm7_size = romBuffer().getInt(0x3C);
+        segments.add(new SaveSegment(arm7_offset, old_arm7_offset, arm7_size));
 
         // arm7 ovl
-        int arm7_ovl_offset = (int) fNew.getFilePointer();
-        int old_arm7_ovl_offset = readFromFile(this.baseRom, 0x58, 4);
-        int arm7_ovl_size = readFromFile(this.baseRom, 0x5C, 4);
-
-        // copy arm7 ovl
-        this.baseRom.seek(old_arm7_ovl_offset);
-        fNew.seek(arm7_ovl_offset);
-        copy(this.baseRom, fNew, arm7_ovl_size);
+        int arm7_ovl_offset = arm7_offset + arm7_size;
+        int old_arm7_ovl_offset = romBuffer().getInt(0x58);
+        int arm7_ovl_size = romBuffer().getInt(0x5C);
+        segments.add(new SaveSegment(arm7_ovl_offset, old_arm7_ovl_offset, arm7_ovl_size));
 
         // banner
-        int banner_offset = ((int) (fNew.getFilePointer() + banner_align)) & (~banner_align);
-        int old_banner_offset = readFromFile(this.baseRom, 0x68, 4);
+        int banner_offset = (arm7_ovl_offset + arm7_ovl_size + banner_align) & (~banner_align);
+        int old_banner_offset = romBuffer().getInt(0x68);
         int banner_size = 0x840;
-        // copy banner
-        this.baseRom.seek(old_banner_offset);
-        fNew.seek(banner_offset);
-        copy(this.baseRom, fNew, banner_size);
+        segments.add(new SaveSegment(banner_offset, old_banner_offset, banner_size));
 
         // filename table (doesn't change)
-        int fnt_offset = ((int) (fNew.getFilePointer() + fnt_align)) & (~fnt_align);
-        int old_fnt_offset = readFromFile(this.baseRom, 0x40, 4);
-        int fnt_size = readFromFile(this.baseRom, 0x44, 4);
-        // copy fnt
-        this.baseRom.seek(old_fnt_offset);
-        fNew.seek(fnt_offset);
-        copy(this.baseRom, fNew, fnt_size);
+        int fnt_offset = (banner_offset + banner_size + fnt_align) & (~fnt_align);
+        int old_fnt_offset = romBuffer().getInt(0x40);
+        int fnt_size = romBuffer().getInt(0x44);
+        segments.add(new SaveSegment(fnt_offset, old_fnt_offset, fnt_size));
 
         // make space for the FAT table
-        int fat_offset = ((int) (fNew.getFilePointer() + fat_align)) & (~fat_align);
+        int fat_offset = (fnt_offset + fnt_size + fat_align) & (~fat_align);
         int fat_size = fat.length;
+        byte[] newfat = new byte[fat.length];
+        segments.add(new SaveSegment(fat_offset, newfat));
 
         // Now for actual files
         // Make a new FAT as needed
-        // also make a new y9 table
-        byte[] newfat = new byte[fat.length];
-        byte[] y9table = new byte[arm9overlays.length * 32];
+        // also fill in the y9 table
         int base_offset = fat_offset + fat_size;
         int filecount = fat.length / 8;
         for (int fid = 0; fid < filecount; fid++) {
@@ -321,9 +309,7 @@ public class NDSRom {
             if (filesByID.containsKey(fid)) {
                 byte[] customContents = filesByID.get(fid).getOverrideContents();
                 if (customContents != null) {
-                    // copy custom
-                    fNew.seek(offset_of_file);
-                    fNew.write(customContents);
+                    segments.add(new SaveSegment(offset_of_file, customContents));
                     copiedCustom = true;
                     file_len = customContents.length;
                 }
@@ -333,9 +319,7 @@ public class NDSRom {
                 int overlay_id = entry.overlay_id;
                 byte[] customContents = entry.getOverrideContents();
                 if (customContents != null) {
-                    // copy custom
-                    fNew.seek(offset_of_file);
-                    fNew.write(customContents);
+                    segments.add(new SaveSegment(offset_of_file, customContents));
                     copiedCustom = true;
                     file_len = customContents.length;
                 }
@@ -355,9 +339,7 @@ public class NDSRom {
                 int file_starts = readFromByteArr(fat, fid * 8, 4);
                 int file_ends = readFromByteArr(fat, fid * 8 + 4, 4);
                 file_len = file_ends - file_starts;
-                this.baseRom.seek(file_starts);
-                fNew.seek(offset_of_file);
-                copy(this.baseRom, fNew, file_len);
+                segments.add(new SaveSegment(offset_of_file, file_starts, file_len));
             }
             // write to new FAT
             writeToByteArr(newfat, fid * 8, 4, offset_of_file);
@@ -366,22 +348,13 @@ public class NDSRom {
             base_offset = offset_of_file + file_len;
         }
 
-        // write new FAT table
-        fNew.seek(fat_offset);
-        fNew.write(newfat);
-
-        // write y9 table
-        fNew.seek(arm9_ovl_offset);
-        fNew.write(y9table);
-
         // tidy up ending
         // base_offset is the end of the last file
         int newfilesize = base_offset;
         newfilesize = (newfilesize + 3) & ~3;
         int application_end_offset = newfilesize;
         if (newfilesize != base_offset) {
-            fNew.seek(newfilesize - 1);
-            fNew.write(0);
+            segments.add(new SaveSegment(newfilesize, new byte[0]));
         }
 
         // calculate device capacity;
@@ -403,40 +376,101 @@ public class NDSRom {
         int devicecap = ((devcap < 0) ? 0 : devcap);
 
         // Update offsets in ROM header
-        writeToFile(fNew, 0x20, 4, arm9_offset);
-        writeToFile(fNew, 0x2C, 4, arm9_size);
-        writeToFile(fNew, 0x30, 4, arm7_offset);
-        writeToFile(fNew, 0x3C, 4, arm7_size);
-        writeToFile(fNew, 0x40, 4, fnt_offset);
-        writeToFile(fNew, 0x48, 4, fat_offset);
-        writeToFile(fNew, 0x50, 4, arm9_ovl_offset);
-        writeToFile(fNew, 0x58, 4, arm7_ovl_offset);
-        writeToFile(fNew, 0x68, 4, banner_offset);
-        writeToFile(fNew, 0x80, 4, application_end_offset);
-        writeToFile(fNew, 0x14, 1, devicecap);
+        writeToByteArr(header, 0x20, 4, arm9_offset);
+        writeToByteArr(header, 0x2C, 4, arm9_size);
+        writeToByteArr(header, 0x30, 4, arm7_offset);
+        writeToByteArr(header, 0x3C, 4, arm7_size);
+        writeToByteArr(header, 0x40, 4, fnt_offset);
+        writeToByteArr(header, 0x48, 4, fat_offset);
+        writeToByteArr(header, 0x50, 4, arm9_ovl_offset);
+        writeToByteArr(header, 0x58, 4, arm7_ovl_offset);
+        writeToByteArr(header, 0x68, 4, banner_offset);
+        writeToByteArr(header, 0x80, 4, application_end_offset);
+        writeToByteArr(header, 0x14, 1, devicecap);
 
         // Update header CRC
-        fNew.seek(0);
-        byte[] headerForCRC = new byte[0x15E];
-        fNew.readFully(headerForCRC);
-        short crc = CRC16.calculate(headerForCRC, 0, 0x15E);
-        writeToFile(fNew, 0x15E, 2, (crc & 0xFFFF));
-
-        // done
-        fNew.close();
+        short crc = CRC16.calculate(header, 0, 0x15E);
+        writeToByteArr(header, 0x15E, 2, (crc & 0xFFFF));
+
+        // Now write it all out in one sequential pass
+        FileOutputStream fos = new FileOutputStream(filename);
+        try {
+            writeSegments(segments, this.baseRom, fos.getChannel());
+        } finally {
+            fos.close();
+        }
         closeROM();
     }
 
-    private void copy(RandomAccessFile from, RandomAccessFile to, int bytes) throws IOException {
-        int sizeof_copybuf = Math.min(256 * 1024, bytes);
-        byte[] copybuf = new byte[sizeof_copybuf];
-        while (bytes > 0) {
-            int size2 = (bytes >= sizeof_copybuf) ? sizeof_copybuf : bytes;
-            int read = from.read(copybuf, 0, size2);
-            to.write(copybuf, 0, read);
-            bytes -= read;
+    // Writes the planned segments, which must be in file order. Runs of
+    // in-memory data (and the zero padding between them) go out as one
+    // gathering write, and regions of the base ROM go channel to channel.
+    private void writeSegments(List<SaveSegment> segments, FileChannel source, FileChannel out) throws IOException {
+        List<ByteBuffer> pending = new ArrayList<ByteBuffer>();
+        long position = 0;
+        for (SaveSegment segment : segments) {
+            if (segment.offset < position) {
+                throw new IOException("NDS save layout overlaps at " + segment.offset);
+            }
+            long gap = segment.offset - position;
+            while (gap > 0) {
+                int padding = (int) Math.min(gap, zeroes.length);
+                pending.add(ByteBuffer.wrap(zeroes, 0, padding));
+                gap -= padding;
+            }
+            if (segment.data != null) {
+                pending.add(ByteBuffer.wrap(segment.data));
+            } else {
+                writeGathered(pending, out);
+                long done = 0;
+                while (done < segment.length) {
+                    long moved = source.transferTo(segment.sourceOffset + done, segment.length - done, out);
+                    if (moved <= 0) {
+                        throw new IOException("Unexpected end of ROM while saving");
+                    }
+                    done += moved;
+                }
+            }
+            position = segment.offset + segment.length;
+        }
+        writeGathered(pending, out);
+    }
+
+    private void writeGathered(List<ByteBuffer> pending, FileChannel out) throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        ByteBuffer[] buffers = pending.toArray(new ByteBuffer[pending.size()]);
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= out.write(buffers);
+        }
+        pending.clear();
+    }
+
+    // Part of the ROM being saved: either data or a region of the base ROM.
+    private static class SaveSegment {
+        private final int offset;
+        private final int length;
+        private final byte[] data;
+        private final int sourceOffset;
+
+        private SaveSegment(int offset, byte[] data) {
+            this.offset = offset;
+            this.length = data.length;
+            this.data = data;
+            this.sourceOffset = -1;
+        }
+
+        private SaveSegment(int offset, int sourceOffset, int length) {
+            this.offset = offset;
+            this.length = length;
+            this.data = null;
+            this.sourceOffset = sourceOffset;
         }
-        copybuf = null;
     }
 
     // get rom code for opened rom
@@ -453,6 +487,15 @@ public class NDSRom {
         }
     }
 
+    // read-only view of a file, without copying it; null if it doesn't exist
+    public ByteBuffer getFileView(String filename) {
+        if (files.containsKey(filename)) {
+            return files.get(filename).getContentsView();
+        } else {
+            return null;
+        }
+    }
+
     public byte[] getOverlay(int number) throws IOException {
         if (number >= 0 && number < arm9overlays.length) {
             return arm9overlays[number].getContents();
@@ -472,19 +515,14 @@ public class NDSRom {
     public byte[] getARM9() throws IOException {
         if (!arm9_open) {
             arm9_open = true;
-            this.reopenROM();
-            int arm9_offset = readFromFile(this.baseRom, 0x20, 4);
-            int arm9_size = readFromFile(this.baseRom, 0x2C, 4);
-            byte[] arm9 = new byte[arm9_size];
-            this.baseRom.seek(arm9_offset);
-            this.baseRom.readFully(arm9);
+            int arm9_offset = romBuffer().getInt(0x20);
+            int arm9_size = romBuffer().getInt(0x2C);
+            byte[] arm9 = readBytes(arm9_offset, arm9_size);
             // footer check
-            int nitrocode = readFromFile(this.baseRom, 4);
+            int nitrocode = romBuffer().getInt(arm9_offset + arm9_size);
             if (nitrocode == 0xDEC00621) {
                 // found a footer
-                arm9_footer = new byte[12];
-                writeToByteArr(arm9_footer, 0, 4, 0xDEC00621);
-                this.baseRom.readFully(arm9_footer, 4, 8);
+                arm9_footer = readBytes(arm9_offset + arm9_size, 12);
                 arm9_has_footer = true;
             } else {
                 arm9_has_footer = false;
@@ -537,29 +575,14 @@ public class NDSRom {
             }
 
             // Now actually make the copy or w/e
-            if (writingEnabled) {
-                File arm9file = new File(tmpFolder + "arm9.bin");
-                FileOutputStream fos = new FileOutputStream(arm9file);
-                fos.write(arm9);
-                fos.close();
-                arm9file.deleteOnExit();
-                this.arm9_ramstored = null;
-                return arm9;
-            } else {
-                this.arm9_ramstored = arm9;
-                byte[] newcopy = new byte[arm9.length];
-                System.arraycopy(arm9, 0, newcopy, 0, arm9.length);
-                return newcopy;
-            }
+            this.arm9_ramstored = arm9;
+            byte[] newcopy = new byte[arm9.length];
+            System.arraycopy(arm9, 0, newcopy, 0, arm9.length);
+            return newcopy;
         } else {
-            if (writingEnabled) {
-                byte[] file = FileFunctions.readFileFullyIntoBuffer(tmpFolder + "arm9.bin");
-                return file;
-            } else {
-                byte[] newcopy = new byte[this.arm9_ramstored.length];
-                System.arraycopy(this.arm9_ramstored, 0, newcopy, 0, this.arm9_ramstored.length);
-                return newcopy;
-            }
+            byte[] newcopy = new byte[this.arm9_ramstored.length];
+            System.arraycopy(this.arm9_ramstored, 0, newcopy, 0, this.arm9_ramstored.length);
+            return newcopy;
         }
     }
 
@@ -581,40 +604,35 @@ public class NDSRom {
             getARM9();
         }
         arm9_changed = true;
-        if (writingEnabled) {
-            FileOutputStream fos = new FileOutputStream(new File(tmpFolder + "arm9.bin"));
-            fos.write(arm9);
-            fos.close();
+        if (this.arm9_ramstored.length == arm9.length) {
+            // copy new in
+            System.arraycopy(arm9, 0, this.arm9_ramstored, 0, arm9.length);
         } else {
-            if (this.arm9_ramstored.length == arm9.length) {
-                // copy new in
-                System.arraycopy(arm9, 0, this.arm9_ramstored, 0, arm9.length);
-            } else {
-                // make new array
-                this.arm9_ramstored = null;
-                this.arm9_ramstored = new byte[arm9.length];
-                System.arraycopy(arm9, 0, this.arm9_ramstored, 0, arm9.length);
-            }
+            // make new array
+            this.arm9_ramstored = null;
+            this.arm9_ramstored = new byte[arm9.length];
+            System.arraycopy(arm9, 0, this.arm9_ramstored, 0, arm9.length);
         }
     }
 
     private void firstPassDirectory(int dir, int subTableOffset, int firstFileID, String[] directoryNames,
             Map<Integer, String> filenames, Map<Integer, Integer> fileDirectories) throws IOException {
         // read subtable
-        baseRom.seek(subTableOffset);
+        ByteBuffer subTable = romBuffer().duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        subTable.position(subTableOffset);
         while (true) {
-            int control = baseRom.read();
+            int control = subTable.get() & 0xFF;
             if (control == 0x00) {
                 // done
                 break;
             }
             int namelen = control & 0x7F;
             byte[] rawname = new byte[namelen];
-            baseRom.readFully(rawname);
+            subTable.get(rawname);
             String name = new String(rawname, "US-ASCII");
             if ((control & 0x80) > 0x00) {
                 // sub-directory
-                int subDirectoryID = readFromFile(baseRom, 2);
+                int subDirectoryID = subTable.getShort() & 0xFFFF;
                 directoryNames[subDirectoryID - 0xF000] = name;
             } else {
                 int fileID = firstFileID++;
@@ -626,16 +644,21 @@ public class NDSRom {
 
     // Helper methods to get variable-size ints out of files
 
-    public String getTmpFolder() {
-        return tmpFolder;
-    }
-
-    public RandomAccessFile getBaseRom() {
-        return baseRom;
+    // Copy part of the original ROM onto the heap.
+    public byte[] readBytes(int offset, int size) {
+        byte[] buf = new byte[size];
+        ByteBuffer dup = romBuffer().duplicate();
+        dup.position(offset);
+        dup.get(buf);
+        return buf;
     }
 
-    public boolean isWritingEnabled() {
-        return writingEnabled;
+    // A read-only, little-endian view of part of the original ROM; nothing is copied.
+    public ByteBuffer getRomSlice(int offset, int size) {
+        ByteBuffer dup = romBuffer().duplicate();
+        dup.position(offset);
+        dup.limit(offset + size);
+        return dup.slice().order(ByteOrder.LITTLE_ENDIAN);
     }
 
     public int readFromByteArr(byte[] data, int offset, int size) {
@@ -652,36 +675,4 @@ public class NDSRom {
         }
     }
 
-    public int readFromFile(RandomAccessFile file, int size) throws IOException {
-        return readFromFile(file, -1, size);
-    }
-
-    // use -1 offset to read from current position
-    // useful if you want to read blocks
-    public int readFromFile(RandomAccessFile file, int offset, int size) throws IOException {
-        byte[] buf = new byte[size];
-        if (offset >= 0)
-            file.seek(offset);
-        file.readFully(buf);
-        int result = 0;
-        for (int i = 0; i < size; i++) {
-            result |= (buf[i] & 0xFF) << (i * 8);
-        }
-        return result;
-    }
-
-    public void writeToFile(RandomAccessFile file, int size, int value) throws IOException {
-        writeToFile(file, -1, size, value);
-    }
-
-    public void writeToFile(RandomAccessFile file, int offset, int size, int value) throws IOException {
-        byte[] buf = new byte[size];
-        for (int i = 0; i < size; i++) {
-            buf[i] = (byte) ((value >> (i * 8)) & 0xFF);
-        }
-        if (offset >= 0)
-            file.seek(offset);
-        file.write(buf);
-    }
-
 }
@@ -1,11 +1,6 @@
 package com.dabomstew.pkrandom.newnds;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-
-import com.dabomstew.pkrandom.FileFunctions;
 
 import cuecompressors.BLZCoder;
 
@@ -41,87 +36,53 @@ public class NDSY9Entry {
     public int static_start, static_end;
     public int compressed_size;
     public int compress_flag;
-    public Extracted status = Extracted.NOT;
-    public String extFilename;
+    // decompressed or changed contents; null means read it from the ROM
     public byte[] data;
     private boolean decompressed_data = false;
+    private boolean changed = false;
 
     public NDSY9Entry(NDSRom parent) {
         this.parent = parent;
     }
 
     public byte[] getContents() throws IOException {
-        if (this.status == Extracted.NOT) {
-            // extract file
-            parent.reopenROM();
-            RandomAccessFile rom = parent.getBaseRom();
-            byte[] buf = new byte[this.original_size];
-            rom.seek(this.offset);
-            rom.readFully(buf);
+        if (this.data == null) {
+            byte[] buf = parent.readBytes(this.offset, this.original_size);
             // Compression?
             if (compress_flag != 0 && this.original_size == this.compressed_size && this.compressed_size != 0) {
                 buf = new BLZCoder(null).BLZ_DecodePub(buf, "overlay " + overlay_id);
                 decompressed_data = true;
-            }
-            if (parent.isWritingEnabled()) {
-                // make a file
-                String tmpDir = parent.getTmpFolder();
-                String fullPath = String.format("overlay_%04d", overlay_id);
-                String tmpFilename = fullPath.replaceAll("[^A-Za-z0-9_]+", "");
-                this.extFilename = tmpFilename;
-                File tmpFile = new File(tmpDir + extFilename);
-                FileOutputStream fos = new FileOutputStream(tmpFile);
-                fos.write(buf);
-                fos.close();
-                tmpFile.deleteOnExit();
-                this.status = Extracted.TO_FILE;
-                this.data = null;
-                return buf;
-            } else {
-                this.status = Extracted.TO_RAM;
+                // keep it rather than decompress again next time
                 this.data = buf;
-                byte[] newcopy = new byte[buf.length];
-                System.arraycopy(buf, 0, newcopy, 0, buf.length);
-                return newcopy;
+            } else {
+                return buf;
             }
-        } else if (this.status == Extracted.TO_RAM) {
-            byte[] newcopy = new byte[this.data.length];
-            System.arraycopy(this.data, 0, newcopy, 0, this.data.length);
-            return newcopy;
-        } else {
-            String tmpDir = parent.getTmpFolder();
-            byte[] file = FileFunctions.readFileFullyIntoBuffer(tmpDir + this.extFilename);
-            return file;
         }
+        byte[] newcopy = new byte[this.data.length];
+        System.arraycopy(this.data, 0, newcopy, 0, this.data.length);
+        return newcopy;
     }
 
     public void writeOverride(byte[] data) throws IOException {
-        if (status == Extracted.NOT) {
-            // temp extract
+        if (this.data == null) {
+            // find out whether it's compressed
             getContents();
         }
         size = data.length;
-        if (status == Extracted.TO_FILE) {
-            String tmpDir = parent.getTmpFolder();
-            FileOutputStream fos = new FileOutputStream(new File(tmpDir + this.extFilename));
-            fos.write(data);
-            fos.close();
+        changed = true;
+        if (this.data != null && this.data.length == data.length) {
+            // copy new in
+            System.arraycopy(data, 0, this.data, 0, data.length);
         } else {
-            if (this.data.length == data.length) {
-                // copy new in
-                System.arraycopy(data, 0, this.data, 0, data.length);
-            } else {
-                // make new array
-                this.data = null;
-                this.data = new byte[data.length];
-                System.arraycopy(data, 0, this.data, 0, data.length);
-            }
+            // make new array
+            this.data = new byte[data.length];
+            System.arraycopy(data, 0, this.data, 0, data.length);
         }
     }
 
     // returns null if no override
     public byte[] getOverrideContents() throws IOException {
-        if (status == Extracted.NOT) {
+        if (!changed) {
             return null;
         }
         byte[] buf = getContents();
@@ -133,8 +94,4 @@ public class NDSY9Entry {
         return buf;
     }
 
-    private enum Extracted {
-        NOT, TO_FILE, TO_RAM;
-    }
-
 }
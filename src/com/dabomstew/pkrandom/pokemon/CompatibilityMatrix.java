@@ -0,0 +1,187 @@
+package com.dabomstew.pkrandom.pokemon;
+
+/*----------------------------------------------------------------------------*/
+/*--  CompatibilityMatrix.java - which Pokemon can learn which TMs/HMs      --*/
+/*--                            or move tutors, as packed rows of bits.     --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * TM/HM or move tutor compatibility: one row of bits per Pokemon, one column
+ * per move, with moves numbered from 1 as in the games' own data. Rows are
+ * packed into a single array of longs, so filling in whole ranges of moves
+ * or merging in a set of moves works a word at a time.
+ *
+ * Rows are kept in Pokemon number order, which is the order getPokemon()
+ * returns them in.
+ */
+public class CompatibilityMatrix {
+
+    private final List<Pokemon> pokemon;
+    private final int[] rowOfNumber;
+    private final int moveCount;
+    private final int wordsPerRow;
+    private final long[] words;
+
+    public CompatibilityMatrix(List<Pokemon> pokemon, int moveCount) {
+        List<Pokemon> sorted = new ArrayList<Pokemon>(pokemon);
+        Collections.sort(sorted);
+        this.pokemon = Collections.unmodifiableList(sorted);
+        int highest = sorted.isEmpty() ? 0 : sorted.get(sorted.size() - 1).number;
+        this.rowOfNumber = new int[highest + 1];
+        for (int i = 0; i < rowOfNumber.length; i++) {
+            rowOfNumber[i] = -1;
+        }
+        for (int i = 0; i < sorted.size(); i++) {
+            rowOfNumber[sorted.get(i).number] = i;
+        }
+        this.moveCount = moveCount;
+        // bit 0 of each row is never used
+        this.wordsPerRow = (moveCount >>> 6) + 1;
+        this.words = new long[sorted.size() * wordsPerRow];
+    }
+
+    // For games with no compatibility data of this kind.
+    public static CompatibilityMatrix empty() {
+        return new CompatibilityMatrix(new ArrayList<Pokemon>(), 0);
+    }
+
+    public List<Pokemon> getPokemon() {
+        return pokemon;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public boolean contains(Pokemon pkmn) {
+        return pkmn.number >= 0 && pkmn.number < rowOfNumber.length && rowOfNumber[pkmn.number] >= 0;
+    }
+
+    public boolean get(Pokemon pkmn, int move) {
+        checkMove(move);
+        return (words[rowStart(pkmn) + (move >>> 6)] & (1L << move)) != 0;
+    }
+
+    public void set(Pokemon pkmn, int move, boolean compatible) {
+        checkMove(move);
+        int word = rowStart(pkmn) + (move >>> 6);
+        if (compatible) {
+            words[word] |= 1L << move;
+        } else {
+            words[word] &= ~(1L << move);
+        }
+    }
+
+    /**
+     * count (at most 32) flags starting at firstMove, as the low bits of an
+     * int with firstMove in bit 0. Flags past the last move read as 0.
+     */
+    public int getBits(Pokemon pkmn, int firstMove, int count) {
+        count = clip(firstMove, count);
+        if (count <= 0) {
+            return 0;
+        }
+        int start = rowStart(pkmn) + (firstMove >>> 6);
+        int shift = firstMove & 63;
+        long bits = words[start] >>> shift;
+        if (shift + count > 64) {
+            bits |= words[start + 1] << (64 - shift);
+        }
+        return (int) (bits & ((1L << count) - 1));
+    }
+
+    // Inverse of getBits; flags past the last move are ignored.
+    public void setBits(Pokemon pkmn, int firstMove, int count, int value) {
+        count = clip(firstMove, count);
+        if (count <= 0) {
+            return;
+        }
+        int start = rowStart(pkmn) + (firstMove >>> 6);
+        int shift = firstMove & 63;
+        long mask = (1L << count) - 1;
+        long bits = value & mask;
+        words[start] = (words[start] & ~(mask << shift)) | (bits << shift);
+        if (shift + count > 64) {
+            words[start + 1] = (words[start + 1] & ~(mask >>> (64 - shift))) | (bits >>> (64 - shift));
+        }
+    }
+
+    // Makes every Pokemon compatible with moves firstMove to lastMove.
+    public void fill(int firstMove, int lastMove) {
+        if (firstMove > lastMove) {
+            return;
+        }
+        checkMove(firstMove);
+        checkMove(lastMove);
+        long[] mask = new long[wordsPerRow];
+        for (int word = firstMove >>> 6; word <= lastMove >>> 6; word++) {
+            long bits = -1L;
+            if (word == firstMove >>> 6) {
+                bits &= -1L << (firstMove & 63);
+            }
+            if (word == lastMove >>> 6) {
+                bits &= -1L >>> (63 - (lastMove & 63));
+            }
+            mask[word] = bits;
+        }
+        for (int row = 0; row < words.length; row += wordsPerRow) {
+            for (int word = 0; word < wordsPerRow; word++) {
+                words[row + word] |= mask[word];
+            }
+        }
+    }
+
+    // Makes pkmn compatible with every move in moves (by move index).
+    public void addAll(Pokemon pkmn, BitSet moves) {
+        int start = rowStart(pkmn);
+        for (int move = moves.nextSetBit(1); move >= 0 && move <= moveCount; move = moves.nextSetBit(move + 1)) {
+            words[start + (move >>> 6)] |= 1L << move;
+        }
+    }
+
+    private int rowStart(Pokemon pkmn) {
+        if (!contains(pkmn)) {
+            throw new IllegalArgumentException("No compatibility data for " + pkmn.name);
+        }
+        return rowOfNumber[pkmn.number] * wordsPerRow;
+    }
+
+    private int clip(int firstMove, int count) {
+        if (firstMove < 1 || count > 32) {
+            throw new IndexOutOfBoundsException("Moves " + firstMove + "+" + count + " of " + moveCount);
+        }
+        return Math.min(count, moveCount - firstMove + 1);
+    }
+
+    private void checkMove(int move) {
+        if (move < 1 || move > moveCount) {
+            throw new IndexOutOfBoundsException("Move " + move + " of " + moveCount);
+        }
+    }
+
+}
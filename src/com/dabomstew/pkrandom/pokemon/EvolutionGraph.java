@@ -0,0 +1,236 @@
+package com.dabomstew.pkrandom.pokemon;
+
+/*----------------------------------------------------------------------------*/
+/*--  EvolutionGraph.java - incrementally maintained index over the         --*/
+/*--                        evolutions of a pool of Pokemon, used to check  --*/
+/*--                        cycles and stage limits without graph walks.    --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Tracks the evolutions between a fixed pool of Pokemon as they are added.
+ * For every Pokemon it keeps its stage depth (longest chain of
+ * pre-evolutions), its height (longest chain of evolutions) and its set of
+ * ancestors, so that "would this evolution create a cycle" and "would
+ * this evolution break the stage limit" are answered by lookups.
+ *
+ * Evolutions must be added through the graph so the Pokemon's own
+ * evolutionsFrom/evolutionsTo lists stay in sync with the index.
+ */
+public class EvolutionGraph {
+
+    private final List<Pokemon> pool;
+    private final boolean[] inPool;
+    private final boolean[] needsEvolution;
+    private final int[] depth;
+    private final int[] height;
+    private final int[] pendingHeight;
+    private final BitSet[] ancestors;
+
+    public EvolutionGraph(List<Pokemon> pool) {
+        this.pool = new ArrayList<Pokemon>(pool);
+        int maxNumber = 0;
+        for (Pokemon pk : pool) {
+            maxNumber = Math.max(maxNumber, pk.number);
+        }
+        int size = maxNumber + 1;
+        inPool = new boolean[size];
+        needsEvolution = new boolean[size];
+        depth = new int[size];
+        height = new int[size];
+        pendingHeight = new int[size];
+        ancestors = new BitSet[size];
+        for (Pokemon pk : pool) {
+            inPool[pk.number] = true;
+            ancestors[pk.number] = new BitSet(size);
+        }
+        rebuild();
+    }
+
+    /**
+     * Flag a Pokemon as one that must end up with at least one evolution.
+     * While it has none, it counts as a pending leaf for the stage limit.
+     */
+    public void setNeedsEvolution(Pokemon pk, boolean needs) {
+        needsEvolution[pk.number] = needs;
+        refreshHeightsFrom(pk);
+    }
+
+    // Remove every evolution to or from a Pokemon in the pool.
+    public void clear() {
+        for (Pokemon pk : pool) {
+            pk.evolutionsFrom.clear();
+            pk.evolutionsTo.clear();
+        }
+        rebuild();
+    }
+
+    public void addEvolution(Evolution ev) {
+        int from = ev.from.number;
+        int to = ev.to.number;
+        ev.from.evolutionsFrom.add(ev);
+        ev.to.evolutionsTo.add(ev);
+
+        // Ancestors and stage depth flow down from the new edge
+        BitSet inherited = (BitSet) ancestors[from].clone();
+        inherited.set(from);
+        Queue<Pokemon> toCheck = new LinkedList<Pokemon>();
+        toCheck.add(ev.to);
+        while (!toCheck.isEmpty()) {
+            Pokemon check = toCheck.poll();
+            ancestors[check.number].or(inherited);
+            for (Evolution ev2 : check.evolutionsFrom) {
+                if (inPool[ev2.to.number]) {
+                    toCheck.add(ev2.to);
+                }
+            }
+        }
+        raiseDepth(ev.to, depth[from] + 1);
+
+        // Height and pending leaves flow up from the new edge
+        refreshHeightsFrom(ev.from);
+    }
+
+    // Longest chain of pre-evolutions leading to this Pokemon.
+    public int stageDepth(Pokemon pk) {
+        return depth[pk.number];
+    }
+
+    // Longest chain of evolutions starting from this Pokemon.
+    public int evolutionHeight(Pokemon pk) {
+        return height[pk.number];
+    }
+
+    public boolean isAncestor(Pokemon ancestor, Pokemon pk) {
+        return ancestors[pk.number].get(ancestor.number);
+    }
+
+    // Whether adding an evolution from -> to would create an evolution cycle.
+    public boolean createsCycle(Pokemon from, Pokemon to) {
+        return from == to || isAncestor(to, from);
+    }
+
+    /**
+     * Whether adding an evolution from -> to would leave some Pokemon in the
+     * merged family with stageLimit or more pre-evolutions, or leave a Pokemon
+     * that still needs an evolution with no room for one.
+     *
+     * This assumes every family already respects the limit, which holds as
+     * long as evolutions are only added after passing this check.
+     */
+    public boolean exceedsStageLimit(Pokemon from, Pokemon to, int stageLimit) {
+        int base = depth[from.number] + 1;
+        if (base + height[to.number] >= stageLimit) {
+            return true;
+        }
+        int pending = pendingHeight[to.number];
+        return pending >= 0 && base + pending == stageLimit - 1;
+    }
+
+    private void raiseDepth(Pokemon start, int newDepth) {
+        if (!inPool[start.number] || depth[start.number] >= newDepth) {
+            return;
+        }
+        depth[start.number] = newDepth;
+        for (Evolution ev : start.evolutionsFrom) {
+            raiseDepth(ev.to, newDepth + 1);
+        }
+    }
+
+    private void refreshHeightsFrom(Pokemon start) {
+        Queue<Pokemon> toCheck = new LinkedList<Pokemon>();
+        toCheck.add(start);
+        while (!toCheck.isEmpty()) {
+            Pokemon check = toCheck.poll();
+            int newHeight = 0;
+            int newPending = check.evolutionsFrom.isEmpty() && needsEvolution[check.number] ? 0 : -1;
+            for (Evolution ev : check.evolutionsFrom) {
+                if (!inPool[ev.to.number]) {
+                    continue;
+                }
+                newHeight = Math.max(newHeight, height[ev.to.number] + 1);
+                if (pendingHeight[ev.to.number] >= 0) {
+                    newPending = Math.max(newPending, pendingHeight[ev.to.number] + 1);
+                }
+            }
+            if (newHeight != height[check.number] || newPending != pendingHeight[check.number]
+                    || check == start) {
+                height[check.number] = newHeight;
+                pendingHeight[check.number] = newPending;
+                for (Evolution ev : check.evolutionsTo) {
+                    if (inPool[ev.from.number]) {
+                        toCheck.add(ev.from);
+                    }
+                }
+            }
+        }
+    }
+
+    // Recompute the whole index from the Pokemon's evolution lists.
+    private void rebuild() {
+        for (Pokemon pk : pool) {
+            int num = pk.number;
+            depth[num] = 0;
+            height[num] = 0;
+            pendingHeight[num] = -1;
+            ancestors[num].clear();
+        }
+        for (Pokemon pk : pool) {
+            for (Evolution ev : pk.evolutionsTo) {
+                if (inPool[ev.from.number]) {
+                    ancestors[pk.number].set(ev.from.number);
+                }
+            }
+        }
+        // Close the ancestor sets and depths over the (acyclic) pool graph
+        boolean changed = true;
+        int rounds = 0;
+        while (changed && rounds++ <= pool.size()) {
+            changed = false;
+            for (Pokemon pk : pool) {
+                BitSet anc = ancestors[pk.number];
+                int before = anc.cardinality();
+                for (Evolution ev : pk.evolutionsTo) {
+                    if (inPool[ev.from.number]) {
+                        anc.or(ancestors[ev.from.number]);
+                        if (depth[ev.from.number] + 1 > depth[pk.number]) {
+                            depth[pk.number] = depth[ev.from.number] + 1;
+                            changed = true;
+                        }
+                    }
+                }
+                if (anc.cardinality() != before) {
+                    changed = true;
+                }
+            }
+        }
+        for (Pokemon pk : pool) {
+            refreshHeightsFrom(pk);
+        }
+    }
+
+}
@@ -0,0 +1,223 @@
+package com.dabomstew.pkrandom.pokemon;
+
+/*----------------------------------------------------------------------------*/
+/*--  PokemonPool.java - a set of Pokemon from one game, stored as a bitset --*/
+/*--                     keyed by Pokemon number.                           --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A set of Pokemon drawn from a game's Pokemon list (as returned by
+ * getPokemon(), so index = Pokemon number). Membership is one bit per
+ * Pokemon, so adding/banning a Pokemon is constant time, set algebra works a
+ * word at a time, and copying a pool is a handful of longs rather than a new
+ * list.
+ */
+public class PokemonPool {
+
+    private final List<Pokemon> allPokemon;
+    private final long[] words;
+    private int size;
+
+    // Creates an empty pool over the given game's Pokemon.
+    public PokemonPool(List<Pokemon> allPokemon) {
+        this.allPokemon = allPokemon;
+        this.words = new long[(allPokemon.size() + 63) >>> 6];
+        this.size = 0;
+    }
+
+    public PokemonPool(List<Pokemon> allPokemon, Collection<Pokemon> initial) {
+        this(allPokemon);
+        addAll(initial);
+    }
+
+    private PokemonPool(PokemonPool other) {
+        this.allPokemon = other.allPokemon;
+        this.words = other.words.clone();
+        this.size = other.size;
+    }
+
+    public PokemonPool copy() {
+        return new PokemonPool(this);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(Pokemon pk) {
+        return pk != null && contains(pk.number);
+    }
+
+    public boolean contains(int number) {
+        if (number < 0 || number >= allPokemon.size()) {
+            return false;
+        }
+        return (words[number >>> 6] & (1L << number)) != 0;
+    }
+
+    // Returns true if the pool changed.
+    public boolean add(Pokemon pk) {
+        if (pk == null || pk.number <= 0 || pk.number >= allPokemon.size() || contains(pk.number)) {
+            return false;
+        }
+        words[pk.number >>> 6] |= 1L << pk.number;
+        size++;
+        return true;
+    }
+
+    // Returns true if the pool changed.
+    public boolean remove(Pokemon pk) {
+        if (!contains(pk)) {
+            return false;
+        }
+        words[pk.number >>> 6] &= ~(1L << pk.number);
+        size--;
+        return true;
+    }
+
+    public void addAll(Collection<Pokemon> pks) {
+        for (Pokemon pk : pks) {
+            add(pk);
+        }
+    }
+
+    public void removeAll(Collection<Pokemon> pks) {
+        for (Pokemon pk : pks) {
+            remove(pk);
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < words.length; i++) {
+            words[i] = 0;
+        }
+        size = 0;
+    }
+
+    // this = this | other
+    public void addAll(PokemonPool other) {
+        checkSameGame(other);
+        for (int i = 0; i < words.length; i++) {
+            words[i] |= other.words[i];
+        }
+        recount();
+    }
+
+    // this = this & ~other
+    public void removeAll(PokemonPool other) {
+        checkSameGame(other);
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= ~other.words[i];
+        }
+        recount();
+    }
+
+    // this = this & other
+    public void retainAll(PokemonPool other) {
+        checkSameGame(other);
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= other.words[i];
+        }
+        recount();
+    }
+
+    // Make this pool hold exactly what the other pool holds.
+    public void setTo(PokemonPool other) {
+        checkSameGame(other);
+        System.arraycopy(other.words, 0, words, 0, words.length);
+        size = other.size;
+    }
+
+    // Pick a Pokemon from the pool, all equally likely. Null if empty.
+    public Pokemon random(Random random) {
+        if (size == 0) {
+            return null;
+        }
+        return get(random.nextInt(size));
+    }
+
+    // Pick a Pokemon from the pool and remove it. Null if empty.
+    public Pokemon takeRandom(Random random) {
+        Pokemon picked = random(random);
+        if (picked != null) {
+            remove(picked);
+        }
+        return picked;
+    }
+
+    // The index-th Pokemon in the pool, in order of number.
+    public Pokemon get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        for (int i = 0; i < words.length; i++) {
+            int count = Long.bitCount(words[i]);
+            if (index < count) {
+                long word = words[i];
+                for (int j = 0; j < index; j++) {
+                    word &= word - 1;
+                }
+                return allPokemon.get((i << 6) + Long.numberOfTrailingZeros(word));
+            }
+            index -= count;
+        }
+        // unreachable
+        return null;
+    }
+
+    // The pool's Pokemon, in order of number.
+    public List<Pokemon> toList() {
+        List<Pokemon> list = new ArrayList<Pokemon>(size);
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                list.add(allPokemon.get((i << 6) + Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
+        }
+        return list;
+    }
+
+    private void recount() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        size = count;
+    }
+
+    private void checkSameGame(PokemonPool other) {
+        if (other.words.length != words.length) {
+            throw new IllegalArgumentException("Pokemon pools are from different games");
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.dabomstew.pkrandom.pokemon;
+
+/*----------------------------------------------------------------------------*/
+/*--  PokemonTable.java - a column-per-field snapshot of a game's Pokemon,  --*/
+/*--                      read by the randomizer's hot filters.             --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+
+import java.util.List;
+
+/**
+ * The fields of a game's Pokemon that the randomizer filters and sorts on
+ * (stats, types, abilities, growth curve, legendary status), copied into one
+ * primitive array per field indexed by Pokemon number. Scanning a column
+ * touches a few contiguous cache lines instead of chasing one object per
+ * Pokemon.
+ *
+ * The Pokemon objects stay the real data: they're what gets logged and
+ * written back to the ROM. The table is a snapshot, so whatever changes a
+ * Pokemon's stats, types, abilities or curve must call refresh afterwards.
+ */
+public class PokemonTable {
+
+    private static final Type[] TYPES = Type.values();
+    private static final ExpCurve[] CURVES = ExpCurve.values();
+
+    private final List<Pokemon> allPokemon;
+    private final int[] hp, attack, defense, spatk, spdef, speed, special;
+    private final int[] bstForPowerLevels;
+    // enum ordinals, -1 for none
+    private final byte[] primaryType, secondaryType, growthCurve;
+    private final int[] ability1, ability2, ability3;
+    private final boolean[] legendary;
+
+    // allPokemon as returned by getPokemon(), so index = Pokemon number
+    public PokemonTable(List<Pokemon> allPokemon) {
+        this.allPokemon = allPokemon;
+        int size = allPokemon.size();
+        hp = new int[size];
+        attack = new int[size];
+        defense = new int[size];
+        spatk = new int[size];
+        spdef = new int[size];
+        speed = new int[size];
+        special = new int[size];
+        bstForPowerLevels = new int[size];
+        primaryType = new byte[size];
+        secondaryType = new byte[size];
+        growthCurve = new byte[size];
+        ability1 = new int[size];
+        ability2 = new int[size];
+        ability3 = new int[size];
+        legendary = new boolean[size];
+        refreshAll();
+    }
+
+    // Re-read every Pokemon.
+    public void refreshAll() {
+        for (int i = 0; i < allPokemon.size(); i++) {
+            Pokemon pk = allPokemon.get(i);
+            if (pk == null) {
+                primaryType[i] = secondaryType[i] = growthCurve[i] = -1;
+            } else {
+                refresh(pk);
+            }
+        }
+    }
+
+    // Re-read one Pokemon's row.
+    public void refresh(Pokemon pk) {
+        int n = pk.number;
+        hp[n] = pk.hp;
+        attack[n] = pk.attack;
+        defense[n] = pk.defense;
+        spatk[n] = pk.spatk;
+        spdef[n] = pk.spdef;
+        speed[n] = pk.speed;
+        special[n] = pk.special;
+        bstForPowerLevels[n] = pk.bstForPowerLevels();
+        primaryType[n] = ordinal(pk.primaryType);
+        secondaryType[n] = ordinal(pk.secondaryType);
+        growthCurve[n] = ordinal(pk.growthCurve);
+        ability1[n] = pk.ability1;
+        ability2[n] = pk.ability2;
+        ability3[n] = pk.ability3;
+        legendary[n] = pk.isLegendary();
+    }
+
+    public int size() {
+        return allPokemon.size();
+    }
+
+    public Pokemon pokemon(int number) {
+        return allPokemon.get(number);
+    }
+
+    public int hp(int number) {
+        return hp[number];
+    }
+
+    public int attack(int number) {
+        return attack[number];
+    }
+
+    public int defense(int number) {
+        return defense[number];
+    }
+
+    public int spatk(int number) {
+        return spatk[number];
+    }
+
+    public int spdef(int number) {
+        return spdef[number];
+    }
+
+    public int speed(int number) {
+        return speed[number];
+    }
+
+    public int special(int number) {
+        return special[number];
+    }
+
+    public int bstForPowerLevels(int number) {
+        return bstForPowerLevels[number];
+    }
+
+    public Type primaryType(int number) {
+        return primaryType[number] < 0 ? null : TYPES[primaryType[number]];
+    }
+
+    public Type secondaryType(int number) {
+        return secondaryType[number] < 0 ? null : TYPES[secondaryType[number]];
+    }
+
+    public boolean hasType(int number, Type type) {
+        byte t = ordinal(type);
+        return primaryType[number] == t || secondaryType[number] == t;
+    }
+
+    // slot is 1, 2 or 3
+    public int ability(int number, int slot) {
+        return slot == 1 ? ability1[number] : slot == 2 ? ability2[number] : ability3[number];
+    }
+
+    public boolean hasAbility(int number, int ability) {
+        return ability1[number] == ability || ability2[number] == ability || ability3[number] == ability;
+    }
+
+    public ExpCurve growthCurve(int number) {
+        return growthCurve[number] < 0 ? null : CURVES[growthCurve[number]];
+    }
+
+    public boolean isLegendary(int number) {
+        return legendary[number];
+    }
+
+    private static byte ordinal(Enum<?> value) {
+        return value == null ? -1 : (byte) value.ordinal();
+    }
+
+}
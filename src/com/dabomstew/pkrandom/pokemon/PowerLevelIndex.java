@@ -0,0 +1,344 @@
+package com.dabomstew.pkrandom.pokemon;
+
+/*----------------------------------------------------------------------------*/
+/*--  PowerLevelIndex.java - a pool of Pokemon sorted by power level, used  --*/
+/*--                         to pick "similar strength" replacements.       --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.dabomstew.pkrandom.exceptions.RandomizationException;
+
+/**
+ * A pool of Pokemon sorted once by bstForPowerLevels(), answering "how many /
+ * which Pokemon lie in this BST window" by binary search. Pokemon can be
+ * excluded from (and put back into) the pool in logarithmic time, which is
+ * how callers express bans and already-used Pokemon.
+ *
+ * BSTs are read when the index is built, so build a new index after stats
+ * have been changed.
+ */
+public class PowerLevelIndex {
+
+    private final List<Pokemon> pokemon;
+    private final Pokemon[] sorted;
+    private final int[] sortedBST;
+    private final int[] positionOf;
+    private final boolean[] available;
+    private final int[] tree;
+    private int availableCount;
+
+    public PowerLevelIndex(List<Pokemon> pool) {
+        this(pool, null);
+    }
+
+    // As above, reading BSTs from table (which must be up to date) if given.
+    public PowerLevelIndex(List<Pokemon> pool, PokemonTable table) {
+        int maxNumber = 0;
+        for (Pokemon pk : pool) {
+            maxNumber = Math.max(maxNumber, pk.number);
+        }
+        positionOf = new int[maxNumber + 1];
+
+        // Drop duplicates, keeping the first occurrence
+        List<Pokemon> unique = new ArrayList<Pokemon>(pool.size());
+        for (Pokemon pk : pool) {
+            if (positionOf[pk.number] == 0) {
+                positionOf[pk.number] = 1;
+                unique.add(pk);
+            }
+        }
+        pokemon = Collections.unmodifiableList(unique);
+
+        // Sort (BST, pool position) pairs, so equal BSTs keep the pool's
+        // ordering and each BST is only worked out once
+        int size = unique.size();
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            Pokemon pk = unique.get(i);
+            int bst = table == null ? pk.bstForPowerLevels() : table.bstForPowerLevels(pk.number);
+            keys[i] = ((long) bst << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        sorted = new Pokemon[size];
+        sortedBST = new int[size];
+        available = new boolean[size];
+        tree = new int[size + 1];
+        for (int i = 0; i < positionOf.length; i++) {
+            positionOf[i] = -1;
+        }
+        for (int i = 0; i < size; i++) {
+            sorted[i] = unique.get((int) keys[i]);
+            sortedBST[i] = (int) (keys[i] >> 32);
+            positionOf[sorted[i].number] = i;
+        }
+        includeEverything();
+    }
+
+    // The pool in its original order (not sorted).
+    public List<Pokemon> pokemon() {
+        return pokemon;
+    }
+
+    public int size() {
+        return sorted.length;
+    }
+
+    public int availableCount() {
+        return availableCount;
+    }
+
+    public boolean contains(Pokemon pk) {
+        return pk.number < positionOf.length && positionOf[pk.number] >= 0;
+    }
+
+    public boolean isAvailable(Pokemon pk) {
+        return contains(pk) && available[positionOf[pk.number]];
+    }
+
+    // Returns true if pk was available and is now excluded.
+    public boolean exclude(Pokemon pk) {
+        if (!isAvailable(pk)) {
+            return false;
+        }
+        int pos = positionOf[pk.number];
+        available[pos] = false;
+        availableCount--;
+        update(pos, -1);
+        return true;
+    }
+
+    // Returns true if pk was excluded and is now available again.
+    public boolean include(Pokemon pk) {
+        if (!contains(pk) || isAvailable(pk)) {
+            return false;
+        }
+        int pos = positionOf[pk.number];
+        available[pos] = true;
+        availableCount++;
+        update(pos, 1);
+        return true;
+    }
+
+    // Excludes every given Pokemon, returning those that were available.
+    public List<Pokemon> excludeAll(Collection<Pokemon> pks) {
+        List<Pokemon> excluded = new ArrayList<Pokemon>();
+        for (Pokemon pk : pks) {
+            if (exclude(pk)) {
+                excluded.add(pk);
+            }
+        }
+        return excluded;
+    }
+
+    public void includeAll(Collection<Pokemon> pks) {
+        for (Pokemon pk : pks) {
+            include(pk);
+        }
+    }
+
+    public void includeEverything() {
+        for (int i = 0; i < sorted.length; i++) {
+            available[i] = true;
+        }
+        rebuildTree();
+    }
+
+    // Makes exactly the given Pokemon available, in linear time.
+    public void retainOnly(Collection<Pokemon> pks) {
+        for (int i = 0; i < sorted.length; i++) {
+            available[i] = false;
+        }
+        for (Pokemon pk : pks) {
+            if (contains(pk)) {
+                available[positionOf[pk.number]] = true;
+            }
+        }
+        rebuildTree();
+    }
+
+    public int countInRange(int minBST, int maxBST) {
+        return prefix(upperBound(maxBST)) - prefix(lowerBound(minBST));
+    }
+
+    // The index-th available Pokemon (in BST order) with minBST <= BST <= maxBST.
+    public Pokemon getInRange(int minBST, int maxBST, int index) {
+        return sorted[findKth(prefix(lowerBound(minBST)) + index + 1)];
+    }
+
+    /**
+     * Pick an available Pokemon of similar strength to current: start with
+     * within 10% of its BST and add 5% either direction until there is at
+     * least one candidate, and keep widening (up to expandRounds windows in
+     * total) while there are fewer than 3. Every candidate in the final window
+     * is equally likely.
+     */
+    public Pokemon pickSimilar(Pokemon current, int expandRounds, Random random) {
+        checkAvailable();
+        int currentBST = current.bstForPowerLevels();
+        int minTarget = currentBST - currentBST / 10;
+        int maxTarget = currentBST + currentBST / 10;
+        int step = Math.max(1, currentBST / 20);
+        int canPick = 0;
+        int expandRoundsDone = 0;
+        while (canPick == 0 || (canPick < 3 && expandRoundsDone < expandRounds)) {
+            canPick = countInRange(minTarget, maxTarget);
+            minTarget -= step;
+            maxTarget += step;
+            expandRoundsDone++;
+        }
+        minTarget += step;
+        maxTarget -= step;
+        return getInRange(minTarget, maxTarget, random.nextInt(canPick));
+    }
+
+    /**
+     * As pickSimilar, but every window visited contributes its candidates
+     * again, so Pokemon closer to current's BST are proportionally more likely
+     * to be picked.
+     */
+    public Pokemon pickSimilarFavouringCloser(Pokemon current, int expandRounds, Random random) {
+        checkAvailable();
+        int currentBST = current.bstForPowerLevels();
+        int minTarget = currentBST - currentBST / 10;
+        int maxTarget = currentBST + currentBST / 10;
+        int step = Math.max(1, currentBST / 20);
+        int[] windowMins = new int[expandRounds + 1];
+        int[] windowMaxes = new int[expandRounds + 1];
+        int[] windowCounts = new int[expandRounds + 1];
+        int windows = 0;
+        int canPick = 0;
+        int expandRoundsDone = 0;
+        while (canPick == 0 || (canPick < 3 && expandRoundsDone < expandRounds)) {
+            int count = countInRange(minTarget, maxTarget);
+            if (count > 0) {
+                windowMins[windows] = minTarget;
+                windowMaxes[windows] = maxTarget;
+                windowCounts[windows] = count;
+                windows++;
+                canPick += count;
+            }
+            minTarget -= step;
+            maxTarget += step;
+            expandRoundsDone++;
+        }
+        int picked = random.nextInt(canPick);
+        for (int i = 0; i < windows; i++) {
+            if (picked < windowCounts[i]) {
+                return getInRange(windowMins[i], windowMaxes[i], picked);
+            }
+            picked -= windowCounts[i];
+        }
+        // unreachable
+        return null;
+    }
+
+    private void checkAvailable() {
+        if (availableCount == 0) {
+            throw new RandomizationException("No Pokemon left to pick a similar strength replacement from.");
+        }
+    }
+
+    // First position with BST >= value
+    private int lowerBound(int value) {
+        int lo = 0, hi = sortedBST.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedBST[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // First position with BST > value
+    private int upperBound(int value) {
+        int lo = 0, hi = sortedBST.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedBST[mid] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /* Fenwick tree over availability, by sorted position */
+
+    private void rebuildTree() {
+        int n = sorted.length;
+        availableCount = 0;
+        for (int i = 1; i <= n; i++) {
+            tree[i] = 0;
+        }
+        for (int i = 1; i <= n; i++) {
+            if (available[i - 1]) {
+                tree[i]++;
+                availableCount++;
+            }
+            int parent = i + (i & -i);
+            if (parent <= n) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private void update(int pos, int delta) {
+        for (int i = pos + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // Number of available Pokemon in positions [0, count)
+    private int prefix(int count) {
+        int sum = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    // Position of the k-th (1-based) available Pokemon
+    private int findKth(int k) {
+        int pos = 0;
+        int bit = Integer.highestOneBit(Math.max(1, sorted.length));
+        for (; bit > 0; bit >>= 1) {
+            int next = pos + bit;
+            if (next < tree.length && tree[next] < k) {
+                pos = next;
+                k -= tree[next];
+            }
+        }
+        return pos;
+    }
+
+}
@@ -0,0 +1,207 @@
+package com.dabomstew.pkrandom.pokemon;
+
+/*----------------------------------------------------------------------------*/
+/*--  TypeIndex.java - the active Pokemon pool bucketed by type and by      --*/
+/*--                   type pair, kept in step as types change.             --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The active Pokemon pool split into buckets by type (Pokemon with that type
+ * as either of their types) and by exact typing (the unordered pair of types,
+ * or a single type for mono-typed Pokemon), each with and without
+ * legendaries. Buckets are kept in number order, so a random pick from one
+ * draws the same Pokemon as picking from the equivalent PokemonPool would.
+ *
+ * When types change, refresh moves only the Pokemon whose types differ from
+ * those they were filed under, so one index can serve every phase.
+ */
+public class TypeIndex {
+
+    private static final Type[] TYPES = Type.values();
+
+    private final List<Pokemon> allPokemon;
+    private final PokemonTable table;
+    private final int[] activeNumbers;
+    // types each Pokemon is filed under, as ordinals, -1 for none
+    private final byte[] filedPrimary, filedSecondary;
+
+    // [0] everything, [1] no legendaries
+    private final Bucket[][] byType = new Bucket[2][TYPES.length];
+    private final Bucket[][] byPair = new Bucket[2][TYPES.length * TYPES.length];
+
+    public TypeIndex(List<Pokemon> allPokemon, PokemonPool activePool, PokemonTable table) {
+        this.allPokemon = allPokemon;
+        this.table = table;
+        List<Pokemon> active = activePool.toList();
+        activeNumbers = new int[active.size()];
+        for (int i = 0; i < activeNumbers.length; i++) {
+            activeNumbers[i] = active.get(i).number;
+        }
+        filedPrimary = new byte[allPokemon.size()];
+        filedSecondary = new byte[allPokemon.size()];
+        for (int filter = 0; filter < 2; filter++) {
+            for (int i = 0; i < byType[filter].length; i++) {
+                byType[filter][i] = new Bucket();
+            }
+            for (int i = 0; i < byPair[filter].length; i++) {
+                byPair[filter][i] = new Bucket();
+            }
+        }
+        for (int number : activeNumbers) {
+            filedPrimary[number] = filedSecondary[number] = -1;
+            file(number, ordinal(table.primaryType(number)), ordinal(table.secondaryType(number)), true);
+        }
+    }
+
+    /**
+     * Re-file every Pokemon whose types in the table differ from the ones it
+     * was filed under, and forget power level indexes, since BSTs may have
+     * changed too. Call after refreshing the table.
+     */
+    public void refresh() {
+        for (int number : activeNumbers) {
+            byte primary = ordinal(table.primaryType(number));
+            byte secondary = ordinal(table.secondaryType(number));
+            if (primary != filedPrimary[number] || secondary != filedSecondary[number]) {
+                file(number, filedPrimary[number], filedSecondary[number], false);
+                file(number, primary, secondary, true);
+            }
+        }
+        for (int filter = 0; filter < 2; filter++) {
+            for (Bucket bucket : byType[filter]) {
+                bucket.powerLevels = null;
+            }
+        }
+    }
+
+    // Number of Pokemon with type as either of their types.
+    public int count(Type type, boolean noLegendaries) {
+        return typeBucket(type, noLegendaries).pool.size();
+    }
+
+    // Number of Pokemon typed exactly (primary, secondary), in either order.
+    public int count(Type primary, Type secondary, boolean noLegendaries) {
+        return pairBucket(primary, secondary, noLegendaries).pool.size();
+    }
+
+    // The Pokemon with type as either of their types, in number order.
+    public List<Pokemon> pokemon(Type type, boolean noLegendaries) {
+        return typeBucket(type, noLegendaries).list();
+    }
+
+    // A copy of the pokemon(type, noLegendaries) set, for callers to ban from.
+    public PokemonPool pool(Type type, boolean noLegendaries) {
+        return typeBucket(type, noLegendaries).pool.copy();
+    }
+
+    // A random Pokemon with the given type, or null if there are none.
+    public Pokemon random(Type type, boolean noLegendaries, Random random) {
+        return typeBucket(type, noLegendaries).random(random);
+    }
+
+    // A random Pokemon typed exactly (primary, secondary), or null if none.
+    public Pokemon random(Type primary, Type secondary, boolean noLegendaries, Random random) {
+        return pairBucket(primary, secondary, noLegendaries).random(random);
+    }
+
+    /**
+     * A power level index over pokemon(type, noLegendaries), kept until the
+     * next refresh. It is shared, so callers must include again anything they
+     * exclude from it.
+     */
+    public PowerLevelIndex powerLevels(Type type, boolean noLegendaries) {
+        Bucket bucket = typeBucket(type, noLegendaries);
+        if (bucket.powerLevels == null) {
+            bucket.powerLevels = new PowerLevelIndex(bucket.list(), table);
+        }
+        return bucket.powerLevels;
+    }
+
+    private void file(int number, byte primary, byte secondary, boolean add) {
+        if (primary < 0) {
+            return;
+        }
+        Pokemon pk = allPokemon.get(number);
+        int filters = table.isLegendary(number) ? 1 : 2;
+        for (int filter = 0; filter < filters; filter++) {
+            byType[filter][primary].update(pk, add);
+            if (secondary >= 0 && secondary != primary) {
+                byType[filter][secondary].update(pk, add);
+            }
+            byPair[filter][pairKey(primary, secondary)].update(pk, add);
+        }
+        if (add) {
+            filedPrimary[number] = primary;
+            filedSecondary[number] = secondary;
+        }
+    }
+
+    private Bucket typeBucket(Type type, boolean noLegendaries) {
+        return byType[noLegendaries ? 1 : 0][type.ordinal()];
+    }
+
+    private Bucket pairBucket(Type primary, Type secondary, boolean noLegendaries) {
+        return byPair[noLegendaries ? 1 : 0][pairKey(ordinal(primary), ordinal(secondary))];
+    }
+
+    // Same key whichever way round the types are; mono-typed is (t, t)
+    private static int pairKey(byte primary, byte secondary) {
+        int a = primary, b = secondary < 0 ? primary : secondary;
+        return Math.min(a, b) * TYPES.length + Math.max(a, b);
+    }
+
+    private static byte ordinal(Type type) {
+        return type == null ? -1 : (byte) type.ordinal();
+    }
+
+    private class Bucket {
+        private final PokemonPool pool = new PokemonPool(allPokemon);
+        // pool in number order, rebuilt on the first read after a change
+        private List<Pokemon> sorted;
+        private PowerLevelIndex powerLevels;
+
+        private void update(Pokemon pk, boolean add) {
+            if (add ? pool.add(pk) : pool.remove(pk)) {
+                sorted = null;
+                powerLevels = null;
+            }
+        }
+
+        private List<Pokemon> list() {
+            if (sorted == null) {
+                sorted = Collections.unmodifiableList(pool.toList());
+            }
+            return sorted;
+        }
+
+        private Pokemon random(Random random) {
+            List<Pokemon> list = list();
+            return list.isEmpty() ? null : list.get(random.nextInt(list.size()));
+        }
+    }
+
+}
@@ -25,10 +25,12 @@ package com.dabomstew.pkrandom.romhandlers;
 /*----------------------------------------------------------------------------*/
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 import com.dabomstew.pkrandom.FileFunctions;
+import com.dabomstew.pkrandom.RandomizationLog;
 import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
 import com.dabomstew.pkrandom.newnds.NARCArchive;
 import com.dabomstew.pkrandom.newnds.NDSRom;
@@ -40,8 +42,8 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
     private NDSRom baseRom;
     private String loadedFN;
 
-    public AbstractDSRomHandler(Random random, PrintStream logStream) {
-        super(random, logStream);
+    public AbstractDSRomHandler(Random random, RandomizationLog log) {
+        super(random, log);
     }
 
     protected abstract boolean detectNDSRom(String ndsCode);
@@ -107,7 +109,11 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
     }
 
     public NARCArchive readNARC(String subpath) throws IOException {
-        return new NARCArchive(readFile(subpath));
+        ByteBuffer view = baseRom.getFileView(subpath);
+        if (view == null) {
+            throw new IOException("File not found in ROM: " + subpath);
+        }
+        return new NARCArchive(view);
     }
 
     public void writeNARC(String subpath, NARCArchive narc) throws IOException {
@@ -127,6 +133,17 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
         }
     }
 
+    protected static String getROMCodeFromHeader(byte[] header) {
+        if (header.length < 0x10) {
+            return "";
+        }
+        try {
+            return new String(header, 0x0C, 4, "US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new RandomizerIOException(e);
+        }
+    }
+
     protected int readWord(byte[] data, int offset) {
         return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
     }
@@ -190,21 +207,6 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
         baseRom.writeOverlay(number, data);
     }
 
-    protected void readByteIntoFlags(byte[] data, boolean[] flags, int offsetIntoFlags, int offsetIntoData) {
-        int thisByte = data[offsetIntoData] & 0xFF;
-        for (int i = 0; i < 8 && (i + offsetIntoFlags) < flags.length; i++) {
-            flags[offsetIntoFlags + i] = ((thisByte >> i) & 0x01) == 0x01;
-        }
-    }
-
-    protected byte getByteFromFlags(boolean[] flags, int offsetIntoFlags) {
-        int thisByte = 0;
-        for (int i = 0; i < 8 && (i + offsetIntoFlags) < flags.length; i++) {
-            thisByte |= (flags[offsetIntoFlags + i] ? 1 : 0) << i;
-        }
-        return (byte) thisByte;
-    }
-
     protected int typeTMPaletteNumber(Type t) {
         if (t == null) {
             return 411; // CURSE
@@ -28,10 +28,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.util.Random;
 
 import com.dabomstew.pkrandom.FileFunctions;
+import com.dabomstew.pkrandom.RandomizationLog;
 import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
 
 public abstract class AbstractGBRomHandler extends AbstractRomHandler {
@@ -39,13 +39,20 @@ public abstract class AbstractGBRomHandler extends AbstractRomHandler {
     protected byte[] rom;
     private String loadedFN;
 
-    public AbstractGBRomHandler(Random random, PrintStream logStream) {
-        super(random, logStream);
+    public AbstractGBRomHandler(Random random, RandomizationLog log) {
+        super(random, log);
     }
 
     @Override
     public boolean loadRom(String filename) {
-        byte[] loaded = loadFile(filename);
+        return loadRom(filename, loadFile(filename));
+    }
+
+    /**
+     * Load a ROM whose contents have already been read into memory. The
+     * handler takes ownership of the array and will modify it.
+     */
+    public boolean loadRom(String filename, byte[] loaded) {
         if (!detectRom(loaded)) {
             return false;
         }
@@ -118,21 +125,6 @@ public abstract class AbstractGBRomHandler extends AbstractRomHandler {
         }
     }
 
-    protected void readByteIntoFlags(boolean[] flags, int offsetIntoFlags, int offsetIntoROM) {
-        int thisByte = rom[offsetIntoROM] & 0xFF;
-        for (int i = 0; i < 8 && (i + offsetIntoFlags) < flags.length; i++) {
-            flags[offsetIntoFlags + i] = ((thisByte >> i) & 0x01) == 0x01;
-        }
-    }
-
-    protected byte getByteFromFlags(boolean[] flags, int offsetIntoFlags) {
-        int thisByte = 0;
-        for (int i = 0; i < 8 && (i + offsetIntoFlags) < flags.length; i++) {
-            thisByte |= (flags[offsetIntoFlags + i] ? 1 : 0) << i;
-        }
-        return (byte) thisByte;
-    }
-
     protected int readWord(int offset) {
         return readWord(rom, offset);
     }
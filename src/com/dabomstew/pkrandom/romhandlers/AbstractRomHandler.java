@@ -27,17 +27,15 @@ package com.dabomstew.pkrandom.romhandlers;
 /*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
 /*----------------------------------------------------------------------------*/
 
-import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
 import java.util.Stack;
@@ -46,13 +44,15 @@ import java.util.TreeSet;
 
 import com.dabomstew.pkrandom.CustomNamesSet;
 import com.dabomstew.pkrandom.MiscTweak;
+import com.dabomstew.pkrandom.RandomizationLog;
 import com.dabomstew.pkrandom.RomFunctions;
 import com.dabomstew.pkrandom.constants.GlobalConstants;
 import com.dabomstew.pkrandom.exceptions.RandomizationException;
+import com.dabomstew.pkrandom.pokemon.CompatibilityMatrix;
 import com.dabomstew.pkrandom.pokemon.Encounter;
 import com.dabomstew.pkrandom.pokemon.EncounterSet;
 import com.dabomstew.pkrandom.pokemon.Evolution;
-import com.dabomstew.pkrandom.pokemon.EvolutionType;
+import com.dabomstew.pkrandom.pokemon.EvolutionGraph;
 import com.dabomstew.pkrandom.pokemon.ExpCurve;
 import com.dabomstew.pkrandom.pokemon.GenRestrictions;
 import com.dabomstew.pkrandom.pokemon.IngameTrade;
@@ -61,129 +61,134 @@ import com.dabomstew.pkrandom.pokemon.Move;
 import com.dabomstew.pkrandom.pokemon.MoveCategory;
 import com.dabomstew.pkrandom.pokemon.MoveLearnt;
 import com.dabomstew.pkrandom.pokemon.Pokemon;
+import com.dabomstew.pkrandom.pokemon.PokemonPool;
+import com.dabomstew.pkrandom.pokemon.PokemonTable;
+import com.dabomstew.pkrandom.pokemon.PowerLevelIndex;
 import com.dabomstew.pkrandom.pokemon.Trainer;
 import com.dabomstew.pkrandom.pokemon.TrainerPokemon;
 import com.dabomstew.pkrandom.pokemon.Type;
+import com.dabomstew.pkrandom.pokemon.TypeIndex;
 
 public abstract class AbstractRomHandler implements RomHandler {
 
     private boolean restrictionsSet;
     protected List<Pokemon> mainPokemonList;
     protected List<Pokemon> noLegendaryList, onlyLegendaryList;
+    protected PokemonPool mainPokemonPool;
+    protected PokemonPool noLegendaryPool, onlyLegendaryPool;
     protected final Random random;
-    protected PrintStream logStream;
+    protected RandomizationLog verboseLog;
 
     /* Constructor */
 
-    public AbstractRomHandler(Random random, PrintStream logStream) {
+    public AbstractRomHandler(Random random, RandomizationLog log) {
         this.random = random;
-        this.logStream = logStream;
+        this.verboseLog = log;
     }
 
     /*
      * Public Methods, implemented here for all gens. Unlikely to be overridden.
      */
 
-    public void setLog(PrintStream logStream) {
-        this.logStream = logStream;
+    public void setLog(RandomizationLog log) {
+        this.verboseLog = log;
     }
 
     public void setPokemonPool(GenRestrictions restrictions) {
         restrictionsSet = true;
-        mainPokemonList = this.allPokemonWithoutNull();
-        if (restrictions != null) {
-            mainPokemonList = new ArrayList<Pokemon>();
-            List<Pokemon> allPokemon = this.getPokemon();
-
+        List<Pokemon> allPokemon = this.getPokemon();
+        mainPokemonPool = new PokemonPool(allPokemon);
+        if (restrictions == null) {
+            mainPokemonPool.addAll(allPokemon);
+        } else {
             if (restrictions.allow_gen1) {
-                addPokesFromRange(mainPokemonList, allPokemon, 1, 151);
+                addPokesFromRange(mainPokemonPool, allPokemon, 1, 151);
                 if (restrictions.assoc_g1_g2 && allPokemon.size() > 251) {
-                    addEvosFromRange(mainPokemonList, 1, 151, 152, 251);
+                    addEvosFromRange(mainPokemonPool, 1, 151, 152, 251);
                 }
                 if (restrictions.assoc_g1_g4 && allPokemon.size() > 493) {
-                    addEvosFromRange(mainPokemonList, 1, 151, 387, 493);
+                    addEvosFromRange(mainPokemonPool, 1, 151, 387, 493);
                 }
             }
 
             if (restrictions.allow_gen2 && allPokemon.size() > 251) {
-                addPokesFromRange(mainPokemonList, allPokemon, 152, 251);
+                addPokesFromRange(mainPokemonPool, allPokemon, 152, 251);
                 if (restrictions.assoc_g2_g1) {
-                    addEvosFromRange(mainPokemonList, 152, 251, 1, 151);
+                    addEvosFromRange(mainPokemonPool, 152, 251, 1, 151);
                 }
                 if (restrictions.assoc_g2_g3 && allPokemon.size() > 386) {
-                    addEvosFromRange(mainPokemonList, 152, 251, 252, 386);
+                    addEvosFromRange(mainPokemonPool, 152, 251, 252, 386);
                 }
                 if (restrictions.assoc_g2_g4 && allPokemon.size() > 493) {
-                    addEvosFromRange(mainPokemonList, 152, 251, 387, 493);
+                    addEvosFromRange(mainPokemonPool, 152, 251, 387, 493);
                 }
             }
 
             if (restrictions.allow_gen3 && allPokemon.size() > 386) {
-                addPokesFromRange(mainPokemonList, allPokemon, 252, 386);
+                addPokesFromRange(mainPokemonPool, allPokemon, 252, 386);
                 if (restrictions.assoc_g3_g2) {
-                    addEvosFromRange(mainPokemonList, 252, 386, 152, 251);
+                    addEvosFromRange(mainPokemonPool, 252, 386, 152, 251);
                 }
                 if (restrictions.assoc_g3_g4 && allPokemon.size() > 493) {
-                    addEvosFromRange(mainPokemonList, 252, 386, 387, 493);
+                    addEvosFromRange(mainPokemonPool, 252, 386, 387, 493);
                 }
             }
 
             if (restrictions.allow_gen4 && allPokemon.size() > 493) {
-                addPokesFromRange(mainPokemonList, allPokemon, 387, 493);
+                addPokesFromRange(mainPokemonPool, allPokemon, 387, 493);
                 if (restrictions.assoc_g4_g1) {
-                    addEvosFromRange(mainPokemonList, 387, 493, 1, 151);
+                    addEvosFromRange(mainPokemonPool, 387, 493, 1, 151);
                 }
                 if (restrictions.assoc_g4_g2) {
-                    addEvosFromRange(mainPokemonList, 387, 493, 152, 251);
+                    addEvosFromRange(mainPokemonPool, 387, 493, 152, 251);
                 }
                 if (restrictions.assoc_g4_g3) {
-                    addEvosFromRange(mainPokemonList, 387, 493, 252, 386);
+                    addEvosFromRange(mainPokemonPool, 387, 493, 252, 386);
                 }
             }
 
             if (restrictions.allow_gen5 && allPokemon.size() > 649) {
-                addPokesFromRange(mainPokemonList, allPokemon, 494, 649);
+                addPokesFromRange(mainPokemonPool, allPokemon, 494, 649);
             }
         }
 
-        noLegendaryList = new ArrayList<Pokemon>();
-        onlyLegendaryList = new ArrayList<Pokemon>();
+        noLegendaryPool = new PokemonPool(allPokemon);
+        onlyLegendaryPool = new PokemonPool(allPokemon);
 
+        mainPokemonList = mainPokemonPool.toList();
+        PokemonTable table = pokemonTable();
         for (Pokemon p : mainPokemonList) {
-            if (p.isLegendary()) {
-                onlyLegendaryList.add(p);
+            if (table.isLegendary(p.number)) {
+                onlyLegendaryPool.add(p);
             } else {
-                noLegendaryList.add(p);
+                noLegendaryPool.add(p);
             }
         }
+        noLegendaryList = noLegendaryPool.toList();
+        onlyLegendaryList = onlyLegendaryPool.toList();
+        typeIndex = null;
     }
 
-    private void addPokesFromRange(List<Pokemon> pokemonPool, List<Pokemon> allPokemon, int range_min, int range_max) {
+    private void addPokesFromRange(PokemonPool pokemonPool, List<Pokemon> allPokemon, int range_min, int range_max) {
         for (int i = range_min; i <= range_max; i++) {
-            if (!pokemonPool.contains(allPokemon.get(i))) {
-                pokemonPool.add(allPokemon.get(i));
-            }
+            pokemonPool.add(allPokemon.get(i));
         }
     }
 
-    private void addEvosFromRange(List<Pokemon> pokemonPool, int first_min, int first_max, int second_min,
+    private void addEvosFromRange(PokemonPool pokemonPool, int first_min, int first_max, int second_min,
             int second_max) {
-        Set<Pokemon> newPokemon = new TreeSet<Pokemon>();
-        for (Pokemon pk : pokemonPool) {
+        List<Pokemon> newPokemon = new ArrayList<Pokemon>();
+        for (Pokemon pk : pokemonPool.toList()) {
             if (pk.number >= first_min && pk.number <= first_max) {
                 for (Evolution ev : pk.evolutionsFrom) {
                     if (ev.to.number >= second_min && ev.to.number <= second_max) {
-                        if (!pokemonPool.contains(ev.to) && !newPokemon.contains(ev.to)) {
-                            newPokemon.add(ev.to);
-                        }
+                        newPokemon.add(ev.to);
                     }
                 }
 
                 for (Evolution ev : pk.evolutionsTo) {
                     if (ev.from.number >= second_min && ev.from.number <= second_max) {
-                        if (!pokemonPool.contains(ev.from) && !newPokemon.contains(ev.from)) {
-                            newPokemon.add(ev.from);
-                        }
+                        newPokemon.add(ev.from);
                     }
                 }
             }
@@ -212,6 +217,7 @@ public abstract class AbstractRomHandler implements RomHandler {
                 }
             }
         }
+        refreshPokemonTable();
     }
 
     @Override
@@ -235,7 +241,7 @@ public abstract class AbstractRomHandler implements RomHandler {
                 }
             }
         }
-
+        refreshPokemonTable();
     }
 
     @Override
@@ -305,6 +311,7 @@ public abstract class AbstractRomHandler implements RomHandler {
                 pokes.get(553).defense = 80; // KROOKODILE
             }
         }
+        refreshPokemonTable();
     }
 
     public Pokemon randomPokemon() {
@@ -418,6 +425,7 @@ public abstract class AbstractRomHandler implements RomHandler {
                 }
             }
         }
+        refreshPokemonTable();
     }
 
     @Override
@@ -516,6 +524,7 @@ public abstract class AbstractRomHandler implements RomHandler {
                 }
             }
         }
+        refreshPokemonTable();
     }
 
     private int pickRandomAbility(int maxAbility, List<Integer> bannedAbilities, int... alreadySetAbilities) {
@@ -559,16 +568,16 @@ public abstract class AbstractRomHandler implements RomHandler {
         Collections.shuffle(scrambledEncounters, this.random);
 
         List<Pokemon> banned = this.bannedForWildEncounters();
+        PokemonPool basePool = noLegendaries ? noLegendaryPool : mainPokemonPool;
         // Assume EITHER catch em all OR type themed OR match strength for now
         if (catchEmAll) {
 
-            List<Pokemon> allPokes = noLegendaries ? new ArrayList<Pokemon>(noLegendaryList) : new ArrayList<Pokemon>(
-                    mainPokemonList);
+            PokemonPool allPokes = basePool.copy();
             allPokes.removeAll(banned);
             for (EncounterSet area : scrambledEncounters) {
-                List<Pokemon> pickablePokemon = allPokes;
+                PokemonPool pickablePokemon = allPokes;
                 if (area.bannedPokemon.size() > 0) {
-                    pickablePokemon = new ArrayList<Pokemon>(allPokes);
+                    pickablePokemon = allPokes.copy();
                     pickablePokemon.removeAll(area.bannedPokemon);
                 }
                 for (Encounter enc : area.encounters) {
@@ -576,29 +585,25 @@ public abstract class AbstractRomHandler implements RomHandler {
                     if (pickablePokemon.size() == 0) {
                         // Only banned pokes are left, ignore them and pick
                         // something else for now.
-                        List<Pokemon> tempPickable = noLegendaries ? new ArrayList<Pokemon>(noLegendaryList)
-                                : new ArrayList<Pokemon>(mainPokemonList);
+                        PokemonPool tempPickable = basePool.copy();
                         tempPickable.removeAll(banned);
                         tempPickable.removeAll(area.bannedPokemon);
                         if (tempPickable.size() == 0) {
                             throw new RandomizationException("ERROR: Couldn't replace a wild Pokemon!");
                         }
-                        int picked = this.random.nextInt(tempPickable.size());
-                        enc.pokemon = tempPickable.get(picked);
+                        enc.pokemon = tempPickable.random(this.random);
                     } else {
                         // Picked this Pokemon, remove it
-                        int picked = this.random.nextInt(pickablePokemon.size());
-                        enc.pokemon = pickablePokemon.get(picked);
-                        pickablePokemon.remove(picked);
+                        enc.pokemon = pickablePokemon.takeRandom(this.random);
                         if (allPokes != pickablePokemon) {
                             allPokes.remove(enc.pokemon);
                         }
                         if (allPokes.size() == 0) {
                             // Start again
-                            allPokes.addAll(noLegendaries ? noLegendaryList : mainPokemonList);
+                            allPokes.setTo(basePool);
                             allPokes.removeAll(banned);
                             if (pickablePokemon != allPokes) {
-                                pickablePokemon.addAll(allPokes);
+                                pickablePokemon.setTo(allPokes);
                                 pickablePokemon.removeAll(area.bannedPokemon);
                             }
                         }
@@ -606,20 +611,15 @@ public abstract class AbstractRomHandler implements RomHandler {
                 }
             }
         } else if (typeThemed) {
-            Map<Type, List<Pokemon>> cachedPokeLists = new TreeMap<Type, List<Pokemon>>();
+            PokemonPool bannedPool = new PokemonPool(getPokemon(), banned);
             for (EncounterSet area : scrambledEncounters) {
-                List<Pokemon> possiblePokemon = null;
+                PokemonPool possiblePokemon = null;
                 int iterLoops = 0;
                 while (possiblePokemon == null && iterLoops < 10000) {
                     Type areaTheme = randomType();
-                    if (!cachedPokeLists.containsKey(areaTheme)) {
-                        List<Pokemon> pType = pokemonOfType(areaTheme, noLegendaries);
-                        pType.removeAll(banned);
-                        cachedPokeLists.put(areaTheme, pType);
-                    }
-                    possiblePokemon = cachedPokeLists.get(areaTheme);
+                    possiblePokemon = typeIndex().pool(areaTheme, noLegendaries);
+                    possiblePokemon.removeAll(bannedPool);
                     if (area.bannedPokemon.size() > 0) {
-                        possiblePokemon = new ArrayList<Pokemon>(possiblePokemon);
                         possiblePokemon.removeAll(area.bannedPokemon);
                     }
                     if (possiblePokemon.size() == 0) {
@@ -633,31 +633,35 @@ public abstract class AbstractRomHandler implements RomHandler {
                 }
                 for (Encounter enc : area.encounters) {
                     // Pick a random themed pokemon
-                    enc.pokemon = possiblePokemon.get(this.random.nextInt(possiblePokemon.size()));
+                    enc.pokemon = possiblePokemon.random(this.random);
                 }
             }
         } else if (usePowerLevels) {
-            List<Pokemon> allowedPokes = noLegendaries ? new ArrayList<Pokemon>(noLegendaryList)
-                    : new ArrayList<Pokemon>(mainPokemonList);
-            allowedPokes.removeAll(banned);
+            PowerLevelIndex allowedPokes = new PowerLevelIndex(noLegendaries ? noLegendaryList : mainPokemonList,
+                    pokemonTable());
+            allowedPokes.excludeAll(banned);
             for (EncounterSet area : scrambledEncounters) {
-                List<Pokemon> localAllowed = allowedPokes;
-                if (area.bannedPokemon.size() > 0) {
-                    localAllowed = new ArrayList<Pokemon>(allowedPokes);
-                    localAllowed.removeAll(area.bannedPokemon);
-                }
+                List<Pokemon> areaBanned = allowedPokes.excludeAll(area.bannedPokemon);
                 for (Encounter enc : area.encounters) {
-                    enc.pokemon = pickWildPowerLvlReplacement(localAllowed, enc.pokemon, false, null);
+                    enc.pokemon = allowedPokes.pickSimilar(enc.pokemon, 3, this.random);
                 }
+                allowedPokes.includeAll(areaBanned);
             }
         } else {
             // Entirely random
+            PokemonPool allowedPokes = basePool.copy();
+            allowedPokes.removeAll(banned);
             for (EncounterSet area : scrambledEncounters) {
+                PokemonPool localAllowed = allowedPokes;
+                if (area.bannedPokemon.size() > 0) {
+                    localAllowed = allowedPokes.copy();
+                    localAllowed.removeAll(area.bannedPokemon);
+                }
+                if (localAllowed.size() == 0) {
+                    throw new RandomizationException("ERROR: Couldn't replace a wild Pokemon!");
+                }
                 for (Encounter enc : area.encounters) {
-                    enc.pokemon = noLegendaries ? randomNonLegendaryPokemon() : randomPokemon();
-                    while (banned.contains(enc.pokemon) || area.bannedPokemon.contains(enc.pokemon)) {
-                        enc.pokemon = noLegendaries ? randomNonLegendaryPokemon() : randomPokemon();
-                    }
+                    enc.pokemon = localAllowed.random(this.random);
                 }
             }
         }
@@ -678,48 +682,45 @@ public abstract class AbstractRomHandler implements RomHandler {
         List<EncounterSet> scrambledEncounters = new ArrayList<EncounterSet>(currentEncounters);
         Collections.shuffle(scrambledEncounters, this.random);
 
+        PokemonPool basePool = noLegendaries ? noLegendaryPool : mainPokemonPool;
+
         // Assume EITHER catch em all OR type themed for now
         if (catchEmAll) {
-            List<Pokemon> allPokes = noLegendaries ? new ArrayList<Pokemon>(noLegendaryList) : new ArrayList<Pokemon>(
-                    mainPokemonList);
+            PokemonPool allPokes = basePool.copy();
             allPokes.removeAll(banned);
             for (EncounterSet area : scrambledEncounters) {
                 // Poke-set
                 Set<Pokemon> inArea = pokemonInArea(area);
                 // Build area map using catch em all
                 Map<Pokemon, Pokemon> areaMap = new TreeMap<Pokemon, Pokemon>();
-                List<Pokemon> pickablePokemon = allPokes;
+                PokemonPool pickablePokemon = allPokes;
                 if (area.bannedPokemon.size() > 0) {
-                    pickablePokemon = new ArrayList<Pokemon>(allPokes);
+                    pickablePokemon = allPokes.copy();
                     pickablePokemon.removeAll(area.bannedPokemon);
                 }
                 for (Pokemon areaPk : inArea) {
                     if (pickablePokemon.size() == 0) {
                         // No more pickable pokes left, take a random one
-                        List<Pokemon> tempPickable = noLegendaries ? new ArrayList<Pokemon>(noLegendaryList)
-                                : new ArrayList<Pokemon>(mainPokemonList);
+                        PokemonPool tempPickable = basePool.copy();
                         tempPickable.removeAll(banned);
                         tempPickable.removeAll(area.bannedPokemon);
                         if (tempPickable.size() == 0) {
                             throw new RandomizationException("ERROR: Couldn't replace a wild Pokemon!");
                         }
-                        int picked = this.random.nextInt(tempPickable.size());
-                        Pokemon pickedMN = tempPickable.get(picked);
+                        Pokemon pickedMN = tempPickable.random(this.random);
                         areaMap.put(areaPk, pickedMN);
                     } else {
-                        int picked = this.random.nextInt(allPokes.size());
-                        Pokemon pickedMN = allPokes.get(picked);
+                        Pokemon pickedMN = pickablePokemon.takeRandom(this.random);
                         areaMap.put(areaPk, pickedMN);
-                        pickablePokemon.remove(pickedMN);
                         if (allPokes != pickablePokemon) {
                             allPokes.remove(pickedMN);
                         }
                         if (allPokes.size() == 0) {
                             // Start again
-                            allPokes.addAll(noLegendaries ? noLegendaryList : mainPokemonList);
+                            allPokes.setTo(basePool);
                             allPokes.removeAll(banned);
                             if (pickablePokemon != allPokes) {
-                                pickablePokemon.addAll(allPokes);
+                                pickablePokemon.setTo(allPokes);
                                 pickablePokemon.removeAll(area.bannedPokemon);
                             }
                         }
@@ -731,20 +732,16 @@ public abstract class AbstractRomHandler implements RomHandler {
                 }
             }
         } else if (typeThemed) {
-            Map<Type, List<Pokemon>> cachedPokeLists = new TreeMap<Type, List<Pokemon>>();
+            PokemonPool bannedPool = new PokemonPool(getPokemon(), banned);
             for (EncounterSet area : scrambledEncounters) {
                 // Poke-set
                 Set<Pokemon> inArea = pokemonInArea(area);
-                List<Pokemon> possiblePokemon = null;
+                PokemonPool possiblePokemon = null;
                 int iterLoops = 0;
                 while (possiblePokemon == null && iterLoops < 10000) {
                     Type areaTheme = randomType();
-                    if (!cachedPokeLists.containsKey(areaTheme)) {
-                        List<Pokemon> pType = pokemonOfType(areaTheme, noLegendaries);
-                        pType.removeAll(banned);
-                        cachedPokeLists.put(areaTheme, pType);
-                    }
-                    possiblePokemon = new ArrayList<Pokemon>(cachedPokeLists.get(areaTheme));
+                    possiblePokemon = typeIndex().pool(areaTheme, noLegendaries);
+                    possiblePokemon.removeAll(bannedPool);
                     if (area.bannedPokemon.size() > 0) {
                         possiblePokemon.removeAll(area.bannedPokemon);
                     }
@@ -761,10 +758,8 @@ public abstract class AbstractRomHandler implements RomHandler {
                 // Build area map using type theme.
                 Map<Pokemon, Pokemon> areaMap = new TreeMap<Pokemon, Pokemon>();
                 for (Pokemon areaPk : inArea) {
-                    int picked = this.random.nextInt(possiblePokemon.size());
-                    Pokemon pickedMN = possiblePokemon.get(picked);
+                    Pokemon pickedMN = possiblePokemon.takeRandom(this.random);
                     areaMap.put(areaPk, pickedMN);
-                    possiblePokemon.remove(picked);
                 }
                 for (Encounter enc : area.encounters) {
                     // Apply the map
@@ -772,25 +767,22 @@ public abstract class AbstractRomHandler implements RomHandler {
                 }
             }
         } else if (usePowerLevels) {
-            List<Pokemon> allowedPokes = noLegendaries ? new ArrayList<Pokemon>(noLegendaryList)
-                    : new ArrayList<Pokemon>(mainPokemonList);
-            allowedPokes.removeAll(banned);
+            PowerLevelIndex allowedPokes = new PowerLevelIndex(noLegendaries ? noLegendaryList : mainPokemonList,
+                    pokemonTable());
+            allowedPokes.excludeAll(banned);
             for (EncounterSet area : scrambledEncounters) {
                 // Poke-set
                 Set<Pokemon> inArea = pokemonInArea(area);
                 // Build area map using randoms
                 Map<Pokemon, Pokemon> areaMap = new TreeMap<Pokemon, Pokemon>();
-                List<Pokemon> usedPks = new ArrayList<Pokemon>();
-                List<Pokemon> localAllowed = allowedPokes;
-                if (area.bannedPokemon.size() > 0) {
-                    localAllowed = new ArrayList<Pokemon>(allowedPokes);
-                    localAllowed.removeAll(area.bannedPokemon);
-                }
+                List<Pokemon> usedPks = allowedPokes.excludeAll(area.bannedPokemon);
                 for (Pokemon areaPk : inArea) {
-                    Pokemon picked = pickWildPowerLvlReplacement(localAllowed, areaPk, false, usedPks);
+                    Pokemon picked = allowedPokes.pickSimilar(areaPk, 3, this.random);
                     areaMap.put(areaPk, picked);
+                    allowedPokes.exclude(picked);
                     usedPks.add(picked);
                 }
+                allowedPokes.includeAll(usedPks);
                 for (Encounter enc : area.encounters) {
                     // Apply the map
                     enc.pokemon = areaMap.get(enc.pokemon);
@@ -798,17 +790,20 @@ public abstract class AbstractRomHandler implements RomHandler {
             }
         } else {
             // Entirely random
+            PokemonPool allowedPokes = basePool.copy();
+            allowedPokes.removeAll(banned);
             for (EncounterSet area : scrambledEncounters) {
                 // Poke-set
                 Set<Pokemon> inArea = pokemonInArea(area);
                 // Build area map using randoms
                 Map<Pokemon, Pokemon> areaMap = new TreeMap<Pokemon, Pokemon>();
+                PokemonPool localAllowed = allowedPokes.copy();
+                localAllowed.removeAll(area.bannedPokemon);
+                if (localAllowed.size() < inArea.size()) {
+                    throw new RandomizationException("ERROR: Couldn't replace a wild Pokemon!");
+                }
                 for (Pokemon areaPk : inArea) {
-                    Pokemon picked = noLegendaries ? randomNonLegendaryPokemon() : randomPokemon();
-                    while (areaMap.containsValue(picked) || banned.contains(picked)
-                            || area.bannedPokemon.contains(picked)) {
-                        picked = noLegendaries ? randomNonLegendaryPokemon() : randomPokemon();
-                    }
+                    Pokemon picked = localAllowed.takeRandom(this.random);
                     areaMap.put(areaPk, picked);
                 }
                 for (Encounter enc : area.encounters) {
@@ -837,19 +832,26 @@ public abstract class AbstractRomHandler implements RomHandler {
             remainingLeft.remove(bannedPK);
             remainingRight.remove(bannedPK);
         }
+        PowerLevelIndex remainingRightIndex = usePowerLevels ? new PowerLevelIndex(remainingRight, pokemonTable())
+                : null;
         while (remainingLeft.isEmpty() == false) {
             if (usePowerLevels) {
                 int pickedLeft = this.random.nextInt(remainingLeft.size());
                 Pokemon pickedLeftP = remainingLeft.remove(pickedLeft);
                 Pokemon pickedRightP = null;
-                if (remainingRight.size() == 1) {
+                if (remainingRightIndex.availableCount() == 1) {
                     // pick this (it may or may not be the same poke)
-                    pickedRightP = remainingRight.get(0);
+                    pickedRightP = remainingRightIndex.getInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, 0);
                 } else {
                     // pick on power level with the current one blocked
-                    pickedRightP = pickWildPowerLvlReplacement(remainingRight, pickedLeftP, true, null);
+                    boolean blocked = remainingRightIndex.exclude(pickedLeftP);
+                    pickedRightP = remainingRightIndex.pickSimilar(pickedLeftP, 3, this.random);
+                    if (blocked) {
+                        remainingRightIndex.include(pickedLeftP);
+                    }
                 }
                 remainingRight.remove(pickedRightP);
+                remainingRightIndex.exclude(pickedRightP);
                 translateMap.put(pickedLeftP, pickedRightP);
             } else {
                 int pickedLeft = this.random.nextInt(remainingLeft.size());
@@ -868,6 +870,9 @@ public abstract class AbstractRomHandler implements RomHandler {
                 // restart
                 remainingRight.addAll(noLegendaries ? noLegendaryList : mainPokemonList);
                 remainingRight.removeAll(banned);
+                if (usePowerLevels) {
+                    remainingRightIndex.includeEverything();
+                }
             }
         }
 
@@ -887,18 +892,17 @@ public abstract class AbstractRomHandler implements RomHandler {
                 enc.pokemon = translateMap.get(enc.pokemon);
                 if (area.bannedPokemon.contains(enc.pokemon)) {
                     // Ignore the map and put a random non-banned poke
-                    List<Pokemon> tempPickable = noLegendaries ? new ArrayList<Pokemon>(noLegendaryList)
-                            : new ArrayList<Pokemon>(mainPokemonList);
+                    PokemonPool tempPickable = (noLegendaries ? noLegendaryPool : mainPokemonPool).copy();
                     tempPickable.removeAll(banned);
                     tempPickable.removeAll(area.bannedPokemon);
                     if (tempPickable.size() == 0) {
                         throw new RandomizationException("ERROR: Couldn't replace a wild Pokemon!");
                     }
                     if (usePowerLevels) {
-                        enc.pokemon = pickWildPowerLvlReplacement(tempPickable, enc.pokemon, false, null);
+                        PowerLevelIndex tempIndex = new PowerLevelIndex(tempPickable.toList(), pokemonTable());
+                        enc.pokemon = tempIndex.pickSimilar(enc.pokemon, 3, this.random);
                     } else {
-                        int picked = this.random.nextInt(tempPickable.size());
-                        enc.pokemon = tempPickable.get(picked);
+                        enc.pokemon = tempPickable.random(this.random);
                     }
                 }
             }
@@ -920,9 +924,7 @@ public abstract class AbstractRomHandler implements RomHandler {
         List<Trainer> scrambledTrainers = new ArrayList<Trainer>(currentTrainers);
         Collections.shuffle(scrambledTrainers, this.random);
 
-        cachedReplacementLists = new TreeMap<Type, List<Pokemon>>();
-        cachedAllList = noLegendaries ? new ArrayList<Pokemon>(noLegendaryList) : new ArrayList<Pokemon>(
-                mainPokemonList);
+        initReplacementCaches(noLegendaries);
 
         // Fully random is easy enough - randomize then worry about rival
         // carrying starter at the end
@@ -949,9 +951,7 @@ public abstract class AbstractRomHandler implements RomHandler {
             boolean noEarlyWonderGuard, int levelModifier) {
         checkPokemonRestrictions();
         List<Trainer> currentTrainers = this.getTrainers();
-        cachedReplacementLists = new TreeMap<Type, List<Pokemon>>();
-        cachedAllList = noLegendaries ? new ArrayList<Pokemon>(noLegendaryList) : new ArrayList<Pokemon>(
-                mainPokemonList);
+        initReplacementCaches(noLegendaries);
         typeWeightings = new TreeMap<Type, Integer>();
         totalTypeWeighting = 0;
 
@@ -1588,6 +1588,9 @@ public abstract class AbstractRomHandler implements RomHandler {
 
     @Override
     public void printMoveUpdates() {
+        if (!logEnabled()) {
+            return;
+        }
         log("--Move Updates--");
         List<Move> moves = this.getMoves();
         for (int moveID : moveUpdates.keySet()) {
@@ -1920,35 +1923,35 @@ public abstract class AbstractRomHandler implements RomHandler {
         List<Pokemon> banned = this.bannedForStaticPokemon();
 
         if (legendForLegend) {
-            List<Pokemon> legendariesLeft = new ArrayList<Pokemon>(onlyLegendaryList);
-            List<Pokemon> nonlegsLeft = new ArrayList<Pokemon>(noLegendaryList);
+            PokemonPool legendariesLeft = onlyLegendaryPool.copy();
+            PokemonPool nonlegsLeft = noLegendaryPool.copy();
             legendariesLeft.removeAll(banned);
             nonlegsLeft.removeAll(banned);
             for (int i = 0; i < currentStaticPokemon.size(); i++) {
                 Pokemon old = currentStaticPokemon.get(i);
                 Pokemon newPK;
                 if (old.isLegendary()) {
-                    newPK = legendariesLeft.remove(this.random.nextInt(legendariesLeft.size()));
+                    newPK = takeStaticReplacement(legendariesLeft);
                     if (legendariesLeft.size() == 0) {
-                        legendariesLeft.addAll(onlyLegendaryList);
+                        legendariesLeft.setTo(onlyLegendaryPool);
                         legendariesLeft.removeAll(banned);
                     }
                 } else {
-                    newPK = nonlegsLeft.remove(this.random.nextInt(nonlegsLeft.size()));
+                    newPK = takeStaticReplacement(nonlegsLeft);
                     if (nonlegsLeft.size() == 0) {
-                        nonlegsLeft.addAll(noLegendaryList);
+                        nonlegsLeft.setTo(noLegendaryPool);
                         nonlegsLeft.removeAll(banned);
                     }
                 }
                 replacements.add(newPK);
             }
         } else {
-            List<Pokemon> pokemonLeft = new ArrayList<Pokemon>(mainPokemonList);
+            PokemonPool pokemonLeft = mainPokemonPool.copy();
             pokemonLeft.removeAll(banned);
             for (int i = 0; i < currentStaticPokemon.size(); i++) {
-                Pokemon newPK = pokemonLeft.remove(this.random.nextInt(pokemonLeft.size()));
+                Pokemon newPK = takeStaticReplacement(pokemonLeft);
                 if (pokemonLeft.size() == 0) {
-                    pokemonLeft.addAll(mainPokemonList);
+                    pokemonLeft.setTo(mainPokemonPool);
                     pokemonLeft.removeAll(banned);
                 }
                 replacements.add(newPK);
@@ -1959,6 +1962,13 @@ public abstract class AbstractRomHandler implements RomHandler {
         this.setStaticPokemon(replacements);
     }
 
+    private Pokemon takeStaticReplacement(PokemonPool pokemonLeft) {
+        if (pokemonLeft.size() == 0) {
+            throw new RandomizationException("ERROR: Couldn't replace a static Pokemon!");
+        }
+        return pokemonLeft.takeRandom(this.random);
+    }
+
     @Override
     public void randomizeTMMoves(boolean noBroken, boolean preserveField, double goodDamagingProbability) {
         // Pick some random TM moves.
@@ -2038,33 +2048,10 @@ public abstract class AbstractRomHandler implements RomHandler {
         // Get current compatibility
         // new: increase HM chances if required early on
         List<Integer> requiredEarlyOn = this.getEarlyRequiredHMMoves();
-        Map<Pokemon, boolean[]> compat = this.getTMHMCompatibility();
+        CompatibilityMatrix compat = this.getTMHMCompatibility();
         List<Integer> tmHMs = new ArrayList<Integer>(this.getTMMoves());
         tmHMs.addAll(this.getHMMoves());
-        List<Move> moveData = this.getMoves();
-        for (Map.Entry<Pokemon, boolean[]> compatEntry : compat.entrySet()) {
-            Pokemon pkmn = compatEntry.getKey();
-            boolean[] flags = compatEntry.getValue();
-            for (int i = 1; i <= tmHMs.size(); i++) {
-                int move = tmHMs.get(i - 1);
-                Move mv = moveData.get(move);
-                double probability = 0.5;
-                if (preferSameType) {
-                    if (pkmn.primaryType.equals(mv.type)
-                            || (pkmn.secondaryType != null && pkmn.secondaryType.equals(mv.type))) {
-                        probability = 0.9;
-                    } else if (mv.type != null && mv.type.equals(Type.NORMAL)) {
-                        probability = 0.5;
-                    } else {
-                        probability = 0.25;
-                    }
-                }
-                if (requiredEarlyOn.contains(move)) {
-                    probability = Math.min(1.0, probability * 1.8);
-                }
-                flags[i] = (this.random.nextDouble() < probability);
-            }
-        }
+        randomizeCompatibility(compat, tmHMs, requiredEarlyOn, preferSameType);
 
         // Set the new compatibility
         this.setTMHMCompatibility(compat);
@@ -2072,13 +2059,8 @@ public abstract class AbstractRomHandler implements RomHandler {
 
     @Override
     public void fullTMHMCompatibility() {
-        Map<Pokemon, boolean[]> compat = this.getTMHMCompatibility();
-        for (Map.Entry<Pokemon, boolean[]> compatEntry : compat.entrySet()) {
-            boolean[] flags = compatEntry.getValue();
-            for (int i = 1; i < flags.length; i++) {
-                flags[i] = true;
-            }
-        }
+        CompatibilityMatrix compat = this.getTMHMCompatibility();
+        compat.fill(1, compat.getMoveCount());
         this.setTMHMCompatibility(compat);
     }
 
@@ -2087,31 +2069,15 @@ public abstract class AbstractRomHandler implements RomHandler {
         // if a pokemon learns a move in its moveset
         // and there is a TM of that move, make sure
         // that TM can be learned.
-        Map<Pokemon, boolean[]> compat = this.getTMHMCompatibility();
-        Map<Pokemon, List<MoveLearnt>> movesets = this.getMovesLearnt();
-        List<Integer> tmMoves = this.getTMMoves();
-        for (Pokemon pkmn : compat.keySet()) {
-            List<MoveLearnt> moveset = movesets.get(pkmn);
-            boolean[] pkmnCompat = compat.get(pkmn);
-            for (MoveLearnt ml : moveset) {
-                if (tmMoves.contains(ml.move)) {
-                    int tmIndex = tmMoves.indexOf(ml.move);
-                    pkmnCompat[tmIndex + 1] = true;
-                }
-            }
-        }
+        CompatibilityMatrix compat = this.getTMHMCompatibility();
+        ensureCompatSanity(compat, this.getTMMoves());
         this.setTMHMCompatibility(compat);
     }
 
     @Override
     public void fullHMCompatibility() {
-        Map<Pokemon, boolean[]> compat = this.getTMHMCompatibility();
-        int tmCount = this.getTMCount();
-        for (boolean[] flags : compat.values()) {
-            for (int i = tmCount + 1; i < flags.length; i++) {
-                flags[i] = true;
-            }
-        }
+        CompatibilityMatrix compat = this.getTMHMCompatibility();
+        compat.fill(this.getTMCount() + 1, compat.getMoveCount());
 
         // Set the new compatibility
         this.setTMHMCompatibility(compat);
@@ -2203,29 +2169,9 @@ public abstract class AbstractRomHandler implements RomHandler {
             return;
         }
         // Get current compatibility
-        Map<Pokemon, boolean[]> compat = this.getMoveTutorCompatibility();
+        CompatibilityMatrix compat = this.getMoveTutorCompatibility();
         List<Integer> mts = this.getMoveTutorMoves();
-        List<Move> moveData = this.getMoves();
-        for (Map.Entry<Pokemon, boolean[]> compatEntry : compat.entrySet()) {
-            Pokemon pkmn = compatEntry.getKey();
-            boolean[] flags = compatEntry.getValue();
-            for (int i = 1; i <= mts.size(); i++) {
-                int move = mts.get(i - 1);
-                Move mv = moveData.get(move);
-                double probability = 0.5;
-                if (preferSameType) {
-                    if (pkmn.primaryType.equals(mv.type)
-                            || (pkmn.secondaryType != null && pkmn.secondaryType.equals(mv.type))) {
-                        probability = 0.9;
-                    } else if (mv.type != null && mv.type.equals(Type.NORMAL)) {
-                        probability = 0.5;
-                    } else {
-                        probability = 0.25;
-                    }
-                }
-                flags[i] = (this.random.nextDouble() < probability);
-            }
-        }
+        randomizeCompatibility(compat, mts, new ArrayList<Integer>(), preferSameType);
 
         // Set the new compatibility
         this.setMoveTutorCompatibility(compat);
@@ -2237,13 +2183,8 @@ public abstract class AbstractRomHandler implements RomHandler {
         if (!this.hasMoveTutors()) {
             return;
         }
-        Map<Pokemon, boolean[]> compat = this.getMoveTutorCompatibility();
-        for (Map.Entry<Pokemon, boolean[]> compatEntry : compat.entrySet()) {
-            boolean[] flags = compatEntry.getValue();
-            for (int i = 1; i < flags.length; i++) {
-                flags[i] = true;
-            }
-        }
+        CompatibilityMatrix compat = this.getMoveTutorCompatibility();
+        compat.fill(1, compat.getMoveCount());
         this.setMoveTutorCompatibility(compat);
     }
 
@@ -2255,21 +2196,82 @@ public abstract class AbstractRomHandler implements RomHandler {
         // if a pokemon learns a move in its moveset
         // and there is a tutor of that move, make sure
         // that tutor can be learned.
-        Map<Pokemon, boolean[]> compat = this.getMoveTutorCompatibility();
-        Map<Pokemon, List<MoveLearnt>> movesets = this.getMovesLearnt();
-        List<Integer> mtMoves = this.getMoveTutorMoves();
-        for (Pokemon pkmn : compat.keySet()) {
-            List<MoveLearnt> moveset = movesets.get(pkmn);
-            boolean[] pkmnCompat = compat.get(pkmn);
-            for (MoveLearnt ml : moveset) {
-                if (mtMoves.contains(ml.move)) {
-                    int mtIndex = mtMoves.indexOf(ml.move);
-                    pkmnCompat[mtIndex + 1] = true;
+        CompatibilityMatrix compat = this.getMoveTutorCompatibility();
+        ensureCompatSanity(compat, this.getMoveTutorMoves());
+        this.setMoveTutorCompatibility(compat);
+
+    }
+
+    // moves.get(i - 1) is the move taught by column i of compat. Draws one
+    // random number per Pokemon and column, in that order, so a seed gives
+    // the same result as it always has.
+    private void randomizeCompatibility(CompatibilityMatrix compat, List<Integer> moves, List<Integer> boosted,
+            boolean preferSameType) {
+        List<Move> moveData = this.getMoves();
+        int count = Math.min(moves.size(), compat.getMoveCount());
+        Map<Type, BitSet> columnsOfType = new HashMap<Type, BitSet>();
+        BitSet normalColumns = new BitSet(), boostedColumns = new BitSet();
+        for (int i = 1; i <= count; i++) {
+            Move mv = moveData.get(moves.get(i - 1));
+            if (mv.type != null) {
+                if (!columnsOfType.containsKey(mv.type)) {
+                    columnsOfType.put(mv.type, new BitSet());
                 }
+                columnsOfType.get(mv.type).set(i);
+            }
+            if (mv.type != null && mv.type.equals(Type.NORMAL)) {
+                normalColumns.set(i);
+            }
+            if (boosted.contains(moves.get(i - 1))) {
+                boostedColumns.set(i);
             }
         }
-        this.setMoveTutorCompatibility(compat);
+        BitSet sameType = new BitSet();
+        for (Pokemon pkmn : compat.getPokemon()) {
+            sameType.clear();
+            if (columnsOfType.containsKey(pkmn.primaryType)) {
+                sameType.or(columnsOfType.get(pkmn.primaryType));
+            }
+            if (pkmn.secondaryType != null && columnsOfType.containsKey(pkmn.secondaryType)) {
+                sameType.or(columnsOfType.get(pkmn.secondaryType));
+            }
+            for (int i = 1; i <= count; i++) {
+                double probability = 0.5;
+                if (preferSameType) {
+                    if (sameType.get(i)) {
+                        probability = 0.9;
+                    } else if (normalColumns.get(i)) {
+                        probability = 0.5;
+                    } else {
+                        probability = 0.25;
+                    }
+                }
+                if (boostedColumns.get(i)) {
+                    probability = Math.min(1.0, probability * 1.8);
+                }
+                compat.set(pkmn, i, this.random.nextDouble() < probability);
+            }
+        }
+    }
 
+    private void ensureCompatSanity(CompatibilityMatrix compat, List<Integer> moves) {
+        Map<Pokemon, List<MoveLearnt>> movesets = this.getMovesLearnt();
+        // first column teaching each move
+        Map<Integer, Integer> columnOfMove = new HashMap<Integer, Integer>();
+        for (int i = moves.size(); i >= 1; i--) {
+            columnOfMove.put(moves.get(i - 1), i);
+        }
+        BitSet learnt = new BitSet();
+        for (Pokemon pkmn : compat.getPokemon()) {
+            learnt.clear();
+            for (MoveLearnt ml : movesets.get(pkmn)) {
+                Integer column = columnOfMove.get(ml.move);
+                if (column != null) {
+                    learnt.set(column);
+                }
+            }
+            compat.addAll(pkmn, learnt);
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -2764,12 +2766,15 @@ public abstract class AbstractRomHandler implements RomHandler {
             }
         }
         // Log changes now that we're done (to avoid repeats)
-        log("--Condensed Level Evolutions--");
-        for (Evolution evol : changedEvos) {
-            log(String.format("%s now evolves into %s at minimum level %d", evol.from.name, evol.to.name,
-                    evol.extraInfo));
+        if (logEnabled()) {
+            log("--Condensed Level Evolutions--");
+            for (Evolution evol : changedEvos) {
+                verboseLog.printf("%s now evolves into %s at minimum level %d", evol.from.name, evol.to.name,
+                        evol.extraInfo);
+                logBlankLine();
+            }
+            logBlankLine();
         }
-        logBlankLine();
 
     }
 
@@ -2798,14 +2803,16 @@ public abstract class AbstractRomHandler implements RomHandler {
         }
 
         List<Pokemon> replacements = new ArrayList<Pokemon>();
+        EvolutionGraph evoGraph = new EvolutionGraph(pokemonPool);
+        PowerLevelIndex evoPowerLevels = similarStrength ? new PowerLevelIndex(mainPokemonList, pokemonTable()) : null;
 
         int loops = 0;
         while (loops < 1) {
             // Setup for this loop.
             boolean hadError = false;
+            evoGraph.clear();
             for (Pokemon pk : pokemonPool) {
-                pk.evolutionsFrom.clear();
-                pk.evolutionsTo.clear();
+                evoGraph.setNeedsEvolution(pk, originalEvos.get(pk).size() > 0);
             }
             newEvoPairs.clear();
 
@@ -2843,34 +2850,12 @@ public abstract class AbstractRomHandler implements RomHandler {
                         }
 
                         // Prevent evolution that causes cycle (mandatory)
-                        if (evoCycleCheck(fromPK, pk)) {
+                        if (evoGraph.createsCycle(fromPK, pk)) {
                             continue;
                         }
 
                         // Prevent evolution that exceeds stage limit
-                        Evolution tempEvo = new Evolution(fromPK, pk, false, EvolutionType.NONE, 0);
-                        fromPK.evolutionsFrom.add(tempEvo);
-                        pk.evolutionsTo.add(tempEvo);
-                        boolean exceededLimit = false;
-
-                        Set<Pokemon> related = relatedPokemon(fromPK);
-
-                        for (Pokemon pk2 : related) {
-                            int numPreEvos = numPreEvolutions(pk2, stageLimit);
-                            if (numPreEvos >= stageLimit) {
-                                exceededLimit = true;
-                                break;
-                            } else if (numPreEvos == stageLimit - 1 && pk2.evolutionsFrom.size() == 0
-                                    && originalEvos.get(pk2).size() > 0) {
-                                exceededLimit = true;
-                                break;
-                            }
-                        }
-
-                        fromPK.evolutionsFrom.remove(tempEvo);
-                        pk.evolutionsTo.remove(tempEvo);
-
-                        if (exceededLimit) {
+                        if (evoGraph.exceedsStageLimit(fromPK, pk, stageLimit)) {
                             continue;
                         }
 
@@ -2910,15 +2895,15 @@ public abstract class AbstractRomHandler implements RomHandler {
                         // Foregone conclusion.
                         picked = replacements.get(0);
                     } else if (similarStrength) {
-                        picked = pickEvoPowerLvlReplacement(replacements, ev.to);
+                        evoPowerLevels.retainOnly(replacements);
+                        picked = evoPowerLevels.pickSimilar(ev.to, 3, this.random);
                     } else {
                         picked = replacements.get(this.random.nextInt(replacements.size()));
                     }
 
                     // Step 4: add it to the new evos pool
                     Evolution newEvo = new Evolution(fromPK, picked, ev.carryStats, ev.type, ev.extraInfo);
-                    fromPK.evolutionsFrom.add(newEvo);
-                    picked.evolutionsTo.add(newEvo);
+                    evoGraph.addEvolution(newEvo);
                     newEvoPairs.add(new EvolutionPair(fromPK, picked));
                 }
 
@@ -2962,6 +2947,7 @@ public abstract class AbstractRomHandler implements RomHandler {
             }
             pkmn.growthCurve = pkmn.isLegendary() ? ExpCurve.SLOW : ExpCurve.MEDIUM_FAST;
         }
+        refreshPokemonTable();
     }
 
     /* Private methods/structs used internally by the above methods */
@@ -3008,27 +2994,6 @@ public abstract class AbstractRomHandler implements RomHandler {
         }
     }
 
-    private Pokemon pickEvoPowerLvlReplacement(List<Pokemon> pokemonPool, Pokemon current) {
-        // start with within 10% and add 5% either direction till we find
-        // something
-        int currentBST = current.bstForPowerLevels();
-        int minTarget = currentBST - currentBST / 10;
-        int maxTarget = currentBST + currentBST / 10;
-        List<Pokemon> canPick = new ArrayList<Pokemon>();
-        int expandRounds = 0;
-        while (canPick.isEmpty() || (canPick.size() < 3 && expandRounds < 3)) {
-            for (Pokemon pk : pokemonPool) {
-                if (pk.bstForPowerLevels() >= minTarget && pk.bstForPowerLevels() <= maxTarget && !canPick.contains(pk)) {
-                    canPick.add(pk);
-                }
-            }
-            minTarget -= currentBST / 20;
-            maxTarget += currentBST / 20;
-            expandRounds++;
-        }
-        return canPick.get(this.random.nextInt(canPick.size()));
-    }
-
     private static class EvolutionPair {
         private Pokemon from;
         private Pokemon to;
@@ -3070,41 +3035,6 @@ public abstract class AbstractRomHandler implements RomHandler {
         }
     }
 
-    /**
-     * Check whether adding an evolution from one Pokemon to another will cause
-     * an evolution cycle.
-     * 
-     * @param from
-     * @param to
-     * @param newEvos
-     * @return
-     */
-    private boolean evoCycleCheck(Pokemon from, Pokemon to) {
-        Evolution tempEvo = new Evolution(from, to, false, EvolutionType.NONE, 0);
-        from.evolutionsFrom.add(tempEvo);
-        Set<Pokemon> visited = new HashSet<Pokemon>();
-        Set<Pokemon> recStack = new HashSet<Pokemon>();
-        boolean recur = isCyclic(from, visited, recStack);
-        from.evolutionsFrom.remove(tempEvo);
-        return recur;
-    }
-
-    private boolean isCyclic(Pokemon pk, Set<Pokemon> visited, Set<Pokemon> recStack) {
-        if (!visited.contains(pk)) {
-            visited.add(pk);
-            recStack.add(pk);
-            for (Evolution ev : pk.evolutionsFrom) {
-                if (!visited.contains(ev.to) && isCyclic(ev.to, visited, recStack)) {
-                    return true;
-                } else if (recStack.contains(ev.to)) {
-                    return true;
-                }
-            }
-        }
-        recStack.remove(pk);
-        return false;
-    }
-
     private interface BasePokemonAction {
         public void applyTo(Pokemon pk);
     }
@@ -3176,16 +3106,35 @@ public abstract class AbstractRomHandler implements RomHandler {
         return false;
     }
 
-    private List<Pokemon> pokemonOfType(Type type, boolean noLegendaries) {
-        List<Pokemon> typedPokes = new ArrayList<Pokemon>();
-        for (Pokemon pk : mainPokemonList) {
-            if (pk != null && (!noLegendaries || !pk.isLegendary())) {
-                if (pk.primaryType == type || pk.secondaryType == type) {
-                    typedPokes.add(pk);
-                }
-            }
+    private PokemonTable pokemonTable;
+    private TypeIndex typeIndex;
+
+    // Columnar copy of getPokemon(), built on first use. Every method here
+    // that changes stats, types, abilities or curves refreshes it.
+    protected PokemonTable pokemonTable() {
+        if (pokemonTable == null) {
+            pokemonTable = new PokemonTable(this.getPokemon());
+        }
+        return pokemonTable;
+    }
+
+    // The active pool by type, built on first use and kept up to date from
+    // the table, so it stays valid from one phase to the next.
+    protected TypeIndex typeIndex() {
+        checkPokemonRestrictions();
+        if (typeIndex == null) {
+            typeIndex = new TypeIndex(this.getPokemon(), mainPokemonPool, pokemonTable());
+        }
+        return typeIndex;
+    }
+
+    private void refreshPokemonTable() {
+        if (pokemonTable != null) {
+            pokemonTable.refreshAll();
+        }
+        if (typeIndex != null) {
+            typeIndex.refresh();
         }
-        return typedPokes;
     }
 
     private List<Pokemon> allPokemonWithoutNull() {
@@ -3210,7 +3159,7 @@ public abstract class AbstractRomHandler implements RomHandler {
             // Determine weightings
             for (Type t : Type.values()) {
                 if (typeInGame(t)) {
-                    int pkWithTyping = pokemonOfType(t, noLegendaries).size();
+                    int pkWithTyping = typeIndex().count(t, noLegendaries);
                     typeWeightings.put(t, pkWithTyping);
                     totalTypeWeighting += pkWithTyping;
                 }
@@ -3407,27 +3356,6 @@ public abstract class AbstractRomHandler implements RomHandler {
 
     }
 
-    // Return the max depth of pre-evolutions a Pokemon has
-    private int numPreEvolutions(Pokemon pk, int maxInterested) {
-        return numPreEvolutions(pk, 0, maxInterested);
-    }
-
-    private int numPreEvolutions(Pokemon pk, int depth, int maxInterested) {
-        if (pk.evolutionsTo.size() == 0) {
-            return 0;
-        } else {
-            if (depth == maxInterested - 1) {
-                return 1;
-            } else {
-                int maxPreEvos = 0;
-                for (Evolution ev : pk.evolutionsTo) {
-                    maxPreEvos = Math.max(maxPreEvos, numPreEvolutions(ev.from, depth + 1, maxInterested) + 1);
-                }
-                return maxPreEvos;
-            }
-        }
-    }
-
     private int numEvolutions(Pokemon pk, int maxInterested) {
         return numEvolutions(pk, 0, maxInterested);
     }
@@ -3480,103 +3408,52 @@ public abstract class AbstractRomHandler implements RomHandler {
         return pokemon;
     }
 
-    private Set<Pokemon> relatedPokemon(Pokemon original) {
-        Set<Pokemon> results = new HashSet<Pokemon>();
-        results.add(original);
-        Queue<Pokemon> toCheck = new LinkedList<Pokemon>();
-        toCheck.add(original);
-        while (!toCheck.isEmpty()) {
-            Pokemon check = toCheck.poll();
-            for (Evolution ev : check.evolutionsFrom) {
-                if (!results.contains(ev.to)) {
-                    results.add(ev.to);
-                    toCheck.add(ev.to);
-                }
-            }
-            for (Evolution ev : check.evolutionsTo) {
-                if (!results.contains(ev.from)) {
-                    results.add(ev.from);
-                    toCheck.add(ev.from);
-                }
+    private PowerLevelIndex cachedAllIndex;
+    private List<Pokemon> cachedWonderGuardPokes;
+
+    private void initReplacementCaches(boolean noLegendaries) {
+        PokemonTable table = pokemonTable();
+        cachedAllIndex = new PowerLevelIndex(noLegendaries ? noLegendaryList : mainPokemonList, table);
+        cachedWonderGuardPokes = new ArrayList<Pokemon>();
+        for (Pokemon pk : cachedAllIndex.pokemon()) {
+            if (table.hasAbility(pk.number, GlobalConstants.WONDER_GUARD_INDEX)) {
+                cachedWonderGuardPokes.add(pk);
             }
         }
-        return results;
     }
 
-    private Map<Type, List<Pokemon>> cachedReplacementLists;
-    private List<Pokemon> cachedAllList;
-
     private Pokemon pickReplacement(Pokemon current, boolean usePowerLevels, Type type, boolean noLegendaries,
             boolean wonderGuardAllowed) {
-        List<Pokemon> pickFrom = cachedAllList;
+        PowerLevelIndex pickFrom = cachedAllIndex;
         if (type != null) {
-            if (!cachedReplacementLists.containsKey(type)) {
-                cachedReplacementLists.put(type, pokemonOfType(type, noLegendaries));
-            }
-            pickFrom = cachedReplacementLists.get(type);
+            pickFrom = typeIndex().powerLevels(type, noLegendaries);
         }
 
         if (usePowerLevels) {
             // start with within 10% and add 5% either direction till we find
-            // something
-            int currentBST = current.bstForPowerLevels();
-            int minTarget = currentBST - currentBST / 10;
-            int maxTarget = currentBST + currentBST / 10;
-            List<Pokemon> canPick = new ArrayList<Pokemon>();
-            int expandRounds = 0;
-            while (canPick.isEmpty() || (canPick.size() < 3 && expandRounds < 2)) {
-                for (Pokemon pk : pickFrom) {
-                    if (pk.bstForPowerLevels() >= minTarget
-                            && pk.bstForPowerLevels() <= maxTarget
-                            && (wonderGuardAllowed || (pk.ability1 != GlobalConstants.WONDER_GUARD_INDEX
-                                    && pk.ability2 != GlobalConstants.WONDER_GUARD_INDEX && pk.ability3 != GlobalConstants.WONDER_GUARD_INDEX))) {
-                        canPick.add(pk);
-                    }
-                }
-                minTarget -= currentBST / 20;
-                maxTarget += currentBST / 20;
-                expandRounds++;
+            // something, favouring the closest matches
+            List<Pokemon> blocked = wonderGuardAllowed ? null : pickFrom.excludeAll(cachedWonderGuardPokes);
+            Pokemon picked = pickFrom.pickSimilarFavouringCloser(current, 2, this.random);
+            if (blocked != null) {
+                pickFrom.includeAll(blocked);
             }
-            return canPick.get(this.random.nextInt(canPick.size()));
+            return picked;
         } else {
+            List<Pokemon> pickList = pickFrom.pokemon();
             if (wonderGuardAllowed) {
-                return pickFrom.get(this.random.nextInt(pickFrom.size()));
+                return pickList.get(this.random.nextInt(pickList.size()));
             } else {
-                Pokemon pk = pickFrom.get(this.random.nextInt(pickFrom.size()));
+                Pokemon pk = pickList.get(this.random.nextInt(pickList.size()));
                 while (pk.ability1 == GlobalConstants.WONDER_GUARD_INDEX
                         || pk.ability2 == GlobalConstants.WONDER_GUARD_INDEX
                         || pk.ability3 == GlobalConstants.WONDER_GUARD_INDEX) {
-                    pk = pickFrom.get(this.random.nextInt(pickFrom.size()));
+                    pk = pickList.get(this.random.nextInt(pickList.size()));
                 }
                 return pk;
             }
         }
     }
 
-    private Pokemon pickWildPowerLvlReplacement(List<Pokemon> pokemonPool, Pokemon current, boolean banSamePokemon,
-            List<Pokemon> usedUp) {
-        // start with within 10% and add 5% either direction till we find
-        // something
-        int currentBST = current.bstForPowerLevels();
-        int minTarget = currentBST - currentBST / 10;
-        int maxTarget = currentBST + currentBST / 10;
-        List<Pokemon> canPick = new ArrayList<Pokemon>();
-        int expandRounds = 0;
-        while (canPick.isEmpty() || (canPick.size() < 3 && expandRounds < 3)) {
-            for (Pokemon pk : pokemonPool) {
-                if (pk.bstForPowerLevels() >= minTarget && pk.bstForPowerLevels() <= maxTarget
-                        && (!banSamePokemon || pk != current) && (usedUp == null || !usedUp.contains(pk))
-                        && !canPick.contains(pk)) {
-                    canPick.add(pk);
-                }
-            }
-            minTarget -= currentBST / 20;
-            maxTarget += currentBST / 20;
-            expandRounds++;
-        }
-        return canPick.get(this.random.nextInt(canPick.size()));
-    }
-
     /* Helper methods used by subclasses and/or this class */
 
     protected void checkPokemonRestrictions() {
@@ -3596,43 +3473,49 @@ public abstract class AbstractRomHandler implements RomHandler {
 
     }
 
+    // Lets callers skip building log text nobody will see
+    protected boolean logEnabled() {
+        return verboseLog != null && verboseLog.isEnabled();
+    }
+
     protected void log(String log) {
-        if (logStream != null) {
-            logStream.println(log);
+        if (verboseLog != null) {
+            verboseLog.println(log);
         }
     }
 
     protected void logBlankLine() {
-        if (logStream != null) {
-            logStream.println();
+        if (verboseLog != null) {
+            verboseLog.println();
         }
     }
 
     protected void logEvoChangeLevel(String pkFrom, String pkTo, int level) {
-        if (logStream != null) {
-            logStream.printf("Made %s evolve into %s at level %d", pkFrom, pkTo, level);
-            logStream.println();
+        if (verboseLog != null) {
+            verboseLog.printf("Made %s evolve into %s at level %d", pkFrom, pkTo, level);
+            verboseLog.println();
         }
     }
 
     protected void logEvoChangeLevelWithItem(String pkFrom, String pkTo, String itemName) {
-        if (logStream != null) {
-            logStream.printf("Made %s evolve into %s by leveling up holding %s", pkFrom, pkTo, itemName);
-            logStream.println();
+        if (verboseLog != null) {
+            verboseLog.printf("Made %s evolve into %s by leveling up holding %s", pkFrom, pkTo, itemName);
+            verboseLog.println();
         }
     }
 
     protected void logEvoChangeStone(String pkFrom, String pkTo, String itemName) {
-        if (logStream != null) {
-            logStream.printf("Made %s evolve into %s using a %s", pkFrom, pkTo, itemName);
-            logStream.println();
+        if (verboseLog != null) {
+            verboseLog.printf("Made %s evolve into %s using a %s", pkFrom, pkTo, itemName);
+            verboseLog.println();
         }
     }
 
     protected void logEvoChangeLevelWithPkmn(String pkFrom, String pkTo, String otherRequired) {
-        if (logStream != null) {
-            logStream.printf("Made %s evolve into %s by leveling up with %s in the party", pkFrom, pkTo, otherRequired);
-            logStream.println();
+        if (verboseLog != null) {
+            verboseLog.printf("Made %s evolve into %s by leveling up with %s in the party", pkFrom, pkTo,
+                    otherRequired);
+            verboseLog.println();
         }
     }
 
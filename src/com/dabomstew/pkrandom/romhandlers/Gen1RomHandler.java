@@ -26,9 +26,7 @@ package com.dabomstew.pkrandom.romhandlers;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -37,17 +35,18 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Scanner;
 import java.util.TreeMap;
 
 import com.dabomstew.pkrandom.FileFunctions;
 import com.dabomstew.pkrandom.GFXFunctions;
 import com.dabomstew.pkrandom.MiscTweak;
+import com.dabomstew.pkrandom.RandomizationLog;
 import com.dabomstew.pkrandom.constants.GBConstants;
 import com.dabomstew.pkrandom.constants.Gen1Constants;
 import com.dabomstew.pkrandom.constants.GlobalConstants;
 import com.dabomstew.pkrandom.exceptions.RandomizationException;
 import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
+import com.dabomstew.pkrandom.pokemon.CompatibilityMatrix;
 import com.dabomstew.pkrandom.pokemon.Encounter;
 import com.dabomstew.pkrandom.pokemon.EncounterSet;
 import com.dabomstew.pkrandom.pokemon.Evolution;
@@ -68,8 +67,8 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
     public static class Factory extends RomHandler.Factory {
 
         @Override
-        public Gen1RomHandler create(Random random, PrintStream logStream) {
-            return new Gen1RomHandler(random, logStream);
+        public Gen1RomHandler create(Random random, RandomizationLog log) {
+            return new Gen1RomHandler(random, log);
         }
 
         public boolean isLoadable(String filename) {
@@ -77,12 +76,16 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
             if (fileLength > 8 * 1024 * 1024) {
                 return false;
             }
-            byte[] loaded = loadFilePartial(filename, 0x1000);
-            if (loaded.length == 0) {
+            return isLoadable(loadFilePartial(filename, 0x1000), fileLength);
+        }
+
+        @Override
+        public boolean isLoadable(byte[] fileStart, long fileLength) {
+            if (fileLength > 8 * 1024 * 1024 || fileStart.length == 0) {
                 // nope
                 return false;
             }
-            return detectRomInner(loaded, (int) fileLength);
+            return detectRomInner(fileStart, (int) fileLength);
         }
     }
 
@@ -90,8 +93,8 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
         super(random, null);
     }
 
-    public Gen1RomHandler(Random random, PrintStream logStream) {
-        super(random, logStream);
+    public Gen1RomHandler(Random random, RandomizationLog log) {
+        super(random, log);
     }
 
     // Important RBY Data Structures
@@ -139,19 +142,19 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
         private Map<Integer, Type> extraTypeLookup = new HashMap<Integer, Type>();
         private Map<Type, Integer> extraTypeReverse = new HashMap<Type, Integer>();
 
+        // Read-only: entries are shared by every handler for the same game
         private int getValue(String key) {
-            if (!entries.containsKey(key)) {
-                entries.put(key, 0);
-            }
-            return entries.get(key);
+            return entries.containsKey(key) ? entries.get(key) : 0;
         }
     }
 
-    private static List<RomEntry> roms;
-
-    static {
-        loadROMInfo();
-    }
+    private static final RomInfoIndex<RomEntry> romInfo = new RomInfoIndex<RomEntry>("gen1_offsets.ini",
+            new RomInfoIndex.Decoder<RomEntry>() {
+                @Override
+                public RomEntry decode(RomInfoIndex.Section section) {
+                    return decodeRomEntry(section);
+                }
+            });
 
     private static class GameCornerPokemon {
         private int[] offsets;
@@ -167,170 +170,128 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
         private String template;
     }
 
-    private static void loadROMInfo() {
-        roms = new ArrayList<RomEntry>();
-        RomEntry current = null;
-        try {
-            Scanner sc = new Scanner(FileFunctions.openConfig("gen1_offsets.ini"), "UTF-8");
-            while (sc.hasNextLine()) {
-                String q = sc.nextLine().trim();
-                if (q.contains("//")) {
-                    q = q.substring(0, q.indexOf("//")).trim();
+    private static RomEntry decodeRomEntry(RomInfoIndex.Section section) {
+        RomEntry current = new RomEntry();
+        current.name = section.name();
+        for (String[] r : section.lines()) {
+            // Static Pokemon?
+            if (r[0].equals("StaticPokemonGameCorner[]")) {
+                if (r[1].startsWith("[") && r[1].endsWith("]")) {
+                    String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
+                    int[] offs = new int[offsets.length];
+                    int c = 0;
+                    for (String off : offsets) {
+                        offs[c++] = RomInfoIndex.parseRIInt(off);
+                    }
+                    GameCornerPokemon gc = new GameCornerPokemon();
+                    gc.offsets = offs;
+                    current.staticPokemonGameCorner.add(gc);
+                } else {
+                    int offs = RomInfoIndex.parseRIInt(r[1]);
+                    GameCornerPokemon gc = new GameCornerPokemon();
+                    gc.offsets = new int[] { offs };
+                    current.staticPokemonGameCorner.add(gc);
                 }
-                if (!q.isEmpty()) {
-                    if (q.startsWith("[") && q.endsWith("]")) {
-                        // New rom
-                        current = new RomEntry();
-                        current.name = q.substring(1, q.length() - 1);
-                        roms.add(current);
-                    } else {
-                        String[] r = q.split("=", 2);
-                        if (r.length == 1) {
-                            System.err.println("invalid entry " + q);
-                            continue;
+            } else if (r[0].equals("StaticPokemonGhostMarowak")) {
+                if (r[1].startsWith("[") && r[1].endsWith("]")) {
+                    String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
+                    int[] offs = new int[offsets.length];
+                    int c = 0;
+                    for (String off : offsets) {
+                        offs[c++] = RomInfoIndex.parseRIInt(off);
+                    }
+                    current.ghostMarowakOffsets = offs;
+                } else {
+                }
+            } else if (r[0].equals("TMText[]")) {
+                if (r[1].startsWith("[") && r[1].endsWith("]")) {
+                    String[] parts = r[1].substring(1, r[1].length() - 1).split(",", 3);
+                    TMTextEntry tte = new TMTextEntry();
+                    tte.number = RomInfoIndex.parseRIInt(parts[0]);
+                    tte.offset = RomInfoIndex.parseRIInt(parts[1]);
+                    tte.template = parts[2];
+                    current.tmTexts.add(tte);
+                }
+            } else if (r[0].equals("Game")) {
+                current.romName = r[1];
+            } else if (r[0].equals("Version")) {
+                current.version = RomInfoIndex.parseRIInt(r[1]);
+            } else if (r[0].equals("NonJapanese")) {
+                current.nonJapanese = RomInfoIndex.parseRIInt(r[1]);
+            } else if (r[0].equals("Type")) {
+                if (r[1].equalsIgnoreCase("Yellow")) {
+                    current.isYellow = true;
+                } else {
+                    current.isYellow = false;
+                }
+            } else if (r[0].equals("ExtraTableFile")) {
+                current.extraTableFile = r[1];
+            } else if (r[0].equals("CRCInHeader")) {
+                current.crcInHeader = RomInfoIndex.parseRIInt(r[1]);
+            } else if (r[0].endsWith("Tweak")) {
+                current.tweakFiles.put(r[0], r[1]);
+            } else if (r[0].equals("ExtraTypes")) {
+                // remove the containers
+                r[1] = r[1].substring(1, r[1].length() - 1);
+                String[] parts = r[1].split(",");
+                for (String part : parts) {
+                    String[] iParts = part.split("=");
+                    int typeId = Integer.parseInt(iParts[0], 16);
+                    String typeName = iParts[1].trim();
+                    Type theType = Type.valueOf(typeName);
+                    current.extraTypeLookup.put(typeId, theType);
+                    current.extraTypeReverse.put(theType, typeId);
+                }
+            } else if (r[0].equals("CopyFrom")) {
+                for (RomInfoIndex.Section other : romInfo.sectionsBefore(section)) {
+                    if (r[1].equalsIgnoreCase(other.name())) {
+                        RomEntry otherEntry = romInfo.entry(other);
+                        // copy from here
+                        boolean cSP = (current.getValue("CopyStaticPokemon") == 1);
+                        boolean cTT = (current.getValue("CopyTMText") == 1);
+                        current.arrayEntries.putAll(otherEntry.arrayEntries);
+                        current.entries.putAll(otherEntry.entries);
+                        if (cSP) {
+                            current.staticPokemonSingle.addAll(otherEntry.staticPokemonSingle);
+                            current.staticPokemonGameCorner.addAll(otherEntry.staticPokemonGameCorner);
+                            current.ghostMarowakOffsets = otherEntry.ghostMarowakOffsets;
+                            current.entries.put("StaticPokemonSupport", 1);
+                        } else {
+                            current.entries.put("StaticPokemonSupport", 0);
                         }
-                        if (r[1].endsWith("\r\n")) {
-                            r[1] = r[1].substring(0, r[1].length() - 2);
+                        if (cTT) {
+                            current.tmTexts.addAll(otherEntry.tmTexts);
                         }
-                        r[1] = r[1].trim();
-                        r[0] = r[0].trim();
-                        // Static Pokemon?
-                        if (r[0].equals("StaticPokemonGameCorner[]")) {
-                            if (r[1].startsWith("[") && r[1].endsWith("]")) {
-                                String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
-                                int[] offs = new int[offsets.length];
-                                int c = 0;
-                                for (String off : offsets) {
-                                    offs[c++] = parseRIInt(off);
-                                }
-                                GameCornerPokemon gc = new GameCornerPokemon();
-                                gc.offsets = offs;
-                                current.staticPokemonGameCorner.add(gc);
-                            } else {
-                                int offs = parseRIInt(r[1]);
-                                GameCornerPokemon gc = new GameCornerPokemon();
-                                gc.offsets = new int[] { offs };
-                                current.staticPokemonGameCorner.add(gc);
-                            }
-                        } else if (r[0].equals("StaticPokemonGhostMarowak")) {
-                            if (r[1].startsWith("[") && r[1].endsWith("]")) {
-                                String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
-                                int[] offs = new int[offsets.length];
-                                int c = 0;
-                                for (String off : offsets) {
-                                    offs[c++] = parseRIInt(off);
-                                }
-                                current.ghostMarowakOffsets = offs;
-                            } else {
-                            }
-                        } else if (r[0].equals("TMText[]")) {
-                            if (r[1].startsWith("[") && r[1].endsWith("]")) {
-                                String[] parts = r[1].substring(1, r[1].length() - 1).split(",", 3);
-                                TMTextEntry tte = new TMTextEntry();
-                                tte.number = parseRIInt(parts[0]);
-                                tte.offset = parseRIInt(parts[1]);
-                                tte.template = parts[2];
-                                current.tmTexts.add(tte);
-                            }
-                        } else if (r[0].equals("Game")) {
-                            current.romName = r[1];
-                        } else if (r[0].equals("Version")) {
-                            current.version = parseRIInt(r[1]);
-                        } else if (r[0].equals("NonJapanese")) {
-                            current.nonJapanese = parseRIInt(r[1]);
-                        } else if (r[0].equals("Type")) {
-                            if (r[1].equalsIgnoreCase("Yellow")) {
-                                current.isYellow = true;
-                            } else {
-                                current.isYellow = false;
-                            }
-                        } else if (r[0].equals("ExtraTableFile")) {
-                            current.extraTableFile = r[1];
-                        } else if (r[0].equals("CRCInHeader")) {
-                            current.crcInHeader = parseRIInt(r[1]);
-                        } else if (r[0].endsWith("Tweak")) {
-                            current.tweakFiles.put(r[0], r[1]);
-                        } else if (r[0].equals("ExtraTypes")) {
-                            // remove the containers
-                            r[1] = r[1].substring(1, r[1].length() - 1);
-                            String[] parts = r[1].split(",");
-                            for (String part : parts) {
-                                String[] iParts = part.split("=");
-                                int typeId = Integer.parseInt(iParts[0], 16);
-                                String typeName = iParts[1].trim();
-                                Type theType = Type.valueOf(typeName);
-                                current.extraTypeLookup.put(typeId, theType);
-                                current.extraTypeReverse.put(theType, typeId);
-                            }
-                        } else if (r[0].equals("CopyFrom")) {
-                            for (RomEntry otherEntry : roms) {
-                                if (r[1].equalsIgnoreCase(otherEntry.name)) {
-                                    // copy from here
-                                    boolean cSP = (current.getValue("CopyStaticPokemon") == 1);
-                                    boolean cTT = (current.getValue("CopyTMText") == 1);
-                                    current.arrayEntries.putAll(otherEntry.arrayEntries);
-                                    current.entries.putAll(otherEntry.entries);
-                                    if (cSP) {
-                                        current.staticPokemonSingle.addAll(otherEntry.staticPokemonSingle);
-                                        current.staticPokemonGameCorner.addAll(otherEntry.staticPokemonGameCorner);
-                                        current.ghostMarowakOffsets = otherEntry.ghostMarowakOffsets;
-                                        current.entries.put("StaticPokemonSupport", 1);
-                                    } else {
-                                        current.entries.put("StaticPokemonSupport", 0);
-                                    }
-                                    if (cTT) {
-                                        current.tmTexts.addAll(otherEntry.tmTexts);
-                                    }
-                                    current.extraTableFile = otherEntry.extraTableFile;
-                                }
+                        current.extraTableFile = otherEntry.extraTableFile;
+                    }
+                }
+            } else {
+                if (r[1].startsWith("[") && r[1].endsWith("]")) {
+                    String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
+                    if (offsets.length == 1 && offsets[0].trim().isEmpty()) {
+                        current.arrayEntries.put(r[0], new int[0]);
+                    } else {
+                        int[] offs = new int[offsets.length];
+                        int c = 0;
+                        for (String off : offsets) {
+                            offs[c++] = RomInfoIndex.parseRIInt(off);
+                        }
+                        if (r[0].startsWith("StaticPokemon")) {
+                            for (int off : offs) {
+                                current.staticPokemonSingle.add(off);
                             }
                         } else {
-                            if (r[1].startsWith("[") && r[1].endsWith("]")) {
-                                String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
-                                if (offsets.length == 1 && offsets[0].trim().isEmpty()) {
-                                    current.arrayEntries.put(r[0], new int[0]);
-                                } else {
-                                    int[] offs = new int[offsets.length];
-                                    int c = 0;
-                                    for (String off : offsets) {
-                                        offs[c++] = parseRIInt(off);
-                                    }
-                                    if (r[0].startsWith("StaticPokemon")) {
-                                        for (int off : offs) {
-                                            current.staticPokemonSingle.add(off);
-                                        }
-                                    } else {
-                                        current.arrayEntries.put(r[0], offs);
-                                    }
-                                }
-
-                            } else {
-                                int offs = parseRIInt(r[1]);
-                                current.entries.put(r[0], offs);
-                            }
+                            current.arrayEntries.put(r[0], offs);
                         }
                     }
+
+                } else {
+                    int offs = RomInfoIndex.parseRIInt(r[1]);
+                    current.entries.put(r[0], offs);
                 }
             }
-            sc.close();
-        } catch (FileNotFoundException e) {
-        }
-
-    }
-
-    private static int parseRIInt(String off) {
-        int radix = 10;
-        off = off.trim().toLowerCase();
-        if (off.startsWith("0x") || off.startsWith("&h")) {
-            radix = 16;
-            off = off.substring(2);
-        }
-        try {
-            return Integer.parseInt(off, radix);
-        } catch (NumberFormatException ex) {
-            System.err.println("invalid base " + radix + "number " + off);
-            return 0;
         }
+        return current;
     }
 
     // This ROM's data
@@ -397,22 +358,27 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
         int nonjap = rom[GBConstants.jpFlagOffset] & 0xFF;
         // Check for specific CRC first
         int crcInHeader = ((rom[GBConstants.crcOffset] & 0xFF) << 8) | (rom[GBConstants.crcOffset + 1] & 0xFF);
-        for (RomEntry re : roms) {
-            if (romSig(rom, re.romName) && re.version == version && re.nonJapanese == nonjap
-                    && re.crcInHeader == crcInHeader) {
-                return re;
+        for (RomInfoIndex.Section section : romInfo.sections()) {
+            if (romSig(rom, section.get("Game")) && isVersion(section, version, nonjap)
+                    && section.getInt("CRCInHeader", -1) == crcInHeader) {
+                return romInfo.entry(section);
             }
         }
         // Now check for non-specific-CRC entries
-        for (RomEntry re : roms) {
-            if (romSig(rom, re.romName) && re.version == version && re.nonJapanese == nonjap && re.crcInHeader == -1) {
-                return re;
+        for (RomInfoIndex.Section section : romInfo.sections()) {
+            if (romSig(rom, section.get("Game")) && isVersion(section, version, nonjap)
+                    && section.getInt("CRCInHeader", -1) == -1) {
+                return romInfo.entry(section);
             }
         }
         // Not found
         return null;
     }
 
+    private static boolean isVersion(RomInfoIndex.Section section, int version, int nonjap) {
+        return section.getInt("Version", 0) == version && section.getInt("NonJapanese", 0) == nonjap;
+    }
+
     @Override
     public void savingRom() {
         savePokemonStats();
@@ -1291,33 +1257,30 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
     }
 
     @Override
-    public Map<Pokemon, boolean[]> getTMHMCompatibility() {
-        Map<Pokemon, boolean[]> compat = new TreeMap<Pokemon, boolean[]>();
+    public CompatibilityMatrix getTMHMCompatibility() {
+        CompatibilityMatrix compat = new CompatibilityMatrix(pokemonList.subList(1, pokedexCount + 1),
+                Gen1Constants.tmCount + Gen1Constants.hmCount);
         int pokeStatsOffset = romEntry.getValue("PokemonStatsOffset");
         for (int i = 1; i <= pokedexCount; i++) {
             int baseStatsOffset = (romEntry.isYellow || i != Gen1Constants.mewIndex) ? (pokeStatsOffset + (i - 1)
                     * Gen1Constants.baseStatsEntrySize) : romEntry.getValue("MewStatsOffset");
             Pokemon pkmn = pokes[i];
-            boolean[] flags = new boolean[Gen1Constants.tmCount + Gen1Constants.hmCount + 1];
             for (int j = 0; j < 7; j++) {
-                readByteIntoFlags(flags, j * 8 + 1, baseStatsOffset + Gen1Constants.bsTMHMCompatOffset + j);
+                compat.setBits(pkmn, j * 8 + 1, 8, rom[baseStatsOffset + Gen1Constants.bsTMHMCompatOffset + j]);
             }
-            compat.put(pkmn, flags);
         }
         return compat;
     }
 
     @Override
-    public void setTMHMCompatibility(Map<Pokemon, boolean[]> compatData) {
+    public void setTMHMCompatibility(CompatibilityMatrix compatData) {
         int pokeStatsOffset = romEntry.getValue("PokemonStatsOffset");
-        for (Map.Entry<Pokemon, boolean[]> compatEntry : compatData.entrySet()) {
-            Pokemon pkmn = compatEntry.getKey();
-            boolean[] flags = compatEntry.getValue();
+        for (Pokemon pkmn : compatData.getPokemon()) {
             int baseStatsOffset = (romEntry.isYellow || pkmn.number != Gen1Constants.mewIndex) ? (pokeStatsOffset + (pkmn.number - 1)
                     * Gen1Constants.baseStatsEntrySize)
                     : romEntry.getValue("MewStatsOffset");
             for (int j = 0; j < 7; j++) {
-                rom[baseStatsOffset + Gen1Constants.bsTMHMCompatOffset + j] = getByteFromFlags(flags, j * 8 + 1);
+                rom[baseStatsOffset + Gen1Constants.bsTMHMCompatOffset + j] = (byte) compatData.getBits(pkmn, j * 8 + 1, 8);
             }
         }
     }
@@ -1338,12 +1301,12 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
     }
 
     @Override
-    public Map<Pokemon, boolean[]> getMoveTutorCompatibility() {
-        return new TreeMap<Pokemon, boolean[]>();
+    public CompatibilityMatrix getMoveTutorCompatibility() {
+        return CompatibilityMatrix.empty();
     }
 
     @Override
-    public void setMoveTutorCompatibility(Map<Pokemon, boolean[]> compatData) {
+    public void setMoveTutorCompatibility(CompatibilityMatrix compatData) {
         // Do nothing
     }
 
@@ -1570,7 +1533,7 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
 
     @Override
     public int internalStringLength(String string) {
-        return translateString(string).length;
+        return translatedLength(string);
     }
 
     @Override
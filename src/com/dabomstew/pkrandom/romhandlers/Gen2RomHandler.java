@@ -26,9 +26,7 @@ package com.dabomstew.pkrandom.romhandlers;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -37,18 +35,19 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Scanner;
 import java.util.Set;
 import java.util.TreeMap;
 
 import com.dabomstew.pkrandom.FileFunctions;
 import com.dabomstew.pkrandom.GFXFunctions;
 import com.dabomstew.pkrandom.MiscTweak;
+import com.dabomstew.pkrandom.RandomizationLog;
 import com.dabomstew.pkrandom.RomFunctions;
 import com.dabomstew.pkrandom.constants.GBConstants;
 import com.dabomstew.pkrandom.constants.Gen2Constants;
 import com.dabomstew.pkrandom.constants.GlobalConstants;
 import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
+import com.dabomstew.pkrandom.pokemon.CompatibilityMatrix;
 import com.dabomstew.pkrandom.pokemon.Encounter;
 import com.dabomstew.pkrandom.pokemon.EncounterSet;
 import com.dabomstew.pkrandom.pokemon.Evolution;
@@ -59,6 +58,7 @@ import com.dabomstew.pkrandom.pokemon.ItemList;
 import com.dabomstew.pkrandom.pokemon.Move;
 import com.dabomstew.pkrandom.pokemon.MoveLearnt;
 import com.dabomstew.pkrandom.pokemon.Pokemon;
+import com.dabomstew.pkrandom.pokemon.PokemonPool;
 import com.dabomstew.pkrandom.pokemon.Trainer;
 import com.dabomstew.pkrandom.pokemon.TrainerPokemon;
 import compressors.Gen2Decmp;
@@ -68,8 +68,8 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
     public static class Factory extends RomHandler.Factory {
 
         @Override
-        public Gen2RomHandler create(Random random, PrintStream logStream) {
-            return new Gen2RomHandler(random, logStream);
+        public Gen2RomHandler create(Random random, RandomizationLog log) {
+            return new Gen2RomHandler(random, log);
         }
 
         public boolean isLoadable(String filename) {
@@ -77,12 +77,16 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
             if (fileLength > 8 * 1024 * 1024) {
                 return false;
             }
-            byte[] loaded = loadFilePartial(filename, 0x1000);
-            if (loaded.length == 0) {
+            return isLoadable(loadFilePartial(filename, 0x1000), fileLength);
+        }
+
+        @Override
+        public boolean isLoadable(byte[] fileStart, long fileLength) {
+            if (fileLength > 8 * 1024 * 1024 || fileStart.length == 0) {
                 // nope
                 return false;
             }
-            return detectRomInner(loaded, (int) fileLength);
+            return detectRomInner(fileStart, (int) fileLength);
         }
     }
 
@@ -90,8 +94,8 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
         super(random, null);
     }
 
-    public Gen2RomHandler(Random random, PrintStream logStream) {
-        super(random, logStream);
+    public Gen2RomHandler(Random random, RandomizationLog log) {
+        super(random, log);
     }
 
     private static class RomEntry {
@@ -107,11 +111,9 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
         private Map<String, int[]> arrayEntries = new HashMap<String, int[]>();
         private List<StaticPokemon> staticPokemon = new ArrayList<StaticPokemon>();
 
+        // Read-only: entries are shared by every handler for the same game
         private int getValue(String key) {
-            if (!entries.containsKey(key)) {
-                entries.put(key, 0);
-            }
-            return entries.get(key);
+            return entries.containsKey(key) ? entries.get(key) : 0;
         }
     }
 
@@ -121,150 +123,110 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
         private String template;
     }
 
-    private static List<RomEntry> roms;
-
-    static {
-        loadROMInfo();
-    }
-
-    private static void loadROMInfo() {
-        roms = new ArrayList<RomEntry>();
-        RomEntry current = null;
-        try {
-            Scanner sc = new Scanner(FileFunctions.openConfig("gen2_offsets.ini"), "UTF-8");
-            while (sc.hasNextLine()) {
-                String q = sc.nextLine().trim();
-                if (q.contains("//")) {
-                    q = q.substring(0, q.indexOf("//")).trim();
+    private static final RomInfoIndex<RomEntry> romInfo = new RomInfoIndex<RomEntry>("gen2_offsets.ini",
+            new RomInfoIndex.Decoder<RomEntry>() {
+                @Override
+                public RomEntry decode(RomInfoIndex.Section section) {
+                    return decodeRomEntry(section);
                 }
-                if (!q.isEmpty()) {
-                    if (q.startsWith("[") && q.endsWith("]")) {
-                        // New rom
-                        current = new RomEntry();
-                        current.name = q.substring(1, q.length() - 1);
-                        roms.add(current);
-                    } else {
-                        String[] r = q.split("=", 2);
-                        if (r.length == 1) {
-                            System.err.println("invalid entry " + q);
-                            continue;
+            });
+
+    private static RomEntry decodeRomEntry(RomInfoIndex.Section section) {
+        RomEntry current = new RomEntry();
+        current.name = section.name();
+        for (String[] r : section.lines()) {
+            // Static Pokemon?
+            if (r[0].equals("StaticPokemon[]")) {
+                if (r[1].startsWith("[") && r[1].endsWith("]")) {
+                    String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
+                    int[] offs = new int[offsets.length];
+                    int c = 0;
+                    for (String off : offsets) {
+                        offs[c++] = RomInfoIndex.parseRIInt(off);
+                    }
+                    current.staticPokemon.add(new StaticPokemon(offs));
+                } else {
+                    int offs = RomInfoIndex.parseRIInt(r[1]);
+                    current.staticPokemon.add(new StaticPokemon(offs));
+                }
+            } else if (r[0].equals("StaticPokemonGameCorner[]")) {
+                String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
+                int[] offs = new int[offsets.length];
+                int c = 0;
+                for (String off : offsets) {
+                    offs[c++] = RomInfoIndex.parseRIInt(off);
+                }
+                current.staticPokemon.add(new StaticPokemonGameCorner(offs));
+            } else if (r[0].equals("TMText[]")) {
+                if (r[1].startsWith("[") && r[1].endsWith("]")) {
+                    String[] parts = r[1].substring(1, r[1].length() - 1).split(",", 3);
+                    TMTextEntry tte = new TMTextEntry();
+                    tte.number = RomInfoIndex.parseRIInt(parts[0]);
+                    tte.offset = RomInfoIndex.parseRIInt(parts[1]);
+                    tte.template = parts[2];
+                    current.tmTexts.add(tte);
+                }
+            } else if (r[0].equals("Game")) {
+                current.romCode = r[1];
+            } else if (r[0].equals("Version")) {
+                current.version = RomInfoIndex.parseRIInt(r[1]);
+            } else if (r[0].equals("NonJapanese")) {
+                current.nonJapanese = RomInfoIndex.parseRIInt(r[1]);
+            } else if (r[0].equals("Type")) {
+                if (r[1].equalsIgnoreCase("Crystal")) {
+                    current.isCrystal = true;
+                } else {
+                    current.isCrystal = false;
+                }
+            } else if (r[0].equals("ExtraTableFile")) {
+                current.extraTableFile = r[1];
+            } else if (r[0].equals("CRCInHeader")) {
+                current.crcInHeader = RomInfoIndex.parseRIInt(r[1]);
+            } else if (r[0].endsWith("Tweak")) {
+                current.codeTweaks.put(r[0], r[1]);
+            } else if (r[0].equals("CopyFrom")) {
+                for (RomInfoIndex.Section other : romInfo.sectionsBefore(section)) {
+                    if (r[1].equalsIgnoreCase(other.name())) {
+                        RomEntry otherEntry = romInfo.entry(other);
+                        // copy from here
+                        boolean cSP = (current.getValue("CopyStaticPokemon") == 1);
+                        boolean cTT = (current.getValue("CopyTMText") == 1);
+                        current.arrayEntries.putAll(otherEntry.arrayEntries);
+                        current.entries.putAll(otherEntry.entries);
+                        if (cSP) {
+                            current.staticPokemon.addAll(otherEntry.staticPokemon);
+                            current.entries.put("StaticPokemonSupport", 1);
+                        } else {
+                            current.entries.put("StaticPokemonSupport", 0);
+                            current.entries.remove("StaticPokemonOddEggOffset");
+                            current.entries.remove("StaticPokemonOddEggDataSize");
                         }
-                        if (r[1].endsWith("\r\n")) {
-                            r[1] = r[1].substring(0, r[1].length() - 2);
+                        if (cTT) {
+                            current.tmTexts.addAll(otherEntry.tmTexts);
                         }
-                        r[1] = r[1].trim();
-                        r[0] = r[0].trim();
-                        // Static Pokemon?
-                        if (r[0].equals("StaticPokemon[]")) {
-                            if (r[1].startsWith("[") && r[1].endsWith("]")) {
-                                String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
-                                int[] offs = new int[offsets.length];
-                                int c = 0;
-                                for (String off : offsets) {
-                                    offs[c++] = parseRIInt(off);
-                                }
-                                current.staticPokemon.add(new StaticPokemon(offs));
-                            } else {
-                                int offs = parseRIInt(r[1]);
-                                current.staticPokemon.add(new StaticPokemon(offs));
-                            }
-                        } else if (r[0].equals("StaticPokemonGameCorner[]")) {
-                            String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
-                            int[] offs = new int[offsets.length];
-                            int c = 0;
-                            for (String off : offsets) {
-                                offs[c++] = parseRIInt(off);
-                            }
-                            current.staticPokemon.add(new StaticPokemonGameCorner(offs));
-                        } else if (r[0].equals("TMText[]")) {
-                            if (r[1].startsWith("[") && r[1].endsWith("]")) {
-                                String[] parts = r[1].substring(1, r[1].length() - 1).split(",", 3);
-                                TMTextEntry tte = new TMTextEntry();
-                                tte.number = parseRIInt(parts[0]);
-                                tte.offset = parseRIInt(parts[1]);
-                                tte.template = parts[2];
-                                current.tmTexts.add(tte);
-                            }
-                        } else if (r[0].equals("Game")) {
-                            current.romCode = r[1];
-                        } else if (r[0].equals("Version")) {
-                            current.version = parseRIInt(r[1]);
-                        } else if (r[0].equals("NonJapanese")) {
-                            current.nonJapanese = parseRIInt(r[1]);
-                        } else if (r[0].equals("Type")) {
-                            if (r[1].equalsIgnoreCase("Crystal")) {
-                                current.isCrystal = true;
-                            } else {
-                                current.isCrystal = false;
-                            }
-                        } else if (r[0].equals("ExtraTableFile")) {
-                            current.extraTableFile = r[1];
-                        } else if (r[0].equals("CRCInHeader")) {
-                            current.crcInHeader = parseRIInt(r[1]);
-                        } else if (r[0].endsWith("Tweak")) {
-                            current.codeTweaks.put(r[0], r[1]);
-                        } else if (r[0].equals("CopyFrom")) {
-                            for (RomEntry otherEntry : roms) {
-                                if (r[1].equalsIgnoreCase(otherEntry.name)) {
-                                    // copy from here
-                                    boolean cSP = (current.getValue("CopyStaticPokemon") == 1);
-                                    boolean cTT = (current.getValue("CopyTMText") == 1);
-                                    current.arrayEntries.putAll(otherEntry.arrayEntries);
-                                    current.entries.putAll(otherEntry.entries);
-                                    if (cSP) {
-                                        current.staticPokemon.addAll(otherEntry.staticPokemon);
-                                        current.entries.put("StaticPokemonSupport", 1);
-                                    } else {
-                                        current.entries.put("StaticPokemonSupport", 0);
-                                        current.entries.remove("StaticPokemonOddEggOffset");
-                                        current.entries.remove("StaticPokemonOddEggDataSize");
-                                    }
-                                    if (cTT) {
-                                        current.tmTexts.addAll(otherEntry.tmTexts);
-                                    }
-                                    current.extraTableFile = otherEntry.extraTableFile;
-                                }
-                            }
-                        } else {
-                            if (r[1].startsWith("[") && r[1].endsWith("]")) {
-                                String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
-                                if (offsets.length == 1 && offsets[0].trim().isEmpty()) {
-                                    current.arrayEntries.put(r[0], new int[0]);
-                                } else {
-                                    int[] offs = new int[offsets.length];
-                                    int c = 0;
-                                    for (String off : offsets) {
-                                        offs[c++] = parseRIInt(off);
-                                    }
-                                    current.arrayEntries.put(r[0], offs);
-                                }
-                            } else {
-                                int offs = parseRIInt(r[1]);
-                                current.entries.put(r[0], offs);
-                            }
+                        current.extraTableFile = otherEntry.extraTableFile;
+                    }
+                }
+            } else {
+                if (r[1].startsWith("[") && r[1].endsWith("]")) {
+                    String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
+                    if (offsets.length == 1 && offsets[0].trim().isEmpty()) {
+                        current.arrayEntries.put(r[0], new int[0]);
+                    } else {
+                        int[] offs = new int[offsets.length];
+                        int c = 0;
+                        for (String off : offsets) {
+                            offs[c++] = RomInfoIndex.parseRIInt(off);
                         }
+                        current.arrayEntries.put(r[0], offs);
                     }
+                } else {
+                    int offs = RomInfoIndex.parseRIInt(r[1]);
+                    current.entries.put(r[0], offs);
                 }
             }
-            sc.close();
-        } catch (FileNotFoundException e) {
-        }
-
-    }
-
-    private static int parseRIInt(String off) {
-        int radix = 10;
-        off = off.trim().toLowerCase();
-        if (off.startsWith("0x") || off.startsWith("&h")) {
-            radix = 16;
-            off = off.substring(2);
-        }
-        try {
-            return Integer.parseInt(off, radix);
-        } catch (NumberFormatException ex) {
-            System.err.println("invalid base " + radix + "number " + off);
-            return 0;
         }
+        return current;
     }
 
     // This ROM's data
@@ -324,22 +286,27 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
         int nonjap = rom[GBConstants.jpFlagOffset] & 0xFF;
         // Check for specific CRC first
         int crcInHeader = ((rom[GBConstants.crcOffset] & 0xFF) << 8) | (rom[GBConstants.crcOffset + 1] & 0xFF);
-        for (RomEntry re : roms) {
-            if (romCode(rom, re.romCode) && re.version == version && re.nonJapanese == nonjap
-                    && re.crcInHeader == crcInHeader) {
-                return re;
+        for (RomInfoIndex.Section section : romInfo.sections()) {
+            if (romCode(rom, section.get("Game")) && isVersion(section, version, nonjap)
+                    && section.getInt("CRCInHeader", -1) == crcInHeader) {
+                return romInfo.entry(section);
             }
         }
         // Now check for non-specific-CRC entries
-        for (RomEntry re : roms) {
-            if (romCode(rom, re.romCode) && re.version == version && re.nonJapanese == nonjap && re.crcInHeader == -1) {
-                return re;
+        for (RomInfoIndex.Section section : romInfo.sections()) {
+            if (romCode(rom, section.get("Game")) && isVersion(section, version, nonjap)
+                    && section.getInt("CRCInHeader", -1) == -1) {
+                return romInfo.entry(section);
             }
         }
         // Not found
         return null;
     }
 
+    private static boolean isVersion(RomInfoIndex.Section section, int version, int nonjap) {
+        return section.getInt("Version", 0) == version && section.getInt("NonJapanese", 0) == nonjap;
+    }
+
     @Override
     public void savingRom() {
         savePokemonStats();
@@ -1149,34 +1116,32 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
     }
 
     @Override
-    public Map<Pokemon, boolean[]> getTMHMCompatibility() {
-        Map<Pokemon, boolean[]> compat = new TreeMap<Pokemon, boolean[]>();
+    public CompatibilityMatrix getTMHMCompatibility() {
+        CompatibilityMatrix compat = new CompatibilityMatrix(pokemonList.subList(1, Gen2Constants.pokemonCount + 1),
+                Gen2Constants.tmCount + Gen2Constants.hmCount);
         for (int i = 1; i <= Gen2Constants.pokemonCount; i++) {
             int baseStatsOffset = romEntry.getValue("PokemonStatsOffset") + (i - 1) * Gen2Constants.baseStatsEntrySize;
             Pokemon pkmn = pokes[i];
-            boolean[] flags = new boolean[Gen2Constants.tmCount + Gen2Constants.hmCount + 1];
             for (int j = 0; j < 8; j++) {
-                readByteIntoFlags(flags, j * 8 + 1, baseStatsOffset + Gen2Constants.bsTMHMCompatOffset + j);
+                compat.setBits(pkmn, j * 8 + 1, 8, rom[baseStatsOffset + Gen2Constants.bsTMHMCompatOffset + j]);
             }
-            compat.put(pkmn, flags);
         }
         return compat;
     }
 
     @Override
-    public void setTMHMCompatibility(Map<Pokemon, boolean[]> compatData) {
-        for (Map.Entry<Pokemon, boolean[]> compatEntry : compatData.entrySet()) {
-            Pokemon pkmn = compatEntry.getKey();
-            boolean[] flags = compatEntry.getValue();
+    public void setTMHMCompatibility(CompatibilityMatrix compatData) {
+        for (Pokemon pkmn : compatData.getPokemon()) {
             int baseStatsOffset = romEntry.getValue("PokemonStatsOffset") + (pkmn.number - 1)
                     * Gen2Constants.baseStatsEntrySize;
             for (int j = 0; j < 8; j++) {
                 if (!romEntry.isCrystal || j != 7) {
-                    rom[baseStatsOffset + Gen2Constants.bsTMHMCompatOffset + j] = getByteFromFlags(flags, j * 8 + 1);
+                    rom[baseStatsOffset + Gen2Constants.bsTMHMCompatOffset + j] = (byte) compatData.getBits(pkmn,
+                            j * 8 + 1, 8);
                 } else {
                     // Move tutor data
                     // bits 1,2,3 of byte 7
-                    int changedByte = getByteFromFlags(flags, j * 8 + 1) & 0xFF;
+                    int changedByte = compatData.getBits(pkmn, j * 8 + 1, 8);
                     int currentByte = rom[baseStatsOffset + Gen2Constants.bsTMHMCompatOffset + j];
                     changedByte |= ((currentByte >> 1) & 0x01) << 1;
                     changedByte |= ((currentByte >> 2) & 0x01) << 2;
@@ -1237,39 +1202,32 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
     }
 
     @Override
-    public Map<Pokemon, boolean[]> getMoveTutorCompatibility() {
+    public CompatibilityMatrix getMoveTutorCompatibility() {
         if (!romEntry.isCrystal) {
-            return new TreeMap<Pokemon, boolean[]>();
+            return CompatibilityMatrix.empty();
         }
-        Map<Pokemon, boolean[]> compat = new TreeMap<Pokemon, boolean[]>();
+        CompatibilityMatrix compat = new CompatibilityMatrix(pokemonList.subList(1, Gen2Constants.pokemonCount + 1), 3);
         for (int i = 1; i <= Gen2Constants.pokemonCount; i++) {
             int baseStatsOffset = romEntry.getValue("PokemonStatsOffset") + (i - 1) * Gen2Constants.baseStatsEntrySize;
             Pokemon pkmn = pokes[i];
-            boolean[] flags = new boolean[4];
             int mtByte = rom[baseStatsOffset + Gen2Constants.bsMTCompatOffset] & 0xFF;
-            for (int j = 1; j <= 3; j++) {
-                flags[j] = ((mtByte >> j) & 0x01) > 0;
-            }
-            compat.put(pkmn, flags);
+            // bits 1,2,3 are the tutors
+            compat.setBits(pkmn, 1, 3, mtByte >> 1);
         }
         return compat;
     }
 
     @Override
-    public void setMoveTutorCompatibility(Map<Pokemon, boolean[]> compatData) {
+    public void setMoveTutorCompatibility(CompatibilityMatrix compatData) {
         if (!romEntry.isCrystal) {
             return;
         }
-        for (Map.Entry<Pokemon, boolean[]> compatEntry : compatData.entrySet()) {
-            Pokemon pkmn = compatEntry.getKey();
-            boolean[] flags = compatEntry.getValue();
+        for (Pokemon pkmn : compatData.getPokemon()) {
             int baseStatsOffset = romEntry.getValue("PokemonStatsOffset") + (pkmn.number - 1)
                     * Gen2Constants.baseStatsEntrySize;
             int origMtByte = rom[baseStatsOffset + Gen2Constants.bsMTCompatOffset] & 0xFF;
             int mtByte = origMtByte & 0x01;
-            for (int j = 1; j <= 3; j++) {
-                mtByte |= flags[j] ? (1 << j) : 0;
-            }
+            mtByte |= compatData.getBits(pkmn, 1, 3) << 1;
             rom[baseStatsOffset + Gen2Constants.bsMTCompatOffset] = (byte) mtByte;
         }
     }
@@ -1603,7 +1561,7 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
 
     @Override
     public int internalStringLength(String string) {
-        return translateString(string).length;
+        return translatedLength(string);
     }
 
     @Override
@@ -2026,7 +1984,7 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
 
     @Override
     public void removeEvosForPokemonPool() {
-        List<Pokemon> pokemonIncluded = this.mainPokemonList;
+        PokemonPool pokemonIncluded = this.mainPokemonPool;
         Set<Evolution> keepEvos = new HashSet<Evolution>();
         for (Pokemon pk : pokes) {
             if (pk != null) {
@@ -25,8 +25,6 @@ package com.dabomstew.pkrandom.romhandlers;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -36,20 +34,24 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Scanner;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.zip.CRC32;
 
 import com.dabomstew.pkrandom.FileFunctions;
+import com.dabomstew.pkrandom.FreeSpaceAllocator;
 import com.dabomstew.pkrandom.GFXFunctions;
 import com.dabomstew.pkrandom.MiscTweak;
+import com.dabomstew.pkrandom.MultiPatternSearch;
+import com.dabomstew.pkrandom.OffsetCache;
+import com.dabomstew.pkrandom.RandomizationLog;
 import com.dabomstew.pkrandom.RomFunctions;
 import com.dabomstew.pkrandom.constants.Gen3Constants;
 import com.dabomstew.pkrandom.constants.GlobalConstants;
 import com.dabomstew.pkrandom.exceptions.RandomizationException;
 import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
+import com.dabomstew.pkrandom.pokemon.CompatibilityMatrix;
 import com.dabomstew.pkrandom.pokemon.Encounter;
 import com.dabomstew.pkrandom.pokemon.EncounterSet;
 import com.dabomstew.pkrandom.pokemon.Evolution;
@@ -60,6 +62,7 @@ import com.dabomstew.pkrandom.pokemon.ItemList;
 import com.dabomstew.pkrandom.pokemon.Move;
 import com.dabomstew.pkrandom.pokemon.MoveLearnt;
 import com.dabomstew.pkrandom.pokemon.Pokemon;
+import com.dabomstew.pkrandom.pokemon.PokemonPool;
 import com.dabomstew.pkrandom.pokemon.Trainer;
 import com.dabomstew.pkrandom.pokemon.TrainerPokemon;
 import compressors.DSDecmp;
@@ -69,8 +72,8 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
     public static class Factory extends RomHandler.Factory {
 
         @Override
-        public Gen3RomHandler create(Random random, PrintStream logStream) {
-            return new Gen3RomHandler(random, logStream);
+        public Gen3RomHandler create(Random random, RandomizationLog log) {
+            return new Gen3RomHandler(random, log);
         }
 
         public boolean isLoadable(String filename) {
@@ -83,7 +86,17 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
                 // nope
                 return false;
             }
-            return detectRomInner(loaded, (int) fileLength);
+            return detectRomInner(loaded, (int) fileLength, detectSignatures, null) != null;
+        }
+
+        @Override
+        public boolean isLoadable(byte[] fileStart, long fileLength) {
+            if (fileLength > 32 * 1024 * 1024 || fileStart.length == 0) {
+                return false;
+            }
+            // detection patches the header of the unofficial Emerald
+            // translation, which mustn't show up in the shared copy
+            return detectRomInner(fileStart.clone(), (int) fileLength, detectSignatures, null) != null;
         }
     }
 
@@ -91,8 +104,8 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         super(random, null);
     }
 
-    public Gen3RomHandler(Random random, PrintStream logStream) {
-        super(random, logStream);
+    public Gen3RomHandler(Random random, RandomizationLog log) {
+        super(random, log);
     }
 
     private static class RomEntry {
@@ -121,7 +134,10 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
             this.entries.putAll(toCopy.entries);
             this.arrayEntries.putAll(toCopy.arrayEntries);
             this.staticPokemon.addAll(toCopy.staticPokemon);
-            this.tmmtTexts.addAll(toCopy.tmmtTexts);
+            // loading fills in actualOffset, so each copy needs its own
+            for (TMOrMTTextEntry tte : toCopy.tmmtTexts) {
+                this.tmmtTexts.add(new TMOrMTTextEntry(tte));
+            }
         }
 
         private int getValue(String key) {
@@ -140,180 +156,135 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         private int actualOffset;
         private String template;
         private boolean isMoveTutor;
-    }
-
-    private static List<RomEntry> roms;
-
-    static {
-        loadROMInfo();
-    }
 
-    private static void loadROMInfo() {
-        roms = new ArrayList<RomEntry>();
-        RomEntry current = null;
-        try {
-            Scanner sc = new Scanner(FileFunctions.openConfig("gen3_offsets.ini"), "UTF-8");
-            while (sc.hasNextLine()) {
-                String q = sc.nextLine().trim();
-                if (q.contains("//")) {
-                    q = q.substring(0, q.indexOf("//")).trim();
-                }
-                if (!q.isEmpty()) {
-                    if (q.startsWith("[") && q.endsWith("]")) {
-                        // New rom
-                        current = new RomEntry();
-                        current.name = q.substring(1, q.length() - 1);
-                        roms.add(current);
-                    } else {
-                        String[] r = q.split("=", 2);
-                        if (r.length == 1) {
-                            System.err.println("invalid entry " + q);
-                            continue;
-                        }
-                        if (r[1].endsWith("\r\n")) {
-                            r[1] = r[1].substring(0, r[1].length() - 2);
-                        }
-                        r[1] = r[1].trim();
-                        // Static Pokemon?
-                        if (r[0].equals("StaticPokemon[]")) {
-                            if (r[1].startsWith("[") && r[1].endsWith("]")) {
-                                String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
-                                int[] offs = new int[offsets.length];
-                                int c = 0;
-                                for (String off : offsets) {
-                                    offs[c++] = parseRIInt(off);
-                                }
-                                current.staticPokemon.add(new StaticPokemon(offs));
-                            } else {
-                                int offs = parseRIInt(r[1]);
-                                current.staticPokemon.add(new StaticPokemon(offs));
-                            }
-                        } else if (r[0].equals("TMText[]")) {
-                            if (r[1].startsWith("[") && r[1].endsWith("]")) {
-                                String[] parts = r[1].substring(1, r[1].length() - 1).split(",", 6);
-                                TMOrMTTextEntry tte = new TMOrMTTextEntry();
-                                tte.number = parseRIInt(parts[0]);
-                                tte.mapBank = parseRIInt(parts[1]);
-                                tte.mapNumber = parseRIInt(parts[2]);
-                                tte.personNum = parseRIInt(parts[3]);
-                                tte.offsetInScript = parseRIInt(parts[4]);
-                                tte.template = parts[5];
-                                tte.isMoveTutor = false;
-                                current.tmmtTexts.add(tte);
-                            }
-                        } else if (r[0].equals("MoveTutorText[]")) {
-                            if (r[1].startsWith("[") && r[1].endsWith("]")) {
-                                String[] parts = r[1].substring(1, r[1].length() - 1).split(",", 6);
-                                TMOrMTTextEntry tte = new TMOrMTTextEntry();
-                                tte.number = parseRIInt(parts[0]);
-                                tte.mapBank = parseRIInt(parts[1]);
-                                tte.mapNumber = parseRIInt(parts[2]);
-                                tte.personNum = parseRIInt(parts[3]);
-                                tte.offsetInScript = parseRIInt(parts[4]);
-                                tte.template = parts[5];
-                                tte.isMoveTutor = true;
-                                current.tmmtTexts.add(tte);
-                            }
-                        } else if (r[0].equals("Game")) {
-                            current.romCode = r[1];
-                        } else if (r[0].equals("Version")) {
-                            current.version = parseRIInt(r[1]);
-                        } else if (r[0].equals("Type")) {
-                            if (r[1].equalsIgnoreCase("Ruby")) {
-                                current.romType = Gen3Constants.RomType_Ruby;
-                            } else if (r[1].equalsIgnoreCase("Sapp")) {
-                                current.romType = Gen3Constants.RomType_Sapp;
-                            } else if (r[1].equalsIgnoreCase("Em")) {
-                                current.romType = Gen3Constants.RomType_Em;
-                            } else if (r[1].equalsIgnoreCase("FRLG")) {
-                                current.romType = Gen3Constants.RomType_FRLG;
-                            } else {
-                                System.err.println("unrecognised rom type: " + r[1]);
-                            }
-                        } else if (r[0].equals("TableFile")) {
-                            current.tableFile = r[1];
-                        } else if (r[0].equals("CopyStaticPokemon")) {
-                            int csp = parseRIInt(r[1]);
-                            current.copyStaticPokemon = (csp > 0);
-                        } else if (r[0].equals("CopyFrom")) {
-                            for (RomEntry otherEntry : roms) {
-                                if (r[1].equalsIgnoreCase(otherEntry.name)) {
-                                    // copy from here
-                                    current.arrayEntries.putAll(otherEntry.arrayEntries);
-                                    current.entries.putAll(otherEntry.entries);
-                                    boolean cTT = (current.getValue("CopyTMText") == 1);
-                                    if (current.copyStaticPokemon) {
-                                        current.staticPokemon.addAll(otherEntry.staticPokemon);
-                                        current.entries.put("StaticPokemonSupport", 1);
-                                    } else {
-                                        current.entries.put("StaticPokemonSupport", 0);
-                                    }
-                                    if (cTT) {
-                                        current.tmmtTexts.addAll(otherEntry.tmmtTexts);
-                                    }
-                                    current.tableFile = otherEntry.tableFile;
-                                }
-                            }
+        private TMOrMTTextEntry() {
+        }
+
+        private TMOrMTTextEntry(TMOrMTTextEntry toCopy) {
+            this.number = toCopy.number;
+            this.mapBank = toCopy.mapBank;
+            this.mapNumber = toCopy.mapNumber;
+            this.personNum = toCopy.personNum;
+            this.offsetInScript = toCopy.offsetInScript;
+            this.actualOffset = toCopy.actualOffset;
+            this.template = toCopy.template;
+            this.isMoveTutor = toCopy.isMoveTutor;
+        }
+    }
+
+    private static final RomInfoIndex<RomEntry> romInfo = new RomInfoIndex<RomEntry>("gen3_offsets.ini",
+            new RomInfoIndex.Decoder<RomEntry>() {
+                @Override
+                public RomEntry decode(RomInfoIndex.Section section) {
+                    return decodeRomEntry(section);
+                }
+            });
+
+    private static RomEntry decodeRomEntry(RomInfoIndex.Section section) {
+        RomEntry current = new RomEntry();
+        current.name = section.name();
+        for (String[] r : section.lines()) {
+            // Static Pokemon?
+            if (r[0].equals("StaticPokemon[]")) {
+                if (r[1].startsWith("[") && r[1].endsWith("]")) {
+                    String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
+                    int[] offs = new int[offsets.length];
+                    int c = 0;
+                    for (String off : offsets) {
+                        offs[c++] = RomInfoIndex.parseRIInt(off);
+                    }
+                    current.staticPokemon.add(new StaticPokemon(offs));
+                } else {
+                    int offs = RomInfoIndex.parseRIInt(r[1]);
+                    current.staticPokemon.add(new StaticPokemon(offs));
+                }
+            } else if (r[0].equals("TMText[]")) {
+                if (r[1].startsWith("[") && r[1].endsWith("]")) {
+                    String[] parts = r[1].substring(1, r[1].length() - 1).split(",", 6);
+                    TMOrMTTextEntry tte = new TMOrMTTextEntry();
+                    tte.number = RomInfoIndex.parseRIInt(parts[0]);
+                    tte.mapBank = RomInfoIndex.parseRIInt(parts[1]);
+                    tte.mapNumber = RomInfoIndex.parseRIInt(parts[2]);
+                    tte.personNum = RomInfoIndex.parseRIInt(parts[3]);
+                    tte.offsetInScript = RomInfoIndex.parseRIInt(parts[4]);
+                    tte.template = parts[5];
+                    tte.isMoveTutor = false;
+                    current.tmmtTexts.add(tte);
+                }
+            } else if (r[0].equals("MoveTutorText[]")) {
+                if (r[1].startsWith("[") && r[1].endsWith("]")) {
+                    String[] parts = r[1].substring(1, r[1].length() - 1).split(",", 6);
+                    TMOrMTTextEntry tte = new TMOrMTTextEntry();
+                    tte.number = RomInfoIndex.parseRIInt(parts[0]);
+                    tte.mapBank = RomInfoIndex.parseRIInt(parts[1]);
+                    tte.mapNumber = RomInfoIndex.parseRIInt(parts[2]);
+                    tte.personNum = RomInfoIndex.parseRIInt(parts[3]);
+                    tte.offsetInScript = RomInfoIndex.parseRIInt(parts[4]);
+                    tte.template = parts[5];
+                    tte.isMoveTutor = true;
+                    current.tmmtTexts.add(tte);
+                }
+            } else if (r[0].equals("Game")) {
+                current.romCode = r[1];
+            } else if (r[0].equals("Version")) {
+                current.version = RomInfoIndex.parseRIInt(r[1]);
+            } else if (r[0].equals("Type")) {
+                if (r[1].equalsIgnoreCase("Ruby")) {
+                    current.romType = Gen3Constants.RomType_Ruby;
+                } else if (r[1].equalsIgnoreCase("Sapp")) {
+                    current.romType = Gen3Constants.RomType_Sapp;
+                } else if (r[1].equalsIgnoreCase("Em")) {
+                    current.romType = Gen3Constants.RomType_Em;
+                } else if (r[1].equalsIgnoreCase("FRLG")) {
+                    current.romType = Gen3Constants.RomType_FRLG;
+                } else {
+                    System.err.println("unrecognised rom type: " + r[1]);
+                }
+            } else if (r[0].equals("TableFile")) {
+                current.tableFile = r[1];
+            } else if (r[0].equals("CopyStaticPokemon")) {
+                int csp = RomInfoIndex.parseRIInt(r[1]);
+                current.copyStaticPokemon = (csp > 0);
+            } else if (r[0].equals("CopyFrom")) {
+                for (RomInfoIndex.Section other : romInfo.sectionsBefore(section)) {
+                    if (r[1].equalsIgnoreCase(other.name())) {
+                        RomEntry otherEntry = romInfo.entry(other);
+                        // copy from here
+                        current.arrayEntries.putAll(otherEntry.arrayEntries);
+                        current.entries.putAll(otherEntry.entries);
+                        boolean cTT = (current.getValue("CopyTMText") == 1);
+                        if (current.copyStaticPokemon) {
+                            current.staticPokemon.addAll(otherEntry.staticPokemon);
+                            current.entries.put("StaticPokemonSupport", 1);
                         } else {
-                            if (r[1].startsWith("[") && r[1].endsWith("]")) {
-                                String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
-                                if (offsets.length == 1 && offsets[0].trim().isEmpty()) {
-                                    current.arrayEntries.put(r[0], new int[0]);
-                                } else {
-                                    int[] offs = new int[offsets.length];
-                                    int c = 0;
-                                    for (String off : offsets) {
-                                        offs[c++] = parseRIInt(off);
-                                    }
-                                    current.arrayEntries.put(r[0], offs);
-                                }
-                            } else {
-                                int offs = parseRIInt(r[1]);
-                                current.entries.put(r[0], offs);
-                            }
+                            current.entries.put("StaticPokemonSupport", 0);
                         }
+                        if (cTT) {
+                            current.tmmtTexts.addAll(otherEntry.tmmtTexts);
+                        }
+                        current.tableFile = otherEntry.tableFile;
                     }
                 }
-            }
-            sc.close();
-        } catch (FileNotFoundException e) {
-        }
-
-    }
-
-    private static int parseRIInt(String off) {
-        int radix = 10;
-        off = off.trim().toLowerCase();
-        if (off.startsWith("0x") || off.startsWith("&h")) {
-            radix = 16;
-            off = off.substring(2);
-        }
-        try {
-            return Integer.parseInt(off, radix);
-        } catch (NumberFormatException ex) {
-            System.err.println("invalid base " + radix + "number " + off);
-            return 0;
-        }
-    }
-
-    private void loadTextTable(String filename) {
-        try {
-            Scanner sc = new Scanner(FileFunctions.openConfig(filename + ".tbl"), "UTF-8");
-            while (sc.hasNextLine()) {
-                String q = sc.nextLine();
-                if (!q.trim().isEmpty()) {
-                    String[] r = q.split("=", 2);
-                    if (r[1].endsWith("\r\n")) {
-                        r[1] = r[1].substring(0, r[1].length() - 2);
+            } else {
+                if (r[1].startsWith("[") && r[1].endsWith("]")) {
+                    String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
+                    if (offsets.length == 1 && offsets[0].trim().isEmpty()) {
+                        current.arrayEntries.put(r[0], new int[0]);
+                    } else {
+                        int[] offs = new int[offsets.length];
+                        int c = 0;
+                        for (String off : offsets) {
+                            offs[c++] = RomInfoIndex.parseRIInt(off);
+                        }
+                        current.arrayEntries.put(r[0], offs);
                     }
-                    tb[Integer.parseInt(r[0], 16)] = r[1];
-                    d.put(r[1], (byte) Integer.parseInt(r[0], 16));
+                } else {
+                    int offs = RomInfoIndex.parseRIInt(r[1]);
+                    current.entries.put(r[0], offs);
                 }
             }
-            sc.close();
-        } catch (FileNotFoundException e) {
         }
-
+        return current;
     }
 
     // This ROM's data
@@ -324,8 +295,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
     private boolean jamboMovesetHack;
     private RomEntry romEntry;
     private boolean havePatchedObedience;
-    public String[] tb;
-    public Map<String, Byte> d;
+    private final TextCodec textCodec = new TextCodec(Gen3Constants.textTerminator, Gen3Constants.textVariable, 4);
     private String[] abilityNames;
     private String[] itemNames;
     private boolean mapLoadingDone;
@@ -336,15 +306,41 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
     private int pokedexCount;
     private String[] pokeNames;
     private ItemList allowedItems, nonBadItems;
+    private FreeSpaceAllocator freeSpace;
+
+    // Signatures needed to recognise a ROM, and those needed to load one.
+    // Loading scans for both at once, so the ROM is only read through once.
+    private static final MultiPatternSearch detectSignatures = new MultiPatternSearch(new String[] {
+            Gen3Constants.wildPokemonPointerPrefix, Gen3Constants.mapBanksPointerPrefix,
+            Gen3Constants.pokedexOrderPointerPrefix });
+    private static final MultiPatternSearch loadSignatures = new MultiPatternSearch(new String[] {
+            Gen3Constants.wildPokemonPointerPrefix, Gen3Constants.mapBanksPointerPrefix,
+            Gen3Constants.pokedexOrderPointerPrefix, Gen3Constants.rsPokemonNamesPointerSuffix,
+            Gen3Constants.rsFrontSpritesPointerSuffix, Gen3Constants.rsPokemonPalettesPointerPrefix,
+            Gen3Constants.frlgMapLabelsPointerPrefix, Gen3Constants.rseMapLabelsPointerPrefix });
+
+    // loadSignatures found in the ROM being loaded, and what's known about
+    // it from earlier loads; both only kept until loadedRom is done
+    private MultiPatternSearch.Matches loadMatches;
+    private OffsetCache offsetCache;
 
     @Override
     public boolean detectRom(byte[] rom) {
-        return detectRomInner(rom, rom.length);
+        offsetCache = null;
+        loadMatches = detectRomInner(rom, rom.length, loadSignatures, this);
+        if (loadMatches == null) {
+            offsetCache = null;
+            return false;
+        }
+        return true;
     }
 
-    private static boolean detectRomInner(byte[] rom, int romSize) {
+    // The signatures found if this is a supported ROM, otherwise null. If a
+    // handler is given, its offset cache is opened and used for the search.
+    private static MultiPatternSearch.Matches detectRomInner(byte[] rom, int romSize, MultiPatternSearch signatures,
+            Gen3RomHandler handler) {
         if (romSize != Gen3Constants.size8M && romSize != Gen3Constants.size16M && romSize != Gen3Constants.size32M) {
-            return false; // size check
+            return null; // size check
         }
         // Special case for Emerald unofficial translation
         if (romName(rom, Gen3Constants.unofficialEmeraldROMName)) {
@@ -355,47 +351,69 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
             rom[Gen3Constants.romCodeOffset + 3] = 'T';
             rom[Gen3Constants.headerChecksumOffset] = 0x66;
         }
+        MultiPatternSearch.Matches found = null;
+        if (handler != null) {
+            handler.offsetCache = OffsetCache.forData("gen3", rom);
+            found = signatures.loadFrom(rom, handler.offsetCache);
+        }
+        if (found == null) {
+            found = signatures.scan(rom);
+            if (handler != null) {
+                found.saveTo(handler.offsetCache);
+            }
+        }
         // Wild Pokemon header
-        if (find(rom, Gen3Constants.wildPokemonPointerPrefix) == -1) {
-            return false;
+        if (uniqueOffset(found.get(Gen3Constants.wildPokemonPointerPrefix)) == -1) {
+            return null;
         }
         // Map Banks header
-        if (find(rom, Gen3Constants.mapBanksPointerPrefix) == -1) {
-            return false;
+        if (uniqueOffset(found.get(Gen3Constants.mapBanksPointerPrefix)) == -1) {
+            return null;
         }
         // Pokedex Order header
-        if (findMultiple(rom, Gen3Constants.pokedexOrderPointerPrefix).size() != 3) {
-            return false;
+        if (found.get(Gen3Constants.pokedexOrderPointerPrefix).size() != 3) {
+            return null;
         }
-        for (RomEntry re : roms) {
-            if (romCode(rom, re.romCode) && (rom[Gen3Constants.romVersionOffset] & 0xFF) == re.version) {
-                return true; // match
+        for (RomInfoIndex.Section section : romInfo.sections()) {
+            if (romCode(rom, section.get("Game"))
+                    && (rom[Gen3Constants.romVersionOffset] & 0xFF) == section.getInt("Version", 0)) {
+                return found; // match
             }
         }
-        return false; // GBA rom we don't support yet
+        return null; // GBA rom we don't support yet
     }
 
     @Override
     public void loadedRom() {
-        for (RomEntry re : roms) {
-            if (romCode(rom, re.romCode) && (rom[0xBC] & 0xFF) == re.version) {
-                romEntry = new RomEntry(re); // clone so we can modify
+        try {
+            loadRomData();
+        } finally {
+            // only good for this load, even if it failed partway
+            loadMatches = null;
+            offsetCache = null;
+        }
+    }
+
+    private void loadRomData() {
+        for (RomInfoIndex.Section section : romInfo.sections()) {
+            if (romCode(rom, section.get("Game")) && (rom[0xBC] & 0xFF) == section.getInt("Version", 0)) {
+                romEntry = new RomEntry(romInfo.entry(section)); // clone so we can modify
                 break;
             }
         }
 
-        tb = new String[256];
-        d = new HashMap<String, Byte>();
+        textCodec.clear();
         isRomHack = false;
+        freeSpace = null;
         jamboMovesetHack = false;
 
         // Pokemon count stuff, needs to be available first
-        List<Integer> pokedexOrderPrefixes = findMultiple(rom, Gen3Constants.pokedexOrderPointerPrefix);
+        List<Integer> pokedexOrderPrefixes = findMultiple(Gen3Constants.pokedexOrderPointerPrefix);
         romEntry.entries.put("PokedexOrder", readPointer(pokedexOrderPrefixes.get(1) + 16));
 
         // Pokemon names offset
         if (romEntry.romType == Gen3Constants.RomType_Ruby || romEntry.romType == Gen3Constants.RomType_Sapp) {
-            int baseNomOffset = find(rom, Gen3Constants.rsPokemonNamesPointerSuffix);
+            int baseNomOffset = find(Gen3Constants.rsPokemonNamesPointerSuffix);
             romEntry.entries.put("PokemonNames", readPointer(baseNomOffset - 4));
             romEntry.entries.put(
                     "FrontSprites",
@@ -418,7 +436,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
                     romEntry.getValue("MoveTutorData") + romEntry.getValue("MoveTutorMoves") * 2);
         }
 
-        loadTextTable(romEntry.tableFile);
+        textCodec.readTable(romEntry.tableFile);
 
         if (romEntry.romCode.equals("BPRE") && romEntry.version == 0) {
             basicBPRE10HackSupport();
@@ -432,22 +450,27 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         loadMoves();
 
         // Get wild Pokemon offset
-        int baseWPOffset = findMultiple(rom, Gen3Constants.wildPokemonPointerPrefix).get(0);
+        int baseWPOffset = findMultiple(Gen3Constants.wildPokemonPointerPrefix).get(0);
         romEntry.entries.put("WildPokemon", readPointer(baseWPOffset + 12));
 
         // map banks
-        int baseMapsOffset = findMultiple(rom, Gen3Constants.mapBanksPointerPrefix).get(0);
+        int baseMapsOffset = findMultiple(Gen3Constants.mapBanksPointerPrefix).get(0);
         romEntry.entries.put("MapHeaders", readPointer(baseMapsOffset + 12));
         this.determineMapBankSizes();
 
         // map labels
         if (romEntry.romType == Gen3Constants.RomType_FRLG) {
-            int baseMLOffset = find(rom, Gen3Constants.frlgMapLabelsPointerPrefix);
+            int baseMLOffset = find(Gen3Constants.frlgMapLabelsPointerPrefix);
             romEntry.entries.put("MapLabels", readPointer(baseMLOffset + 12));
         } else {
-            int baseMLOffset = find(rom, Gen3Constants.rseMapLabelsPointerPrefix);
+            int baseMLOffset = find(Gen3Constants.rseMapLabelsPointerPrefix);
             romEntry.entries.put("MapLabels", readPointer(baseMLOffset + 12));
         }
+        loadMatches = null;
+        if (offsetCache != null) {
+            offsetCache.save();
+            offsetCache = null;
+        }
 
         mapLoadingDone = false;
         loadAbilityNames();
@@ -471,7 +494,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         }
         if (searchPref.length >= searchSuff.length) {
             // Prefix first
-            List<Integer> offsets = RomFunctions.search(rom, searchPref);
+            List<Integer> offsets = findMultiple(prefix);
             if (offsets.size() == 0) {
                 return -1;
             }
@@ -499,7 +522,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
             return -1; // No match
         } else {
             // Suffix first
-            List<Integer> offsets = RomFunctions.search(rom, searchSuff);
+            List<Integer> offsets = findMultiple(suffix);
             if (offsets.size() == 0) {
                 return -1;
             }
@@ -923,54 +946,11 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
     }
 
     private String readString(int offset, int maxLength) {
-        StringBuilder string = new StringBuilder();
-        for (int c = 0; c < maxLength; c++) {
-            int currChar = rom[offset + c] & 0xFF;
-            if (tb[currChar] != null) {
-                string.append(tb[currChar]);
-            } else {
-                if (currChar == Gen3Constants.textTerminator) {
-                    break;
-                } else if (currChar == Gen3Constants.textVariable) {
-                    int nextChar = rom[offset + c + 1] & 0xFF;
-                    string.append("\\v" + String.format("%02X", nextChar));
-                    c++;
-                } else {
-                    string.append("\\x" + String.format("%02X", currChar));
-                }
-            }
-        }
-        return string.toString();
+        return textCodec.decode(rom, offset, maxLength, false);
     }
 
     private byte[] translateString(String text) {
-        List<Byte> data = new ArrayList<Byte>();
-        while (text.length() != 0) {
-            int i = Math.max(0, 4 - text.length());
-            if (text.charAt(0) == '\\' && text.charAt(1) == 'x') {
-                data.add((byte) Integer.parseInt(text.substring(2, 4), 16));
-                text = text.substring(4);
-            } else if (text.charAt(0) == '\\' && text.charAt(1) == 'v') {
-                data.add((byte) Gen3Constants.textVariable);
-                data.add((byte) Integer.parseInt(text.substring(2, 4), 16));
-                text = text.substring(4);
-            } else {
-                while (!(d.containsKey(text.substring(0, 4 - i)) || (i == 4))) {
-                    i++;
-                }
-                if (i == 4) {
-                    text = text.substring(1);
-                } else {
-                    data.add(d.get(text.substring(0, 4 - i)));
-                    text = text.substring(4 - i);
-                }
-            }
-        }
-        byte[] ret = new byte[data.size()];
-        for (int i = 0; i < ret.length; i++) {
-            ret[i] = data.get(i);
-        }
-        return ret;
+        return textCodec.encode(text);
     }
 
     private String readFixedLengthString(int offset, int length) {
@@ -982,9 +962,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
     }
 
     private void writeFixedLengthString(String str, int offset, int length) {
-        byte[] translated = translateString(str);
-        int len = Math.min(translated.length, length);
-        System.arraycopy(translated, 0, rom, offset, len);
+        int len = textCodec.encodeTo(str, rom, offset, length);
         if (len < length) {
             rom[offset + len] = (byte) Gen3Constants.textTerminator;
             len++;
@@ -996,9 +974,8 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
     }
 
     private void writeVariableLengthString(String str, int offset) {
-        byte[] translated = translateString(str);
-        System.arraycopy(translated, 0, rom, offset, translated.length);
-        rom[offset + translated.length] = (byte) 0xFF;
+        int len = textCodec.encodeTo(str, rom, offset, Integer.MAX_VALUE);
+        rom[offset + len] = (byte) 0xFF;
     }
 
     private int lengthOfStringAt(int offset) {
@@ -1458,7 +1435,8 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
             // now, do we need to repoint?
             int pointerToPokes;
             if (newDataSize > oldDataSize) {
-                int writeSpace = RomFunctions.freeSpaceFinder(rom, Gen3Constants.freeSpaceByte, newDataSize, fso, true);
+                freeSpace().release(readPointer(trOffset + (entryLen - 4)));
+                int writeSpace = freeSpace().allocate(newDataSize, true);
                 if (writeSpace < fso) {
                     throw new RandomizerIOException("ROM is full");
                 }
@@ -1597,7 +1575,8 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
             if (newMoveCount > currentMoveCount) {
                 // Repoint for more space
                 int newBytesNeeded = newMoveCount * entrySize + entrySize * 2;
-                int writeSpace = RomFunctions.freeSpaceFinder(rom, Gen3Constants.freeSpaceByte, newBytesNeeded, fso);
+                freeSpace().release(moveDataLoc);
+                int writeSpace = freeSpace().allocate(newBytesNeeded, true);
                 if (writeSpace < fso) {
                     throw new RandomizerIOException("ROM is full");
                 }
@@ -1756,9 +1735,9 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
                 String moveDesc = readVariableLengthString(moveTextPointer);
                 String newItemDesc = RomFunctions.rewriteDescriptionForNewLineSize(moveDesc, "\\n", limitPerLine, ssd);
                 // Find freespace
-                int fsBytesNeeded = translateString(newItemDesc).length + 1;
-                int newItemDescOffset = RomFunctions.freeSpaceFinder(rom, Gen3Constants.freeSpaceByte, fsBytesNeeded,
-                        fsOffset);
+                int fsBytesNeeded = textCodec.encodedLength(newItemDesc) + 1;
+                freeSpace().release(readPointer(itemBaseOffset + Gen3Constants.itemDataDescriptionOffset));
+                int newItemDescOffset = freeSpace().allocate(fsBytesNeeded, true);
                 if (newItemDescOffset < fsOffset) {
                     String nl = System.getProperty("line.separator");
                     log("Couldn't insert new item description." + nl);
@@ -1788,8 +1767,9 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
                 // get rid of the underscores
                 newText = newText.replace(tmpMoveName, moveName);
                 // insert the new text into free space
-                int fsBytesNeeded = translateString(newText).length + 1;
-                int newOffset = RomFunctions.freeSpaceFinder(rom, (byte) 0xFF, fsBytesNeeded, fsOffset);
+                int fsBytesNeeded = textCodec.encodedLength(newText) + 1;
+                freeSpace().release(oldPointer);
+                int newOffset = freeSpace().allocate(fsBytesNeeded, true);
                 if (newOffset < fsOffset) {
                     String nl = System.getProperty("line.separator");
                     log("Couldn't insert new TM text." + nl);
@@ -1816,7 +1796,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
 
         @Override
         public int lengthFor(String encodedText) {
-            return translateString(encodedText).length;
+            return textCodec.encodedLength(encodedText);
         }
     };
 
@@ -1831,30 +1811,27 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
     }
 
     @Override
-    public Map<Pokemon, boolean[]> getTMHMCompatibility() {
-        Map<Pokemon, boolean[]> compat = new TreeMap<Pokemon, boolean[]>();
+    public CompatibilityMatrix getTMHMCompatibility() {
+        CompatibilityMatrix compat = new CompatibilityMatrix(pokemonList.subList(1, numRealPokemon + 1),
+                Gen3Constants.tmCount + Gen3Constants.hmCount);
         int offset = romEntry.getValue("PokemonTMHMCompat");
         for (int i = 1; i <= numRealPokemon; i++) {
             Pokemon pkmn = pokemonList.get(i);
             int compatOffset = offset + (pokedexToInternal[pkmn.number]) * 8;
-            boolean[] flags = new boolean[Gen3Constants.tmCount + Gen3Constants.hmCount + 1];
             for (int j = 0; j < 8; j++) {
-                readByteIntoFlags(flags, j * 8 + 1, compatOffset + j);
+                compat.setBits(pkmn, j * 8 + 1, 8, rom[compatOffset + j]);
             }
-            compat.put(pkmn, flags);
         }
         return compat;
     }
 
     @Override
-    public void setTMHMCompatibility(Map<Pokemon, boolean[]> compatData) {
+    public void setTMHMCompatibility(CompatibilityMatrix compatData) {
         int offset = romEntry.getValue("PokemonTMHMCompat");
-        for (Map.Entry<Pokemon, boolean[]> compatEntry : compatData.entrySet()) {
-            Pokemon pkmn = compatEntry.getKey();
-            boolean[] flags = compatEntry.getValue();
+        for (Pokemon pkmn : compatData.getPokemon()) {
             int compatOffset = offset + (pokedexToInternal[pkmn.number]) * 8;
             for (int j = 0; j < 8; j++) {
-                rom[compatOffset + j] = getByteFromFlags(flags, j * 8 + 1);
+                rom[compatOffset + j] = (byte) compatData.getBits(pkmn, j * 8 + 1, 8);
             }
         }
     }
@@ -1911,8 +1888,9 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
                 // get rid of the underscores
                 newText = newText.replace(tmpMoveName, moveName);
                 // insert the new text into free space
-                int fsBytesNeeded = translateString(newText).length + 1;
-                int newOffset = RomFunctions.freeSpaceFinder(rom, Gen3Constants.freeSpaceByte, fsBytesNeeded, fsOffset);
+                int fsBytesNeeded = textCodec.encodedLength(newText) + 1;
+                freeSpace().release(oldPointer);
+                int newOffset = freeSpace().allocate(fsBytesNeeded, true);
                 if (newOffset < fsOffset) {
                     String nl = System.getProperty("line.separator");
                     log("Couldn't insert new Move Tutor text." + nl);
@@ -1936,40 +1914,36 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
     }
 
     @Override
-    public Map<Pokemon, boolean[]> getMoveTutorCompatibility() {
+    public CompatibilityMatrix getMoveTutorCompatibility() {
         if (!hasMoveTutors()) {
-            return new TreeMap<Pokemon, boolean[]>();
+            return CompatibilityMatrix.empty();
         }
-        Map<Pokemon, boolean[]> compat = new TreeMap<Pokemon, boolean[]>();
         int moveCount = romEntry.getValue("MoveTutorMoves");
         int offset = romEntry.getValue("MoveTutorCompatibility");
         int bytesRequired = ((moveCount + 7) & ~7) / 8;
+        CompatibilityMatrix compat = new CompatibilityMatrix(pokemonList.subList(1, numRealPokemon + 1), moveCount);
         for (int i = 1; i <= numRealPokemon; i++) {
             Pokemon pkmn = pokemonList.get(i);
             int compatOffset = offset + pokedexToInternal[pkmn.number] * bytesRequired;
-            boolean[] flags = new boolean[moveCount + 1];
             for (int j = 0; j < bytesRequired; j++) {
-                readByteIntoFlags(flags, j * 8 + 1, compatOffset + j);
+                compat.setBits(pkmn, j * 8 + 1, 8, rom[compatOffset + j]);
             }
-            compat.put(pkmn, flags);
         }
         return compat;
     }
 
     @Override
-    public void setMoveTutorCompatibility(Map<Pokemon, boolean[]> compatData) {
+    public void setMoveTutorCompatibility(CompatibilityMatrix compatData) {
         if (!hasMoveTutors()) {
             return;
         }
         int moveCount = romEntry.getValue("MoveTutorMoves");
         int offset = romEntry.getValue("MoveTutorCompatibility");
         int bytesRequired = ((moveCount + 7) & ~7) / 8;
-        for (Map.Entry<Pokemon, boolean[]> compatEntry : compatData.entrySet()) {
-            Pokemon pkmn = compatEntry.getKey();
-            boolean[] flags = compatEntry.getValue();
+        for (Pokemon pkmn : compatData.getPokemon()) {
             int compatOffset = offset + pokedexToInternal[pkmn.number] * bytesRequired;
             for (int j = 0; j < bytesRequired; j++) {
-                rom[compatOffset + j] = getByteFromFlags(flags, j * 8 + 1);
+                rom[compatOffset + j] = (byte) compatData.getBits(pkmn, j * 8 + 1, 8);
             }
         }
     }
@@ -1991,6 +1965,12 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
 
     // For dynamic offsets later
     private int find(String hexString) {
+        if (loadMatches != null && hexString.length() % 2 == 0) {
+            List<Integer> found = loadMatches.get(hexString);
+            if (found != null) {
+                return uniqueOffset(found);
+            }
+        }
         return find(rom, hexString);
     }
 
@@ -2002,7 +1982,10 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         for (int i = 0; i < searchFor.length; i++) {
             searchFor[i] = (byte) Integer.parseInt(hexString.substring(i * 2, i * 2 + 2), 16);
         }
-        List<Integer> found = RomFunctions.search(haystack, searchFor);
+        return uniqueOffset(RomFunctions.search(haystack, searchFor));
+    }
+
+    private static int uniqueOffset(List<Integer> found) {
         if (found.size() == 0) {
             return -1; // not found
         } else if (found.size() > 1) {
@@ -2013,6 +1996,12 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
     }
 
     private List<Integer> findMultiple(String hexString) {
+        if (loadMatches != null && hexString.length() % 2 == 0) {
+            List<Integer> found = loadMatches.get(hexString);
+            if (found != null) {
+                return found;
+            }
+        }
         return findMultiple(rom, hexString);
     }
 
@@ -2111,7 +2100,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
                 return;
             }
             // Find free space for our new routine
-            int writeSpace = RomFunctions.freeSpaceFinder(rom, Gen3Constants.freeSpaceByte, 44, fso);
+            int writeSpace = freeSpace().allocate(44, true);
             if (writeSpace < fso) {
                 log("Patch unsuccessful." + nl);
                 // Somehow this ROM is full
@@ -2130,7 +2119,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
                 return;
             }
             // Find free space for our new routine
-            int writeSpace = RomFunctions.freeSpaceFinder(rom, Gen3Constants.freeSpaceByte, 10, fso);
+            int writeSpace = freeSpace().allocate(10, true);
             if (writeSpace < fso) {
                 // Somehow this ROM is full
                 log("Patch unsuccessful." + nl);
@@ -2179,7 +2168,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
                 return;
             }
             // Find free space for our new routine
-            int writeSpace = RomFunctions.freeSpaceFinder(rom, Gen3Constants.freeSpaceByte, 27, fso);
+            int writeSpace = freeSpace().allocate(27, true);
             if (writeSpace < fso) {
                 // Somehow this ROM is full
                 log("Patch unsuccessful." + nl);
@@ -2473,7 +2462,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
 
     @Override
     public int internalStringLength(String string) {
-        return translateString(string).length;
+        return textCodec.encodedLength(string);
     }
 
     @Override
@@ -2556,7 +2545,21 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         }
     }
 
+    // The ROM's free space, found the first time something needs repointing
+    private FreeSpaceAllocator freeSpace() {
+        if (freeSpace == null) {
+            freeSpace = new FreeSpaceAllocator(rom, Gen3Constants.freeSpaceByte, romEntry.getValue("FreeSpace"));
+        }
+        return freeSpace;
+    }
+
     private void determineMapBankSizes() {
+        int[] cachedSizes = offsetCache == null ? null : offsetCache.get("MapBankSizes");
+        if (cachedSizes != null) {
+            romEntry.entries.put("MapBankCount", cachedSizes.length);
+            romEntry.arrayEntries.put("MapBankSizes", cachedSizes);
+            return;
+        }
         int mbpsOffset = romEntry.getValue("MapHeaders");
         List<Integer> mapBankOffsets = new ArrayList<Integer>();
 
@@ -2613,6 +2616,9 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
 
         romEntry.entries.put("MapBankCount", bankCount);
         romEntry.arrayEntries.put("MapBankSizes", bankMapCounts);
+        if (offsetCache != null) {
+            offsetCache.put("MapBankSizes", bankMapCounts);
+        }
     }
 
     private void preprocessMaps() {
@@ -2909,7 +2915,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
 
     @Override
     public void removeEvosForPokemonPool() {
-        List<Pokemon> pokemonIncluded = this.mainPokemonList;
+        PokemonPool pokemonIncluded = this.mainPokemonPool;
         Set<Evolution> keepEvos = new HashSet<Evolution>();
         for (Pokemon pk : pokes) {
             if (pk != null) {
@@ -24,9 +24,7 @@ package com.dabomstew.pkrandom.romhandlers;
 /*----------------------------------------------------------------------------*/
 
 import java.awt.image.BufferedImage;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -35,7 +33,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Scanner;
 import java.util.Set;
 import java.util.TreeMap;
 
@@ -45,11 +42,15 @@ import thenewpoketext.TextToPoke;
 import com.dabomstew.pkrandom.FileFunctions;
 import com.dabomstew.pkrandom.GFXFunctions;
 import com.dabomstew.pkrandom.MiscTweak;
+import com.dabomstew.pkrandom.MultiPatternSearch;
+import com.dabomstew.pkrandom.OffsetCache;
+import com.dabomstew.pkrandom.RandomizationLog;
 import com.dabomstew.pkrandom.RomFunctions;
 import com.dabomstew.pkrandom.constants.Gen4Constants;
 import com.dabomstew.pkrandom.constants.GlobalConstants;
 import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
 import com.dabomstew.pkrandom.newnds.NARCArchive;
+import com.dabomstew.pkrandom.pokemon.CompatibilityMatrix;
 import com.dabomstew.pkrandom.pokemon.Encounter;
 import com.dabomstew.pkrandom.pokemon.EncounterSet;
 import com.dabomstew.pkrandom.pokemon.Evolution;
@@ -60,6 +61,7 @@ import com.dabomstew.pkrandom.pokemon.ItemList;
 import com.dabomstew.pkrandom.pokemon.Move;
 import com.dabomstew.pkrandom.pokemon.MoveLearnt;
 import com.dabomstew.pkrandom.pokemon.Pokemon;
+import com.dabomstew.pkrandom.pokemon.PokemonPool;
 import com.dabomstew.pkrandom.pokemon.Trainer;
 import com.dabomstew.pkrandom.pokemon.TrainerPokemon;
 
@@ -68,21 +70,26 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
     public static class Factory extends RomHandler.Factory {
 
         @Override
-        public Gen4RomHandler create(Random random, PrintStream logStream) {
-            return new Gen4RomHandler(random, logStream);
+        public Gen4RomHandler create(Random random, RandomizationLog log) {
+            return new Gen4RomHandler(random, log);
         }
 
         public boolean isLoadable(String filename) {
             return detectNDSRomInner(getROMCodeFromFile(filename));
         }
+
+        @Override
+        public boolean isLoadable(byte[] fileStart, long fileLength) {
+            return detectNDSRomInner(getROMCodeFromHeader(fileStart));
+        }
     }
 
     public Gen4RomHandler(Random random) {
         super(random, null);
     }
 
-    public Gen4RomHandler(Random random, PrintStream logStream) {
-        super(random, logStream);
+    public Gen4RomHandler(Random random, RandomizationLog log) {
+        super(random, log);
     }
 
     private static class RomEntry {
@@ -96,155 +103,110 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
         private Map<String, int[]> arrayEntries = new HashMap<String, int[]>();
         private List<StaticPokemon> staticPokemon = new ArrayList<StaticPokemon>();
 
+        // Read-only: entries are shared by every handler for the same game
         private int getInt(String key) {
-            if (!numbers.containsKey(key)) {
-                numbers.put(key, 0);
-            }
-            return numbers.get(key);
+            return numbers.containsKey(key) ? numbers.get(key) : 0;
         }
 
         private String getString(String key) {
-            if (!strings.containsKey(key)) {
-                strings.put(key, "");
-            }
-            return strings.get(key);
+            return strings.containsKey(key) ? strings.get(key) : "";
         }
     }
 
-    private static List<RomEntry> roms;
-
-    static {
-        loadROMInfo();
-
-    }
-
-    private static void loadROMInfo() {
-        roms = new ArrayList<RomEntry>();
-        RomEntry current = null;
-        try {
-            Scanner sc = new Scanner(FileFunctions.openConfig("gen4_offsets.ini"), "UTF-8");
-            while (sc.hasNextLine()) {
-                String q = sc.nextLine().trim();
-                if (q.contains("//")) {
-                    q = q.substring(0, q.indexOf("//")).trim();
+    private static final RomInfoIndex<RomEntry> romInfo = new RomInfoIndex<RomEntry>("gen4_offsets.ini",
+            new RomInfoIndex.Decoder<RomEntry>() {
+                @Override
+                public RomEntry decode(RomInfoIndex.Section section) {
+                    return decodeRomEntry(section);
                 }
-                if (!q.isEmpty()) {
-                    if (q.startsWith("[") && q.endsWith("]")) {
-                        // New rom
-                        current = new RomEntry();
-                        current.name = q.substring(1, q.length() - 1);
-                        roms.add(current);
-                    } else {
-                        String[] r = q.split("=", 2);
-                        if (r.length == 1) {
-                            System.err.println("invalid entry " + q);
-                            continue;
-                        }
-                        if (r[1].endsWith("\r\n")) {
-                            r[1] = r[1].substring(0, r[1].length() - 2);
-                        }
-                        r[1] = r[1].trim();
-                        if (r[0].equals("Game")) {
-                            current.romCode = r[1];
-                        } else if (r[0].equals("Type")) {
-                            if (r[1].equalsIgnoreCase("DP")) {
-                                current.romType = Gen4Constants.Type_DP;
-                            } else if (r[1].equalsIgnoreCase("Plat")) {
-                                current.romType = Gen4Constants.Type_Plat;
-                            } else if (r[1].equalsIgnoreCase("HGSS")) {
-                                current.romType = Gen4Constants.Type_HGSS;
-                            } else {
-                                System.err.println("unrecognised rom type: " + r[1]);
-                            }
-                        } else if (r[0].equals("CopyFrom")) {
-                            for (RomEntry otherEntry : roms) {
-                                if (r[1].equalsIgnoreCase(otherEntry.romCode)) {
-                                    // copy from here
-                                    current.arrayEntries.putAll(otherEntry.arrayEntries);
-                                    current.numbers.putAll(otherEntry.numbers);
-                                    current.strings.putAll(otherEntry.strings);
-                                    if (current.copyStaticPokemon) {
-                                        current.staticPokemon.addAll(otherEntry.staticPokemon);
-                                        current.staticPokemonSupport = true;
-                                    } else {
-                                        current.staticPokemonSupport = false;
-                                    }
-                                }
-                            }
-                        } else if (r[0].equals("StaticPokemon[]")) {
-                            if (r[1].startsWith("[") && r[1].endsWith("]")) {
-                                String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
-                                int[] offs = new int[offsets.length];
-                                int[] files = new int[offsets.length];
-                                int c = 0;
-                                for (String off : offsets) {
-                                    String[] parts = off.split("\\:");
-                                    files[c] = parseRIInt(parts[0]);
-                                    offs[c++] = parseRIInt(parts[1]);
-                                }
-                                StaticPokemon sp = new StaticPokemon();
-                                sp.files = files;
-                                sp.offsets = offs;
-                                current.staticPokemon.add(sp);
-                            } else {
-                                String[] parts = r[1].split("\\:");
-                                int files = parseRIInt(parts[0]);
-                                int offs = parseRIInt(parts[1]);
-                                StaticPokemon sp = new StaticPokemon();
-                                sp.files = new int[] { files };
-                                sp.offsets = new int[] { offs };
-                            }
-                        } else if (r[0].equals("StaticPokemonSupport")) {
-                            int spsupport = parseRIInt(r[1]);
-                            current.staticPokemonSupport = (spsupport > 0);
-                        } else if (r[0].equals("CopyStaticPokemon")) {
-                            int csp = parseRIInt(r[1]);
-                            current.copyStaticPokemon = (csp > 0);
-                        } else if (r[0].endsWith("Tweak")) {
-                            current.tweakFiles.put(r[0], r[1]);
+            });
+
+    private static RomEntry decodeRomEntry(RomInfoIndex.Section section) {
+        RomEntry current = new RomEntry();
+        current.name = section.name();
+        for (String[] r : section.lines()) {
+            if (r[0].equals("Game")) {
+                current.romCode = r[1];
+            } else if (r[0].equals("Type")) {
+                if (r[1].equalsIgnoreCase("DP")) {
+                    current.romType = Gen4Constants.Type_DP;
+                } else if (r[1].equalsIgnoreCase("Plat")) {
+                    current.romType = Gen4Constants.Type_Plat;
+                } else if (r[1].equalsIgnoreCase("HGSS")) {
+                    current.romType = Gen4Constants.Type_HGSS;
+                } else {
+                    System.err.println("unrecognised rom type: " + r[1]);
+                }
+            } else if (r[0].equals("CopyFrom")) {
+                for (RomInfoIndex.Section other : romInfo.sectionsBefore(section)) {
+                    if (r[1].equalsIgnoreCase(other.get("Game"))) {
+                        RomEntry otherEntry = romInfo.entry(other);
+                        // copy from here
+                        current.arrayEntries.putAll(otherEntry.arrayEntries);
+                        current.numbers.putAll(otherEntry.numbers);
+                        current.strings.putAll(otherEntry.strings);
+                        if (current.copyStaticPokemon) {
+                            current.staticPokemon.addAll(otherEntry.staticPokemon);
+                            current.staticPokemonSupport = true;
                         } else {
-                            if (r[1].startsWith("[") && r[1].endsWith("]")) {
-                                String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
-                                if (offsets.length == 1 && offsets[0].trim().isEmpty()) {
-                                    current.arrayEntries.put(r[0], new int[0]);
-                                } else {
-                                    int[] offs = new int[offsets.length];
-                                    int c = 0;
-                                    for (String off : offsets) {
-                                        offs[c++] = parseRIInt(off);
-                                    }
-                                    current.arrayEntries.put(r[0], offs);
-                                }
-                            } else if (r[0].endsWith("Offset") || r[0].endsWith("Count") || r[0].endsWith("Number")
-                                    || r[0].endsWith("Size")) {
-                                int offs = parseRIInt(r[1]);
-                                current.numbers.put(r[0], offs);
-                            } else {
-                                current.strings.put(r[0], r[1]);
-                            }
+                            current.staticPokemonSupport = false;
                         }
                     }
                 }
+            } else if (r[0].equals("StaticPokemon[]")) {
+                if (r[1].startsWith("[") && r[1].endsWith("]")) {
+                    String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
+                    int[] offs = new int[offsets.length];
+                    int[] files = new int[offsets.length];
+                    int c = 0;
+                    for (String off : offsets) {
+                        String[] parts = off.split("\\:");
+                        files[c] = RomInfoIndex.parseRIInt(parts[0]);
+                        offs[c++] = RomInfoIndex.parseRIInt(parts[1]);
+                    }
+                    StaticPokemon sp = new StaticPokemon();
+                    sp.files = files;
+                    sp.offsets = offs;
+                    current.staticPokemon.add(sp);
+                } else {
+                    String[] parts = r[1].split("\\:");
+                    int files = RomInfoIndex.parseRIInt(parts[0]);
+                    int offs = RomInfoIndex.parseRIInt(parts[1]);
+                    StaticPokemon sp = new StaticPokemon();
+                    sp.files = new int[] { files };
+                    sp.offsets = new int[] { offs };
+                }
+            } else if (r[0].equals("StaticPokemonSupport")) {
+                int spsupport = RomInfoIndex.parseRIInt(r[1]);
+                current.staticPokemonSupport = (spsupport > 0);
+            } else if (r[0].equals("CopyStaticPokemon")) {
+                int csp = RomInfoIndex.parseRIInt(r[1]);
+                current.copyStaticPokemon = (csp > 0);
+            } else if (r[0].endsWith("Tweak")) {
+                current.tweakFiles.put(r[0], r[1]);
+            } else {
+                if (r[1].startsWith("[") && r[1].endsWith("]")) {
+                    String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
+                    if (offsets.length == 1 && offsets[0].trim().isEmpty()) {
+                        current.arrayEntries.put(r[0], new int[0]);
+                    } else {
+                        int[] offs = new int[offsets.length];
+                        int c = 0;
+                        for (String off : offsets) {
+                            offs[c++] = RomInfoIndex.parseRIInt(off);
+                        }
+                        current.arrayEntries.put(r[0], offs);
+                    }
+                } else if (r[0].endsWith("Offset") || r[0].endsWith("Count") || r[0].endsWith("Number")
+                        || r[0].endsWith("Size")) {
+                    int offs = RomInfoIndex.parseRIInt(r[1]);
+                    current.numbers.put(r[0], offs);
+                } else {
+                    current.strings.put(r[0], r[1]);
+                }
             }
-            sc.close();
-        } catch (FileNotFoundException e) {
-        }
-
-    }
-
-    private static int parseRIInt(String off) {
-        int radix = 10;
-        off = off.trim().toLowerCase();
-        if (off.startsWith("0x") || off.startsWith("&h")) {
-            radix = 16;
-            off = off.substring(2);
-        }
-        try {
-            return Integer.parseInt(off, radix);
-        } catch (NumberFormatException ex) {
-            System.err.println("invalid base " + radix + "number " + off);
-            return 0;
         }
+        return current;
     }
 
     // This rom
@@ -253,9 +215,11 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
     private Move[] moves;
     private NARCArchive pokeNarc, moveNarc;
     private NARCArchive msgNarc;
+    private MessageTextCache msgText;
     private NARCArchive scriptNarc;
     private NARCArchive eventNarc;
     private byte[] arm9;
+    private MultiPatternSearch.Matches arm9Matches;
     private List<String> abilityNames;
     private List<String> itemNames;
     private boolean loadedWildMapNames;
@@ -274,9 +238,9 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
     }
 
     private static RomEntry entryFor(String ndsCode) {
-        for (RomEntry re : roms) {
-            if (ndsCode.equals(re.romCode)) {
-                return re;
+        for (RomInfoIndex.Section section : romInfo.sections()) {
+            if (ndsCode.equals(section.get("Game"))) {
+                return romInfo.entry(section);
             }
         }
         return null;
@@ -290,8 +254,16 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
         } catch (IOException e) {
             throw new RandomizerIOException(e);
         }
+        OffsetCache arm9Cache = OffsetCache.forData("gen4_arm9", arm9);
+        arm9Matches = arm9Signatures.loadFrom(arm9, arm9Cache);
+        if (arm9Matches == null) {
+            arm9Matches = arm9Signatures.scan(arm9);
+            arm9Matches.saveTo(arm9Cache);
+            arm9Cache.save();
+        }
         try {
             msgNarc = readNARC(romEntry.getString("Text"));
+            msgText = new MessageTextCache(msgNarc, messageCodec);
         } catch (IOException e) {
             throw new RandomizerIOException(e);
         }
@@ -425,6 +397,7 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
         } catch (IOException e) {
             throw new RandomizerIOException(e);
         }
+        msgText.writeBack();
         try {
             writeNARC(romEntry.getString("Text"), msgNarc);
         } catch (IOException e) {
@@ -536,7 +509,7 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
     @Override
     public List<Pokemon> getStarters() {
         if (romEntry.romType == Gen4Constants.Type_HGSS) {
-            List<Integer> tailOffsets = RomFunctions.search(arm9, Gen4Constants.hgssStarterCodeSuffix);
+            List<Integer> tailOffsets = searchARM9(Gen4Constants.hgssStarterCodeSuffix);
             if (tailOffsets.size() == 1) {
                 // Found starters
                 int starterOffset = tailOffsets.get(0) - 13;
@@ -568,7 +541,7 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
         }
 
         if (romEntry.romType == Gen4Constants.Type_HGSS) {
-            List<Integer> tailOffsets = RomFunctions.search(arm9, Gen4Constants.hgssStarterCodeSuffix);
+            List<Integer> tailOffsets = searchARM9(Gen4Constants.hgssStarterCodeSuffix);
             if (tailOffsets.size() == 1) {
                 // Found starters
                 int starterOffset = tailOffsets.get(0) - 13;
@@ -1711,28 +1684,25 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
     }
 
     @Override
-    public Map<Pokemon, boolean[]> getTMHMCompatibility() {
-        Map<Pokemon, boolean[]> compat = new TreeMap<Pokemon, boolean[]>();
+    public CompatibilityMatrix getTMHMCompatibility() {
+        CompatibilityMatrix compat = new CompatibilityMatrix(pokemonList.subList(1, Gen4Constants.pokemonCount + 1),
+                Gen4Constants.tmCount + Gen4Constants.hmCount);
         for (int i = 1; i <= Gen4Constants.pokemonCount; i++) {
             byte[] data = pokeNarc.files.get(i);
             Pokemon pkmn = pokes[i];
-            boolean[] flags = new boolean[Gen4Constants.tmCount + Gen4Constants.hmCount + 1];
             for (int j = 0; j < 13; j++) {
-                readByteIntoFlags(data, flags, j * 8 + 1, Gen4Constants.bsTMHMCompatOffset + j);
+                compat.setBits(pkmn, j * 8 + 1, 8, data[Gen4Constants.bsTMHMCompatOffset + j]);
             }
-            compat.put(pkmn, flags);
         }
         return compat;
     }
 
     @Override
-    public void setTMHMCompatibility(Map<Pokemon, boolean[]> compatData) {
-        for (Map.Entry<Pokemon, boolean[]> compatEntry : compatData.entrySet()) {
-            Pokemon pkmn = compatEntry.getKey();
-            boolean[] flags = compatEntry.getValue();
+    public void setTMHMCompatibility(CompatibilityMatrix compatData) {
+        for (Pokemon pkmn : compatData.getPokemon()) {
             byte[] data = pokeNarc.files.get(pkmn.number);
             for (int j = 0; j < 13; j++) {
-                data[Gen4Constants.bsTMHMCompatOffset + j] = getByteFromFlags(flags, j * 8 + 1);
+                data[Gen4Constants.bsTMHMCompatOffset + j] = (byte) compatData.getBits(pkmn, j * 8 + 1, 8);
             }
         }
     }
@@ -1785,12 +1755,13 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
     }
 
     @Override
-    public Map<Pokemon, boolean[]> getMoveTutorCompatibility() {
+    public CompatibilityMatrix getMoveTutorCompatibility() {
         if (!hasMoveTutors()) {
-            return new TreeMap<Pokemon, boolean[]>();
+            return CompatibilityMatrix.empty();
         }
-        Map<Pokemon, boolean[]> compat = new TreeMap<Pokemon, boolean[]>();
         int amount = romEntry.getInt("MoveTutorCount");
+        CompatibilityMatrix compat = new CompatibilityMatrix(pokemonList.subList(1, Gen4Constants.pokemonCount + 1),
+                amount);
         int baseOffset = romEntry.getInt("MoveTutorCompatOffset");
         int bytesPer = romEntry.getInt("MoveTutorCompatBytesCount");
         try {
@@ -1802,11 +1773,9 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
             }
             for (int i = 1; i <= Gen4Constants.pokemonCount; i++) {
                 Pokemon pkmn = pokes[i];
-                boolean[] flags = new boolean[amount + 1];
                 for (int j = 0; j < bytesPer; j++) {
-                    readByteIntoFlags(mtcFile, flags, j * 8 + 1, baseOffset + (i - 1) * bytesPer + j);
+                    compat.setBits(pkmn, j * 8 + 1, 8, mtcFile[baseOffset + (i - 1) * bytesPer + j]);
                 }
-                compat.put(pkmn, flags);
             }
         } catch (IOException e) {
             throw new RandomizerIOException(e);
@@ -1815,7 +1784,7 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
     }
 
     @Override
-    public void setMoveTutorCompatibility(Map<Pokemon, boolean[]> compatData) {
+    public void setMoveTutorCompatibility(CompatibilityMatrix compatData) {
         if (!hasMoveTutors()) {
             return;
         }
@@ -1829,17 +1798,15 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
             } else {
                 mtcFile = readOverlay(romEntry.getInt("MoveTutorCompatOvlNumber"));
             }
-            for (Map.Entry<Pokemon, boolean[]> compatEntry : compatData.entrySet()) {
-                Pokemon pkmn = compatEntry.getKey();
-                boolean[] flags = compatEntry.getValue();
+            for (Pokemon pkmn : compatData.getPokemon()) {
                 for (int j = 0; j < bytesPer; j++) {
                     int offsHere = baseOffset + (pkmn.number - 1) * bytesPer + j;
                     if (j * 8 + 8 <= amount) {
                         // entirely new byte
-                        mtcFile[offsHere] = getByteFromFlags(flags, j * 8 + 1);
+                        mtcFile[offsHere] = (byte) compatData.getBits(pkmn, j * 8 + 1, 8);
                     } else if (j * 8 < amount) {
                         // need some of the original byte
-                        int newByte = getByteFromFlags(flags, j * 8 + 1) & 0xFF;
+                        int newByte = compatData.getBits(pkmn, j * 8 + 1, 8);
                         int oldByteParts = (mtcFile[offsHere] >>> (8 - amount + j * 8)) << (8 - amount + j * 8);
                         mtcFile[offsHere] = (byte) (newByte | oldByteParts);
                     }
@@ -1856,15 +1823,35 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
         }
     }
 
+    // Every signature looked for in the ARM9, found in one pass when it's read
+    private static final MultiPatternSearch arm9Signatures = new MultiPatternSearch(new String[] {
+            Gen4Constants.dpptTMDataPrefix, Gen4Constants.hgssTMDataPrefix, Gen4Constants.dpItemPalettesPrefix,
+            Gen4Constants.pthgssItemPalettesPrefix,
+            MultiPatternSearch.toHex(Gen4Constants.hgssStarterCodeSuffix) });
+
     private int find(byte[] data, String hexString) {
         if (hexString.length() % 2 != 0) {
             return -3; // error
         }
+        if (data == arm9 && arm9Matches != null) {
+            List<Integer> found = arm9Matches.get(hexString);
+            if (found != null) {
+                return uniqueOffset(found);
+            }
+        }
         byte[] searchFor = new byte[hexString.length() / 2];
         for (int i = 0; i < searchFor.length; i++) {
             searchFor[i] = (byte) Integer.parseInt(hexString.substring(i * 2, i * 2 + 2), 16);
         }
-        List<Integer> found = RomFunctions.search(data, searchFor);
+        return uniqueOffset(RomFunctions.search(data, searchFor));
+    }
+
+    private List<Integer> searchARM9(byte[] needle) {
+        List<Integer> found = arm9Matches == null ? null : arm9Matches.get(needle);
+        return found != null ? found : RomFunctions.search(arm9, needle);
+    }
+
+    private static int uniqueOffset(List<Integer> found) {
         if (found.size() == 0) {
             return -1; // not found
         } else if (found.size() > 1) {
@@ -1876,27 +1863,38 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 
     private boolean lastStringsCompressed = false;
 
+    private static final MessageTextCache.Codec messageCodec = new MessageTextCache.Codec() {
+        @Override
+        public MessageTextCache.Text decode(byte[] data) {
+            PokeTextData pt = new PokeTextData(data);
+            pt.decrypt();
+            return new MessageTextCache.Text(new ArrayList<String>(pt.strlist), pt.compressFlag);
+        }
+
+        @Override
+        public byte[] encode(byte[] oldData, List<String> strings, boolean compressed) {
+            byte[] rawUnencrypted = TextToPoke.MakeFile(strings, compressed);
+
+            // make new encrypted name set
+            PokeTextData encrypt = new PokeTextData(rawUnencrypted);
+            encrypt.SetKey(0xD00E);
+            encrypt.encrypt();
+            return encrypt.get();
+        }
+    };
+
     private List<String> getStrings(int index) {
-        PokeTextData pt = new PokeTextData(msgNarc.files.get(index));
-        pt.decrypt();
-        lastStringsCompressed = pt.compressFlag;
-        return new ArrayList<String>(pt.strlist);
+        lastStringsCompressed = msgText.isCompressed(index);
+        return msgText.getStrings(index);
     }
 
     private void setStrings(int index, List<String> newStrings) {
         setStrings(index, newStrings, false);
     }
 
+    // Encoded into msgNarc when the ROM is saved.
     private void setStrings(int index, List<String> newStrings, boolean compressed) {
-        byte[] rawUnencrypted = TextToPoke.MakeFile(newStrings, compressed);
-
-        // make new encrypted name set
-        PokeTextData encrypt = new PokeTextData(rawUnencrypted);
-        encrypt.SetKey(0xD00E);
-        encrypt.encrypt();
-
-        // rewrite
-        msgNarc.files.set(index, encrypt.get());
+        msgText.setStrings(index, newStrings, compressed);
     }
 
     @Override
@@ -2518,7 +2516,7 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
     public void removeEvosForPokemonPool() {
         // slightly more complicated than gen2/3
         // we have to update a "baby table" too
-        List<Pokemon> pokemonIncluded = this.mainPokemonList;
+        PokemonPool pokemonIncluded = this.mainPokemonPool;
         Set<Evolution> keepEvos = new HashSet<Evolution>();
         for (Pokemon pk : pokes) {
             if (pk != null) {
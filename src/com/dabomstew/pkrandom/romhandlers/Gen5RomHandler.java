@@ -25,9 +25,7 @@ package com.dabomstew.pkrandom.romhandlers;
 
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -36,7 +34,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Scanner;
 import java.util.Set;
 import java.util.TreeMap;
 
@@ -45,11 +42,15 @@ import pptxt.PPTxtHandler;
 import com.dabomstew.pkrandom.FileFunctions;
 import com.dabomstew.pkrandom.GFXFunctions;
 import com.dabomstew.pkrandom.MiscTweak;
+import com.dabomstew.pkrandom.MultiPatternSearch;
+import com.dabomstew.pkrandom.OffsetCache;
+import com.dabomstew.pkrandom.RandomizationLog;
 import com.dabomstew.pkrandom.RomFunctions;
 import com.dabomstew.pkrandom.constants.Gen5Constants;
 import com.dabomstew.pkrandom.constants.GlobalConstants;
 import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
 import com.dabomstew.pkrandom.newnds.NARCArchive;
+import com.dabomstew.pkrandom.pokemon.CompatibilityMatrix;
 import com.dabomstew.pkrandom.pokemon.Encounter;
 import com.dabomstew.pkrandom.pokemon.EncounterSet;
 import com.dabomstew.pkrandom.pokemon.Evolution;
@@ -60,6 +61,7 @@ import com.dabomstew.pkrandom.pokemon.ItemList;
 import com.dabomstew.pkrandom.pokemon.Move;
 import com.dabomstew.pkrandom.pokemon.MoveLearnt;
 import com.dabomstew.pkrandom.pokemon.Pokemon;
+import com.dabomstew.pkrandom.pokemon.PokemonPool;
 import com.dabomstew.pkrandom.pokemon.Trainer;
 import com.dabomstew.pkrandom.pokemon.TrainerPokemon;
 import compressors.DSDecmp;
@@ -69,21 +71,26 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
     public static class Factory extends RomHandler.Factory {
 
         @Override
-        public Gen5RomHandler create(Random random, PrintStream logStream) {
-            return new Gen5RomHandler(random, logStream);
+        public Gen5RomHandler create(Random random, RandomizationLog log) {
+            return new Gen5RomHandler(random, log);
         }
 
         public boolean isLoadable(String filename) {
             return detectNDSRomInner(getROMCodeFromFile(filename));
         }
+
+        @Override
+        public boolean isLoadable(byte[] fileStart, long fileLength) {
+            return detectNDSRomInner(getROMCodeFromHeader(fileStart));
+        }
     }
 
     public Gen5RomHandler(Random random) {
         super(random, null);
     }
 
-    public Gen5RomHandler(Random random, PrintStream logStream) {
-        super(random, logStream);
+    public Gen5RomHandler(Random random, RandomizationLog log) {
+        super(random, log);
     }
 
     private static class OffsetWithinEntry {
@@ -103,161 +110,118 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
         private Map<String, OffsetWithinEntry[]> offsetArrayEntries = new HashMap<String, OffsetWithinEntry[]>();
         private List<StaticPokemon> staticPokemon = new ArrayList<StaticPokemon>();
 
+        // Read-only: entries are shared by every handler for the same game
         private int getInt(String key) {
-            if (!numbers.containsKey(key)) {
-                numbers.put(key, 0);
-            }
-            return numbers.get(key);
+            return numbers.containsKey(key) ? numbers.get(key) : 0;
         }
 
         private String getString(String key) {
-            if (!strings.containsKey(key)) {
-                strings.put(key, "");
-            }
-            return strings.get(key);
+            return strings.containsKey(key) ? strings.get(key) : "";
         }
     }
 
-    private static List<RomEntry> roms;
-
-    static {
-        loadROMInfo();
-    }
-
-    private static void loadROMInfo() {
-        roms = new ArrayList<RomEntry>();
-        RomEntry current = null;
-        try {
-            Scanner sc = new Scanner(FileFunctions.openConfig("gen5_offsets.ini"), "UTF-8");
-            while (sc.hasNextLine()) {
-                String q = sc.nextLine().trim();
-                if (q.contains("//")) {
-                    q = q.substring(0, q.indexOf("//")).trim();
+    private static final RomInfoIndex<RomEntry> romInfo = new RomInfoIndex<RomEntry>("gen5_offsets.ini",
+            new RomInfoIndex.Decoder<RomEntry>() {
+                @Override
+                public RomEntry decode(RomInfoIndex.Section section) {
+                    return decodeRomEntry(section);
                 }
-                if (!q.isEmpty()) {
-                    if (q.startsWith("[") && q.endsWith("]")) {
-                        // New rom
-                        current = new RomEntry();
-                        current.name = q.substring(1, q.length() - 1);
-                        roms.add(current);
-                    } else {
-                        String[] r = q.split("=", 2);
-                        if (r.length == 1) {
-                            System.err.println("invalid entry " + q);
-                            continue;
-                        }
-                        if (r[1].endsWith("\r\n")) {
-                            r[1] = r[1].substring(0, r[1].length() - 2);
-                        }
-                        r[1] = r[1].trim();
-                        if (r[0].equals("Game")) {
-                            current.romCode = r[1];
-                        } else if (r[0].equals("Type")) {
-                            if (r[1].equalsIgnoreCase("BW2")) {
-                                current.romType = Gen5Constants.Type_BW2;
-                            } else {
-                                current.romType = Gen5Constants.Type_BW;
-                            }
-                        } else if (r[0].equals("CopyFrom")) {
-                            for (RomEntry otherEntry : roms) {
-                                if (r[1].equalsIgnoreCase(otherEntry.romCode)) {
-                                    // copy from here
-                                    current.arrayEntries.putAll(otherEntry.arrayEntries);
-                                    current.numbers.putAll(otherEntry.numbers);
-                                    current.strings.putAll(otherEntry.strings);
-                                    current.offsetArrayEntries.putAll(otherEntry.offsetArrayEntries);
-                                    if (current.copyStaticPokemon) {
-                                        current.staticPokemon.addAll(otherEntry.staticPokemon);
-                                        current.staticPokemonSupport = true;
-                                    } else {
-                                        current.staticPokemonSupport = false;
-                                    }
-                                }
-                            }
-                        } else if (r[0].equals("StaticPokemon[]")) {
-                            if (r[1].startsWith("[") && r[1].endsWith("]")) {
-                                String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
-                                int[] offs = new int[offsets.length];
-                                int[] files = new int[offsets.length];
-                                int c = 0;
-                                for (String off : offsets) {
-                                    String[] parts = off.split("\\:");
-                                    files[c] = parseRIInt(parts[0]);
-                                    offs[c++] = parseRIInt(parts[1]);
-                                }
-                                StaticPokemon sp = new StaticPokemon();
-                                sp.files = files;
-                                sp.offsets = offs;
-                                current.staticPokemon.add(sp);
-                            } else {
-                                String[] parts = r[1].split("\\:");
-                                int files = parseRIInt(parts[0]);
-                                int offs = parseRIInt(parts[1]);
-                                StaticPokemon sp = new StaticPokemon();
-                                sp.files = new int[] { files };
-                                sp.offsets = new int[] { offs };
-                            }
-                        } else if (r[0].equals("StaticPokemonSupport")) {
-                            int spsupport = parseRIInt(r[1]);
-                            current.staticPokemonSupport = (spsupport > 0);
-                        } else if (r[0].equals("CopyStaticPokemon")) {
-                            int csp = parseRIInt(r[1]);
-                            current.copyStaticPokemon = (csp > 0);
-                        } else if (r[0].startsWith("StarterOffsets") || r[0].equals("StaticPokemonFormValues")) {
-                            String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
-                            OffsetWithinEntry[] offs = new OffsetWithinEntry[offsets.length];
-                            int c = 0;
-                            for (String off : offsets) {
-                                String[] parts = off.split("\\:");
-                                OffsetWithinEntry owe = new OffsetWithinEntry();
-                                owe.entry = parseRIInt(parts[0]);
-                                owe.offset = parseRIInt(parts[1]);
-                                offs[c++] = owe;
-                            }
-                            current.offsetArrayEntries.put(r[0], offs);
-                        } else if (r[0].endsWith("Tweak")) {
-                            current.tweakFiles.put(r[0], r[1]);
+            });
+
+    private static RomEntry decodeRomEntry(RomInfoIndex.Section section) {
+        RomEntry current = new RomEntry();
+        current.name = section.name();
+        for (String[] r : section.lines()) {
+            if (r[0].equals("Game")) {
+                current.romCode = r[1];
+            } else if (r[0].equals("Type")) {
+                if (r[1].equalsIgnoreCase("BW2")) {
+                    current.romType = Gen5Constants.Type_BW2;
+                } else {
+                    current.romType = Gen5Constants.Type_BW;
+                }
+            } else if (r[0].equals("CopyFrom")) {
+                for (RomInfoIndex.Section other : romInfo.sectionsBefore(section)) {
+                    if (r[1].equalsIgnoreCase(other.get("Game"))) {
+                        RomEntry otherEntry = romInfo.entry(other);
+                        // copy from here
+                        current.arrayEntries.putAll(otherEntry.arrayEntries);
+                        current.numbers.putAll(otherEntry.numbers);
+                        current.strings.putAll(otherEntry.strings);
+                        current.offsetArrayEntries.putAll(otherEntry.offsetArrayEntries);
+                        if (current.copyStaticPokemon) {
+                            current.staticPokemon.addAll(otherEntry.staticPokemon);
+                            current.staticPokemonSupport = true;
                         } else {
-                            if (r[1].startsWith("[") && r[1].endsWith("]")) {
-                                String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
-                                if (offsets.length == 1 && offsets[0].trim().isEmpty()) {
-                                    current.arrayEntries.put(r[0], new int[0]);
-                                } else {
-                                    int[] offs = new int[offsets.length];
-                                    int c = 0;
-                                    for (String off : offsets) {
-                                        offs[c++] = parseRIInt(off);
-                                    }
-                                    current.arrayEntries.put(r[0], offs);
-                                }
-                            } else if (r[0].endsWith("Offset") || r[0].endsWith("Count") || r[0].endsWith("Number")) {
-                                int offs = parseRIInt(r[1]);
-                                current.numbers.put(r[0], offs);
-                            } else {
-                                current.strings.put(r[0], r[1]);
-                            }
+                            current.staticPokemonSupport = false;
                         }
                     }
                 }
+            } else if (r[0].equals("StaticPokemon[]")) {
+                if (r[1].startsWith("[") && r[1].endsWith("]")) {
+                    String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
+                    int[] offs = new int[offsets.length];
+                    int[] files = new int[offsets.length];
+                    int c = 0;
+                    for (String off : offsets) {
+                        String[] parts = off.split("\\:");
+                        files[c] = RomInfoIndex.parseRIInt(parts[0]);
+                        offs[c++] = RomInfoIndex.parseRIInt(parts[1]);
+                    }
+                    StaticPokemon sp = new StaticPokemon();
+                    sp.files = files;
+                    sp.offsets = offs;
+                    current.staticPokemon.add(sp);
+                } else {
+                    String[] parts = r[1].split("\\:");
+                    int files = RomInfoIndex.parseRIInt(parts[0]);
+                    int offs = RomInfoIndex.parseRIInt(parts[1]);
+                    StaticPokemon sp = new StaticPokemon();
+                    sp.files = new int[] { files };
+                    sp.offsets = new int[] { offs };
+                }
+            } else if (r[0].equals("StaticPokemonSupport")) {
+                int spsupport = RomInfoIndex.parseRIInt(r[1]);
+                current.staticPokemonSupport = (spsupport > 0);
+            } else if (r[0].equals("CopyStaticPokemon")) {
+                int csp = RomInfoIndex.parseRIInt(r[1]);
+                current.copyStaticPokemon = (csp > 0);
+            } else if (r[0].startsWith("StarterOffsets") || r[0].equals("StaticPokemonFormValues")) {
+                String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
+                OffsetWithinEntry[] offs = new OffsetWithinEntry[offsets.length];
+                int c = 0;
+                for (String off : offsets) {
+                    String[] parts = off.split("\\:");
+                    OffsetWithinEntry owe = new OffsetWithinEntry();
+                    owe.entry = RomInfoIndex.parseRIInt(parts[0]);
+                    owe.offset = RomInfoIndex.parseRIInt(parts[1]);
+                    offs[c++] = owe;
+                }
+                current.offsetArrayEntries.put(r[0], offs);
+            } else if (r[0].endsWith("Tweak")) {
+                current.tweakFiles.put(r[0], r[1]);
+            } else {
+                if (r[1].startsWith("[") && r[1].endsWith("]")) {
+                    String[] offsets = r[1].substring(1, r[1].length() - 1).split(",");
+                    if (offsets.length == 1 && offsets[0].trim().isEmpty()) {
+                        current.arrayEntries.put(r[0], new int[0]);
+                    } else {
+                        int[] offs = new int[offsets.length];
+                        int c = 0;
+                        for (String off : offsets) {
+                            offs[c++] = RomInfoIndex.parseRIInt(off);
+                        }
+                        current.arrayEntries.put(r[0], offs);
+                    }
+                } else if (r[0].endsWith("Offset") || r[0].endsWith("Count") || r[0].endsWith("Number")) {
+                    int offs = RomInfoIndex.parseRIInt(r[1]);
+                    current.numbers.put(r[0], offs);
+                } else {
+                    current.strings.put(r[0], r[1]);
+                }
             }
-            sc.close();
-        } catch (FileNotFoundException e) {
-        }
-    }
-
-    private static int parseRIInt(String off) {
-        int radix = 10;
-        off = off.trim().toLowerCase();
-        if (off.startsWith("0x") || off.startsWith("&h")) {
-            radix = 16;
-            off = off.substring(2);
-        }
-        try {
-            return Integer.parseInt(off, radix);
-        } catch (NumberFormatException ex) {
-            System.err.println("invalid base " + radix + "number " + off);
-            return 0;
         }
+        return current;
     }
 
     // This ROM
@@ -266,6 +230,7 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
     private Move[] moves;
     private RomEntry romEntry;
     private byte[] arm9;
+    private MultiPatternSearch.Matches arm9Matches;
     private List<String> abilityNames;
     private List<String> itemNames;
     private boolean loadedWildMapNames;
@@ -273,6 +238,7 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
     private ItemList allowedItems, nonBadItems;
 
     private NARCArchive pokeNarc, moveNarc, stringsNarc, storyTextNarc, scriptNarc;
+    private MessageTextCache stringsText, storyText;
 
     @Override
     protected boolean detectNDSRom(String ndsCode) {
@@ -288,9 +254,9 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
             return null;
         }
 
-        for (RomEntry re : roms) {
-            if (ndsCode.equals(re.romCode)) {
-                return re;
+        for (RomInfoIndex.Section section : romInfo.sections()) {
+            if (ndsCode.equals(section.get("Game"))) {
+                return romInfo.entry(section);
             }
         }
         return null;
@@ -304,9 +270,18 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
         } catch (IOException e) {
             throw new RandomizerIOException(e);
         }
+        OffsetCache arm9Cache = OffsetCache.forData("gen5_arm9", arm9);
+        arm9Matches = arm9Signatures.loadFrom(arm9, arm9Cache);
+        if (arm9Matches == null) {
+            arm9Matches = arm9Signatures.scan(arm9);
+            arm9Matches.saveTo(arm9Cache);
+            arm9Cache.save();
+        }
         try {
             stringsNarc = readNARC(romEntry.getString("TextStrings"));
             storyTextNarc = readNARC(romEntry.getString("TextStory"));
+            stringsText = new MessageTextCache(stringsNarc, messageCodec);
+            storyText = new MessageTextCache(storyTextNarc, messageCodec);
         } catch (IOException e) {
             throw new RandomizerIOException(e);
         }
@@ -436,6 +411,8 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
         } catch (IOException e) {
             throw new RandomizerIOException(e);
         }
+        stringsText.writeBack();
+        storyText.writeBack();
         try {
             writeNARC(romEntry.getString("TextStrings"), stringsNarc);
             writeNARC(romEntry.getString("TextStory"), storyTextNarc);
@@ -1483,28 +1460,25 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
     }
 
     @Override
-    public Map<Pokemon, boolean[]> getTMHMCompatibility() {
-        Map<Pokemon, boolean[]> compat = new TreeMap<Pokemon, boolean[]>();
+    public CompatibilityMatrix getTMHMCompatibility() {
+        CompatibilityMatrix compat = new CompatibilityMatrix(pokemonList.subList(1, Gen5Constants.pokemonCount + 1),
+                Gen5Constants.tmCount + Gen5Constants.hmCount);
         for (int i = 1; i <= Gen5Constants.pokemonCount; i++) {
             byte[] data = pokeNarc.files.get(i);
             Pokemon pkmn = pokes[i];
-            boolean[] flags = new boolean[Gen5Constants.tmCount + Gen5Constants.hmCount + 1];
             for (int j = 0; j < 13; j++) {
-                readByteIntoFlags(data, flags, j * 8 + 1, Gen5Constants.bsTMHMCompatOffset + j);
+                compat.setBits(pkmn, j * 8 + 1, 8, data[Gen5Constants.bsTMHMCompatOffset + j]);
             }
-            compat.put(pkmn, flags);
         }
         return compat;
     }
 
     @Override
-    public void setTMHMCompatibility(Map<Pokemon, boolean[]> compatData) {
-        for (Map.Entry<Pokemon, boolean[]> compatEntry : compatData.entrySet()) {
-            Pokemon pkmn = compatEntry.getKey();
-            boolean[] flags = compatEntry.getValue();
+    public void setTMHMCompatibility(CompatibilityMatrix compatData) {
+        for (Pokemon pkmn : compatData.getPokemon()) {
             byte[] data = pokeNarc.files.get(pkmn.number);
             for (int j = 0; j < 13; j++) {
-                data[Gen5Constants.bsTMHMCompatOffset + j] = getByteFromFlags(flags, j * 8 + 1);
+                data[Gen5Constants.bsTMHMCompatOffset + j] = (byte) compatData.getBits(pkmn, j * 8 + 1, 8);
             }
         }
     }
@@ -1557,36 +1531,32 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
     }
 
     @Override
-    public Map<Pokemon, boolean[]> getMoveTutorCompatibility() {
+    public CompatibilityMatrix getMoveTutorCompatibility() {
         if (!hasMoveTutors()) {
-            return new TreeMap<Pokemon, boolean[]>();
+            return CompatibilityMatrix.empty();
         }
-        Map<Pokemon, boolean[]> compat = new TreeMap<Pokemon, boolean[]>();
+        CompatibilityMatrix compat = new CompatibilityMatrix(pokemonList.subList(1, Gen5Constants.pokemonCount + 1),
+                Gen5Constants.bw2MoveTutorCount);
         int[] countsPersonalOrder = new int[] { 15, 17, 13, 15 };
         int[] countsMoveOrder = new int[] { 13, 15, 15, 17 };
         int[] personalToMoveOrder = new int[] { 1, 3, 0, 2 };
         for (int i = 1; i <= Gen5Constants.pokemonCount; i++) {
             byte[] data = pokeNarc.files.get(i);
             Pokemon pkmn = pokes[i];
-            boolean[] flags = new boolean[Gen5Constants.bw2MoveTutorCount + 1];
             for (int mt = 0; mt < 4; mt++) {
-                boolean[] mtflags = new boolean[countsPersonalOrder[mt] + 1];
-                for (int j = 0; j < 4; j++) {
-                    readByteIntoFlags(data, mtflags, j * 8 + 1, Gen5Constants.bsMTCompatOffset + mt * 4 + j);
-                }
                 int offsetOfThisData = 0;
                 for (int cmoIndex = 0; cmoIndex < personalToMoveOrder[mt]; cmoIndex++) {
                     offsetOfThisData += countsMoveOrder[cmoIndex];
                 }
-                System.arraycopy(mtflags, 1, flags, offsetOfThisData + 1, countsPersonalOrder[mt]);
+                compat.setBits(pkmn, offsetOfThisData + 1, countsPersonalOrder[mt],
+                        readLong(data, Gen5Constants.bsMTCompatOffset + mt * 4));
             }
-            compat.put(pkmn, flags);
         }
         return compat;
     }
 
     @Override
-    public void setMoveTutorCompatibility(Map<Pokemon, boolean[]> compatData) {
+    public void setMoveTutorCompatibility(CompatibilityMatrix compatData) {
         if (!hasMoveTutors()) {
             return;
         }
@@ -1596,33 +1566,41 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
         int[] countsPersonalOrder = new int[] { 15, 17, 13, 15 };
         int[] countsMoveOrder = new int[] { 13, 15, 15, 17 };
         int[] personalToMoveOrder = new int[] { 1, 3, 0, 2 };
-        for (Map.Entry<Pokemon, boolean[]> compatEntry : compatData.entrySet()) {
-            Pokemon pkmn = compatEntry.getKey();
-            boolean[] flags = compatEntry.getValue();
+        for (Pokemon pkmn : compatData.getPokemon()) {
             byte[] data = pokeNarc.files.get(pkmn.number);
             for (int mt = 0; mt < 4; mt++) {
                 int offsetOfThisData = 0;
                 for (int cmoIndex = 0; cmoIndex < personalToMoveOrder[mt]; cmoIndex++) {
                     offsetOfThisData += countsMoveOrder[cmoIndex];
                 }
-                boolean[] mtflags = new boolean[countsPersonalOrder[mt] + 1];
-                System.arraycopy(flags, offsetOfThisData + 1, mtflags, 1, countsPersonalOrder[mt]);
-                for (int j = 0; j < 4; j++) {
-                    data[Gen5Constants.bsMTCompatOffset + mt * 4 + j] = getByteFromFlags(mtflags, j * 8 + 1);
-                }
+                writeLong(data, Gen5Constants.bsMTCompatOffset + mt * 4,
+                        compatData.getBits(pkmn, offsetOfThisData + 1, countsPersonalOrder[mt]));
             }
         }
     }
 
+    // Every signature looked for in the ARM9, found in one pass when it's read
+    private static final MultiPatternSearch arm9Signatures = new MultiPatternSearch(new String[] {
+            Gen5Constants.tmDataPrefix, Gen5Constants.bw1ItemPalettesPrefix, Gen5Constants.bw2ItemPalettesPrefix });
+
     private int find(byte[] data, String hexString) {
         if (hexString.length() % 2 != 0) {
             return -3; // error
         }
+        if (data == arm9 && arm9Matches != null) {
+            List<Integer> found = arm9Matches.get(hexString);
+            if (found != null) {
+                return uniqueOffset(found);
+            }
+        }
         byte[] searchFor = new byte[hexString.length() / 2];
         for (int i = 0; i < searchFor.length; i++) {
             searchFor[i] = (byte) Integer.parseInt(hexString.substring(i * 2, i * 2 + 2), 16);
         }
-        List<Integer> found = RomFunctions.search(data, searchFor);
+        return uniqueOffset(RomFunctions.search(data, searchFor));
+    }
+
+    private static int uniqueOffset(List<Integer> found) {
         if (found.size() == 0) {
             return -1; // not found
         } else if (found.size() > 1) {
@@ -1632,17 +1610,25 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
         }
     }
 
+    private static final MessageTextCache.Codec messageCodec = new MessageTextCache.Codec() {
+        @Override
+        public MessageTextCache.Text decode(byte[] data) {
+            return new MessageTextCache.Text(new ArrayList<String>(PPTxtHandler.readTexts(data)), false);
+        }
+
+        @Override
+        public byte[] encode(byte[] oldData, List<String> strings, boolean compressed) {
+            return PPTxtHandler.saveEntry(oldData, strings);
+        }
+    };
+
     private List<String> getStrings(boolean isStoryText, int index) {
-        NARCArchive baseNARC = isStoryText ? storyTextNarc : stringsNarc;
-        byte[] rawFile = baseNARC.files.get(index);
-        return new ArrayList<String>(PPTxtHandler.readTexts(rawFile));
+        return (isStoryText ? storyText : stringsText).getStrings(index);
     }
 
+    // Encoded into the text NARCs when the ROM is saved.
     private void setStrings(boolean isStoryText, int index, List<String> strings) {
-        NARCArchive baseNARC = isStoryText ? storyTextNarc : stringsNarc;
-        byte[] oldRawFile = baseNARC.files.get(index);
-        byte[] newRawFile = PPTxtHandler.saveEntry(oldRawFile, strings);
-        baseNARC.files.set(index, newRawFile);
+        (isStoryText ? storyText : stringsText).setStrings(index, strings, false);
     }
 
     @Override
@@ -2261,7 +2247,7 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
     public void removeEvosForPokemonPool() {
         // slightly more complicated than gen2/3
         // we have to update a "baby table" too
-        List<Pokemon> pokemonIncluded = this.mainPokemonList;
+        PokemonPool pokemonIncluded = this.mainPokemonPool;
         Set<Evolution> keepEvos = new HashSet<Evolution>();
         for (Pokemon pk : pokes) {
             if (pk != null) {
@@ -0,0 +1,105 @@
+package com.dabomstew.pkrandom.romhandlers;
+
+/*----------------------------------------------------------------------------*/
+/*--  MessageTextCache.java - decoded text entries of a DS message NARC,    --*/
+/*--                         re-encoded only if changed.                    --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.dabomstew.pkrandom.newnds.NARCArchive;
+
+/**
+ * The text entries of a message NARC, each decoded the first time it's asked
+ * for and then kept. Changes stay in memory until writeBack, which encodes
+ * just the entries that were set into the NARC; handlers call it from
+ * savingROM before writing the NARC out.
+ */
+class MessageTextCache {
+
+    interface Codec {
+        Text decode(byte[] data);
+
+        byte[] encode(byte[] oldData, List<String> strings, boolean compressed);
+    }
+
+    static class Text {
+        final List<String> strings;
+        // whether the entry is (or is to be) stored compressed
+        final boolean compressed;
+
+        Text(List<String> strings, boolean compressed) {
+            this.strings = strings;
+            this.compressed = compressed;
+        }
+    }
+
+    private final NARCArchive narc;
+    private final Codec codec;
+    private final Map<Integer, Text> decoded = new HashMap<Integer, Text>();
+    private final TreeSet<Integer> dirty = new TreeSet<Integer>();
+
+    MessageTextCache(NARCArchive narc, Codec codec) {
+        this.narc = narc;
+        this.codec = codec;
+    }
+
+    // A copy of entry index's strings, free for the caller to change.
+    List<String> getStrings(int index) {
+        return new ArrayList<String>(text(index).strings);
+    }
+
+    boolean isCompressed(int index) {
+        return text(index).compressed;
+    }
+
+    void setStrings(int index, List<String> strings, boolean compressed) {
+        decoded.put(index, new Text(new ArrayList<String>(strings), compressed));
+        dirty.add(index);
+    }
+
+    // Encodes every entry changed since the last write back into the NARC.
+    void writeBack() {
+        for (int index : dirty) {
+            Text text = decoded.get(index);
+            // the codec may change the list it's given
+            List<String> strings = new ArrayList<String>(text.strings);
+            narc.files.set(index, codec.encode(narc.files.get(index), strings, text.compressed));
+        }
+        dirty.clear();
+    }
+
+    private Text text(int index) {
+        Text text = decoded.get(index);
+        if (text == null) {
+            text = codec.decode(narc.files.get(index));
+            decoded.put(index, text);
+        }
+        return text;
+    }
+
+}
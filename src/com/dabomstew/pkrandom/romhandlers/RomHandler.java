@@ -25,13 +25,14 @@ package com.dabomstew.pkrandom.romhandlers;
 /*----------------------------------------------------------------------------*/
 
 import java.awt.image.BufferedImage;
-import java.io.PrintStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
 import com.dabomstew.pkrandom.CustomNamesSet;
 import com.dabomstew.pkrandom.MiscTweak;
+import com.dabomstew.pkrandom.RandomizationLog;
+import com.dabomstew.pkrandom.pokemon.CompatibilityMatrix;
 import com.dabomstew.pkrandom.pokemon.EncounterSet;
 import com.dabomstew.pkrandom.pokemon.GenRestrictions;
 import com.dabomstew.pkrandom.pokemon.IngameTrade;
@@ -49,9 +50,17 @@ public interface RomHandler {
             return create(random, null);
         }
 
-        public abstract RomHandler create(Random random, PrintStream log);
+        public abstract RomHandler create(Random random, RandomizationLog log);
 
         public abstract boolean isLoadable(String filename);
+
+        /**
+         * Same as isLoadable(filename), but given the start of the file
+         * (RomDetector.HEADER_BYTES of it, or all of it if it's shorter) and
+         * its length, so that detection doesn't read it again. fileStart may
+         * be shared with other factories and must not be changed.
+         */
+        public abstract boolean isLoadable(byte[] fileStart, long fileLength);
     }
 
     // Basic load/save to filenames
@@ -64,7 +73,7 @@ public interface RomHandler {
 
     // Log stuff
 
-    public void setLog(PrintStream logStream);
+    public void setLog(RandomizationLog log);
 
     // Get a List of Pokemon objects in this game.
     // 0 = null 1-whatever = the Pokemon.
@@ -255,9 +264,9 @@ public interface RomHandler {
      * @return
      */
 
-    public Map<Pokemon, boolean[]> getTMHMCompatibility();
+    public CompatibilityMatrix getTMHMCompatibility();
 
-    public void setTMHMCompatibility(Map<Pokemon, boolean[]> compatData);
+    public void setTMHMCompatibility(CompatibilityMatrix compatData);
 
     public void randomizeTMHMCompatibility(boolean preferSameType);
 
@@ -281,9 +290,9 @@ public interface RomHandler {
 
     public void randomizeMoveTutorMoves(boolean noBroken, boolean preserveField, double goodDamagingProbability);
 
-    public Map<Pokemon, boolean[]> getMoveTutorCompatibility();
+    public CompatibilityMatrix getMoveTutorCompatibility();
 
-    public void setMoveTutorCompatibility(Map<Pokemon, boolean[]> compatData);
+    public void setMoveTutorCompatibility(CompatibilityMatrix compatData);
 
     public void randomizeMoveTutorCompatibility(boolean preferSameType);
 
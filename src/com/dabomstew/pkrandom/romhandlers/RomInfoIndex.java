@@ -0,0 +1,172 @@
+package com.dabomstew.pkrandom.romhandlers;
+
+/*----------------------------------------------------------------------------*/
+/*--  RomInfoIndex.java - the entries of a ROM offsets file, split up       --*/
+/*--                     once and decoded only when needed.                 --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import com.dabomstew.pkrandom.FileFunctions;
+
+/**
+ * The sections of a genX_offsets.ini. The file isn't read until it's first
+ * needed, and then only split into sections of key/value pairs; a section is
+ * decoded into a rom entry the first time that entry is asked for. Working out
+ * which entry a ROM is only needs a couple of raw values from each section, so
+ * only the entry for the ROM actually loaded (and any it copies from) is ever
+ * decoded.
+ *
+ * Safe to share between threads. Every caller asking for a section gets the
+ * same entry object, so handlers must treat entries as read-only or copy
+ * them before making changes.
+ */
+class RomInfoIndex<E> {
+
+    interface Decoder<E> {
+        // Builds the entry for section; may ask the index for earlier entries.
+        E decode(Section section);
+    }
+
+    static class Section {
+        private final String name;
+        private final int index;
+        private final List<String[]> lines = new ArrayList<String[]>();
+
+        private Section(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        // Key/value pairs in file order, both trimmed.
+        public List<String[]> lines() {
+            return Collections.unmodifiableList(lines);
+        }
+
+        // The last value given for key, or null if there isn't one.
+        public String get(String key) {
+            String value = null;
+            for (String[] line : lines) {
+                if (line[0].equals(key)) {
+                    value = line[1];
+                }
+            }
+            return value;
+        }
+
+        // The last value given for key as a number, or defaultValue.
+        public int getInt(String key, int defaultValue) {
+            String value = get(key);
+            return value == null ? defaultValue : parseRIInt(value);
+        }
+    }
+
+    private final String filename;
+    private final Decoder<E> decoder;
+    private List<Section> sections;
+    private final Map<Section, E> entries = new HashMap<Section, E>();
+
+    RomInfoIndex(String filename, Decoder<E> decoder) {
+        this.filename = filename;
+        this.decoder = decoder;
+    }
+
+    public synchronized List<Section> sections() {
+        if (sections == null) {
+            sections = Collections.unmodifiableList(readSections());
+        }
+        return sections;
+    }
+
+    public synchronized E entry(Section section) {
+        E entry = entries.get(section);
+        if (entry == null) {
+            entry = decoder.decode(section);
+            entries.put(section, entry);
+        }
+        return entry;
+    }
+
+    // Sections before this one in the file, which it can copy from.
+    public List<Section> sectionsBefore(Section section) {
+        return sections().subList(0, section.index);
+    }
+
+    private List<Section> readSections() {
+        List<Section> read = new ArrayList<Section>();
+        Section current = null;
+        try {
+            Scanner sc = new Scanner(FileFunctions.openConfig(filename), "UTF-8");
+            while (sc.hasNextLine()) {
+                String q = sc.nextLine().trim();
+                if (q.contains("//")) {
+                    q = q.substring(0, q.indexOf("//")).trim();
+                }
+                if (q.isEmpty()) {
+                    continue;
+                }
+                if (q.startsWith("[") && q.endsWith("]")) {
+                    // New rom
+                    current = new Section(q.substring(1, q.length() - 1), read.size());
+                    read.add(current);
+                } else {
+                    String[] r = q.split("=", 2);
+                    if (r.length == 1 || current == null) {
+                        System.err.println("invalid entry " + q);
+                        continue;
+                    }
+                    current.lines.add(new String[] { r[0].trim(), r[1].trim() });
+                }
+            }
+            sc.close();
+        } catch (FileNotFoundException e) {
+        }
+        return read;
+    }
+
+    static int parseRIInt(String off) {
+        int radix = 10;
+        off = off.trim().toLowerCase();
+        if (off.startsWith("0x") || off.startsWith("&h")) {
+            radix = 16;
+            off = off.substring(2);
+        }
+        try {
+            return Integer.parseInt(off, radix);
+        } catch (NumberFormatException ex) {
+            System.err.println("invalid base " + radix + "number " + off);
+            return 0;
+        }
+    }
+
+}
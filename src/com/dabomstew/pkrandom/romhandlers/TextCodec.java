@@ -0,0 +1,219 @@
+package com.dabomstew.pkrandom.romhandlers;
+
+/*----------------------------------------------------------------------------*/
+/*--  TextCodec.java - converts GB/GBA game text to and from Strings        --*/
+/*--                  through a character table.                            --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer" by Dabomstew                   --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2012.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+
+import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+
+import com.dabomstew.pkrandom.FileFunctions;
+import com.dabomstew.pkrandom.TextTrie;
+
+/**
+ * A character table (.tbl) for GB/GBA text: each byte decodes to a token of
+ * one or more characters, and text is encoded by taking the longest token
+ * that matches at each position. Encoding walks a trie built from the table,
+ * and both directions work in buffers kept by the codec, so the only objects
+ * made per string are its result.
+ *
+ * Bytes the table doesn't cover are written as \xNN, and with a variable
+ * code set, that code and the byte after it as \vNN. A codec keeps state
+ * between calls, so each handler needs its own.
+ */
+class TextCodec {
+
+    private static final String[] HEX = new String[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            HEX[i] = String.format("%02X", i);
+        }
+    }
+
+    private final int terminator;
+    private final int variableCode;
+    private final int maxTokenLength;
+
+    private final String[] tokens = new String[256];
+    // tokens after which text engine strings stop
+    private final boolean[] endsText = new boolean[256];
+    private final Map<String, Integer> codes = new HashMap<String, Integer>();
+
+    // Rebuilt on the first encode after the table changes.
+    private TextTrie trie;
+
+    private final StringBuilder decoded = new StringBuilder();
+    private byte[] encoded = new byte[64];
+
+    /**
+     * terminator ends a string when it isn't in the table. variableCode is -1
+     * if the game has none. No token longer than maxTokenLength is matched
+     * when encoding.
+     */
+    TextCodec(int terminator, int variableCode, int maxTokenLength) {
+        this.terminator = terminator;
+        this.variableCode = variableCode;
+        this.maxTokenLength = maxTokenLength;
+    }
+
+    void clear() {
+        for (int i = 0; i < 256; i++) {
+            tokens[i] = null;
+            endsText[i] = false;
+        }
+        codes.clear();
+        trie = null;
+    }
+
+    // Adds the table file name.tbl over whatever is already loaded.
+    void readTable(String name) {
+        try {
+            Scanner sc = new Scanner(FileFunctions.openConfig(name + ".tbl"), "UTF-8");
+            while (sc.hasNextLine()) {
+                String q = sc.nextLine();
+                if (!q.trim().isEmpty()) {
+                    String[] r = q.split("=", 2);
+                    if (r[1].endsWith("\r\n")) {
+                        r[1] = r[1].substring(0, r[1].length() - 2);
+                    }
+                    put(Integer.parseInt(r[0], 16), r[1]);
+                }
+            }
+            sc.close();
+        } catch (FileNotFoundException e) {
+        }
+    }
+
+    // Maps code to token, replacing what code used to mean.
+    void put(int code, String token) {
+        String old = tokens[code];
+        if (old != null) {
+            Integer oldCode = codes.get(old);
+            if (oldCode != null && oldCode == code) {
+                codes.remove(old);
+            }
+        }
+        tokens[code] = token;
+        endsText[code] = token.equals("\\r") || token.equals("\\e");
+        codes.put(token, code);
+        trie = null;
+    }
+
+    /**
+     * Text from data[offset], up to maxLength bytes or the terminator. In text
+     * engine mode, also stops after a \r or \e token.
+     */
+    String decode(byte[] data, int offset, int maxLength, boolean textEngineMode) {
+        StringBuilder string = decoded;
+        string.setLength(0);
+        for (int c = 0; c < maxLength; c++) {
+            int currChar = data[offset + c] & 0xFF;
+            if (tokens[currChar] != null) {
+                string.append(tokens[currChar]);
+                if (textEngineMode && endsText[currChar]) {
+                    break;
+                }
+            } else if (currChar == terminator) {
+                break;
+            } else if (currChar == variableCode) {
+                string.append("\\v").append(HEX[data[offset + c + 1] & 0xFF]);
+                c++;
+            } else {
+                string.append("\\x").append(HEX[currChar]);
+            }
+        }
+        return string.toString();
+    }
+
+    byte[] encode(String text) {
+        int length = encodeToBuffer(text);
+        byte[] result = new byte[length];
+        System.arraycopy(encoded, 0, result, 0, length);
+        return result;
+    }
+
+    int encodedLength(String text) {
+        return encodeToBuffer(text);
+    }
+
+    // Encodes text into dest[offset], at most maxLength bytes. Returns the
+    // number of bytes written.
+    int encodeTo(String text, byte[] dest, int offset, int maxLength) {
+        int length = Math.min(encodeToBuffer(text), maxLength);
+        System.arraycopy(encoded, 0, dest, offset, length);
+        return length;
+    }
+
+    private int encodeToBuffer(String text) {
+        if (trie == null) {
+            trie = new TextTrie(codes);
+        }
+        int length = 0;
+        int pos = 0, end = text.length();
+        while (pos < end) {
+            char c = text.charAt(pos);
+            char next = pos + 1 < end ? text.charAt(pos + 1) : 0;
+            if (c == '\\' && next == 'x') {
+                length = append(length, hexByte(text, pos + 2));
+                pos += 4;
+            } else if (c == '\\' && next == 'v' && variableCode >= 0) {
+                length = append(length, variableCode);
+                length = append(length, hexByte(text, pos + 2));
+                pos += 4;
+            } else {
+                int matched = trie.longestMatch(text, pos, maxTokenLength);
+                if (matched < 0) {
+                    pos++;
+                } else {
+                    length = append(length, matched & 0xFFFF);
+                    pos += matched >>> 16;
+                }
+            }
+        }
+        return length;
+    }
+
+    private int append(int length, int value) {
+        if (length == encoded.length) {
+            byte[] bigger = new byte[encoded.length * 2];
+            System.arraycopy(encoded, 0, bigger, 0, length);
+            encoded = bigger;
+        }
+        encoded[length] = (byte) value;
+        return length + 1;
+    }
+
+    private static int hexByte(String text, int pos) {
+        int high = pos < text.length() ? Character.digit(text.charAt(pos), 16) : -1;
+        int low = pos + 1 < text.length() ? Character.digit(text.charAt(pos + 1), 16) : -1;
+        if (high < 0 || low < 0) {
+            throw new NumberFormatException("Bad escape in text: " + text);
+        }
+        return (high << 4) | low;
+    }
+
+}
@@ -53,6 +53,15 @@ public class BLZCoder {
 
     private boolean arm9;
 
+    // Match finder: hash chains over 3-byte prefixes, so SEARCH only probes
+    // earlier positions which can actually start a match.
+    private static final int HASH_BITS = 15;
+    private int[] hashHead;
+    private int[] hashPrev;
+    private int hashedUpTo;
+    // results of the last SEARCH
+    private int searchLen, searchPos;
+
     public BLZCoder(String[] args) {
 
         int cmd, mode = 0, arg;
@@ -370,6 +379,13 @@ public class BLZCoder {
 
         BLZ_Invert(raw_buffer, 0, raw_len);
 
+        hashHead = new int[1 << HASH_BITS];
+        for (int i = 0; i < hashHead.length; i++) {
+            hashHead[i] = -1;
+        }
+        hashPrev = new int[raw_len];
+        hashedUpTo = 0;
+
         pak = 0;
         raw = 0;
         raw_end = raw_new;
@@ -381,22 +397,22 @@ public class BLZCoder {
                 mask = BLZ_MASK;
             }
 
-            SearchPair sl1 = SEARCH(pos_best, raw_buffer, raw, raw_end);
-            len_best = sl1.l;
-            pos_best = sl1.p;
+            SEARCH(pos_best, raw_buffer, raw, raw_end);
+            len_best = searchLen;
+            pos_best = searchPos;
 
             // LZ-CUE optimization start
             if (best == BLZ_BEST) {
                 if (len_best > BLZ_THRESHOLD) {
                     if (raw + len_best < raw_end) {
                         raw += len_best;
-                        SearchPair sl2 = SEARCH(pos_next, raw_buffer, raw, raw_end);
-                        len_next = sl2.l;
-                        pos_next = sl2.p;
+                        SEARCH(pos_next, raw_buffer, raw, raw_end);
+                        len_next = searchLen;
+                        pos_next = searchPos;
                         raw -= (len_best - 1);
-                        SearchPair sl3 = SEARCH(pos_post, raw_buffer, raw, raw_end);
-                        len_post = sl3.l;
-                        pos_post = sl3.p;
+                        SEARCH(pos_post, raw_buffer, raw, raw_end);
+                        len_post = searchLen;
+                        pos_post = searchPos;
                         raw--;
 
                         if (len_next <= BLZ_THRESHOLD) {
@@ -434,6 +450,8 @@ public class BLZCoder {
         }
 
         pak_len = pak;
+        hashHead = null;
+        hashPrev = null;
 
         BLZ_Invert(raw_buffer, 0, raw_len);
         BLZ_Invert(pak_buffer, 0, pak_len);
@@ -444,7 +462,7 @@ public class BLZCoder {
             raw_end = raw_len;
 
             while (raw < raw_end) {
-                pak_buffer[pak] = raw_buffer[raw];
+                pak_buffer[pak++] = raw_buffer[raw++];
             }
 
             while ((pak & 3) > 0) {
@@ -489,41 +507,55 @@ public class BLZCoder {
         return pak_buffer;
     }
 
-    private static class SearchPair {
-        public int l;
-        public int p;
-
-        public SearchPair(int l, int p) {
-            this.l = l;
-            this.p = p;
-        }
-    }
-
-    private SearchPair SEARCH(int p, int[] raw_buffer, int raw, int raw_end) {
+    // Longest match (of at least BLZ_THRESHOLD + 1) for raw at distance 3 to
+    // BLZ_N, taking the nearest on ties; p is kept if there's no match.
+    private void SEARCH(int p, int[] raw_buffer, int raw, int raw_end) {
         int l = BLZ_THRESHOLD;
         int max = (raw >= BLZ_N) ? BLZ_N : raw;
-        for (int pos = 3; pos <= max; pos++) {
-            int len;
-            for (len = 0; len < BLZ_F; len++) {
-                if (raw + len == raw_end) {
+        while (hashedUpTo < raw && hashedUpTo + BLZ_THRESHOLD < raw_end) {
+            int h = hash(raw_buffer, hashedUpTo);
+            hashPrev[hashedUpTo] = hashHead[h];
+            hashHead[h] = hashedUpTo++;
+        }
+        if (raw + BLZ_THRESHOLD < raw_end) {
+            // chains run from nearest to furthest, so ties keep the nearest
+            for (int q = hashHead[hash(raw_buffer, raw)]; q >= 0; q = hashPrev[q]) {
+                int pos = raw - q;
+                if (pos > max) {
                     break;
                 }
-                if (len >= pos) {
-                    break;
+                if (pos < 3) {
+                    // hashed ahead of raw by an LZ-CUE lookahead
+                    continue;
                 }
-                if (raw_buffer[raw + len] != raw_buffer[raw + len - pos]) {
-                    break;
+                int len;
+                for (len = 0; len < BLZ_F; len++) {
+                    if (raw + len == raw_end) {
+                        break;
+                    }
+                    if (len >= pos) {
+                        break;
+                    }
+                    if (raw_buffer[raw + len] != raw_buffer[q + len]) {
+                        break;
+                    }
                 }
-            }
 
-            if (len > l) {
-                p = pos;
-                if ((l = len) == BLZ_F) {
-                    break;
+                if (len > l) {
+                    p = pos;
+                    if ((l = len) == BLZ_F) {
+                        break;
+                    }
                 }
             }
         }
-        return new SearchPair(l, p);
+        searchLen = l;
+        searchPos = p;
+    }
+
+    private static int hash(int[] raw_buffer, int pos) {
+        int key = (raw_buffer[pos] << 16) | (raw_buffer[pos + 1] << 8) | raw_buffer[pos + 2];
+        return (key * 0x9E3779B1) >>> (32 - HASH_BITS);
     }
 
     private class BLZResult {
@@ -8,23 +8,39 @@ package pptxt;
 
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.TreeMap;
 
 import com.dabomstew.pkrandom.FileFunctions;
-
+import com.dabomstew.pkrandom.TextTrie;
+
+/**
+ * One Gen 5 text file (a msg.narc entry). The header and every string's
+ * encryption key are read when it's created; strings are decoded when first
+ * asked for. Each object keeps its own state, so any number of files can be
+ * worked on at once from any number of threads.
+ *
+ * Special characters are written with the text from Generation5.tbl (e.g.
+ * \[PK]), anything else unprintable as \xNNNN.
+ */
 public class PPTxtHandler {
 
-    public static Map<String, String> pokeToText = new HashMap<String, String>();
-    public static Map<String, String> textToPoke = new HashMap<String, String>();
-
-    public static Pattern pokeToTextPattern, textToPokePattern;
+    // Generation5.tbl: sorted character codes and their text
+    private static final char[] tableCodes;
+    private static final String[] tableTexts;
+    // and a trie of the texts, for encoding
+    private static final TextTrie textTrie;
+    // characters written as themselves rather than as \xNNNN
+    private static final boolean[] printable = new boolean[0x10000];
 
     static {
+        // later lines win
+        Map<Integer, String> byCode = new TreeMap<Integer, String>();
+        Map<String, Integer> byText = new HashMap<String, Integer>();
         try {
             Scanner sc = new Scanner(FileFunctions.openConfig("Generation5.tbl"), "UTF-8");
             while (sc.hasNextLine()) {
@@ -34,88 +50,139 @@ public class PPTxtHandler {
                     if (r[1].endsWith("\r\n")) {
                         r[1] = r[1].substring(0, r[1].length() - 2);
                     }
-                    pokeToText.put(Character.toString((char) Integer.parseInt(r[0], 16)), r[1].replace("\\", "\\\\")
-                            .replace("$", "\\$"));
-                    textToPoke.put(r[1], "\\\\x" + r[0]);
+                    int code = Integer.parseInt(r[0], 16);
+                    byCode.put(code, r[1]);
+                    byText.put(r[1], code);
                 }
             }
             sc.close();
-            pokeToTextPattern = makePattern(pokeToText.keySet());
-            textToPokePattern = makePattern(textToPoke.keySet());
         } catch (FileNotFoundException e) {
         }
+        textTrie = new TextTrie(byText);
+        tableCodes = new char[byCode.size()];
+        tableTexts = new String[byCode.size()];
+        int i = 0;
+        for (Map.Entry<Integer, String> entry : byCode.entrySet()) {
+            tableCodes[i] = (char) entry.getKey().intValue();
+            tableTexts[i] = entry.getValue();
+            i++;
+        }
+        for (int c = 21; c <= 0xFFF0; c++) {
+            printable[c] = Character.UnicodeBlock.of(c) != null;
+        }
     }
 
-    public static Pattern makePattern(Iterable<String> tokens) {
-        String patternStr = "("
-                + implode(tokens, "|").replace("\\", "\\\\").replace("[", "\\[").replace("]", "\\]")
-                        .replace("(", "\\(").replace(")", "\\)") + ")";
-        return Pattern.compile(patternStr);
-    }
+    private final byte[] data;
+    private final int numSections, numEntries;
+    private final int[] sectionOffset, sizeSections;
+    // section 0's entries
+    private final int[] entryOffsets, entryCharCounts, unknowns, keys;
+    private List<String> texts;
+
+    // working buffers
+    private int[] words = new int[64];
+    private char[] chars = new char[64];
+
+    /**
+     * Reads the header of a text file and the key of each string in it.
+     * 
+     * @param data
+     *            The data from this msg.narc entry
+     */
+    public PPTxtHandler(byte[] data) {
+        this.data = data;
+        numSections = readWord(data, 0);
+        numEntries = readWord(data, 2);
+        sectionOffset = new int[Math.max(3, numSections)];
+        sizeSections = new int[Math.max(3, numSections)];
+        sizeSections[0] = readLong(data, 4);
+        int pos = 12;
+        for (int z = 0; z < numSections; z++) {
+            sectionOffset[z] = readLong(data, pos);
+            pos += 4;
+        }
+        for (int z = 0; z < numSections; z++) {
+            sizeSections[z] = readLong(data, sectionOffset[z]);
+        }
 
-    public static String implode(Iterable<String> tokens, String sep) {
-        StringBuilder sb = new StringBuilder();
-        boolean first = true;
-        for (String token : tokens) {
-            if (!first) {
-                sb.append(sep);
+        entryOffsets = new int[numEntries];
+        entryCharCounts = new int[numEntries];
+        unknowns = new int[numEntries];
+        keys = new int[numEntries];
+        if (numSections > 0) {
+            pos = sectionOffset[0] + 4;
+            for (int j = 0; j < numEntries; j++) {
+                entryOffsets[j] = readLong(data, pos);
+                entryCharCounts[j] = readWord(data, pos + 4);
+                unknowns[j] = readWord(data, pos + 6);
+                pos += 8;
+            }
+            // Each string is encrypted from its first character on with a
+            // key that's rotated per character; the last character is always
+            // 0xFFFF, so the key can be worked back to from there
+            for (int j = 0; j < numEntries; j++) {
+                int count = entryCharCounts[j];
+                int last = sectionOffset[0] + entryOffsets[j] + (count - 1) * 2;
+                int key = readWord(data, last) ^ 0xFFFF;
+                for (int k = count - 1; k > 0; k--) {
+                    key = rotateRight(key);
+                }
+                keys[j] = key;
             }
-            sb.append(token);
-            first = false;
         }
-        return sb.toString();
     }
 
     /**
-     * Decompress the words given into chars according to 9bits per char format
-     * Based off poketext's implementation of the same in gen4, but uses all 16
-     * bits per word as opposed to 15
+     * The strings in this file (the first language only), decompressing any
+     * that use [F100] compression.
      * 
-     * @param chars
-     *            List of words, beginning with [F100] which is skipped.
-     * @return Decompressed list of integers corresponding to characters
+     * @return The list of strings, which is not to be modified
      */
-    private static List<Integer> decompress(List<Integer> chars) {
-        List<Integer> uncomp = new ArrayList<Integer>();
-        int j = 1;
-        int shift1 = 0;
-        int trans = 0;
-        while (true) {
-            int tmp = chars.get(j);
-            tmp = tmp >> shift1;
-            int tmp1 = tmp;
-            if (shift1 >= 0x10) {
-                shift1 -= 0x10;
-                if (shift1 > 0) {
-                    tmp1 = (trans | ((chars.get(j) << (9 - shift1)) & 0x1FF));
-                    if ((tmp1 & 0xFF) == 0xFF) {
-                        break;
-                    }
-                    if (tmp1 != 0x0 && tmp1 != 0x1) {
-                        uncomp.add(tmp1);
-                    }
+    public List<String> getTexts() {
+        if (texts == null) {
+            List<String> strings = new ArrayList<String>(numEntries);
+            if (numSections > 0) {
+                for (int j = 0; j < numEntries; j++) {
+                    strings.add(decode(j));
                 }
-            } else {
-                tmp1 = ((chars.get(j) >> shift1) & 0x1FF);
-                if ((tmp1 & 0xFF) == 0xFF) {
-                    break;
-                }
-                if (tmp1 != 0x0 && tmp1 != 0x1) {
-                    uncomp.add(tmp1);
-                }
-                shift1 += 9;
-                if (shift1 < 0x10) {
-                    trans = ((chars.get(j) >> shift1) & 0x1FF);
-                    shift1 += 9;
-                }
-                j += 1;
             }
+            texts = Collections.unmodifiableList(strings);
         }
-        return uncomp;
+        return texts;
     }
 
-    private static List<Integer> lastKeys;
-    private static List<Integer> lastUnknowns;
+    /**
+     * Write newStrings over this file's strings, as language 0 (the only one
+     * in most releases BUT japanese), keeping each string's key and unknown
+     * value. Will never use the [F100] compression, even if the original file
+     * used it.
+     * 
+     * @param text
+     *            The new data. Not modified.
+     * @return The file to write back to the NARC.
+     */
+    public byte[] save(List<String> text) {
+        if (text.size() < numEntries) {
+            System.err.println("Can't do anything due to too few lines");
+            return data;
+        }
+        byte[] newEntry = makeSection(text);
+        int newSize = newEntry.length;
+
+        byte[] newData = new byte[data.length - sizeSections[0] + newSize];
+        System.arraycopy(data, 0, newData, 0, Math.min(data.length, newData.length));
+        writeLong(newData, 4, newSize);
+        int newSection1Offset = 0;
+        if (numSections == 2) {
+            newSection1Offset = newSize + sectionOffset[0];
+            writeLong(newData, 0x10, newSection1Offset);
+        }
+        System.arraycopy(newEntry, 0, newData, sectionOffset[0], newEntry.length);
+        if (numSections == 2) {
+            System.arraycopy(data, sectionOffset[1], newData, newSection1Offset, sizeSections[1]);
+        }
+        return newData;
+    }
 
     /**
      * Take a byte-array corresponding to a NARC entry and build a list of
@@ -125,121 +192,12 @@ public class PPTxtHandler {
      *            The data from this msg.narc entry
      * @return The list of strings
      */
-
     public static List<String> readTexts(byte[] ds) {
-        int pos = 0;
-        int i = 0;
-        lastKeys = new ArrayList<Integer>();
-        lastUnknowns = new ArrayList<Integer>();
-        List<String> strings = new ArrayList<String>();
-        int numSections, numEntries, tmpCharCount, tmpUnknown, tmpChar;
-        int tmpOffset;
-        int[] sizeSections = new int[] { 0, 0, 0 };
-        int[] sectionOffset = new int[] { 0, 0, 0 };
-        Map<Integer, List<Integer>> tableOffsets = new HashMap<Integer, List<Integer>>();
-        Map<Integer, List<Integer>> characterCount = new HashMap<Integer, List<Integer>>();
-        Map<Integer, List<Integer>> unknown = new HashMap<Integer, List<Integer>>();
-        Map<Integer, List<List<Integer>>> encText = new HashMap<Integer, List<List<Integer>>>();
-        Map<Integer, List<List<String>>> decText = new HashMap<Integer, List<List<String>>>();
-        String string = "";
-        int key;
-
-        numSections = readWord(ds, 0);
-        numEntries = readWord(ds, 2);
-        sizeSections[0] = readLong(ds, 4);
-        // unk1 = readLong(ds, 8);
-        pos += 12;
-        if (numSections > i) {
-            for (int z = 0; z < numSections; z++) {
-                sectionOffset[z] = readLong(ds, pos);
-                pos += 4;
-            }
-            pos = sectionOffset[i];
-            sizeSections[i] = readLong(ds, pos);
-            pos += 4;
-            tableOffsets.put(i, new ArrayList<Integer>());
-            characterCount.put(i, new ArrayList<Integer>());
-            unknown.put(i, new ArrayList<Integer>());
-            encText.put(i, new ArrayList<List<Integer>>());
-            decText.put(i, new ArrayList<List<String>>());
-            for (int j = 0; j < numEntries; j++) {
-                tmpOffset = readLong(ds, pos);
-                pos += 4;
-                tmpCharCount = readWord(ds, pos);
-                pos += 2;
-                tmpUnknown = readWord(ds, pos);
-                pos += 2;
-                tableOffsets.get(i).add(tmpOffset);
-                characterCount.get(i).add(tmpCharCount);
-                unknown.get(i).add(tmpUnknown);
-                lastUnknowns.add(tmpUnknown);
-            }
-            for (int j = 0; j < numEntries; j++) {
-                List<Integer> tmpEncChars = new ArrayList<Integer>();
-                pos = sectionOffset[i] + tableOffsets.get(i).get(j);
-                for (int k = 0; k < characterCount.get(i).get(j); k++) {
-                    tmpChar = readWord(ds, pos);
-                    pos += 2;
-                    tmpEncChars.add(tmpChar);
-                }
-                encText.get(i).add(tmpEncChars);
-                key = encText.get(i).get(j).get(characterCount.get(i).get(j) - 1) ^ 0xFFFF;
-                for (int k = characterCount.get(i).get(j) - 1; k >= 0; k--) {
-                    encText.get(i).get(j).set(k, (encText.get(i).get(j).get(k).intValue()) ^ key);
-                    if (k == 0) {
-                        lastKeys.add(key);
-                    }
-                    key = ((key >>> 3) | (key << 13)) & 0xffff;
-                }
-                if (encText.get(i).get(j).get(0) == 0xF100) {
-                    encText.get(i).set(j, decompress(encText.get(i).get(j)));
-                    characterCount.get(i).set(j, encText.get(i).get(j).size());
-                }
-                List<String> chars = new ArrayList<String>();
-                string = "";
-                for (int k = 0; k < characterCount.get(i).get(j); k++) {
-                    if (encText.get(i).get(j).get(k) == 0xFFFF) {
-                        chars.add("\\xFFFF");
-                    } else {
-                        if (encText.get(i).get(j).get(k) > 20 && encText.get(i).get(j).get(k) <= 0xFFF0
-                                && Character.UnicodeBlock.of(encText.get(i).get(j).get(k)) != null) {
-                            chars.add("" + ((char) encText.get(i).get(j).get(k).intValue()));
-                        } else {
-                            String num = String.format("%04X", encText.get(i).get(j).get(k));
-                            chars.add("\\x" + num);
-                        }
-                        string += chars.get(k);
-                    }
-                }
-                strings.add(string);
-                decText.get(i).add(chars);
-            }
-        }
-
-        // Parse strings against the table
-        for (int sn = 0; sn < strings.size(); sn++) {
-            strings.set(sn, bulkReplace(strings.get(sn), pokeToTextPattern, pokeToText));
-        }
-        return strings;
-    }
-
-    private static String bulkReplace(String string, Pattern pattern, Map<String, String> replacements) {
-        Matcher matcher = pattern.matcher(string);
-
-        StringBuffer sb = new StringBuffer();
-        while (matcher.find()) {
-            matcher.appendReplacement(sb, replacements.get(matcher.group(1)));
-        }
-        matcher.appendTail(sb);
-
-        return sb.toString();
+        return new ArrayList<String>(new PPTxtHandler(ds).getTexts());
     }
 
     /**
-     * Write newStrings to the text datafile originalData, as language 0 (the
-     * only one in most releases BUT japanese). Return the resulting binary as a
-     * byte-array. Will never use the [F100] compression, even if the original
-     * file used it.
+     * Write text to the text datafile originalData; see save.
      * 
      * @param originalData
      *            The original file, to copy stuff like unknowns.
@@ -248,79 +206,121 @@ public class PPTxtHandler {
      * @return The file to write back to the NARC.
      */
     public static byte[] saveEntry(byte[] originalData, List<String> text) {
+        return new PPTxtHandler(originalData).save(text);
+    }
 
-        // Parse strings against the reverse table
-        for (int sn = 0; sn < text.size(); sn++) {
-            text.set(sn, bulkReplace(text.get(sn), textToPokePattern, textToPoke));
+    private String decode(int entry) {
+        int count = entryCharCounts[entry];
+        int pos = sectionOffset[0] + entryOffsets[entry];
+        int[] w = wordBuffer(count);
+        int key = keys[entry];
+        for (int k = 0; k < count; k++) {
+            w[k] = readWord(data, pos + k * 2) ^ key;
+            key = rotateLeft(key);
+        }
+        if (count > 0 && w[0] == 0xF100) {
+            count = decompress(count);
+            w = words;
         }
 
-        // Make sure we have the original unknowns etc
-        readTexts(originalData);
-
-        // Start getting stuff
-        int numSections, numEntries;
-        int[] sizeSections = new int[] { 0, 0, 0 };
-        int[] sectionOffset = new int[] { 0, 0, 0 };
-        int[] newsizeSections = new int[] { 0, 0, 0 };
-        int[] newsectionOffset = new int[] { 0, 0, 0 };
-
-        // Data-Stream
-        byte[] ds = originalData;
-        int pos = 0;
-
-        numSections = readWord(ds, 0);
-        numEntries = readWord(ds, 2);
-        sizeSections[0] = readLong(ds, 4);
-        // unk1 readLong(ds, 8);
-        pos += 12;
-
-        if (text.size() < numEntries) {
-            System.err.println("Can't do anything due to too few lines");
-            return originalData;
-        } else {
-            byte[] newEntry = makeSection(text, numEntries);
-            for (int z = 0; z < numSections; z++) {
-                sectionOffset[z] = readLong(ds, pos);
-                pos += 4;
+        int length = 0;
+        for (int k = 0; k < count; k++) {
+            int c = w[k];
+            if (c == 0xFFFF) {
+                continue;
             }
-            for (int z = 0; z < numSections; z++) {
-                pos = sectionOffset[z];
-                sizeSections[z] = readLong(ds, pos);
-                pos += 4;
+            String special = null;
+            if (printable[c]) {
+                int found = indexOfCode((char) c);
+                if (found < 0) {
+                    length = append(length, (char) c);
+                    continue;
+                }
+                special = tableTexts[found];
             }
-            newsizeSections[0] = newEntry.length;
-
-            byte[] newData = new byte[ds.length - sizeSections[0] + newsizeSections[0]];
-            System.arraycopy(ds, 0, newData, 0, Math.min(ds.length, newData.length));
-            writeLong(newData, 4, newsizeSections[0]);
-            if (numSections == 2) {
-                newsectionOffset[1] = newsizeSections[0] + sectionOffset[0];
-                writeLong(newData, 0x10, newsectionOffset[1]);
+            if (special == null) {
+                length = append(length, '\\');
+                length = append(length, 'x');
+                for (int shift = 12; shift >= 0; shift -= 4) {
+                    length = append(length, Character.toUpperCase(Character.forDigit((c >> shift) & 0xF, 16)));
+                }
+            } else {
+                for (int i = 0; i < special.length(); i++) {
+                    length = append(length, special.charAt(i));
+                }
             }
-            System.arraycopy(newEntry, 0, newData, sectionOffset[0], newEntry.length);
-            if (numSections == 2) {
-                System.arraycopy(ds, sectionOffset[1], newData, newsectionOffset[1], sizeSections[1]);
+        }
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Decompress the words in the word buffer into chars according to 9bits
+     * per char format, leaving the result in the word buffer. Based off
+     * poketext's implementation of the same in gen4, but uses all 16 bits per
+     * word as opposed to 15
+     * 
+     * @param count
+     *            Number of words, beginning with [F100] which is skipped.
+     * @return Number of decompressed characters
+     */
+    private int decompress(int count) {
+        int[] packed = new int[count];
+        System.arraycopy(words, 0, packed, 0, count);
+        int length = 0;
+        int j = 1;
+        int shift1 = 0;
+        int trans = 0;
+        while (true) {
+            int tmp1;
+            if (shift1 >= 0x10) {
+                shift1 -= 0x10;
+                if (shift1 > 0) {
+                    tmp1 = (trans | ((packed[j] << (9 - shift1)) & 0x1FF));
+                    if ((tmp1 & 0xFF) == 0xFF) {
+                        break;
+                    }
+                    if (tmp1 != 0x0 && tmp1 != 0x1) {
+                        wordBuffer(length + 1)[length++] = tmp1;
+                    }
+                }
+            } else {
+                tmp1 = ((packed[j] >> shift1) & 0x1FF);
+                if ((tmp1 & 0xFF) == 0xFF) {
+                    break;
+                }
+                if (tmp1 != 0x0 && tmp1 != 0x1) {
+                    wordBuffer(length + 1)[length++] = tmp1;
+                }
+                shift1 += 9;
+                if (shift1 < 0x10) {
+                    trans = ((packed[j] >> shift1) & 0x1FF);
+                    shift1 += 9;
+                }
+                j += 1;
             }
-            return newData;
         }
+        return length;
     }
 
-    private static byte[] makeSection(List<String> strings, int numEntries) {
-        List<List<Integer>> data = new ArrayList<List<Integer>>();
+    private byte[] makeSection(List<String> strings) {
+        int[][] encoded = new int[numEntries][];
         int size = 0;
         int offset = 4 + 8 * numEntries;
-        int charCount;
         for (int i = 0; i < numEntries; i++) {
-            data.add(parseString(strings.get(i), i));
-            size += (data.get(i).size() * 2);
+            encoded[i] = encode(strings.get(i), i);
+            size += encoded[i].length * 2;
         }
         if (size % 4 == 2) {
             size += 2;
-            int tmpKey = lastKeys.get(numEntries - 1);
-            for (int i = 0; i < data.get(numEntries - 1).size(); i++) {
-                tmpKey = ((tmpKey << 3) | (tmpKey >> 13)) & 0xFFFF;
+            int[] last = encoded[numEntries - 1];
+            int tmpKey = keys[numEntries - 1];
+            for (int i = 0; i < last.length; i++) {
+                tmpKey = rotateLeft(tmpKey);
             }
-            data.get(numEntries - 1).add(0xFFFF ^ tmpKey);
+            int[] padded = new int[last.length + 1];
+            System.arraycopy(last, 0, padded, 0, last.length);
+            padded[last.length] = 0xFFFF ^ tmpKey;
+            encoded[numEntries - 1] = padded;
         }
         size += offset;
         byte[] section = new byte[size];
@@ -328,17 +328,17 @@ public class PPTxtHandler {
         writeLong(section, pos, size);
         pos += 4;
         for (int i = 0; i < numEntries; i++) {
-            charCount = data.get(i).size();
+            int charCount = encoded[i].length;
             writeLong(section, pos, offset);
             pos += 4;
             writeWord(section, pos, charCount);
             pos += 2;
-            writeWord(section, pos, lastUnknowns.get(i));
+            writeWord(section, pos, unknowns[i]);
             pos += 2;
             offset += (charCount * 2);
         }
         for (int i = 0; i < numEntries; i++) {
-            for (int word : data.get(i)) {
+            for (int word : encoded[i]) {
                 writeWord(section, pos, word);
                 pos += 2;
             }
@@ -346,27 +346,76 @@ public class PPTxtHandler {
         return section;
     }
 
-    private static List<Integer> parseString(String string, int entry_id) {
-        List<Integer> chars = new ArrayList<Integer>();
-        for (int i = 0; i < string.length(); i++) {
-            if (string.charAt(i) != '\\') {
-                chars.add((int) string.charAt(i));
+    // The encrypted characters of string, terminator included.
+    private int[] encode(String string, int entry) {
+        int count = 0;
+        int length = string.length();
+        for (int i = 0; i < length; i++) {
+            int matched = textTrie.longestMatch(string, i, length - i);
+            int[] w = wordBuffer(count + 1);
+            if (matched >= 0) {
+                w[count++] = matched & 0xFFFF;
+                i += (matched >>> 16) - 1;
+            } else if (string.charAt(i) != '\\') {
+                w[count++] = string.charAt(i);
+            } else if (((i + 2) < length) && string.charAt(i + 2) == '{') {
+                w[count++] = string.charAt(i);
             } else {
-                if (((i + 2) < string.length()) && string.charAt(i + 2) == '{') {
-                    chars.add((int) string.charAt(i));
-                } else {
-                    chars.add(Integer.parseInt(string.substring(i + 2, i + 6), 16));
-                    i += 5;
-                }
+                w[count++] = Integer.parseInt(string.substring(i + 2, i + 6), 16);
+                i += 5;
             }
         }
-        chars.add(0xFFFF);
-        int key = lastKeys.get(entry_id);
-        for (int i = 0; i < chars.size(); i++) {
-            chars.set(i, (chars.get(i) ^ key) & 0xFFFF);
-            key = ((key << 3) | (key >>> 13)) & 0xFFFF;
+        wordBuffer(count + 1)[count++] = 0xFFFF;
+
+        int[] encrypted = new int[count];
+        int key = keys[entry];
+        for (int i = 0; i < count; i++) {
+            encrypted[i] = (words[i] ^ key) & 0xFFFF;
+            key = rotateLeft(key);
+        }
+        return encrypted;
+    }
+
+    private static int indexOfCode(char c) {
+        int lo = 0, hi = tableCodes.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tableCodes[mid] < c) {
+                lo = mid + 1;
+            } else if (tableCodes[mid] > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int[] wordBuffer(int needed) {
+        if (needed > words.length) {
+            int[] bigger = new int[Math.max(needed, words.length * 2)];
+            System.arraycopy(words, 0, bigger, 0, words.length);
+            words = bigger;
         }
-        return chars;
+        return words;
+    }
+
+    private int append(int length, char c) {
+        if (length == chars.length) {
+            char[] bigger = new char[chars.length * 2];
+            System.arraycopy(chars, 0, bigger, 0, length);
+            chars = bigger;
+        }
+        chars[length] = c;
+        return length + 1;
+    }
+
+    private static int rotateLeft(int key) {
+        return ((key << 3) | (key >>> 13)) & 0xFFFF;
+    }
+
+    private static int rotateRight(int key) {
+        return ((key >>> 3) | (key << 13)) & 0xFFFF;
     }
 
     private static int readWord(byte[] data, int offset) {
@@ -389,4 +438,5 @@ public class PPTxtHandler {
         data[offset + 2] = (byte) ((value >> 16) & 0xFF);
         data[offset + 3] = (byte) ((value >> 24) & 0xFF);
     }
+
 }